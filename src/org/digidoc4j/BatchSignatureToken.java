@@ -0,0 +1,33 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j;
+
+import java.util.List;
+
+/**
+ * Signature token able to create several signature values with a single call.
+ * <p/>
+ * Implemented by tokens where every call is a round trip to a remote signer or a hardware module, so that
+ * signing many containers costs a single round trip. Used by
+ * {@link SignatureBuilder#invokeBatchSigning(List, SignatureToken)}.
+ */
+public interface BatchSignatureToken extends SignatureToken {
+
+  /**
+   * Creates the signature values of the given data. Every signature value is the signature of
+   * {@link DataToSign#getDigestToSign()} calculated with {@link DataToSign#getDigestAlgorithm()}, the same value
+   * {@link SignatureToken#sign(DigestAlgorithm, byte[])} returns for {@link DataToSign#getDataToBeSigned()}.
+   *
+   * @param dataToSign data to be signed with the certificate of the token
+   * @return signature raw values in the order of the given data
+   */
+  List<byte[]> sign(List<DataToSign> dataToSign);
+}
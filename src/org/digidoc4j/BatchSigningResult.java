@@ -0,0 +1,85 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Signatures created by {@link SignatureBuilder#invokeBatchSigning(List, SignatureToken)}, in the order of the
+ * signature builders.
+ * <p/>
+ * Every signature is created or fails on its own: a signature that could not be prepared or finalized has
+ * a failure instead of a signature, the other signatures of the batch are still created.
+ */
+public class BatchSigningResult {
+
+  private final List<Signature> signatures;
+  private final List<Exception> failures;
+
+  BatchSigningResult(int size) {
+    signatures = new ArrayList<>(Collections.<Signature>nCopies(size, null));
+    failures = new ArrayList<>(Collections.<Exception>nCopies(size, null));
+  }
+
+  /**
+   * @return true if all the signatures were created
+   */
+  public boolean isSuccessful() {
+    return getFailureCount() == 0;
+  }
+
+  public int size() {
+    return signatures.size();
+  }
+
+  public int getFailureCount() {
+    int failureCount = 0;
+    for (Exception failure : failures) {
+      if (failure != null) {
+        failureCount++;
+      }
+    }
+    return failureCount;
+  }
+
+  /**
+   * @return signatures in the order of the signature builders, null where creating the signature failed
+   */
+  public List<Signature> getSignatures() {
+    return Collections.unmodifiableList(signatures);
+  }
+
+  /**
+   * @param index index of the signature builder
+   * @return created signature or null if creating the signature failed
+   */
+  public Signature getSignature(int index) {
+    return signatures.get(index);
+  }
+
+  /**
+   * @param index index of the signature builder
+   * @return reason why creating the signature failed or null if the signature was created
+   */
+  public Exception getFailure(int index) {
+    return failures.get(index);
+  }
+
+  void setSignature(int index, Signature signature) {
+    signatures.set(index, signature);
+  }
+
+  void setFailure(int index, Exception failure) {
+    failures.set(index, failure);
+  }
+}
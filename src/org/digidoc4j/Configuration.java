@@ -15,9 +15,13 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.digidoc4j.exceptions.ConfigurationException;
 import org.digidoc4j.exceptions.DigiDoc4JException;
+import org.digidoc4j.exceptions.NotSupportedException;
 import org.digidoc4j.exceptions.TslKeyStoreNotFoundException;
+import org.digidoc4j.impl.ConfigurationPrewarmer;
 import org.digidoc4j.impl.ConfigurationSingeltonHolder;
 import org.digidoc4j.impl.bdoc.TslLoader;
+import org.digidoc4j.impl.bdoc.TslRegistry;
+import org.digidoc4j.impl.bdoc.TslRefreshStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.yaml.snakeyaml.Yaml;
@@ -25,13 +29,21 @@ import org.yaml.snakeyaml.Yaml;
 import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.commons.codec.binary.Hex;
 
 import static java.util.Arrays.asList;
 import static org.apache.commons.lang.StringUtils.isNotEmpty;
 
+import eu.europa.esig.dss.DSSUtils;
+import eu.europa.esig.dss.DigestAlgorithm;
 import eu.europa.esig.dss.client.http.Protocol;
 
 /**
@@ -124,6 +136,44 @@ import eu.europa.esig.dss.client.http.Protocol;
  * <li>VALIDATION_POLICY: Validation policy source file</li>
  * <li>TSL_KEYSTORE_LOCATION: keystore location for tsl signing certificates</li>
  * <li>TSL_KEYSTORE_PASSWORD: keystore password for the keystore in TSL_KEYSTORE_LOCATION</li>
+ * <li>TSL_REFRESH_INTERVAL_IN_MINUTES: Time between background reloads of the TSL after it has been loaded.
+ * Default value: 0 (TSL is not reloaded in the background)</li>
+ * <li>TSL_LOADING_THREADS: Number of threads downloading and verifying the trusted lists of different countries.
+ * Default value: {@value #DEFAULT_TSL_LOADING_THREADS}</li>
+ * <li>TSL_DOWNLOAD_TIMEOUT_IN_MILLISECONDS: Maximum time for downloading the trusted list of one country, the
+ * last cached copy of the list is used when downloading takes longer.<br>
+ * Default value: {@value #DEFAULT_TSL_DOWNLOAD_TIMEOUT_IN_MILLISECONDS}</li>
+ * <li>TRUSTED_TERRITORIES: Country codes of the trusted lists to be loaded from the EU list of trusted lists,
+ * as a list or separated by commas (e.g. EE, LV, LT). Default value: all countries</li>
+ * <li>TRUSTED_SERVICE_TYPES: Service types (e.g. http://uri.etsi.org/TrstSvc/Svctype/CA/QC) of the trust services
+ * whose certificates are trusted, as a list or separated by commas. Default value: all service types</li>
+ * <li>TSL_SNAPSHOT_ENABLED: Store a binary snapshot of the loaded TSL and use it for loading the TSL when the TSL
+ * files have not changed. The TSL is then fully loaded again in the background. Allowed values: true, false<br>
+ * Default value: false</li>
+ * <li>TSL_SNAPSHOT_DIRECTORY: Directory of the TSL snapshot. The snapshot is not used when other users can write to
+ * the directory. Default value: .digidoc4j/tsl-snapshot in the user home directory</li>
+ * <li>TSL_SHARED: Share the loaded TSL with the other configurations that have the same TSL location, keystore
+ * and TSL filters, so the TSL is held in memory and refreshed only once. Allowed values: true, false<br>
+ * Default value: false</li>
+ * <li>OCSP_REQUESTS_PER_SECOND: Maximum number of OCSP requests per second. Default value: 0 (not limited)</li>
+ * <li>OCSP_MAX_CERTIFICATES_PER_REQUEST: Maximum number of certificates asked in one OCSP request when extending
+ * several signatures. Set it above 1 only if the OCSP responder supports multiple certificates in one request.<br>
+ * Default value: 1</li>
+ * <li>OCSP_MAX_CONCURRENT_REQUESTS: Maximum number of simultaneous OCSP requests. Default value: 0 (not limited)</li>
+ * <li>TSP_REQUESTS_PER_SECOND: Maximum number of time-stamp requests per second. Default value: 0 (not limited)</li>
+ * <li>TSP_MAX_CONCURRENT_REQUESTS: Maximum number of simultaneous time-stamp requests.
+ * Default value: 0 (not limited)</li>
+ * <li>RESPONDER_MAX_QUEUED_REQUESTS: Maximum number of OCSP or time-stamp requests waiting for their turn,
+ * further requests fail immediately. Default value: 0 (not limited)</li>
+ * <li>RESPONDER_MAX_WAIT_IN_MILLISECONDS: Maximum time an OCSP or time-stamp request waits for its turn.<br>
+ * Default value: {@value #DEFAULT_RESPONDER_MAX_WAIT_IN_MILLISECONDS}</li>
+ * <li>RESPONDER_INTERACTIVE_RESERVED_PERCENTAGE: Share of the OCSP and time-stamp request limits reserved for
+ * signing (extending signatures can't use it). Allowed values: 0 - 99. Default value: 0</li>
+ * <li>SIGNATURE_EXTENSION_THREADS: Number of signatures extended simultaneously when extending a container.
+ * Default value: 1 (signatures are extended one after another)</li>
+ * <li>HASHCODE_CONTAINERS_ALLOWED: Open the data files listed in META-INF/hashcodes-*.xml of BDoc containers as
+ * hashcode data files, validated by their digests without their content. Allowed values: true, false<br>
+ * Default value: false</li>
  * </ul>
  */
 public class Configuration implements Serializable {
@@ -145,6 +195,11 @@ public class Configuration implements Serializable {
   public static final String DEFAULT_USE_LOCAL_TSL = "true";
   public static final String DEFAULT_MAX_DATAFILE_CACHED = "-1";
   public static final String DEFAULT_TSL_KEYSTORE_LOCATION = "keystore/keystore.jks";
+  public static final String DEFAULT_RESPONDER_MAX_WAIT_IN_MILLISECONDS = "10000";
+  public static final String DEFAULT_TSL_LOADING_THREADS = "8";
+  public static final String DEFAULT_TSL_DOWNLOAD_TIMEOUT_IN_MILLISECONDS = "60000";
+  public static final String DEFAULT_TSL_SNAPSHOT_DIRECTORY =
+      System.getProperty("user.home") + File.separator + ".digidoc4j" + File.separator + "tsl-snapshot";
 
   public static final long CACHE_ALL_DATA_FILES = -1;
   public static final long CACHE_NO_DATA_FILES = 0;
@@ -158,10 +213,19 @@ public class Configuration implements Serializable {
   private final Mode mode;
   private LinkedHashMap configurationFromFile;
   private String configurationInputSourceName;
-  private Hashtable<String, String> jDigiDocConfiguration = new Hashtable<>();
+  private volatile Hashtable<String, String> jDigiDocConfiguration = new Hashtable<>();
   private ArrayList<String> inputSourceParseErrors = new ArrayList<>();
-  private TSLCertificateSource tslCertificateSource;
-  Map<String, String> configuration = new HashMap<>();
+  private volatile TSLCertificateSource tslCertificateSource;
+  private transient volatile TslLoader tslLoader;
+  private transient boolean tslLoaderShared;
+  private transient boolean tslLoaderOwnedWeakly;
+  private transient volatile Future<Configuration> prewarming;
+  private transient boolean mapsShared;
+  private transient volatile String jDigiDocFingerprint;
+  private transient boolean jDigiDocConfigurationExposed;
+  private final boolean snapshot;
+  private volatile boolean certificateAuthoritiesPending;
+  volatile Map<String, String> configuration = new HashMap<>();
 
   /**
    * Application mode
@@ -191,6 +255,24 @@ public class Configuration implements Serializable {
     configuration.put("socketTimeout", String.valueOf(ONE_SECOND));
     configuration.put("tslKeyStorePassword", "digidoc4j-password");
     configuration.put("revocationAndTimestampDeltaInMinutes", String.valueOf(ONE_DAY_IN_MINUTES));
+    configuration.put("ocspRequestsPerSecond", "0");
+    configuration.put("ocspMaxConcurrentRequests", "0");
+    configuration.put("ocspMaxCertificatesPerRequest", "1");
+    configuration.put("tspRequestsPerSecond", "0");
+    configuration.put("tspMaxConcurrentRequests", "0");
+    configuration.put("responderMaxQueuedRequests", "0");
+    configuration.put("responderMaxWaitInMilliseconds", DEFAULT_RESPONDER_MAX_WAIT_IN_MILLISECONDS);
+    configuration.put("responderInteractiveReservedPercentage", "0");
+    configuration.put("signatureExtensionThreads", "1");
+    configuration.put("hashcodeContainersAllowed", "false");
+    configuration.put("tslRefreshIntervalInMinutes", "0");
+    configuration.put("tslSnapshotEnabled", "false");
+    configuration.put("tslSnapshotDirectory", DEFAULT_TSL_SNAPSHOT_DIRECTORY);
+    configuration.put("tslShared", "false");
+    configuration.put("tslLoadingThreads", DEFAULT_TSL_LOADING_THREADS);
+    configuration.put("tslDownloadTimeoutInMilliseconds", DEFAULT_TSL_DOWNLOAD_TIMEOUT_IN_MILLISECONDS);
+    configuration.put("trustedTerritories", "");
+    configuration.put("trustedServiceTypes", "");
 
     if (mode == Mode.TEST) {
       configuration.put("tspSource", "http://demo.sk.ee/tsa");
@@ -259,7 +341,7 @@ public class Configuration implements Serializable {
    *
    * @param fileName filename for the OCSP access certficate
    */
-  public void setOCSPAccessCertificateFileName(String fileName) {
+  public synchronized void setOCSPAccessCertificateFileName(String fileName) {
     logger.debug("Setting OCSPAccessCertificateFileName: " + fileName);
     setConfigurationParameter("OCSPAccessCertificateFile", fileName);
     jDigiDocConfiguration.put(OCSP_PKCS_12_CONTAINER, fileName);
@@ -271,7 +353,7 @@ public class Configuration implements Serializable {
    *
    * @param password password to set
    */
-  public void setOCSPAccessCertificatePassword(char[] password) {
+  public synchronized void setOCSPAccessCertificatePassword(char[] password) {
     logger.debug("Setting OCSPAccessCertificatePassword: ");
     String value = String.valueOf(password);
     setConfigurationParameter("OCSPAccessCertificatePassword", value);
@@ -279,7 +361,7 @@ public class Configuration implements Serializable {
     logger.debug("OCSPAccessCertificatePassword is set");
   }
 
-  public void setSignOCSPRequests(boolean shouldSignOcspRequests) {
+  public synchronized void setSignOCSPRequests(boolean shouldSignOcspRequests) {
     logger.debug("Should sign OCSP requests: " + shouldSignOcspRequests);
     String valueToSet = String.valueOf(shouldSignOcspRequests);
     setConfigurationParameter(SIGN_OCSP_REQUESTS, valueToSet);
@@ -291,7 +373,8 @@ public class Configuration implements Serializable {
    */
   public Configuration() {
     mode = ("TEST".equalsIgnoreCase(System.getProperty("digidoc4j.mode")) ? Mode.TEST : Mode.PROD);
-    loadConfiguration("digidoc4j.yaml");
+    snapshot = false;
+    loadConfigurationFile("digidoc4j.yaml", false);
 
     initDefaultValues();
 
@@ -306,23 +389,86 @@ public class Configuration implements Serializable {
   public Configuration(Mode mode) {
     logger.debug("Mode: " + mode);
     this.mode = mode;
-    loadConfiguration("digidoc4j.yaml");
+    this.snapshot = false;
+    loadConfigurationFile("digidoc4j.yaml", false);
 
     initDefaultValues();
 
     logger.info("Configuration loaded for " + mode + " mode");
   }
 
+  /**
+   * Creates a configuration sharing the values of the source configuration. The source copies the shared
+   * values before changing them (see {@link Configuration#ensureWritable()}), which is done holding its lock.
+   * The jDigiDoc configuration returned by {@link Configuration#getJDigiDocConfiguration()} can be changed
+   * without the source knowing it, so it is copied instead.
+   */
+  private Configuration(Configuration source, boolean snapshot) {
+    this.snapshot = snapshot;
+    synchronized (source) {
+      source.loadPendingCertificateAuthorities();
+      mode = source.mode;
+      configurationFromFile = source.configurationFromFile;
+      configurationInputSourceName = source.configurationInputSourceName;
+      configuration = source.configuration;
+      jDigiDocConfiguration = source.jDigiDocConfigurationExposed
+          ? new Hashtable<>(source.jDigiDocConfiguration) : source.jDigiDocConfiguration;
+      inputSourceParseErrors = source.inputSourceParseErrors;
+      source.shareTslWith(this);
+      mapsShared = true;
+      source.mapsShared = true;
+    }
+  }
+
+  /**
+   * Creates an immutable snapshot of the configuration.
+   * <p/>
+   * The snapshot shares the configuration values and the loaded TSL with this configuration instead of copying
+   * them, the values are copied only when this configuration is changed later. The snapshot can't be changed, so
+   * it can be used by several threads without locking. Use {@link Configuration#toBuilder()} for creating
+   * a snapshot with some values changed.
+   * <p/>
+   * A TSL shared with other configurations (see {@link Configuration#setTslShared(boolean)}) stays in use by the
+   * snapshot even if this configuration releases it, until the snapshot is garbage collected. Otherwise the snapshot
+   * uses the TSL loaded by this configuration at the time of the snapshot. If the TSL has not been loaded yet,
+   * the snapshot loads it on first use with its own settings, so load the TSL before creating snapshots
+   * per request.
+   *
+   * @return configuration snapshot, this configuration if it is a snapshot already
+   */
+  public Configuration snapshot() {
+    return snapshot ? this : new Configuration(this, true);
+  }
+
+  /**
+   * Creates a builder for an immutable configuration snapshot based on this configuration,
+   * e.g. for using a different OCSP access certificate per request.
+   *
+   * @return configuration builder
+   * @see Configuration#snapshot()
+   */
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  /**
+   * @return true if the configuration is an immutable snapshot
+   */
+  public boolean isSnapshot() {
+    return snapshot;
+  }
+
   /**
    * Add configuration settings from a stream. After loading closes stream.
    *
    * @param stream Input stream
    * @return configuration hashtable
    */
-  public Hashtable<String, String> loadConfiguration(InputStream stream) {
+  public synchronized Hashtable<String, String> loadConfiguration(InputStream stream) {
+    ensureWritable();
     configurationInputSourceName = "stream";
 
-    return loadConfigurationSettings(stream);
+    return loadConfigurationSettings(stream, true);
   }
 
   /**
@@ -332,7 +478,13 @@ public class Configuration implements Serializable {
    * @return configuration hashtable
    */
   public Hashtable<String, String> loadConfiguration(String file) {
+    return loadConfigurationFile(file, true);
+  }
+
+  private synchronized Hashtable<String, String> loadConfigurationFile(String file,
+                                                                      boolean loadCertificateAuthorities) {
     logger.info("Loading configuration from file " + file);
+    ensureWritable();
     configurationInputSourceName = file;
     InputStream resourceAsStream = null;
 
@@ -345,10 +497,25 @@ public class Configuration implements Serializable {
     if (resourceAsStream == null) {
       resourceAsStream = getResourceAsStream(file);
     }
-    return loadConfigurationSettings(resourceAsStream);
+    return loadConfigurationSettings(resourceAsStream, loadCertificateAuthorities);
   }
 
-  private Hashtable<String, String> loadConfigurationSettings(InputStream stream) {
+  /**
+   * Loads the configuration settings again from the file they were last loaded from, e.g. after the
+   * file has been changed. The configuration file is read only when the configuration is created or
+   * loaded explicitly, opening containers doesn't reload it.
+   *
+   * @return configuration hashtable
+   * @throws ConfigurationException when the settings were last loaded from a stream
+   */
+  public Hashtable<String, String> reloadConfiguration() {
+    if (configurationInputSourceName == null || "stream".equals(configurationInputSourceName)) {
+      throw new ConfigurationException("Configuration was not loaded from a file and can't be reloaded");
+    }
+    return loadConfiguration(configurationInputSourceName);
+  }
+
+  private Hashtable<String, String> loadConfigurationSettings(InputStream stream, boolean loadCertificateAuthorities) {
     configurationFromFile = new LinkedHashMap();
     Yaml yaml = new Yaml();
 
@@ -363,7 +530,7 @@ public class Configuration implements Serializable {
 
     IOUtils.closeQuietly(stream);
 
-    return mapToJDigiDocConfiguration();
+    return mapToJDigiDocConfiguration(loadCertificateAuthorities);
   }
 
   private InputStream getResourceAsStream(String certFile) {
@@ -383,7 +550,51 @@ public class Configuration implements Serializable {
    * @return configuration values
    */
   public Hashtable<String, String> getJDigiDocConfiguration() {
-    return jDigiDocConfiguration;
+    loadPendingCertificateAuthorities();
+    if (snapshot) {
+      return new Hashtable<>(jDigiDocConfiguration);
+    }
+    synchronized (this) {
+      ensureWritable();
+      jDigiDocConfigurationExposed = true;
+      return jDigiDocConfiguration;
+    }
+  }
+
+  /**
+   * Identifies the jDigiDoc configuration values, e.g. for finding out if the jDigiDoc configuration manager
+   * has to be initialized again for this configuration. The fingerprint is calculated again only after
+   * the configuration has been changed.
+   *
+   * @return SHA-256 digest of the jDigiDoc configuration values in hex
+   */
+  public String getJDigiDocConfigurationFingerprint() {
+    loadPendingCertificateAuthorities();
+    String fingerprint = jDigiDocFingerprint;
+    if (fingerprint != null) {
+      return fingerprint;
+    }
+    synchronized (this) {
+      fingerprint = calculateJDigiDocFingerprint();
+      // The table returned by getJDigiDocConfiguration() can be changed without the configuration knowing it
+      if (!jDigiDocConfigurationExposed) {
+        jDigiDocFingerprint = fingerprint;
+      }
+      return fingerprint;
+    }
+  }
+
+  private String calculateJDigiDocFingerprint() {
+    ByteArrayOutputStream parameters = new ByteArrayOutputStream();
+    for (Map.Entry<String, String> parameter : new TreeMap<>(jDigiDocConfiguration).entrySet()) {
+      byte[] key = parameter.getKey().getBytes(StandardCharsets.UTF_8);
+      parameters.write(key, 0, key.length);
+      parameters.write(0);
+      byte[] value = String.valueOf(parameter.getValue()).getBytes(StandardCharsets.UTF_8);
+      parameters.write(value, 0, value.length);
+      parameters.write(0);
+    }
+    return Hex.encodeHexString(DSSUtils.digest(DigestAlgorithm.SHA256, parameters.toByteArray()));
   }
 
   /**
@@ -392,18 +603,46 @@ public class Configuration implements Serializable {
    * @return Hashtable containing jDigiDoc configuration parameters
    */
 
-  private Hashtable<String, String> mapToJDigiDocConfiguration() {
+  private Hashtable<String, String> mapToJDigiDocConfiguration(boolean loadCertificateAuthorities) {
     logger.debug("loading JDigiDoc configuration");
 
     inputSourceParseErrors = new ArrayList<>();
 
     loadInitialConfigurationValues();
-    loadCertificateAuthoritiesAndCertificates();
+    certificateAuthoritiesPending = !loadCertificateAuthorities;
+    if (loadCertificateAuthorities) {
+      loadCertificateAuthoritiesAndCertificates();
+    }
     reportFileParseErrors();
 
     return jDigiDocConfiguration;
   }
 
+  /**
+   * The DIGIDOC_CAS entries of the configuration file loaded by the constructor are needed only by jDigiDoc,
+   * so they are mapped to jDigiDoc configuration by the first DDoc operation.
+   */
+  private void loadPendingCertificateAuthorities() {
+    if (!certificateAuthoritiesPending) {
+      return;
+    }
+    synchronized (this) {
+      if (certificateAuthoritiesPending) {
+        logger.debug("Loading DIGIDOC_CAS entries to jDigiDoc configuration");
+        // Cleared first, so the entries are not mapped again after an error in the configuration file
+        certificateAuthoritiesPending = false;
+        ensureWritable();
+        inputSourceParseErrors = new ArrayList<>();
+        loadCertificateAuthoritiesAndCertificates();
+        reportFileParseErrors();
+      }
+    }
+  }
+
+  boolean areCertificateAuthoritiesLoaded() {
+    return !certificateAuthoritiesPending;
+  }
+
   private void loadCertificateAuthoritiesAndCertificates() {
     logger.debug("");
     @SuppressWarnings("unchecked")
@@ -477,7 +716,25 @@ public class Configuration implements Serializable {
     setConfigurationValue(SIGN_OCSP_REQUESTS, SIGN_OCSP_REQUESTS);
     setConfigurationValue("TSL_KEYSTORE_LOCATION", "tslKeyStoreLocation");
     setConfigurationValue("TSL_KEYSTORE_PASSWORD", "tslKeyStorePassword");
+    setConfigurationValue("TSL_REFRESH_INTERVAL_IN_MINUTES", "tslRefreshIntervalInMinutes");
+    setConfigurationValue("TSL_SNAPSHOT_ENABLED", "tslSnapshotEnabled");
+    setConfigurationValue("TSL_SNAPSHOT_DIRECTORY", "tslSnapshotDirectory");
+    setConfigurationValue("TSL_SHARED", "tslShared");
+    setConfigurationValue("HASHCODE_CONTAINERS_ALLOWED", "hashcodeContainersAllowed");
+    setConfigurationValue("TSL_LOADING_THREADS", "tslLoadingThreads");
+    setConfigurationValue("TSL_DOWNLOAD_TIMEOUT_IN_MILLISECONDS", "tslDownloadTimeoutInMilliseconds");
+    setConfigurationListValue("TRUSTED_TERRITORIES", "trustedTerritories");
+    setConfigurationListValue("TRUSTED_SERVICE_TYPES", "trustedServiceTypes");
     setConfigurationValue("REVOCATION_AND_TIMESTAMP_DELTA_IN_MINUTES", "revocationAndTimestampDeltaInMinutes");
+    setConfigurationValue("OCSP_REQUESTS_PER_SECOND", "ocspRequestsPerSecond");
+    setConfigurationValue("OCSP_MAX_CONCURRENT_REQUESTS", "ocspMaxConcurrentRequests");
+    setConfigurationValue("OCSP_MAX_CERTIFICATES_PER_REQUEST", "ocspMaxCertificatesPerRequest");
+    setConfigurationValue("TSP_REQUESTS_PER_SECOND", "tspRequestsPerSecond");
+    setConfigurationValue("TSP_MAX_CONCURRENT_REQUESTS", "tspMaxConcurrentRequests");
+    setConfigurationValue("RESPONDER_MAX_QUEUED_REQUESTS", "responderMaxQueuedRequests");
+    setConfigurationValue("RESPONDER_MAX_WAIT_IN_MILLISECONDS", "responderMaxWaitInMilliseconds");
+    setConfigurationValue("RESPONDER_INTERACTIVE_RESERVED_PERCENTAGE", "responderInteractiveReservedPercentage");
+    setConfigurationValue("SIGNATURE_EXTENSION_THREADS", "signatureExtensionThreads");
 
     setJDigiDocConfigurationValue(SIGN_OCSP_REQUESTS, Boolean.toString(hasToBeOCSPRequestSigned()));
     setJDigiDocConfigurationValue(OCSP_PKCS_12_CONTAINER, getOCSPAccessCertificateFileName());
@@ -493,6 +750,26 @@ public class Configuration implements Serializable {
     }
   }
 
+  private void setConfigurationListValue(String fileKey, String configurationKey) {
+    if (configurationFromFile == null) return;
+    Object fileValue = configurationFromFile.get(fileKey);
+    if (fileValue instanceof Collection) {
+      configuration.put(configurationKey, StringUtils.join((Collection) fileValue, ","));
+    } else if (fileValue != null) {
+      configuration.put(configurationKey, fileValue.toString());
+    }
+  }
+
+  private List<String> getConfigurationListParameter(String key) {
+    List<String> values = new ArrayList<>();
+    for (String value : StringUtils.split(getConfigurationParameter(key), ",")) {
+      if (StringUtils.isNotBlank(value)) {
+        values.add(value.trim());
+      }
+    }
+    return values;
+  }
+
   private void setJDigiDocConfigurationValue(String key, String defaultValue) {
     String value = defaultIfNull(key, defaultValue);
     if (value != null) {
@@ -510,8 +787,9 @@ public class Configuration implements Serializable {
    * @deprecated obnoxious naming. Use {@link Configuration#setMaxFileSizeCachedInMemoryInMB(long)} instead.
    */
   @Deprecated
-  public void enableBigFilesSupport(long maxFileSizeCachedInMB) {
+  public synchronized void enableBigFilesSupport(long maxFileSizeCachedInMB) {
     logger.debug("Set maximum datafile cached to: " + maxFileSizeCachedInMB);
+    ensureWritable();
     String value = Long.toString(maxFileSizeCachedInMB);
     if (isValidIntegerParameter("DIGIDOC_MAX_DATAFILE_CACHED", value)) {
       jDigiDocConfiguration.put("DIGIDOC_MAX_DATAFILE_CACHED", value);
@@ -749,23 +1027,80 @@ public class Configuration implements Serializable {
    *                          location specified .
    */
 
-  public void setTSL(TSLCertificateSource certificateSource) {
+  public synchronized void setTSL(TSLCertificateSource certificateSource) {
+    ensureWritable();
+    releaseTslLoader();
     this.tslCertificateSource = certificateSource;
   }
 
   /**
    * Loads TSL certificates
    * If configuration mode is TEST then TSL signature is not checked.
+   * <p/>
+   * When the TSL is refreshed in the background (see {@link Configuration#setTslRefreshIntervalInMinutes(int)}),
+   * the latest successfully loaded TSL is returned. Certificates added to a returned TSL with
+   * {@link TSLCertificateSource#addTSLCertificate(java.security.cert.X509Certificate)} are added to
+   * the refreshed TSLs as well.
    *
    * @return TSL source
    */
   public TSLCertificateSource getTSL() {
-    if (tslCertificateSource != null) {
+    TslLoader loader = tslLoader;
+    if (loader != null) {
+      return loader.getTslCertificateSource();
+    }
+    TSLCertificateSource certificateSource = tslCertificateSource;
+    if (certificateSource != null) {
       logger.debug("Using TSL cached copy");
-      return tslCertificateSource;
+      return certificateSource;
     }
     loadTsl();
-    return tslCertificateSource;
+    loader = tslLoader;
+    return loader != null ? loader.getTslCertificateSource() : tslCertificateSource;
+  }
+
+  /**
+   * Runs the initializations otherwise done by the first signing or validation request in background threads:
+   * the TSL is loaded in parallel with initializing the crypto provider, the XML factories and the validation
+   * policy. Calling it again returns the same future, unless the previous prewarming failed.
+   *
+   * @return future completed when the configuration is ready for signing and validation
+   * @see Configuration#isReady()
+   */
+  public synchronized Future<Configuration> prewarm() {
+    if (prewarming == null || (prewarming.isDone() && !isReady())) {
+      logger.info("Prewarming configuration");
+      prewarming = new ConfigurationPrewarmer(this).start();
+    }
+    return prewarming;
+  }
+
+  /**
+   * Is the configuration prewarmed, e.g. for a readiness check of a service.
+   *
+   * @return true if {@link Configuration#prewarm()} has finished successfully
+   */
+  public boolean isReady() {
+    Future<Configuration> future = prewarming;
+    if (future == null || !future.isDone()) {
+      return false;
+    }
+    try {
+      future.get();
+      return true;
+    } catch (ExecutionException | InterruptedException | CancellationException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns the outcome of the latest TSL loading attempts, including the background refreshes.
+   *
+   * @return refresh status or null when the TSL has not been loaded by this configuration
+   */
+  public TslRefreshStatus getTslRefreshStatus() {
+    TslLoader loader = tslLoader;
+    return loader == null ? null : loader.getRefreshStatus();
   }
 
   /**
@@ -773,22 +1108,94 @@ public class Configuration implements Serializable {
    */
   private synchronized void loadTsl() {
     //Using double-checked locking to avoid other threads to start loading TSL
-    if(tslCertificateSource == null) {
+    if(tslCertificateSource == null && tslLoader == null) {
       logger.debug("Loading TSL in a synchronized block");
       String tslLocation = getTslLocation();
       File tslKeystoreFile = getTslKeystoreFile();
       String tslKeyStorePassword = getTslKeyStorePassword();
       boolean checkSignature = mode != Mode.TEST;
 
-      TslLoader tslLoader = new TslLoader(tslLocation, tslKeystoreFile, tslKeyStorePassword);
-      tslLoader.setCheckSignature(checkSignature);
-      tslLoader.setConnectionTimeout(getConnectionTimeout());
-      tslLoader.setSocketTimeout(getSocketTimeout());
-      tslCertificateSource = tslLoader.createTSL();
+      TslLoader loader = new TslLoader(tslLocation, tslKeystoreFile, tslKeyStorePassword);
+      loader.setCheckSignature(checkSignature);
+      loader.setConnectionTimeout(getConnectionTimeout());
+      loader.setSocketTimeout(getSocketTimeout());
+      loader.setLoadingThreads(getTslLoadingThreads());
+      loader.setDownloadTimeoutInMilliseconds(getTslDownloadTimeoutInMilliseconds());
+      loader.setTrustedTerritories(getTrustedTerritories());
+      loader.setTrustedServiceTypes(getTrustedServiceTypes());
+      loader.setSnapshotDirectory(isTslSnapshotEnabled() ? new File(getTslSnapshotDirectory()) : null);
+      if (isTslShared()) {
+        loader = snapshot ? TslRegistry.acquire(loader, this) : TslRegistry.acquire(loader);
+        try {
+          loader.getTslCertificateSource();
+        } catch (RuntimeException e) {
+          if (snapshot) {
+            TslRegistry.release(loader, this);
+          } else {
+            TslRegistry.release(loader);
+          }
+          throw e;
+        }
+        tslLoaderShared = true;
+        tslLoaderOwnedWeakly = snapshot;
+      } else {
+        tslCertificateSource = loader.getTslCertificateSource();
+      }
+      tslLoader = loader;
+      int refreshIntervalInMinutes = getTslRefreshIntervalInMinutes();
+      // A snapshot can't be released, so only the registry can stop the refresh of the TSL loaded by it
+      boolean refreshStoppable = tslLoaderShared || !snapshot;
+      if (refreshIntervalInMinutes > 0 && refreshStoppable && !loader.isRefreshedInBackground()) {
+        loader.startBackgroundRefresh(refreshIntervalInMinutes);
+      }
       logger.debug("Finished loading TSL in a synchronized block");
     }
   }
 
+  /**
+   * Stops using the TSL loaded by this configuration. A TSL shared with other configurations
+   * (see {@link Configuration#setTslShared(boolean)}) stays in use until all of them have released it.
+   * The TSL is loaded again by the next call to {@link Configuration#getTSL()}.
+   *
+   * @throws NotSupportedException when the configuration is a snapshot
+   */
+  public synchronized void releaseTSL() {
+    ensureWritable();
+    releaseTslLoader();
+    tslCertificateSource = null;
+  }
+
+  private synchronized void releaseTslLoader() {
+    if (tslLoader != null) {
+      if (tslLoaderOwnedWeakly) {
+        TslRegistry.release(tslLoader, this);
+      } else if (tslLoaderShared) {
+        TslRegistry.release(tslLoader);
+      } else {
+        tslLoader.stopBackgroundRefresh();
+      }
+      tslLoader = null;
+      tslLoaderShared = false;
+      tslLoaderOwnedWeakly = false;
+    }
+  }
+
+  /**
+   * Gives the configuration created from this configuration its own reference to the TSL in use,
+   * see {@link Configuration#snapshot()}. Called holding the lock of this configuration.
+   */
+  private void shareTslWith(Configuration target) {
+    if (tslLoader == null) {
+      target.tslCertificateSource = tslCertificateSource;
+    } else if (tslLoaderShared && TslRegistry.retain(tslLoader, target)) {
+      target.tslLoader = tslLoader;
+      target.tslLoaderShared = true;
+      target.tslLoaderOwnedWeakly = true;
+    } else {
+      target.tslCertificateSource = tslLoader.getTslCertificateSource();
+    }
+  }
+
   private File getTslKeystoreFile() throws TslKeyStoreNotFoundException{
     try {
       String keystoreLocation = getTslKeyStoreLocation();
@@ -824,9 +1231,218 @@ public class Configuration implements Serializable {
   public void setTslLocation(String tslLocation) {
     logger.debug("Set TSL location: " + tslLocation);
     setConfigurationParameter("tslLocation", tslLocation);
+    releaseTslLoader();
     tslCertificateSource = null;
   }
 
+  /**
+   * Get the time between background reloads of the TSL
+   *
+   * @return refresh interval in minutes, 0 when the TSL is not reloaded in the background
+   */
+  public int getTslRefreshIntervalInMinutes() {
+    return Integer.parseInt(getConfigurationParameter("tslRefreshIntervalInMinutes"));
+  }
+
+  /**
+   * Set the time between background reloads of the TSL.
+   * <p/>
+   * The TSL is downloaded and verified again in a background thread and replaces the TSL in use only
+   * when loading succeeds, so validations don't wait for the TSL to be reloaded. Validations already
+   * in progress keep using the previous TSL.
+   *
+   * @param refreshIntervalInMinutes refresh interval in minutes, 0 stops the background refresh
+   */
+  public synchronized void setTslRefreshIntervalInMinutes(int refreshIntervalInMinutes) {
+    logger.debug("Set TSL refresh interval: " + refreshIntervalInMinutes + " minutes");
+    setConfigurationParameter("tslRefreshIntervalInMinutes", String.valueOf(refreshIntervalInMinutes));
+    if (tslLoader == null) {
+      return;
+    }
+    if (refreshIntervalInMinutes > 0) {
+      tslLoader.startBackgroundRefresh(refreshIntervalInMinutes);
+    } else {
+      tslLoader.stopBackgroundRefresh();
+    }
+  }
+
+  /**
+   * Is the binary TSL snapshot used for loading the TSL
+   *
+   * @return true if the TSL snapshot is used
+   */
+  public boolean isTslSnapshotEnabled() {
+    return StringUtils.equalsIgnoreCase("true", getConfigurationParameter("tslSnapshotEnabled"));
+  }
+
+  /**
+   * Use a binary snapshot of the TSL for faster start-up.
+   * <p/>
+   * The snapshot is written to the snapshot directory (see {@link Configuration#setTslSnapshotDirectory(String)})
+   * after every successful TSL loading. It is used instead of
+   * parsing and verifying the TSL when the TSL files in the cache have not changed and none of the lists
+   * has passed its next update date. The TSL is then loaded and verified again in the background.
+   *
+   * @param tslSnapshotEnabled use the TSL snapshot
+   */
+  public void setTslSnapshotEnabled(boolean tslSnapshotEnabled) {
+    logger.debug("Set TSL snapshot enabled: " + tslSnapshotEnabled);
+    setConfigurationParameter("tslSnapshotEnabled", String.valueOf(tslSnapshotEnabled));
+  }
+
+  /**
+   * Get the directory of the TSL snapshot
+   *
+   * @return snapshot directory
+   */
+  public String getTslSnapshotDirectory() {
+    return getConfigurationParameter("tslSnapshotDirectory");
+  }
+
+  /**
+   * Set the directory of the TSL snapshot. The directory is created readable only by the current user
+   * if it doesn't exist. The snapshot is not used when other users can write to the directory.
+   *
+   * @param tslSnapshotDirectory snapshot directory
+   */
+  public void setTslSnapshotDirectory(String tslSnapshotDirectory) {
+    logger.debug("Set TSL snapshot directory: " + tslSnapshotDirectory);
+    setConfigurationParameter("tslSnapshotDirectory", tslSnapshotDirectory);
+  }
+
+  /**
+   * Is the loaded TSL shared with other configurations
+   *
+   * @return true if the TSL is shared
+   */
+  public boolean isTslShared() {
+    return StringUtils.equalsIgnoreCase("true", getConfigurationParameter("tslShared"));
+  }
+
+  /**
+   * Share the loaded TSL with the other configurations in the process that have the same TSL location,
+   * TSL keystore, signature check (configuration mode) and TSL filters.
+   * <p/>
+   * The shared TSL is loaded, held in memory and refreshed in the background only once. Certificates added
+   * to the shared TSL are visible to all the configurations sharing it. The shared TSL is refreshed with
+   * the interval of the configuration that loaded it first, until the interval is changed with
+   * {@link Configuration#setTslRefreshIntervalInMinutes(int)} on a configuration using the shared TSL.
+   * Copies of the configuration keep sharing the TSL.
+   *
+   * @param tslShared share the TSL
+   * @see Configuration#releaseTSL()
+   */
+  public void setTslShared(boolean tslShared) {
+    logger.debug("Set TSL shared: " + tslShared);
+    setConfigurationParameter("tslShared", String.valueOf(tslShared));
+  }
+
+  /**
+   * Are the data files listed in the hashcodes files of opened BDoc containers used as hashcode data files
+   *
+   * @return true if hashcode containers can be opened
+   */
+  public boolean isHashcodeContainersAllowed() {
+    return StringUtils.equalsIgnoreCase("true", getConfigurationParameter("hashcodeContainersAllowed"));
+  }
+
+  /**
+   * Open the data files listed in META-INF/hashcodes-sha256.xml and META-INF/hashcodes-sha512.xml of BDoc
+   * containers as hashcode data files (see {@link DigestDataFile}).
+   * <p/>
+   * The content of hashcode data files is not in the container, their signature references are validated by the
+   * digests in the hashcodes files only. The hashcodes files are not signed, so allow hashcode containers only when
+   * the content is checked against the digests elsewhere. Otherwise the hashcodes files are kept as other files
+   * in META-INF and a data file missing from the container fails validation.
+   *
+   * @param hashcodeContainersAllowed open hashcode containers
+   */
+  public void setHashcodeContainersAllowed(boolean hashcodeContainersAllowed) {
+    logger.debug("Set hashcode containers allowed: " + hashcodeContainersAllowed);
+    setConfigurationParameter("hashcodeContainersAllowed", String.valueOf(hashcodeContainersAllowed));
+  }
+
+  /**
+   * Get the number of threads downloading and verifying the trusted lists of different countries
+   *
+   * @return number of threads
+   */
+  public int getTslLoadingThreads() {
+    return Integer.parseInt(getConfigurationParameter("tslLoadingThreads"));
+  }
+
+  /**
+   * Set the number of threads downloading and verifying the trusted lists of different countries.
+   * Takes effect when the TSL is loaded next time.
+   *
+   * @param tslLoadingThreads number of threads
+   */
+  public void setTslLoadingThreads(int tslLoadingThreads) {
+    logger.debug("Set TSL loading threads: " + tslLoadingThreads);
+    setConfigurationParameter("tslLoadingThreads", String.valueOf(tslLoadingThreads));
+  }
+
+  /**
+   * Get the maximum time for downloading the trusted list of one country
+   *
+   * @return timeout in milliseconds, 0 if not limited
+   */
+  public long getTslDownloadTimeoutInMilliseconds() {
+    return Long.parseLong(getConfigurationParameter("tslDownloadTimeoutInMilliseconds"));
+  }
+
+  /**
+   * Set the maximum time for downloading the trusted list of one country. When downloading takes longer,
+   * the last cached copy of the list is used. Takes effect when the TSL is loaded next time.
+   *
+   * @param downloadTimeoutInMilliseconds timeout in milliseconds, 0 if not limited
+   */
+  public void setTslDownloadTimeoutInMilliseconds(long downloadTimeoutInMilliseconds) {
+    logger.debug("Set TSL download timeout: " + downloadTimeoutInMilliseconds + " ms");
+    setConfigurationParameter("tslDownloadTimeoutInMilliseconds", String.valueOf(downloadTimeoutInMilliseconds));
+  }
+
+  /**
+   * Get the country codes of the trusted lists loaded from the EU list of trusted lists
+   *
+   * @return country codes, empty list if the trusted lists of all countries are loaded
+   */
+  public List<String> getTrustedTerritories() {
+    return getConfigurationListParameter("trustedTerritories");
+  }
+
+  /**
+   * Load only the trusted lists of the given countries from the EU list of trusted lists.
+   * The trusted lists of other countries are not downloaded. Takes effect when the TSL is loaded next time.
+   *
+   * @param territories country codes (e.g. EE), none to load the trusted lists of all countries
+   */
+  public void setTrustedTerritories(String... territories) {
+    logger.debug("Set trusted territories: " + asList(territories));
+    setConfigurationParameter("trustedTerritories", StringUtils.join(territories, ","));
+  }
+
+  /**
+   * Get the service types of the trust services whose certificates are trusted
+   *
+   * @return service types, empty list if the certificates of all services are trusted
+   */
+  public List<String> getTrustedServiceTypes() {
+    return getConfigurationListParameter("trustedServiceTypes");
+  }
+
+  /**
+   * Trust only the certificates of the trust services with given service types. Certificates of other services
+   * are left out of the TSL when it is loaded. Takes effect when the TSL is loaded next time.
+   *
+   * @param serviceTypes service type identifiers (e.g. http://uri.etsi.org/TrstSvc/Svctype/CA/QC),
+   *                     none to trust the certificates of all services
+   */
+  public void setTrustedServiceTypes(String... serviceTypes) {
+    logger.debug("Set trusted service types: " + asList(serviceTypes));
+    setConfigurationParameter("trustedServiceTypes", StringUtils.join(serviceTypes, ","));
+  }
+
   /**
    * Get the TSP Source
    *
@@ -985,11 +1601,206 @@ public class Configuration implements Serializable {
     setConfigurationParameter("revocationAndTimestampDeltaInMinutes", String.valueOf(timeInMinutes));
   }
 
-  private void setConfigurationParameter(String key, String value) {
+  /**
+   * Get the maximum number of OCSP requests per second
+   *
+   * @return requests per second, 0 when not limited
+   */
+  public int getOcspRequestsPerSecond() {
+    return Integer.parseInt(getConfigurationParameter("ocspRequestsPerSecond"));
+  }
+
+  /**
+   * Set the maximum number of OCSP requests per second sent to the OCSP responder
+   *
+   * @param requestsPerSecond requests per second, 0 to disable the limit
+   */
+  public void setOcspRequestsPerSecond(int requestsPerSecond) {
+    logger.debug("Set OCSP requests per second: " + requestsPerSecond);
+    setConfigurationParameter("ocspRequestsPerSecond", String.valueOf(requestsPerSecond));
+  }
+
+  /**
+   * Get the maximum number of simultaneous OCSP requests
+   *
+   * @return number of requests, 0 when not limited
+   */
+  public int getOcspMaxConcurrentRequests() {
+    return Integer.parseInt(getConfigurationParameter("ocspMaxConcurrentRequests"));
+  }
+
+  /**
+   * Set the maximum number of simultaneous OCSP requests sent to the OCSP responder
+   *
+   * @param maxConcurrentRequests number of requests, 0 to disable the limit
+   */
+  public void setOcspMaxConcurrentRequests(int maxConcurrentRequests) {
+    logger.debug("Set OCSP max concurrent requests: " + maxConcurrentRequests);
+    setConfigurationParameter("ocspMaxConcurrentRequests", String.valueOf(maxConcurrentRequests));
+  }
+
+  /**
+   * Get the maximum number of certificates asked in one OCSP request
+   *
+   * @return number of certificates
+   */
+  public int getOcspMaxCertificatesPerRequest() {
+    return Integer.parseInt(getConfigurationParameter("ocspMaxCertificatesPerRequest"));
+  }
+
+  /**
+   * Set the maximum number of certificates asked in one OCSP request when extending several signatures.
+   * Certificates missing from the response are requested one by one.
+   *
+   * @param maxCertificatesPerRequest number of certificates, 1 disables batching
+   */
+  public void setOcspMaxCertificatesPerRequest(int maxCertificatesPerRequest) {
+    logger.debug("Set OCSP max certificates per request: " + maxCertificatesPerRequest);
+    setConfigurationParameter("ocspMaxCertificatesPerRequest", String.valueOf(maxCertificatesPerRequest));
+  }
+
+  /**
+   * Get the maximum number of time-stamp requests per second
+   *
+   * @return requests per second, 0 when not limited
+   */
+  public int getTspRequestsPerSecond() {
+    return Integer.parseInt(getConfigurationParameter("tspRequestsPerSecond"));
+  }
+
+  /**
+   * Set the maximum number of time-stamp requests per second sent to the TSP source
+   *
+   * @param requestsPerSecond requests per second, 0 to disable the limit
+   */
+  public void setTspRequestsPerSecond(int requestsPerSecond) {
+    logger.debug("Set TSP requests per second: " + requestsPerSecond);
+    setConfigurationParameter("tspRequestsPerSecond", String.valueOf(requestsPerSecond));
+  }
+
+  /**
+   * Get the maximum number of simultaneous time-stamp requests
+   *
+   * @return number of requests, 0 when not limited
+   */
+  public int getTspMaxConcurrentRequests() {
+    return Integer.parseInt(getConfigurationParameter("tspMaxConcurrentRequests"));
+  }
+
+  /**
+   * Set the maximum number of simultaneous time-stamp requests sent to the TSP source
+   *
+   * @param maxConcurrentRequests number of requests, 0 to disable the limit
+   */
+  public void setTspMaxConcurrentRequests(int maxConcurrentRequests) {
+    logger.debug("Set TSP max concurrent requests: " + maxConcurrentRequests);
+    setConfigurationParameter("tspMaxConcurrentRequests", String.valueOf(maxConcurrentRequests));
+  }
+
+  /**
+   * Get the maximum number of OCSP or time-stamp requests waiting for their turn
+   *
+   * @return number of requests, 0 when not limited
+   */
+  public int getResponderMaxQueuedRequests() {
+    return Integer.parseInt(getConfigurationParameter("responderMaxQueuedRequests"));
+  }
+
+  /**
+   * Set the maximum number of OCSP or time-stamp requests waiting for their turn.
+   * Requests exceeding the limit fail immediately.
+   *
+   * @param maxQueuedRequests number of requests, 0 to disable the limit
+   */
+  public void setResponderMaxQueuedRequests(int maxQueuedRequests) {
+    logger.debug("Set responder max queued requests: " + maxQueuedRequests);
+    setConfigurationParameter("responderMaxQueuedRequests", String.valueOf(maxQueuedRequests));
+  }
+
+  /**
+   * Get the maximum time an OCSP or time-stamp request waits for its turn
+   *
+   * @return waiting time in milliseconds
+   */
+  public long getResponderMaxWaitInMilliseconds() {
+    return Long.parseLong(getConfigurationParameter("responderMaxWaitInMilliseconds"));
+  }
+
+  /**
+   * Set the maximum time an OCSP or time-stamp request waits for its turn
+   *
+   * @param maxWaitInMilliseconds waiting time in milliseconds
+   */
+  public void setResponderMaxWaitInMilliseconds(long maxWaitInMilliseconds) {
+    logger.debug("Set responder max wait to " + maxWaitInMilliseconds + " ms");
+    setConfigurationParameter("responderMaxWaitInMilliseconds", String.valueOf(maxWaitInMilliseconds));
+  }
+
+  /**
+   * Get the share of the OCSP and time-stamp request limits reserved for signing
+   *
+   * @return share in percents
+   */
+  public int getResponderInteractiveReservedPercentage() {
+    return Integer.parseInt(getConfigurationParameter("responderInteractiveReservedPercentage"));
+  }
+
+  /**
+   * Set the share of the OCSP and time-stamp request limits reserved for signing.
+   * Extending signatures can use only the rest of the request rate and simultaneous requests.
+   *
+   * @param reservedPercentage share in percents (0 - 99)
+   */
+  public void setResponderInteractiveReservedPercentage(int reservedPercentage) {
+    logger.debug("Set responder capacity reserved for interactive requests: " + reservedPercentage + "%");
+    setConfigurationParameter("responderInteractiveReservedPercentage", String.valueOf(reservedPercentage));
+  }
+
+  /**
+   * Get the number of signatures extended simultaneously when extending a container
+   *
+   * @return number of threads, 1 when signatures are extended one after another
+   */
+  public int getSignatureExtensionThreads() {
+    return Integer.parseInt(getConfigurationParameter("signatureExtensionThreads"));
+  }
+
+  /**
+   * Set the number of signatures extended simultaneously when extending a container.
+   * Time-stamp and OCSP requests of different signatures are then made in parallel,
+   * subject to the responder request limits.
+   *
+   * @param threads number of threads, 1 extends signatures one after another
+   */
+  public void setSignatureExtensionThreads(int threads) {
+    logger.debug("Set signature extension threads: " + threads);
+    setConfigurationParameter("signatureExtensionThreads", String.valueOf(threads));
+  }
+
+  private synchronized void setConfigurationParameter(String key, String value) {
     logger.debug("Key: " + key + ", value: " + value);
+    ensureWritable();
     configuration.put(key, value);
   }
 
+  /**
+   * Copies the configuration values shared with a snapshot before they are changed.
+   * Must be called holding the lock of the configuration together with the change.
+   */
+  private void ensureWritable() {
+    if (snapshot) {
+      throw new NotSupportedException("Changing a configuration snapshot, use Configuration.toBuilder() instead");
+    }
+    jDigiDocFingerprint = null;
+    if (mapsShared) {
+      configuration = new HashMap<>(configuration);
+      jDigiDocConfiguration = new Hashtable<>(jDigiDocConfiguration);
+      inputSourceParseErrors = new ArrayList<>(inputSourceParseErrors);
+      mapsShared = false;
+      jDigiDocConfigurationExposed = false;
+    }
+  }
+
   private String getConfigurationParameter(String key) {
     logger.debug("Key: " + key);
     String value = configuration.get(key);
@@ -1026,6 +1837,10 @@ public class Configuration implements Serializable {
           new ByteArrayInputStream(bos.toByteArray());
       ois = new ObjectInputStream(bin);
       copyConfiguration = (Configuration) ois.readObject();
+      if (copyConfiguration.snapshot) {
+        copyConfiguration = new Configuration(copyConfiguration, false);
+      }
+      shareTslLoaderWith(copyConfiguration);
     } catch (Exception e) {
       throw new DigiDoc4JException(e);
     } finally {
@@ -1036,11 +1851,86 @@ public class Configuration implements Serializable {
     return copyConfiguration;
   }
 
+  private synchronized void shareTslLoaderWith(Configuration copyConfiguration) {
+    if (tslLoaderShared && TslRegistry.retain(tslLoader)) {
+      copyConfiguration.tslLoader = tslLoader;
+      copyConfiguration.tslLoaderShared = true;
+    }
+  }
+
   private void initOcspAccessCertPasswordForJDigidoc() {
     char[] ocspAccessCertificatePassword = getOCSPAccessCertificatePassword();
     if(ocspAccessCertificatePassword != null && ocspAccessCertificatePassword.length > 0) {
       setJDigiDocConfigurationValue(OCSP_PKCS_12_PASSWD, String.valueOf(ocspAccessCertificatePassword));
     }
   }
-}
 
+  /**
+   * Builder of immutable configuration snapshots, see {@link Configuration#toBuilder()}.
+   * <p/>
+   * Only the changed values are copied, the configuration values that are not changed and the loaded TSL are
+   * shared with the configuration the builder was created from.
+   */
+  public static class Builder {
+
+    private final Configuration configuration;
+
+    private Builder(Configuration base) {
+      configuration = new Configuration(base, false);
+    }
+
+    public Builder withOCSPAccessCertificateFileName(String fileName) {
+      configuration.setOCSPAccessCertificateFileName(fileName);
+      return this;
+    }
+
+    public Builder withOCSPAccessCertificatePassword(char[] password) {
+      configuration.setOCSPAccessCertificatePassword(password);
+      return this;
+    }
+
+    public Builder withSignOCSPRequests(boolean shouldSignOcspRequests) {
+      configuration.setSignOCSPRequests(shouldSignOcspRequests);
+      return this;
+    }
+
+    public Builder withOcspSource(String ocspSource) {
+      configuration.setOcspSource(ocspSource);
+      return this;
+    }
+
+    public Builder withTspSource(String tspSource) {
+      configuration.setTspSource(tspSource);
+      return this;
+    }
+
+    public Builder withValidationPolicy(String validationPolicy) {
+      configuration.setValidationPolicy(validationPolicy);
+      return this;
+    }
+
+    public Builder withConnectionTimeout(int connectionTimeout) {
+      configuration.setConnectionTimeout(connectionTimeout);
+      return this;
+    }
+
+    public Builder withSocketTimeout(int socketTimeoutMilliseconds) {
+      configuration.setSocketTimeout(socketTimeoutMilliseconds);
+      return this;
+    }
+
+    public Builder withRevocationAndTimestampDeltaInMinutes(int timeInMinutes) {
+      configuration.setRevocationAndTimestampDeltaInMinutes(timeInMinutes);
+      return this;
+    }
+
+    /**
+     * Creates the snapshot. The builder can be used further for creating other snapshots.
+     *
+     * @return immutable configuration snapshot
+     */
+    public Configuration build() {
+      return new Configuration(configuration, true);
+    }
+  }
+}
@@ -129,7 +129,6 @@ public class ContainerOpener {
   }
 
   private static Container openBDocContainer(String path, Configuration configuration) {
-    configuration.loadConfiguration("digidoc4j.yaml");
     return new ExistingBDocContainer(path, configuration);
   }
 }
@@ -20,6 +20,7 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 
+import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.IOUtils;
 import org.digidoc4j.exceptions.DigiDoc4JException;
 import org.digidoc4j.exceptions.InvalidDataFileException;
@@ -30,7 +31,6 @@ import org.slf4j.LoggerFactory;
 import org.digidoc4j.impl.StreamDocument;
 import eu.europa.esig.dss.DSSDocument;
 import eu.europa.esig.dss.DSSException;
-import eu.europa.esig.dss.DSSUtils;
 import eu.europa.esig.dss.Digest;
 import eu.europa.esig.dss.DigestAlgorithm;
 import eu.europa.esig.dss.FileDocument;
@@ -161,7 +161,7 @@ public class DataFile implements Serializable {
 
   byte[] calculateDigestInternal(DigestAlgorithm digestAlgorithm) {
     logger.debug("Digest algorithm: " + digestAlgorithm);
-    return DSSUtils.digest(digestAlgorithm, document.getBytes());
+    return Base64.decodeBase64(document.getDigest(digestAlgorithm));
   }
 
   /**
@@ -0,0 +1,101 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.digidoc4j.exceptions.InvalidDataFileException;
+import org.digidoc4j.impl.DigestingSpooler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.europa.esig.dss.DSSDocument;
+import eu.europa.esig.dss.MimeType;
+
+/**
+ * Creates data files from streams, reading every stream only once.
+ * <p/>
+ * The digests of the stream are calculated while the content is stored, so signing the data file does not
+ * read the content again. Contents up to {@link Configuration#getMaxDataFileCachedInBytes()} are kept in memory
+ * and larger contents are stored as temporary files, unless {@link Configuration#storeDataFilesOnlyInMemory()}
+ * is set. By default the SHA-256 digest is calculated.
+ * <p/>
+ * Example:
+ * <pre>
+ *   DataFileFactory factory = new DataFileFactory(configuration).
+ *       withDigestAlgorithms(DigestAlgorithm.SHA256, DigestAlgorithm.SHA512);
+ *   DataFile dataFile = factory.createDataFile(uploadStream, "document.pdf", "application/pdf");
+ * </pre>
+ */
+public class DataFileFactory {
+
+  private static final Logger logger = LoggerFactory.getLogger(DataFileFactory.class);
+  private final Configuration configuration;
+  private DigestAlgorithm[] digestAlgorithms = {DigestAlgorithm.SHA256};
+
+  /**
+   * @param configuration configuration deciding whether the contents are kept in memory
+   */
+  public DataFileFactory(Configuration configuration) {
+    this.configuration = configuration;
+  }
+
+  /**
+   * Creates the factory using the default configuration.
+   */
+  public DataFileFactory() {
+    this(Configuration.getInstance());
+  }
+
+  /**
+   * @param digestAlgorithms algorithms of the digests calculated while reading the streams, for example
+   *                         the signature digest algorithm
+   * @return this factory
+   */
+  public DataFileFactory withDigestAlgorithms(DigestAlgorithm... digestAlgorithms) {
+    this.digestAlgorithms = digestAlgorithms;
+    return this;
+  }
+
+  /**
+   * Creates a data file from a stream. The stream is read to the end but not closed.
+   *
+   * @param stream   data file stream
+   * @param fileName name of the file
+   * @param mimeType MIME type of the stream file, for example 'text/plain' or 'application/msword'
+   * @return data file with its digests already calculated
+   */
+  public DataFile createDataFile(InputStream stream, String fileName, String mimeType) {
+    logger.debug("File name: " + fileName + ", mime type: " + mimeType);
+    try {
+      MimeType mimeTypeCode = MimeType.fromMimeTypeString(mimeType);
+      DSSDocument document = createSpooler().spool(stream, fileName, mimeTypeCode);
+      return new DataFile(document);
+    } catch (Exception e) {
+      logger.error(e.getMessage());
+      throw new InvalidDataFileException(e);
+    }
+  }
+
+  private DigestingSpooler createSpooler() {
+    List<eu.europa.esig.dss.DigestAlgorithm> algorithms = new ArrayList<>(digestAlgorithms.length);
+    for (DigestAlgorithm digestAlgorithm : digestAlgorithms) {
+      algorithms.add(digestAlgorithm.getDssDigestAlgorithm());
+    }
+    long maxBytesInMemory = configuration.getMaxDataFileCachedInBytes();
+    if (configuration.storeDataFilesOnlyInMemory()) {
+      maxBytesInMemory = Long.MAX_VALUE;
+    }
+    return new DigestingSpooler(maxBytesInMemory, algorithms);
+  }
+}
@@ -12,7 +12,9 @@ package org.digidoc4j;
 
 import java.io.Serializable;
 
+import org.digidoc4j.exceptions.NotSupportedException;
 import org.digidoc4j.impl.SignatureFinalizer;
+import org.digidoc4j.impl.bdoc.BDocSignatureBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,6 +36,7 @@ public class DataToSign implements Serializable {
 
   private final static Logger logger = LoggerFactory.getLogger(DataToSign.class);
   private byte[] digestToSign;
+  private byte[] dataToBeSigned;
   private SignatureParameters signatureParameters;
   private SignatureFinalizer signatureFinalizer;
 
@@ -43,6 +46,12 @@ public class DataToSign implements Serializable {
     this.signatureFinalizer = signatureFinalizer;
   }
 
+  public DataToSign(byte[] digestToSign, byte[] dataToBeSigned, SignatureParameters signatureParameters,
+                    SignatureFinalizer signatureFinalizer) {
+    this(digestToSign, signatureParameters, signatureFinalizer);
+    this.dataToBeSigned = dataToBeSigned;
+  }
+
   /**
    * Signature parameters used to create the signature.
    * @return signature parameters.
@@ -67,6 +76,14 @@ public class DataToSign implements Serializable {
     return digestToSign;
   }
 
+  /**
+   * Data the digest to be signed was calculated of, as given to {@link SignatureToken#sign(DigestAlgorithm, byte[])}.
+   * @return data to be signed or null if it is not available.
+   */
+  public byte[] getDataToBeSigned() {
+    return dataToBeSigned;
+  }
+
   /**
    * Finalize the signature by adding externally created signature value in bytes.
    * This will get OCSP verification etc. to finalize the signature.
@@ -78,4 +95,18 @@ public class DataToSign implements Serializable {
     logger.debug("Finalizing signature");
     return signatureFinalizer.finalizeSignature(signatureValue);
   }
+
+  /**
+   * Creates a compact signing session that can be stored instead of this object and the container
+   * while waiting for the signature value. Supported only for BDoc signatures.
+   *
+   * @return signing session holding only what is needed for finalizing the signature.
+   */
+  public SigningSession createSigningSession() {
+    if (!(signatureFinalizer instanceof BDocSignatureBuilder)) {
+      logger.error("Signing sessions are supported only for BDoc signatures");
+      throw new NotSupportedException("Signing sessions are supported only for BDoc signatures");
+    }
+    return ((BDocSignatureBuilder) signatureFinalizer).createSigningSession(digestToSign);
+  }
 }
@@ -0,0 +1,100 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j;
+
+import org.digidoc4j.exceptions.NotSupportedException;
+import org.digidoc4j.impl.DigestOnlyDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Data file known only by its name, MIME type and digest.
+ * <p/>
+ * Signatures of the data file can be created, finalized and validated without the file content.
+ * The content is not available, so the data file can't be saved or read. A container with such
+ * data files is saved as a hashcode container, listing the digests of the data files in
+ * META-INF/hashcodes-sha256.xml and META-INF/hashcodes-sha512.xml instead of the data files.
+ * Hashcode containers are opened with hashcode data files only when allowed in the configuration
+ * (see {@link Configuration#setHashcodeContainersAllowed(boolean)}).
+ */
+public class DigestDataFile extends DataFile {
+
+  private static final Logger logger = LoggerFactory.getLogger(DigestDataFile.class);
+  private Long fileSize;
+
+  /**
+   * Creates a data file from its digest.
+   *
+   * @param fileName        name of the file
+   * @param mimeType        MIME type of the file, for example 'text/plain' or 'application/msword'
+   * @param digestAlgorithm algorithm the digest was calculated with
+   * @param digest          digest of the file content
+   */
+  public DigestDataFile(String fileName, String mimeType, DigestAlgorithm digestAlgorithm, byte[] digest) {
+    logger.debug("File name: " + fileName + ", mime type: " + mimeType + ", digest algorithm: " + digestAlgorithm);
+    setDocument(new DigestOnlyDocument(fileName, getMimeType(mimeType), digestAlgorithm.getDssDigestAlgorithm(),
+        digest));
+  }
+
+  /**
+   * Adds the digest of the file content calculated with another algorithm.
+   *
+   * @param digestAlgorithm algorithm the digest was calculated with
+   * @param digest          digest of the file content
+   */
+  public void addDigest(DigestAlgorithm digestAlgorithm, byte[] digest) {
+    getDigestOnlyDocument().addDigest(digestAlgorithm.getDssDigestAlgorithm(), digest);
+  }
+
+  /**
+   * @param digestAlgorithm digest algorithm
+   * @return true if the digest calculated with the given algorithm is known
+   */
+  public boolean hasDigest(DigestAlgorithm digestAlgorithm) {
+    return getDigestOnlyDocument().hasDigest(digestAlgorithm.getDssDigestAlgorithm());
+  }
+
+  /**
+   * @param digestAlgorithm digest algorithm
+   * @return digest of the file content calculated with the given algorithm
+   */
+  public byte[] getDigest(DigestAlgorithm digestAlgorithm) {
+    return calculateDigestInternal(digestAlgorithm.getDssDigestAlgorithm());
+  }
+
+  /**
+   * @param fileSize size of the file content in bytes
+   */
+  public void setFileSize(long fileSize) {
+    this.fileSize = fileSize;
+  }
+
+  /**
+   * @return size of the file content in bytes, or null if not known
+   */
+  public Long getKnownFileSize() {
+    return fileSize;
+  }
+
+  @Override
+  public long getFileSize() {
+    if (fileSize == null) {
+      String errorMessage = "Size of " + getName() + " is not known";
+      logger.error(errorMessage);
+      throw new NotSupportedException(errorMessage);
+    }
+    return fileSize;
+  }
+
+  private DigestOnlyDocument getDigestOnlyDocument() {
+    return (DigestOnlyDocument) getDocument();
+  }
+}
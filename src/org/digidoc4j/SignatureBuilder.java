@@ -16,7 +16,9 @@ import static org.digidoc4j.ContainerBuilder.DDOC_CONTAINER_TYPE;
 
 import java.io.Serializable;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
@@ -27,6 +29,7 @@ import org.digidoc4j.exceptions.SignerCertificateRequiredException;
 import org.digidoc4j.exceptions.TechnicalException;
 import org.digidoc4j.impl.bdoc.BDocSignatureBuilder;
 import org.digidoc4j.impl.ddoc.DDocSignatureBuilder;
+import org.digidoc4j.signers.BatchSignatureTokenAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -106,6 +109,71 @@ public abstract class SignatureBuilder implements Serializable {
     return invokeSigningProcess();
   }
 
+  /**
+   * Creates signatures on several containers with a single call to the signature token.
+   * <p/>
+   * The data to be signed is built by every builder using the certificate of the token, all the data is signed
+   * with one {@link BatchSignatureToken#sign(List)} call and every signature is finalized by its builder.
+   * Tokens without batch support sign the data one by one (See {@link BatchSignatureTokenAdapter}).
+   * Like {@link SignatureBuilder#invokeSigning()}, the signatures are not added to the containers.
+   * <p/>
+   * A signature whose data can't be built or which can't be finalized is reported as a failure of the result and
+   * the other signatures are still created. A failing token call fails the whole batch. The signatures are
+   * finalized one after another by the calling thread, see {@link org.digidoc4j.bulk.BulkSigner} for finalizing
+   * signatures in parallel.
+   *
+   * @param signatureBuilders builders of the signatures, for example one builder per container.
+   * @param signatureToken    signature token used for all the signatures.
+   * @return signatures and failures in the order of the builders.
+   * @throws SignatureTokenMissingException if signature token is not provided.
+   */
+  public static BatchSigningResult invokeBatchSigning(List<SignatureBuilder> signatureBuilders,
+                                                      SignatureToken signatureToken)
+      throws SignatureTokenMissingException {
+    if (signatureToken == null) {
+      logger.error("Cannot invoke batch signing without signature token");
+      throw new SignatureTokenMissingException();
+    }
+    logger.info("Batch signing " + signatureBuilders.size() + " signatures");
+    BatchSigningResult result = new BatchSigningResult(signatureBuilders.size());
+    List<Integer> indexes = new ArrayList<>(signatureBuilders.size());
+    List<DataToSign> dataToSign = new ArrayList<>(signatureBuilders.size());
+    for (int i = 0; i < signatureBuilders.size(); i++) {
+      SignatureBuilder builder = signatureBuilders.get(i);
+      try {
+        builder.withSignatureToken(signatureToken);
+        builder.withSigningCertificate(signatureToken.getCertificate());
+        dataToSign.add(builder.buildDataToSign());
+        indexes.add(i);
+      } catch (RuntimeException e) {
+        logger.error("Building data to sign of signature " + i + " failed: " + e.getMessage());
+        result.setFailure(i, e);
+      }
+    }
+    if (dataToSign.isEmpty()) {
+      return result;
+    }
+    BatchSignatureToken batchSignatureToken = BatchSignatureTokenAdapter.toBatchSignatureToken(signatureToken);
+    List<byte[]> signatureValues = batchSignatureToken.sign(dataToSign);
+    if (signatureValues.size() != dataToSign.size()) {
+      logger.error("Signature token returned " + signatureValues.size() + " signature values for " +
+          dataToSign.size() + " signatures");
+      throw new TechnicalException("Signature token returned " + signatureValues.size() + " signature values for " +
+          dataToSign.size() + " signatures");
+    }
+    for (int i = 0; i < dataToSign.size(); i++) {
+      int index = indexes.get(i);
+      try {
+        result.setSignature(index, dataToSign.get(i).finalize(signatureValues.get(i)));
+      } catch (RuntimeException e) {
+        logger.error("Finalizing signature " + index + " failed: " + e.getMessage());
+        result.setFailure(index, e);
+      }
+    }
+    logger.info("Batch signing finished, " + result.getFailureCount() + " signatures failed");
+    return result;
+  }
+
   /**
    * Signing process implementation that is called by {@link SignatureBuilder#invokeSigning()} method.
    * Must be implemented by the class implementing the builder.
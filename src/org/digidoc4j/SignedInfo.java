@@ -24,6 +24,7 @@ public class SignedInfo implements Serializable {
   private static final Logger logger = LoggerFactory.getLogger(SignedInfo.class);
 
   private byte[] digestToSign;
+  private byte[] dataToSign;
   private SignatureParameters signatureParameters;
 
   public SignedInfo() {
@@ -32,6 +33,7 @@ public class SignedInfo implements Serializable {
   public SignedInfo(byte[] dataToDigest, SignatureParameters signatureParameters) {
     DigestAlgorithm digestAlgorithm = signatureParameters.getDigestAlgorithm();
     digestToSign = DSSUtils.digest(forXML(digestAlgorithm.toString()), dataToDigest);
+    dataToSign = dataToDigest;
     this.signatureParameters = signatureParameters;
   }
 
@@ -44,6 +46,10 @@ public class SignedInfo implements Serializable {
     return digestToSign;
   }
 
+  public byte[] getDataToSign() {
+    return dataToSign;
+  }
+
   public DigestAlgorithm getDigestAlgorithm() {
     logger.debug("");
     return signatureParameters.getDigestAlgorithm();
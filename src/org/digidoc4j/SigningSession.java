@@ -0,0 +1,256 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.digidoc4j.exceptions.DigiDoc4JException;
+import org.digidoc4j.exceptions.TechnicalException;
+import org.digidoc4j.impl.bdoc.BDocSignatureBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ *   Compact state of a BDoc signature waiting for its externally created signature value.
+ * </p>
+ * <p>
+ *   Unlike {@link DataToSign}, a signing session doesn't hold the container or the data file contents,
+ *   only what is needed for finalizing the signature: the signature parameters, the signing time,
+ *   the signing certificate and the digests of the data files. A session can be stored as bytes with
+ *   {@link SigningSession#toByteArray()} and restored with {@link SigningSession#fromByteArray(byte[])}
+ *   on any node, where {@link SigningSession#finalize(byte[], Configuration)} creates the signature.
+ *   The signature can then be added to a container with the same data files.
+ * </p>
+ */
+public class SigningSession {
+
+  private final static Logger logger = LoggerFactory.getLogger(SigningSession.class);
+  private static final int FORMAT_VERSION = 1;
+  private final byte[] digestToSign;
+  private final SignatureParameters signatureParameters;
+  private final Date signingDate;
+  private final List<DigestDataFile> dataFiles;
+
+  /**
+   * @param digestToSign        digest to be signed externally
+   * @param signatureParameters signature parameters used to create the signature
+   * @param signingDate         signing time of the signature
+   * @param dataFiles           digests of the signed data files
+   */
+  public SigningSession(byte[] digestToSign, SignatureParameters signatureParameters, Date signingDate,
+                        List<DigestDataFile> dataFiles) {
+    this.digestToSign = digestToSign;
+    this.signatureParameters = signatureParameters.copy();
+    this.signingDate = new Date(signingDate.getTime());
+    this.dataFiles = Collections.unmodifiableList(new ArrayList<>(dataFiles));
+  }
+
+  /**
+   * Restores a signing session stored with {@link SigningSession#toByteArray()}.
+   *
+   * @param bytes stored signing session
+   * @return signing session
+   */
+  public static SigningSession fromByteArray(byte[] bytes) {
+    logger.debug("Restoring signing session");
+    try {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+      int version = in.readUnsignedByte();
+      if (version != FORMAT_VERSION) {
+        logger.error("Unsupported signing session format version " + version);
+        throw new DigiDoc4JException("Unsupported signing session format version " + version);
+      }
+      byte[] digestToSign = readBytes(in);
+      SignatureParameters signatureParameters = new SignatureParameters();
+      DigestAlgorithm digestAlgorithm = DigestAlgorithm.valueOf(in.readUTF());
+      signatureParameters.setDigestAlgorithm(digestAlgorithm);
+      String encryptionAlgorithm = readString(in);
+      if (encryptionAlgorithm != null) {
+        signatureParameters.setEncryptionAlgorithm(EncryptionAlgorithm.valueOf(encryptionAlgorithm));
+      }
+      String signatureProfile = readString(in);
+      if (signatureProfile != null) {
+        signatureParameters.setSignatureProfile(SignatureProfile.valueOf(signatureProfile));
+      }
+      signatureParameters.setSignatureId(readString(in));
+      Date signingDate = new Date(in.readLong());
+      signatureParameters.setSigningCertificate(readCertificate(readBytes(in)));
+      int numberOfRoles = in.readInt();
+      List<String> roles = new ArrayList<>(numberOfRoles);
+      for (int i = 0; i < numberOfRoles; i++) {
+        roles.add(in.readUTF());
+      }
+      signatureParameters.setRoles(roles);
+      signatureParameters.setCity(readString(in));
+      signatureParameters.setStateOrProvince(readString(in));
+      signatureParameters.setPostalCode(readString(in));
+      signatureParameters.setCountry(readString(in));
+      int numberOfDataFiles = in.readInt();
+      List<DigestDataFile> dataFiles = new ArrayList<>(numberOfDataFiles);
+      for (int i = 0; i < numberOfDataFiles; i++) {
+        dataFiles.add(new DigestDataFile(in.readUTF(), in.readUTF(), digestAlgorithm, readBytes(in)));
+      }
+      return new SigningSession(digestToSign, signatureParameters, signingDate, dataFiles);
+    } catch (IOException | IllegalArgumentException e) {
+      logger.error("Unable to restore signing session: " + e.getMessage());
+      throw new DigiDoc4JException("Unable to restore signing session: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Stores the signing session in a compact binary form.
+   *
+   * @return signing session as bytes
+   */
+  public byte[] toByteArray() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeByte(FORMAT_VERSION);
+      writeBytes(out, digestToSign);
+      out.writeUTF(getDigestAlgorithm().name());
+      EncryptionAlgorithm encryptionAlgorithm = signatureParameters.getEncryptionAlgorithm();
+      writeString(out, encryptionAlgorithm == null ? null : encryptionAlgorithm.name());
+      SignatureProfile signatureProfile = signatureParameters.getSignatureProfile();
+      writeString(out, signatureProfile == null ? null : signatureProfile.name());
+      writeString(out, signatureParameters.getSignatureId());
+      out.writeLong(signingDate.getTime());
+      writeBytes(out, signatureParameters.getSigningCertificate().getEncoded());
+      List<String> roles = signatureParameters.getRoles();
+      out.writeInt(roles.size());
+      for (String role : roles) {
+        out.writeUTF(role);
+      }
+      writeString(out, signatureParameters.getCity());
+      writeString(out, signatureParameters.getStateOrProvince());
+      writeString(out, signatureParameters.getPostalCode());
+      writeString(out, signatureParameters.getCountry());
+      out.writeInt(dataFiles.size());
+      for (DigestDataFile dataFile : dataFiles) {
+        out.writeUTF(dataFile.getDocument().getName());
+        out.writeUTF(dataFile.getMediaType());
+        writeBytes(out, dataFile.calculateDigest(getDigestAlgorithm()));
+      }
+      out.flush();
+    } catch (IOException | CertificateEncodingException e) {
+      logger.error("Unable to store signing session: " + e.getMessage());
+      throw new TechnicalException("Unable to store signing session", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Finalize the signature by adding externally created signature value in bytes.
+   * This will get OCSP verification etc. to finalize the signature.
+   *
+   * @param signatureValue externally created signature value bytes.
+   * @param configuration  configuration used for finalizing the signature.
+   * @return Finalized signature.
+   */
+  public Signature finalize(byte[] signatureValue, Configuration configuration) {
+    logger.debug("Finalizing signature from signing session");
+    return BDocSignatureBuilder.finalizeSigningSession(this, signatureValue, configuration);
+  }
+
+  /**
+   * Finalize the signature using the default configuration.
+   *
+   * @param signatureValue externally created signature value bytes.
+   * @return Finalized signature.
+   */
+  public Signature finalize(byte[] signatureValue) {
+    return finalize(signatureValue, Configuration.getInstance());
+  }
+
+  /**
+   * Data to be signed externally.
+   * @return digest bytes to be signed.
+   */
+  public byte[] getDigestToSign() {
+    return digestToSign;
+  }
+
+  /**
+   * Signature digest algorithm to be used when creating the signature value.
+   * @return signature digest algorithm.
+   */
+  public DigestAlgorithm getDigestAlgorithm() {
+    return signatureParameters.getDigestAlgorithm();
+  }
+
+  /**
+   * Signature parameters used to create the signature.
+   * @return copy of the signature parameters.
+   */
+  public SignatureParameters getSignatureParameters() {
+    return signatureParameters.copy();
+  }
+
+  public Date getSigningDate() {
+    return new Date(signingDate.getTime());
+  }
+
+  /**
+   * Digests of the signed data files.
+   * @return data files without content.
+   */
+  public List<DigestDataFile> getDataFiles() {
+    return dataFiles;
+  }
+
+  private static X509Certificate readCertificate(byte[] encodedCertificate) throws IOException {
+    try {
+      CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+      return (X509Certificate) certificateFactory.generateCertificate(new ByteArrayInputStream(encodedCertificate));
+    } catch (CertificateException e) {
+      throw new IOException("Invalid signing certificate", e);
+    }
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static byte[] readBytes(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0 || length > in.available()) {
+      throw new IOException("Invalid length " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+}
@@ -12,22 +12,45 @@ package org.digidoc4j;
 
 import java.io.File;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.util.encoders.Hex;
 import org.digidoc4j.impl.bdoc.TslLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import eu.europa.esig.dss.DSSUtils;
+import eu.europa.esig.dss.DigestAlgorithm;
 import eu.europa.esig.dss.tsl.ServiceInfo;
 import eu.europa.esig.dss.tsl.TrustedListsCertificateSource;
 import eu.europa.esig.dss.x509.CertificateToken;
 
 /**
  * Trusted List certificates
+ * <p/>
+ * Certificates are indexed by subject, subject key identifier and SHA-256 digest as they are added
+ * and removed from the index as they are removed from the source, so looking up the trusted issuers
+ * during validation doesn't depend on the size of the list.
  */
 public class TSLCertificateSource extends TrustedListsCertificateSource {
   private static final Logger logger = LoggerFactory.getLogger(TSLCertificateSource.class);
   protected static final File fileCacheDirectory = new File(System.getProperty("java.io.tmpdir") + "/digidoc4jTSLCache");
   private TslLoader tslLoader;
+  private Collection<String> trustedServiceTypes = Collections.emptyList();
+  private final ConcurrentMap<X500Principal, List<CertificateToken>> certificatesBySubject = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, List<CertificateToken>> certificatesBySubjectKeyIdentifier =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, CertificateToken> certificatesByDigest = new ConcurrentHashMap<>();
 
   public TSLCertificateSource() {
   }
@@ -41,6 +64,8 @@ public class TSLCertificateSource extends TrustedListsCertificateSource {
    * <p/>
    * ServiceTypeIdentifier is http://uri.etsi.org/TrstSvc/Svctype/CA/QC
    * ServiceStatus is http://uri.etsi.org/TrstSvc/TrustedList/Svcstatus/undersupervision
+   * <p/>
+   * When the TSL is refreshed in the background, the certificate is added to the refreshed TSLs as well.
    *
    * @param certificate X509 certificate to be added to the list
    */
@@ -50,7 +75,184 @@ public class TSLCertificateSource extends TrustedListsCertificateSource {
     serviceInfo.setType("http://uri.etsi.org/TrstSvc/Svctype/CA/QC");
     serviceInfo.setStatusStartDate(certificate.getNotBefore());
 
-    addCertificate(new CertificateToken(certificate), serviceInfo);
+    addTSLCertificate(new CertificateToken(certificate), Collections.singletonList(serviceInfo));
+  }
+
+  /**
+   * Add a certificate to the TSL with the service info it has in the trusted lists
+   * <p/>
+   * When the TSL is refreshed in the background, the certificate is added to the refreshed TSLs as well.
+   *
+   * @param certificate  certificate to be added to the list
+   * @param serviceInfos trust services of the certificate
+   */
+  public void addTSLCertificate(CertificateToken certificate, Collection<ServiceInfo> serviceInfos) {
+    for (ServiceInfo serviceInfo : serviceInfos) {
+      addTrustedCertificate(certificate, serviceInfo);
+    }
+    if (tslLoader != null) {
+      tslLoader.keepAddedCertificate(certificate.getCertificate(), serviceInfos);
+    }
+  }
+
+  /**
+   * Trust only the certificates of the trust services with given service types
+   * when the certificates are loaded from the trusted lists.
+   *
+   * @param trustedServiceTypes service types, empty to trust the certificates of all services
+   */
+  public void setTrustedServiceTypes(Collection<String> trustedServiceTypes) {
+    this.trustedServiceTypes = new HashSet<>(trustedServiceTypes);
+  }
+
+  @Override
+  public CertificateToken addCertificate(CertificateToken certificate, ServiceInfo serviceInfo) {
+    if (!trustedServiceTypes.isEmpty() && serviceInfo != null && !trustedServiceTypes.contains(serviceInfo.getType())) {
+      logger.debug("Skipping certificate " + certificate.getDSSIdAsString() + " of service type "
+          + serviceInfo.getType());
+      return certificate;
+    }
+    return addTrustedCertificate(certificate, serviceInfo);
+  }
+
+  @Override
+  public List<CertificateToken> get(X500Principal subject) {
+    if (subject == null) {
+      return Collections.emptyList();
+    }
+    return getIndexed(certificatesBySubject, subject);
+  }
+
+  /**
+   * Stop trusting a certificate
+   * <p/>
+   * The certificate pool of the source keeps the certificate, but it is no longer returned when
+   * looking up the trusted certificates.
+   *
+   * @param certificate certificate to remove
+   * @return true if the certificate was trusted
+   */
+  @Override
+  public boolean removeCertificate(CertificateToken certificate) {
+    boolean removed = super.removeCertificate(certificate);
+    return removeFromIndex(certificate) || removed;
+  }
+
+  @Override
+  public boolean removeX500Principal(X500Principal subject) {
+    boolean removed = false;
+    for (CertificateToken certificate : get(subject)) {
+      removed |= removeCertificate(certificate);
+    }
+    return removed;
+  }
+
+  @Override
+  public List<CertificateToken> getCertificates() {
+    List<CertificateToken> certificates = new ArrayList<>();
+    for (CertificateToken certificate : super.getCertificates()) {
+      if (getIndexed(certificatesBySubject, certificate.getSubjectX500Principal()).contains(certificate)) {
+        certificates.add(certificate);
+      }
+    }
+    return Collections.unmodifiableList(certificates);
+  }
+
+  /**
+   * Find trusted certificates by subject key identifier
+   *
+   * @param subjectKeyIdentifier key identifier from the subject key identifier extension
+   * @return certificates with the key identifier, empty list if there are none
+   */
+  public List<CertificateToken> getBySubjectKeyIdentifier(byte[] subjectKeyIdentifier) {
+    return getIndexed(certificatesBySubjectKeyIdentifier, Hex.toHexString(subjectKeyIdentifier));
+  }
+
+  /**
+   * Find a trusted certificate by the SHA-256 digest of its DER encoding
+   *
+   * @param sha256Digest SHA-256 digest of the certificate
+   * @return certificate or null if the certificate is not trusted
+   */
+  public CertificateToken getBySha256Digest(byte[] sha256Digest) {
+    return certificatesByDigest.get(Hex.toHexString(sha256Digest));
+  }
+
+  private CertificateToken addTrustedCertificate(CertificateToken certificate, ServiceInfo serviceInfo) {
+    CertificateToken trustedCertificate = super.addCertificate(certificate, serviceInfo);
+    index(trustedCertificate);
+    return trustedCertificate;
+  }
+
+  private synchronized void index(CertificateToken certificate) {
+    String digest = Hex.toHexString(DSSUtils.digest(DigestAlgorithm.SHA256, certificate.getEncoded()));
+    if (certificatesByDigest.putIfAbsent(digest, certificate) != null) {
+      return;
+    }
+    addToIndex(certificatesBySubject, certificate.getSubjectX500Principal(), certificate);
+    byte[] subjectKeyIdentifier = getSubjectKeyIdentifier(certificate);
+    if (subjectKeyIdentifier != null) {
+      addToIndex(certificatesBySubjectKeyIdentifier, Hex.toHexString(subjectKeyIdentifier), certificate);
+    }
+  }
+
+  private synchronized boolean removeFromIndex(CertificateToken certificate) {
+    String digest = Hex.toHexString(DSSUtils.digest(DigestAlgorithm.SHA256, certificate.getEncoded()));
+    CertificateToken indexedCertificate = certificatesByDigest.remove(digest);
+    if (indexedCertificate == null) {
+      return false;
+    }
+    removeFromIndex(certificatesBySubject, indexedCertificate.getSubjectX500Principal(), indexedCertificate);
+    byte[] subjectKeyIdentifier = getSubjectKeyIdentifier(indexedCertificate);
+    if (subjectKeyIdentifier != null) {
+      removeFromIndex(certificatesBySubjectKeyIdentifier, Hex.toHexString(subjectKeyIdentifier), indexedCertificate);
+    }
+    return true;
+  }
+
+  private static <K> void addToIndex(ConcurrentMap<K, List<CertificateToken>> index, K key,
+                                     CertificateToken certificate) {
+    List<CertificateToken> certificates = index.get(key);
+    List<CertificateToken> updatedCertificates = new ArrayList<>(certificates == null ? 1 : certificates.size() + 1);
+    if (certificates != null) {
+      updatedCertificates.addAll(certificates);
+    }
+    updatedCertificates.add(certificate);
+    index.put(key, Collections.unmodifiableList(updatedCertificates));
+  }
+
+  private static <K> void removeFromIndex(ConcurrentMap<K, List<CertificateToken>> index, K key,
+                                          CertificateToken certificate) {
+    List<CertificateToken> certificates = index.get(key);
+    if (certificates == null) {
+      return;
+    }
+    List<CertificateToken> updatedCertificates = new ArrayList<>(certificates);
+    updatedCertificates.remove(certificate);
+    if (updatedCertificates.isEmpty()) {
+      index.remove(key);
+    } else {
+      index.put(key, Collections.unmodifiableList(updatedCertificates));
+    }
+  }
+
+  private static <K> List<CertificateToken> getIndexed(ConcurrentMap<K, List<CertificateToken>> index, K key) {
+    List<CertificateToken> certificates = index.get(key);
+    return certificates == null ? Collections.<CertificateToken>emptyList() : certificates;
+  }
+
+  private static byte[] getSubjectKeyIdentifier(CertificateToken certificate) {
+    byte[] extensionValue = certificate.getCertificate().getExtensionValue(Extension.subjectKeyIdentifier.getId());
+    if (extensionValue == null) {
+      return null;
+    }
+    try {
+      return ASN1OctetString.getInstance(ASN1OctetString.getInstance(extensionValue).getOctets()).getOctets();
+    } catch (IllegalArgumentException e) {
+      logger.debug("Unable to parse subject key identifier of " + certificate.getDSSIdAsString() + ": "
+          + e.getMessage());
+      return null;
+    }
   }
 
   /**
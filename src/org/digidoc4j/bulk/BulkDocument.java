@@ -0,0 +1,50 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.bulk;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.digidoc4j.DataFile;
+
+/**
+ * Data files to be signed in a single container.
+ */
+public class BulkDocument {
+
+  private final String name;
+  private final List<DataFile> dataFiles;
+
+  /**
+   * @param name      name of the container, given to the {@link ContainerSink}
+   * @param dataFiles data files of the container
+   */
+  public BulkDocument(String name, DataFile... dataFiles) {
+    this(name, Arrays.asList(dataFiles));
+  }
+
+  /**
+   * @param name      name of the container, given to the {@link ContainerSink}
+   * @param dataFiles data files of the container
+   */
+  public BulkDocument(String name, List<DataFile> dataFiles) {
+    this.name = name;
+    this.dataFiles = dataFiles;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public List<DataFile> getDataFiles() {
+    return dataFiles;
+  }
+}
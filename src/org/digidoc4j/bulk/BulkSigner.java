@@ -0,0 +1,481 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.bulk;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.digidoc4j.BatchSignatureToken;
+import org.digidoc4j.Configuration;
+import org.digidoc4j.Container;
+import org.digidoc4j.ContainerBuilder;
+import org.digidoc4j.DataFile;
+import org.digidoc4j.DataToSign;
+import org.digidoc4j.DigestAlgorithm;
+import org.digidoc4j.Signature;
+import org.digidoc4j.SignatureBuilder;
+import org.digidoc4j.SignatureProfile;
+import org.digidoc4j.SignatureToken;
+import org.digidoc4j.exceptions.DigiDoc4JException;
+import org.digidoc4j.exceptions.SignatureTokenMissingException;
+import org.digidoc4j.exceptions.TechnicalException;
+import org.digidoc4j.signers.BatchSignatureTokenAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Signs large numbers of documents with a single signature token, e.g. sealing generated invoices.</p>
+ * <p>
+ *   Every document passes the stages of a pipeline (See {@link BulkSigningStage}): the container is built, the data
+ *   to be signed is prepared, the data is signed with the token, the signature is finalized with the time-stamp and
+ *   OCSP responses of the signature profile, and the container is written to the sink. Every stage has its own
+ *   threads and a bounded queue of waiting documents, so a slow stage (usually finalizing, waiting for the
+ *   responders) holds back reading the source instead of filling the memory. The token signs a batch of documents
+ *   with a single call if it is a {@link BatchSignatureToken}.
+ * </p>
+ * <p>
+ *   All the containers use the same configuration, so the TSL and the responder connections are shared by the whole
+ *   run. A document failing in any stage is reported in the result and the other documents are signed.
+ * </p>
+ * <p><code>
+ *   BulkSigningResult result = new BulkSigner(configuration, signatureToken). <br/>
+ *   &nbsp;&nbsp; withSignatureProfile(SignatureProfile.LT). <br/>
+ *   &nbsp;&nbsp; withStageConcurrency(BulkSigningStage.FINALIZE_SIGNATURE, 16, 64). <br/>
+ *   &nbsp;&nbsp; sign(new DirectoryDocumentSource(inputDirectory, "application/pdf"), <br/>
+ *   &nbsp;&nbsp;&nbsp;&nbsp; new DirectoryContainerSink(outputDirectory));
+ * </code></p>
+ */
+public class BulkSigner {
+
+  private static final Logger logger = LoggerFactory.getLogger(BulkSigner.class);
+  private static final int DEFAULT_QUEUE_SIZE = 64;
+  private static final int DEFAULT_BATCH_SIZE = 100;
+  private static final Job END = new Job(null);
+  private final Configuration configuration;
+  private final SignatureToken signatureToken;
+  private final Map<BulkSigningStage, Integer> threads = new EnumMap<>(BulkSigningStage.class);
+  private final Map<BulkSigningStage, Integer> queueSizes = new EnumMap<>(BulkSigningStage.class);
+  private String containerType = ContainerBuilder.BDOC_CONTAINER_TYPE;
+  private SignatureProfile signatureProfile;
+  private DigestAlgorithm signatureDigestAlgorithm;
+  private int batchSize = DEFAULT_BATCH_SIZE;
+
+  /**
+   * @param configuration  configuration of all the containers
+   * @param signatureToken token signing all the documents
+   */
+  public BulkSigner(Configuration configuration, SignatureToken signatureToken) {
+    if (signatureToken == null) {
+      logger.error("Cannot sign documents without signature token");
+      throw new SignatureTokenMissingException();
+    }
+    this.configuration = configuration;
+    this.signatureToken = signatureToken;
+    int processors = Runtime.getRuntime().availableProcessors();
+    withStageConcurrency(BulkSigningStage.BUILD_CONTAINER, 2, DEFAULT_QUEUE_SIZE);
+    withStageConcurrency(BulkSigningStage.PREPARE_SIGNATURE, processors, DEFAULT_QUEUE_SIZE);
+    withStageConcurrency(BulkSigningStage.SIGN, 1, 2 * DEFAULT_BATCH_SIZE);
+    withStageConcurrency(BulkSigningStage.FINALIZE_SIGNATURE, 8, DEFAULT_QUEUE_SIZE);
+    withStageConcurrency(BulkSigningStage.WRITE_CONTAINER, 2, DEFAULT_QUEUE_SIZE);
+  }
+
+  /**
+   * @param containerType type of the created containers, BDOC by default
+   * @return this bulk signer
+   */
+  public BulkSigner withContainerType(String containerType) {
+    this.containerType = containerType;
+    return this;
+  }
+
+  /**
+   * @param signatureProfile profile of the signatures, the default profile of the container type if not set
+   * @return this bulk signer
+   */
+  public BulkSigner withSignatureProfile(SignatureProfile signatureProfile) {
+    this.signatureProfile = signatureProfile;
+    return this;
+  }
+
+  /**
+   * @param signatureDigestAlgorithm signature digest algorithm, the default algorithm if not set
+   * @return this bulk signer
+   */
+  public BulkSigner withSignatureDigestAlgorithm(DigestAlgorithm signatureDigestAlgorithm) {
+    this.signatureDigestAlgorithm = signatureDigestAlgorithm;
+    return this;
+  }
+
+  /**
+   * @param batchSize maximum number of documents signed with a single call of a {@link BatchSignatureToken}
+   * @return this bulk signer
+   */
+  public BulkSigner withSigningBatchSize(int batchSize) {
+    if (batchSize < 1) {
+      throw new TechnicalException("Signing batch size must be positive: " + batchSize);
+    }
+    this.batchSize = batchSize;
+    return this;
+  }
+
+  /**
+   * @param stage     pipeline stage
+   * @param threads   number of threads processing the documents of the stage
+   * @param queueSize maximum number of documents waiting for the stage
+   * @return this bulk signer
+   */
+  public BulkSigner withStageConcurrency(BulkSigningStage stage, int threads, int queueSize) {
+    if (threads < 1 || queueSize < 1) {
+      throw new TechnicalException("Threads and queue size of stage " + stage + " must be positive: " + threads +
+          ", " + queueSize);
+    }
+    this.threads.put(stage, threads);
+    this.queueSizes.put(stage, queueSize);
+    return this;
+  }
+
+  /**
+   * Signs all the documents of the source and writes the signed containers to the sink.
+   * Returns when all the documents have been either written or failed.
+   *
+   * @param source documents to be signed
+   * @param sink   destination of the signed containers
+   * @return signing result with the failed documents and the throughput of the stages
+   */
+  public BulkSigningResult sign(DocumentSource source, ContainerSink sink) {
+    logger.info("Starting bulk signing");
+    X509Certificate signingCertificate = signatureToken.getCertificate();
+    BatchSignatureToken batchSignatureToken = BatchSignatureTokenAdapter.toBatchSignatureToken(signatureToken);
+    List<BulkSigningFailure> failures = Collections.synchronizedList(new ArrayList<BulkSigningFailure>());
+    Map<BulkSigningStage, StageStatistics> statistics = new EnumMap<>(BulkSigningStage.class);
+    CountDownLatch completed = new CountDownLatch(1);
+
+    Stage writeStage = new WriteContainerStage(sink, null, completed, failures);
+    Stage finalizeStage = new FinalizeSignatureStage(writeStage, failures);
+    Stage signStage = new SignStage(batchSignatureToken, finalizeStage, failures);
+    Stage prepareStage = new PrepareSignatureStage(signingCertificate, signStage, failures);
+    Stage buildStage = new BuildContainerStage(prepareStage, failures);
+    List<Stage> stages = Arrays.asList(buildStage, prepareStage, signStage, finalizeStage, writeStage);
+
+    ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+      private final AtomicInteger threadNumber = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "digidoc4j-bulk-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    StageStatistics readStatistics = new StageStatistics(BulkSigningStage.READ_DOCUMENT, 1);
+    statistics.put(BulkSigningStage.READ_DOCUMENT, readStatistics);
+    try {
+      for (Stage stage : stages) {
+        statistics.put(stage.type, stage.statistics);
+        stage.start(executor);
+      }
+      feed(source, buildStage, readStatistics, failures);
+      completed.await();
+    } catch (InterruptedException e) {
+      logger.error("Bulk signing was interrupted");
+      Thread.currentThread().interrupt();
+      throw new DigiDoc4JException(e);
+    } finally {
+      executor.shutdownNow();
+    }
+    logger.info(readStatistics.toString());
+    for (Stage stage : stages) {
+      logger.info(stage.statistics.toString());
+    }
+    logger.info("Bulk signing finished, " + failures.size() + " documents failed");
+    return new BulkSigningResult(statistics, failures);
+  }
+
+  private void feed(DocumentSource source, Stage firstStage, StageStatistics readStatistics,
+                    List<BulkSigningFailure> failures) throws InterruptedException {
+    try {
+      while (true) {
+        long start = System.nanoTime();
+        BulkDocument document;
+        try {
+          document = source.nextDocument();
+        } catch (RuntimeException e) {
+          readStatistics.record(0, 1, start, System.nanoTime());
+          logger.error("Reading the next document failed, no more documents are read: " + e.getMessage());
+          failures.add(new BulkSigningFailure(null, BulkSigningStage.READ_DOCUMENT, e));
+          return;
+        }
+        if (document == null) {
+          return;
+        }
+        readStatistics.record(1, 0, start, System.nanoTime());
+        firstStage.queue.put(new Job(document));
+      }
+    } finally {
+      firstStage.queue.put(END);
+    }
+  }
+
+  private static class Job {
+
+    private final BulkDocument document;
+    private Container container;
+    private DataToSign dataToSign;
+    private byte[] signatureValue;
+
+    Job(BulkDocument document) {
+      this.document = document;
+    }
+  }
+
+  /**
+   * Threads taking the documents from the queue of the stage and passing them on to the next stage. The end of the
+   * documents is marked by the END job, taken by every thread of the stage and passed on by the last one.
+   */
+  private abstract class Stage {
+
+    final BulkSigningStage type;
+    final BlockingQueue<Job> queue;
+    final StageStatistics statistics;
+    private final int threadCount;
+    private final int maxJobsAtOnce;
+    private final Stage next;
+    private final List<BulkSigningFailure> failures;
+    private final AtomicInteger runningThreads = new AtomicInteger();
+
+    Stage(BulkSigningStage type, int maxJobsAtOnce, Stage next, List<BulkSigningFailure> failures) {
+      this.type = type;
+      this.threadCount = threads.get(type);
+      this.queue = new ArrayBlockingQueue<>(queueSizes.get(type));
+      this.statistics = new StageStatistics(type, threadCount);
+      this.maxJobsAtOnce = maxJobsAtOnce;
+      this.next = next;
+      this.failures = failures;
+    }
+
+    /**
+     * Processes the jobs, calling {@link Stage#fail(Job, Exception)} for the failed ones.
+     *
+     * @return jobs to be passed on to the next stage
+     */
+    abstract List<Job> process(List<Job> jobs);
+
+    void start(ExecutorService executor) {
+      runningThreads.set(threadCount);
+      for (int i = 0; i < threadCount; i++) {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              processJobs();
+            } catch (InterruptedException e) {
+              logger.debug("Stage " + type + " was interrupted");
+            } finally {
+              if (runningThreads.decrementAndGet() == 0) {
+                end();
+              }
+            }
+          }
+        });
+      }
+    }
+
+    void fail(Job job, Exception e) {
+      logger.error("Signing " + job.document.getName() + " failed in stage " + type + ": " + e.getMessage());
+      failures.add(new BulkSigningFailure(job.document.getName(), type, e));
+    }
+
+    void end() {
+      try {
+        next.queue.put(END);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void processJobs() throws InterruptedException {
+      boolean ended = false;
+      while (!ended) {
+        List<Job> jobs = new ArrayList<>();
+        jobs.add(queue.take());
+        if (maxJobsAtOnce > 1) {
+          queue.drainTo(jobs, maxJobsAtOnce - 1);
+        }
+        ended = jobs.remove(END);
+        if (ended) {
+          queue.put(END);
+        }
+        if (jobs.isEmpty()) {
+          continue;
+        }
+        long start = System.nanoTime();
+        List<Job> processedJobs = process(jobs);
+        statistics.record(processedJobs.size(), jobs.size() - processedJobs.size(), start, System.nanoTime());
+        if (next != null) {
+          for (Job job : processedJobs) {
+            next.queue.put(job);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Stage processing every document on its own.
+   */
+  private abstract class SingleJobStage extends Stage {
+
+    SingleJobStage(BulkSigningStage type, Stage next, List<BulkSigningFailure> failures) {
+      super(type, 1, next, failures);
+    }
+
+    abstract void process(Job job);
+
+    @Override
+    List<Job> process(List<Job> jobs) {
+      List<Job> processedJobs = new ArrayList<>(jobs.size());
+      for (Job job : jobs) {
+        try {
+          process(job);
+          processedJobs.add(job);
+        } catch (RuntimeException e) {
+          fail(job, e);
+        }
+      }
+      return processedJobs;
+    }
+  }
+
+  private class BuildContainerStage extends SingleJobStage {
+
+    BuildContainerStage(Stage next, List<BulkSigningFailure> failures) {
+      super(BulkSigningStage.BUILD_CONTAINER, next, failures);
+    }
+
+    @Override
+    void process(Job job) {
+      ContainerBuilder containerBuilder = ContainerBuilder.aContainer(containerType).withConfiguration(configuration);
+      for (DataFile dataFile : job.document.getDataFiles()) {
+        containerBuilder.withDataFile(dataFile);
+      }
+      job.container = containerBuilder.build();
+    }
+  }
+
+  private class PrepareSignatureStage extends SingleJobStage {
+
+    private final X509Certificate signingCertificate;
+
+    PrepareSignatureStage(X509Certificate signingCertificate, Stage next, List<BulkSigningFailure> failures) {
+      super(BulkSigningStage.PREPARE_SIGNATURE, next, failures);
+      this.signingCertificate = signingCertificate;
+    }
+
+    @Override
+    void process(Job job) {
+      SignatureBuilder signatureBuilder = SignatureBuilder.
+          aSignature(job.container).
+          withSigningCertificate(signingCertificate);
+      if (signatureProfile != null) {
+        signatureBuilder.withSignatureProfile(signatureProfile);
+      }
+      if (signatureDigestAlgorithm != null) {
+        signatureBuilder.withSignatureDigestAlgorithm(signatureDigestAlgorithm);
+      }
+      job.dataToSign = signatureBuilder.buildDataToSign();
+    }
+  }
+
+  private class SignStage extends Stage {
+
+    private final BatchSignatureToken batchSignatureToken;
+
+    SignStage(BatchSignatureToken batchSignatureToken, Stage next, List<BulkSigningFailure> failures) {
+      super(BulkSigningStage.SIGN, batchSize, next, failures);
+      this.batchSignatureToken = batchSignatureToken;
+    }
+
+    @Override
+    List<Job> process(List<Job> jobs) {
+      logger.debug("Signing a batch of " + jobs.size() + " documents");
+      List<DataToSign> dataToSign = new ArrayList<>(jobs.size());
+      for (Job job : jobs) {
+        dataToSign.add(job.dataToSign);
+      }
+      try {
+        List<byte[]> signatureValues = batchSignatureToken.sign(dataToSign);
+        if (signatureValues.size() != jobs.size()) {
+          throw new TechnicalException("Signature token returned " + signatureValues.size() +
+              " signature values for " + jobs.size() + " documents");
+        }
+        for (int i = 0; i < jobs.size(); i++) {
+          jobs.get(i).signatureValue = signatureValues.get(i);
+        }
+        return jobs;
+      } catch (RuntimeException e) {
+        for (Job job : jobs) {
+          fail(job, e);
+        }
+        return Collections.emptyList();
+      }
+    }
+  }
+
+  private class FinalizeSignatureStage extends SingleJobStage {
+
+    FinalizeSignatureStage(Stage next, List<BulkSigningFailure> failures) {
+      super(BulkSigningStage.FINALIZE_SIGNATURE, next, failures);
+    }
+
+    @Override
+    void process(Job job) {
+      Signature signature = job.dataToSign.finalize(job.signatureValue);
+      job.container.addSignature(signature);
+      job.dataToSign = null;
+      job.signatureValue = null;
+    }
+  }
+
+  private class WriteContainerStage extends SingleJobStage {
+
+    private final ContainerSink sink;
+    private final CountDownLatch completed;
+
+    WriteContainerStage(ContainerSink sink, Stage next, CountDownLatch completed, List<BulkSigningFailure> failures) {
+      super(BulkSigningStage.WRITE_CONTAINER, next, failures);
+      this.sink = sink;
+      this.completed = completed;
+    }
+
+    @Override
+    void process(Job job) {
+      sink.write(job.document.getName(), job.container);
+      job.container = null;
+    }
+
+    @Override
+    void end() {
+      completed.countDown();
+    }
+  }
+}
@@ -0,0 +1,45 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.bulk;
+
+/**
+ * Document that could not be signed.
+ */
+public class BulkSigningFailure {
+
+  private final String documentName;
+  private final BulkSigningStage stage;
+  private final Exception exception;
+
+  BulkSigningFailure(String documentName, BulkSigningStage stage, Exception exception) {
+    this.documentName = documentName;
+    this.stage = stage;
+    this.exception = exception;
+  }
+
+  /**
+   * @return name of the document, null if the document could not be read from the source
+   */
+  public String getDocumentName() {
+    return documentName;
+  }
+
+  /**
+   * @return stage where signing the document failed
+   */
+  public BulkSigningStage getStage() {
+    return stage;
+  }
+
+  public Exception getException() {
+    return exception;
+  }
+}
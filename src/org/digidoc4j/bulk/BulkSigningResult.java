@@ -0,0 +1,51 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.bulk;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of a {@link BulkSigner} run.
+ */
+public class BulkSigningResult {
+
+  private final Map<BulkSigningStage, StageStatistics> statistics;
+  private final List<BulkSigningFailure> failures;
+
+  BulkSigningResult(Map<BulkSigningStage, StageStatistics> statistics, List<BulkSigningFailure> failures) {
+    this.statistics = statistics;
+    this.failures = failures;
+  }
+
+  /**
+   * @return number of signed containers written to the sink
+   */
+  public long getSignedCount() {
+    return statistics.get(BulkSigningStage.WRITE_CONTAINER).getProcessedCount();
+  }
+
+  /**
+   * @return documents that could not be signed
+   */
+  public List<BulkSigningFailure> getFailures() {
+    return Collections.unmodifiableList(failures);
+  }
+
+  /**
+   * @param stage pipeline stage
+   * @return throughput of the stage
+   */
+  public StageStatistics getStageStatistics(BulkSigningStage stage) {
+    return statistics.get(stage);
+  }
+}
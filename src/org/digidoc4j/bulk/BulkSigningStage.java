@@ -0,0 +1,47 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.bulk;
+
+/**
+ * Stages of the {@link BulkSigner} pipeline, in the order the documents pass them.
+ */
+public enum BulkSigningStage {
+
+  /**
+   * Reading the document from the source, by the thread calling {@link BulkSigner#sign(DocumentSource, ContainerSink)}
+   */
+  READ_DOCUMENT,
+
+  /**
+   * Creating the container of the document
+   */
+  BUILD_CONTAINER,
+
+  /**
+   * Building the data to be signed
+   */
+  PREPARE_SIGNATURE,
+
+  /**
+   * Signing the data with the signature token, in batches if the token supports it
+   */
+  SIGN,
+
+  /**
+   * Finalizing the signature, including the time-stamp and OCSP requests of the signature profile
+   */
+  FINALIZE_SIGNATURE,
+
+  /**
+   * Writing the signed container to the sink
+   */
+  WRITE_CONTAINER
+}
@@ -0,0 +1,28 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.bulk;
+
+import org.digidoc4j.Container;
+
+/**
+ * Destination of the containers signed by {@link BulkSigner}.
+ * <p/>
+ * Containers are written by the threads of the {@link BulkSigningStage#WRITE_CONTAINER} stage, so an implementation
+ * must be thread-safe unless the stage has a single thread.
+ */
+public interface ContainerSink {
+
+  /**
+   * @param name      name of the signed document
+   * @param container signed container
+   */
+  void write(String name, Container container);
+}
@@ -0,0 +1,41 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.bulk;
+
+import java.io.File;
+
+import org.digidoc4j.Container;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Saves the signed containers as files of a directory, named by the document name and the container type,
+ * e.g. invoice-1.bdoc.
+ */
+public class DirectoryContainerSink implements ContainerSink {
+
+  private static final Logger logger = LoggerFactory.getLogger(DirectoryContainerSink.class);
+  private final File directory;
+
+  /**
+   * @param directory existing directory the containers are saved to
+   */
+  public DirectoryContainerSink(File directory) {
+    this.directory = directory;
+  }
+
+  @Override
+  public void write(String name, Container container) {
+    File file = new File(directory, name + "." + container.getType().toLowerCase());
+    logger.debug("Saving container " + file.getPath());
+    container.saveAsFile(file.getPath());
+  }
+}
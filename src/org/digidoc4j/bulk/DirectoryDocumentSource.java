@@ -0,0 +1,52 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.bulk;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.digidoc4j.DataFile;
+import org.digidoc4j.exceptions.TechnicalException;
+
+/**
+ * Signs every file of a directory in its own container, named by the file name.
+ * Subdirectories are skipped.
+ */
+public class DirectoryDocumentSource implements DocumentSource {
+
+  private final File[] files;
+  private final String mimeType;
+  private int nextFile;
+
+  /**
+   * @param directory directory of the files to be signed
+   * @param mimeType  MIME type of the files, for example 'application/pdf'
+   */
+  public DirectoryDocumentSource(File directory, String mimeType) {
+    files = directory.listFiles();
+    if (files == null) {
+      throw new TechnicalException("Unable to list the files of directory " + directory.getPath());
+    }
+    Arrays.sort(files);
+    this.mimeType = mimeType;
+  }
+
+  @Override
+  public BulkDocument nextDocument() {
+    while (nextFile < files.length) {
+      File file = files[nextFile++];
+      if (file.isFile()) {
+        return new BulkDocument(file.getName(), new DataFile(file.getPath(), mimeType));
+      }
+    }
+    return null;
+  }
+}
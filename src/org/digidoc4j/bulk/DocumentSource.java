@@ -0,0 +1,28 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.bulk;
+
+/**
+ * Source of the documents signed by {@link BulkSigner}.
+ * <p/>
+ * The documents are read one at a time by the thread calling {@link BulkSigner#sign(DocumentSource, ContainerSink)}.
+ * Reading waits while the first stage of the pipeline is full, so the source doesn't need to hold all the documents.
+ * <p/>
+ * An exception thrown by the source is reported as a failure of the {@link BulkSigningStage#READ_DOCUMENT} stage
+ * and ends reading: the documents read before are still signed.
+ */
+public interface DocumentSource {
+
+  /**
+   * @return next document to be signed or null if there are no more documents
+   */
+  BulkDocument nextDocument();
+}
@@ -0,0 +1,96 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.bulk;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a single stage of the {@link BulkSigner} pipeline.
+ */
+public class StageStatistics {
+
+  private final BulkSigningStage stage;
+  private final int threads;
+  private long processedCount;
+  private long failedCount;
+  private long busyNanos;
+  private long firstStartNanos;
+  private long lastEndNanos;
+
+  StageStatistics(BulkSigningStage stage, int threads) {
+    this.stage = stage;
+    this.threads = threads;
+  }
+
+  synchronized void record(int processed, int failed, long startNanos, long endNanos) {
+    if (processedCount + failedCount == 0 || startNanos < firstStartNanos) {
+      firstStartNanos = startNanos;
+    }
+    lastEndNanos = Math.max(lastEndNanos, endNanos);
+    processedCount += processed;
+    failedCount += failed;
+    busyNanos += endNanos - startNanos;
+  }
+
+  public BulkSigningStage getStage() {
+    return stage;
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * @return number of documents passed on to the next stage
+   */
+  public synchronized long getProcessedCount() {
+    return processedCount;
+  }
+
+  /**
+   * @return number of documents failed in this stage
+   */
+  public synchronized long getFailedCount() {
+    return failedCount;
+  }
+
+  /**
+   * @return time spent processing documents, summed over all the threads of the stage
+   */
+  public synchronized long getBusyTimeInMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(busyNanos);
+  }
+
+  /**
+   * @return time from starting to process the first document to finishing the last document
+   */
+  public synchronized long getElapsedTimeInMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(lastEndNanos - firstStartNanos);
+  }
+
+  /**
+   * @return documents processed per second during the elapsed time of the stage
+   */
+  public synchronized double getThroughputPerSecond() {
+    long elapsedNanos = lastEndNanos - firstStartNanos;
+    if (elapsedNanos <= 0) {
+      return 0;
+    }
+    return processedCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("%s: %d processed, %d failed, %d threads, busy %d ms, elapsed %d ms, %.1f/s", stage,
+        processedCount, failedCount, threads, getBusyTimeInMillis(), getElapsedTimeInMillis(),
+        getThroughputPerSecond());
+  }
+}
@@ -0,0 +1,55 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.bulk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.digidoc4j.Container;
+import org.digidoc4j.exceptions.TechnicalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the signed containers to output streams, e.g. to an object store or a message queue.
+ * The stream of every container is closed after the container has been written.
+ */
+public abstract class StreamContainerSink implements ContainerSink {
+
+  private static final Logger logger = LoggerFactory.getLogger(StreamContainerSink.class);
+
+  /**
+   * @param name name of the signed document
+   * @return stream the container of the document is written to
+   * @throws IOException if the stream can't be opened
+   */
+  protected abstract OutputStream openStream(String name) throws IOException;
+
+  @Override
+  public void write(String name, Container container) {
+    logger.debug("Writing container " + name);
+    InputStream containerStream = container.saveAsStream();
+    OutputStream outputStream = null;
+    try {
+      outputStream = openStream(name);
+      IOUtils.copy(containerStream, outputStream);
+      outputStream.close();
+    } catch (IOException e) {
+      logger.error("Writing container " + name + " failed: " + e.getMessage());
+      IOUtils.closeQuietly(outputStream);
+      throw new TechnicalException("Writing container " + name + " failed", e);
+    } finally {
+      IOUtils.closeQuietly(containerStream);
+    }
+  }
+}
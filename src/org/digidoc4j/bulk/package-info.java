@@ -0,0 +1,15 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+/**
+ * Signing large numbers of containers with a single signature token, e.g. sealing generated documents
+ * with an e-seal certificate.
+ */
+package org.digidoc4j.bulk;
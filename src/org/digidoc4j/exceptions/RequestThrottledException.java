@@ -0,0 +1,26 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.exceptions;
+
+/**
+ * Request to an OCSP responder or a time-stamping authority was rejected by the client side request limits
+ * (too many requests waiting or the request could not be sent within the maximum waiting time).
+ */
+public class RequestThrottledException extends DigiDoc4JException {
+
+  public RequestThrottledException(String message) {
+    super(message);
+  }
+
+  public RequestThrottledException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,166 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.impl;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.Signature;
+import java.security.cert.CertificateFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.digidoc4j.Configuration;
+import org.digidoc4j.exceptions.DigiDoc4JException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.europa.esig.dss.DSSXMLUtils;
+import eu.europa.esig.dss.validation.ValidationResourceManager;
+
+/**
+ * Runs the initializations otherwise done lazily by the first signing or validation in parallel:
+ * loading the TSL, registering the crypto provider and warming up the crypto algorithms,
+ * and initializing the XML factories, JAXB contexts and the validation policy.
+ */
+public class ConfigurationPrewarmer {
+
+  private static final Logger logger = LoggerFactory.getLogger(ConfigurationPrewarmer.class);
+  private final Configuration configuration;
+
+  public ConfigurationPrewarmer(Configuration configuration) {
+    this.configuration = configuration;
+  }
+
+  /**
+   * Starts the initializations in background threads.
+   *
+   * @return future completed when all the initializations have finished
+   */
+  public Future<Configuration> start() {
+    final ExecutorService executor = Executors.newFixedThreadPool(3, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "digidoc4j-prewarm");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    final List<Future<?>> tasks = new ArrayList<>();
+    tasks.add(executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        loadTsl();
+        return null;
+      }
+    }));
+    tasks.add(executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        initializeCrypto();
+        return null;
+      }
+    }));
+    tasks.add(executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        initializeValidation();
+        return null;
+      }
+    }));
+    FutureTask<Configuration> prewarming = new FutureTask<>(new Callable<Configuration>() {
+      @Override
+      public Configuration call() throws Exception {
+        try {
+          for (Future<?> task : tasks) {
+            waitFor(task);
+          }
+          logger.info("Prewarming finished");
+          return configuration;
+        } finally {
+          executor.shutdownNow();
+        }
+      }
+    });
+    Thread prewarmingThread = new Thread(prewarming, "digidoc4j-prewarm");
+    prewarmingThread.setDaemon(true);
+    prewarmingThread.start();
+    return prewarming;
+  }
+
+  private void loadTsl() {
+    logger.debug("Prewarming TSL");
+    configuration.getTSL();
+  }
+
+  private void initializeCrypto() throws Exception {
+    logger.debug("Prewarming crypto");
+    if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+    MessageDigest.getInstance("SHA-256").digest(new byte[0]);
+    Signature.getInstance("SHA256withRSA");
+    Signature.getInstance("SHA256withECDSA");
+    CertificateFactory.getInstance("X.509");
+    new SecureRandom().nextBytes(new byte[20]);
+  }
+
+  private void initializeValidation() throws Exception {
+    logger.debug("Prewarming XML and validation policy");
+    DSSXMLUtils.buildDOM();
+    DSSXMLUtils.getSecureTransformerFactory().newTransformer();
+    InputStream validationPolicy = getValidationPolicyAsStream();
+    try {
+      ValidationResourceManager.loadPolicyData(validationPolicy);
+    } finally {
+      IOUtils.closeQuietly(validationPolicy);
+    }
+  }
+
+  private InputStream getValidationPolicyAsStream() {
+    String policyFile = configuration.getValidationPolicy();
+    if (Files.exists(Paths.get(policyFile))) {
+      try {
+        return new FileInputStream(policyFile);
+      } catch (FileNotFoundException ignore) {
+        logger.warn(ignore.getMessage());
+      }
+    }
+    return getClass().getClassLoader().getResourceAsStream(policyFile);
+  }
+
+  private void waitFor(Future<?> task) throws InterruptedException {
+    try {
+      task.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      logger.error("Prewarming failed: " + cause.getMessage());
+      if (cause instanceof DigiDoc4JException) {
+        throw (DigiDoc4JException) cause;
+      }
+      throw new DigiDoc4JException(cause);
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.impl;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Base64;
+import org.digidoc4j.exceptions.NotSupportedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.europa.esig.dss.CommonDocument;
+import eu.europa.esig.dss.DSSException;
+import eu.europa.esig.dss.DigestAlgorithm;
+import eu.europa.esig.dss.MimeType;
+
+/**
+ * @see eu.europa.esig.dss.DSSDocument implementation holding only the name, MIME type and digests of a document.
+ * Signatures referencing the document can be created without its content.
+ */
+public class DigestOnlyDocument extends CommonDocument {
+
+  private static final Logger logger = LoggerFactory.getLogger(DigestOnlyDocument.class);
+  private final Map<DigestAlgorithm, String> digests = new HashMap<>();
+
+  /**
+   * @param documentName    document name
+   * @param mimeType        mime type
+   * @param digestAlgorithm digest algorithm
+   * @param digest          digest of the document content
+   */
+  public DigestOnlyDocument(String documentName, MimeType mimeType, DigestAlgorithm digestAlgorithm, byte[] digest) {
+    logger.debug("Document name: " + documentName + ", mime type: " + mimeType);
+    this.name = documentName;
+    this.mimeType = mimeType;
+    addDigest(digestAlgorithm, digest);
+  }
+
+  public void addDigest(DigestAlgorithm digestAlgorithm, byte[] digest) {
+    digests.put(digestAlgorithm, Base64.encodeBase64String(digest));
+  }
+
+  public boolean hasDigest(DigestAlgorithm digestAlgorithm) {
+    return digests.containsKey(digestAlgorithm);
+  }
+
+  @Override
+  public String getDigest(DigestAlgorithm digestAlgorithm) {
+    String digest = digests.get(digestAlgorithm);
+    if (digest == null) {
+      String errorMessage = digestAlgorithm + " digest of " + name + " is not available";
+      logger.error(errorMessage);
+      throw new NotSupportedException(errorMessage);
+    }
+    return digest;
+  }
+
+  @Override
+  public InputStream openStream() throws DSSException {
+    throw contentNotAvailable();
+  }
+
+  @Override
+  public byte[] getBytes() throws DSSException {
+    throw contentNotAvailable();
+  }
+
+  @Override
+  public void save(String filePath) {
+    throw contentNotAvailable();
+  }
+
+  @Override
+  public String getBase64Encoded() {
+    throw contentNotAvailable();
+  }
+
+  private NotSupportedException contentNotAvailable() {
+    String errorMessage = "Content of " + name + " is not available, only its digest";
+    logger.error(errorMessage);
+    return new NotSupportedException(errorMessage);
+  }
+}
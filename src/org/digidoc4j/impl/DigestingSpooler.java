@@ -0,0 +1,148 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.europa.esig.dss.DSSDocument;
+import eu.europa.esig.dss.DSSUtils;
+import eu.europa.esig.dss.DigestAlgorithm;
+import eu.europa.esig.dss.InMemoryDocument;
+import eu.europa.esig.dss.MimeType;
+
+/**
+ * Reads a stream once, calculating its digests while storing the content in memory or in a temporary file.
+ * <p/>
+ * The content is kept in memory until it grows larger than the given limit and is moved to a temporary file
+ * after that. The created document returns the calculated digests without reading the content again.
+ */
+public class DigestingSpooler {
+
+  private static final Logger logger = LoggerFactory.getLogger(DigestingSpooler.class);
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private final long maxBytesInMemory;
+  private final Collection<DigestAlgorithm> digestAlgorithms;
+
+  /**
+   * @param maxBytesInMemory largest content kept in memory, negative to write every content to a temporary file
+   * @param digestAlgorithms algorithms of the digests calculated while reading the content
+   */
+  public DigestingSpooler(long maxBytesInMemory, Collection<DigestAlgorithm> digestAlgorithms) {
+    this.maxBytesInMemory = maxBytesInMemory;
+    this.digestAlgorithms = digestAlgorithms;
+  }
+
+  /**
+   * Reads the stream to the end. The stream is not closed.
+   *
+   * @param stream       content
+   * @param documentName document name
+   * @param mimeType     mime type
+   * @return document of the content with its digests already calculated
+   * @throws IOException if reading the stream or writing the temporary file fails
+   */
+  public DSSDocument spool(InputStream stream, String documentName, MimeType mimeType) throws IOException {
+    logger.debug("Spooling " + documentName + " with digest algorithms " + digestAlgorithms);
+    Map<DigestAlgorithm, MessageDigest> messageDigests = new EnumMap<>(DigestAlgorithm.class);
+    for (DigestAlgorithm digestAlgorithm : digestAlgorithms) {
+      messageDigests.put(digestAlgorithm, DSSUtils.getMessageDigest(digestAlgorithm));
+    }
+    ByteArrayOutputStream memory = new ByteArrayOutputStream();
+    File temporaryFile = null;
+    OutputStream out = memory;
+    try {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      long size = 0;
+      int count;
+      while ((count = stream.read(buffer)) != -1) {
+        for (MessageDigest messageDigest : messageDigests.values()) {
+          messageDigest.update(buffer, 0, count);
+        }
+        size += count;
+        if (temporaryFile == null && size > maxBytesInMemory) {
+          temporaryFile = File.createTempFile("digidoc4j", ".tmp");
+          logger.debug("Content of " + documentName + " exceeds " + maxBytesInMemory + " bytes, moving it to " +
+              temporaryFile.getPath());
+          out = new FileOutputStream(temporaryFile);
+          memory.writeTo(out);
+          memory = null;
+        }
+        out.write(buffer, 0, count);
+      }
+      out.flush();
+      logger.debug("Spooled " + size + " bytes of " + documentName);
+    } catch (IOException e) {
+      IOUtils.closeQuietly(out);
+      if (temporaryFile != null && !temporaryFile.delete()) {
+        logger.warn("Could not delete temporary file " + temporaryFile.getPath());
+      }
+      throw e;
+    }
+    out.close();
+
+    Map<DigestAlgorithm, String> digests = new EnumMap<>(DigestAlgorithm.class);
+    for (Map.Entry<DigestAlgorithm, MessageDigest> entry : messageDigests.entrySet()) {
+      digests.put(entry.getKey(), Base64.encodeBase64String(entry.getValue().digest()));
+    }
+    if (temporaryFile == null) {
+      return new SpooledInMemoryDocument(memory.toByteArray(), documentName, mimeType, digests);
+    }
+    return new SpooledStreamDocument(temporaryFile, documentName, mimeType, digests);
+  }
+
+  private static class SpooledInMemoryDocument extends InMemoryDocument {
+
+    private final Map<DigestAlgorithm, String> digests;
+
+    SpooledInMemoryDocument(byte[] bytes, String documentName, MimeType mimeType,
+                            Map<DigestAlgorithm, String> digests) {
+      super(bytes, documentName, mimeType);
+      this.digests = digests;
+    }
+
+    @Override
+    public String getDigest(DigestAlgorithm digestAlgorithm) {
+      String digest = digests.get(digestAlgorithm);
+      return digest != null ? digest : super.getDigest(digestAlgorithm);
+    }
+  }
+
+  private static class SpooledStreamDocument extends StreamDocument {
+
+    private final Map<DigestAlgorithm, String> digests;
+
+    SpooledStreamDocument(File temporaryFile, String documentName, MimeType mimeType,
+                          Map<DigestAlgorithm, String> digests) {
+      super(temporaryFile, documentName, mimeType);
+      this.digests = digests;
+    }
+
+    @Override
+    public String getDigest(DigestAlgorithm digestAlgorithm) {
+      String digest = digests.get(digestAlgorithm);
+      return digest != null ? digest : super.getDigest(digestAlgorithm);
+    }
+  }
+}
@@ -52,6 +52,20 @@ public class StreamDocument extends CommonDocument {
     this.mimeType = mimeType;
   }
 
+  /**
+   * Creates the document of a temporary file the content has already been written to.
+   *
+   * @param temporaryFile temporary file holding the content
+   * @param documentName  document Name
+   * @param mimeType      mime type
+   */
+  protected StreamDocument(File temporaryFile, String documentName, MimeType mimeType) {
+    logger.debug("Document name: " + documentName + ", mime type: " + mimeType);
+    this.temporaryFile = temporaryFile;
+    this.documentName = documentName;
+    this.mimeType = mimeType;
+  }
+
   private void createTemporaryFileOfStream(InputStream stream) {
     logger.debug("");
     byte[] bytes = new byte[MAX_SIZE_IN_MEMORY];
@@ -38,6 +38,7 @@ import org.digidoc4j.exceptions.NotYetImplementedException;
 import org.digidoc4j.exceptions.RemovingDataFileException;
 import org.digidoc4j.exceptions.TechnicalException;
 import org.digidoc4j.impl.bdoc.asic.AsicContainerCreator;
+import org.digidoc4j.impl.bdoc.asic.DataFileDigestCache;
 import org.digidoc4j.impl.bdoc.asic.DetachedContentCreator;
 import org.digidoc4j.impl.bdoc.xades.SignatureExtender;
 import org.digidoc4j.utils.Helper;
@@ -51,6 +52,7 @@ public abstract class BDocContainer implements Container {
   private static final Logger logger = LoggerFactory.getLogger(BDocContainer.class);
   private Configuration configuration;
   private ValidationResult validationResult;
+  private transient DataFileDigestCache dataFileDigestCache;
 
   public BDocContainer() {
     logger.debug("Instantiating BDoc container");
@@ -103,6 +105,16 @@ public abstract class BDocContainer implements Container {
     return configuration;
   }
 
+  /**
+   * @return digests of the data files, shared by all the signatures created for this container
+   */
+  public synchronized DataFileDigestCache getDataFileDigestCache() {
+    if (dataFileDigestCache == null) {
+      dataFileDigestCache = new DataFileDigestCache();
+    }
+    return dataFileDigestCache;
+  }
+
   protected List<Signature> parseSignatureFiles(List<DSSDocument> signatureFiles, List<DSSDocument> detachedContents) {
     Configuration configuration = getConfiguration();
     BDocSignatureOpener signatureOpener = new BDocSignatureOpener(detachedContents, configuration);
@@ -128,8 +140,8 @@ public abstract class BDocContainer implements Container {
     List<DSSDocument> detachedContentList = detachedContentCreator.getDetachedContentList();
     SignatureExtender signatureExtender = new SignatureExtender(getConfiguration(), firstDetachedContent);
     Collection<DSSDocument> signatureDocuments = generateSignatureDocumentsList(signatures);
-    List<DSSDocument> extendedSignatureDocuments = signatureExtender.extend(signatureDocuments, profile);
-    List<Signature> extendedSignatures = parseSignatureFiles(extendedSignatureDocuments, detachedContentList);
+    List<Signature> extendedSignatures = new ArrayList<Signature>(
+        signatureExtender.extendSignatures(signatureDocuments, profile, detachedContentList));
     logger.debug("Finished extending all signatures");
     return extendedSignatures;
   }
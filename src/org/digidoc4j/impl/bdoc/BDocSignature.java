@@ -12,8 +12,11 @@ package org.digidoc4j.impl.bdoc;
 
 import java.net.URI;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
+import org.apache.commons.lang.StringUtils;
 import org.digidoc4j.Signature;
 import org.digidoc4j.SignatureProfile;
 import org.digidoc4j.X509Cert;
@@ -24,8 +27,10 @@ import org.digidoc4j.impl.bdoc.xades.XadesSignature;
 import org.digidoc4j.impl.bdoc.xades.XadesSignatureValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
 
 import eu.europa.esig.dss.DSSDocument;
+import eu.europa.esig.dss.DSSXMLUtils;
 import eu.europa.esig.dss.DigestAlgorithm;
 import eu.europa.esig.dss.validation.report.Reports;
 import eu.europa.esig.dss.xades.validation.XAdESSignature;
@@ -35,6 +40,7 @@ import eu.europa.esig.dss.xades.validation.XAdESSignature;
  */
 public class BDocSignature implements Signature {
   private static final Logger logger = LoggerFactory.getLogger(BDocSignature.class);
+  private static final String XADES_SIGNED_PROPERTIES = "http://uri.etsi.org/01903#SignedProperties";
   private SignatureValidationResult validationResult;
   private XadesSignature xadesSignature;
   private XadesSignatureValidator validator;
@@ -209,4 +215,21 @@ public class BDocSignature implements Signature {
   DigestAlgorithm getSignatureDigestAlgorithm() {
     return getOrigin().getDigestAlgorithm();
   }
+
+  /**
+   * @return digest algorithms of the signature references of the data files
+   */
+  Set<DigestAlgorithm> getDataFileReferenceDigestAlgorithms() {
+    Set<DigestAlgorithm> digestAlgorithms = new LinkedHashSet<>();
+    for (Element reference : getOrigin().getSignatureReferences()) {
+      if (!StringUtils.equals(XADES_SIGNED_PROPERTIES, reference.getAttribute("Type"))) {
+        String algorithm = DSSXMLUtils.getValue(reference, "./ds:DigestMethod/@Algorithm");
+        DigestAlgorithm digestAlgorithm = DigestAlgorithm.forXML(algorithm, null);
+        if (digestAlgorithm != null) {
+          digestAlgorithms.add(digestAlgorithm);
+        }
+      }
+    }
+    return digestAlgorithms;
+  }
 }
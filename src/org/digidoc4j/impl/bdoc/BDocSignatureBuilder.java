@@ -19,6 +19,8 @@ import static org.apache.commons.codec.binary.Base64.decodeBase64;
 import static org.apache.commons.lang.StringUtils.isEmpty;
 
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
@@ -28,14 +30,18 @@ import org.digidoc4j.Configuration;
 import org.digidoc4j.DataFile;
 import org.digidoc4j.DataToSign;
 import org.digidoc4j.DigestAlgorithm;
+import org.digidoc4j.DigestDataFile;
 import org.digidoc4j.EncryptionAlgorithm;
 import org.digidoc4j.Signature;
 import org.digidoc4j.SignatureBuilder;
 import org.digidoc4j.SignatureProfile;
+import org.digidoc4j.SigningSession;
 import org.digidoc4j.exceptions.ContainerWithoutFilesException;
+import org.digidoc4j.exceptions.DigiDoc4JException;
 import org.digidoc4j.exceptions.OCSPRequestFailedException;
 import org.digidoc4j.exceptions.SignerCertificateRequiredException;
 import org.digidoc4j.impl.SignatureFinalizer;
+import org.digidoc4j.impl.bdoc.asic.DataFileDigestCache;
 import org.digidoc4j.impl.bdoc.asic.DetachedContentCreator;
 import org.digidoc4j.impl.bdoc.xades.XadesSigningDssFacade;
 import org.slf4j.Logger;
@@ -70,7 +76,7 @@ public class BDocSignatureBuilder extends SignatureBuilder implements SignatureF
   public DataToSign buildDataToSign() throws SignerCertificateRequiredException, ContainerWithoutFilesException {
     byte[] dataToSign = getDataToBeSigned();
     byte[] digestToSign = calculateDigestToSign(dataToSign);
-    return new DataToSign(digestToSign, signatureParameters, this);
+    return new DataToSign(digestToSign, dataToSign, signatureParameters, this);
   }
 
   @Override
@@ -83,14 +89,62 @@ public class BDocSignatureBuilder extends SignatureBuilder implements SignatureF
     return createSignature(signedDocument);
   }
 
+  /**
+   * Creates a signing session holding only what is needed for finalizing the signature.
+   * Must be called after the data to sign has been built.
+   *
+   * @param digestToSign digest to be signed externally
+   * @return signing session
+   */
+  public SigningSession createSigningSession(byte[] digestToSign) {
+    logger.debug("Creating signing session");
+    DigestAlgorithm digestAlgorithm = signatureParameters.getDigestAlgorithm();
+    DataFileDigestCache digestCache = getDataFileDigestCache();
+    digestCache.calculateDigests(getDataFiles(), digestAlgorithm.getDssDigestAlgorithm());
+    List<DigestDataFile> digestDataFiles = new ArrayList<>();
+    for (DataFile dataFile : getDataFiles()) {
+      DSSDocument document = dataFile.getDocument();
+      byte[] digest = decodeBase64(digestCache.getDigest(dataFile, digestAlgorithm.getDssDigestAlgorithm()));
+      digestDataFiles.add(new DigestDataFile(document.getName(), dataFile.getMediaType(), digestAlgorithm, digest));
+    }
+    return new SigningSession(digestToSign, signatureParameters, signingDate, digestDataFiles);
+  }
+
+  /**
+   * Finalizes a signature from a signing session, using the data file digests of the session
+   * instead of the data files.
+   *
+   * @param session        signing session
+   * @param signatureValue externally created signature value
+   * @param configuration  configuration used for finalizing the signature
+   * @return finalized signature
+   */
+  public static Signature finalizeSigningSession(SigningSession session, byte[] signatureValue,
+                                                 Configuration configuration) {
+    NewBDocContainer container = new NewBDocContainer(configuration);
+    for (DigestDataFile dataFile : session.getDataFiles()) {
+      container.addDataFile(dataFile);
+    }
+    BDocSignatureBuilder builder = new BDocSignatureBuilder();
+    builder.setContainer(container);
+    builder.signatureParameters = session.getSignatureParameters();
+    builder.signingDate = session.getSigningDate();
+    byte[] digestToSign = builder.calculateDigestToSign(builder.getDataToBeSigned());
+    if (!Arrays.equals(digestToSign, session.getDigestToSign())) {
+      logger.error("Signing session does not match the rebuilt data to sign");
+      throw new DigiDoc4JException("Signing session does not match the rebuilt data to sign");
+    }
+    return builder.finalizeSignature(signatureValue);
+  }
+
   private Signature createSignature(DSSDocument signedDocument) {
-    logger.debug("Opening signed document validator");
+    logger.debug("Opening signed document");
     Configuration configuration = getConfiguration();
-    DetachedContentCreator detachedContentCreator = new DetachedContentCreator().populate(getDataFiles());
+    DetachedContentCreator detachedContentCreator = new DetachedContentCreator().populate(getDataFiles(),
+        getDataFileDigestCache());
     List<DSSDocument> detachedContents = detachedContentCreator.getDetachedContentList();
     BDocSignatureOpener signatureOpener = new BDocSignatureOpener(detachedContents, configuration);
-    List<BDocSignature> signatureList = signatureOpener.parse(signedDocument);
-    BDocSignature signature = signatureList.get(0); //Only one signature was created
+    BDocSignature signature = signatureOpener.open(signedDocument);
     validateOcspResponse(signature.getOrigin());
     logger.info("Signing BDoc successfully completed");
     return signature;
@@ -135,7 +189,8 @@ public class BDocSignatureBuilder extends SignatureBuilder implements SignatureF
   private void initSigningFacade() {
     if (facade == null) {
       Configuration configuration = getConfiguration();
-      facade = new XadesSigningDssFacade(configuration.getTspSource());
+      facade = new XadesSigningDssFacade(configuration);
+      facade.setDataFileDigestCache(getDataFileDigestCache());
     }
   }
 
@@ -148,6 +203,10 @@ public class BDocSignatureBuilder extends SignatureBuilder implements SignatureF
     return ((BDocContainer) container).getConfiguration();
   }
 
+  private DataFileDigestCache getDataFileDigestCache() {
+    return ((BDocContainer) container).getDataFileDigestCache();
+  }
+
   private List<DataFile> getDataFiles() {
     return container.getDataFiles();
   }
@@ -269,5 +328,14 @@ public class BDocSignatureBuilder extends SignatureBuilder implements SignatureF
       logger.error("Container does not contain any data files");
       throw new ContainerWithoutFilesException();
     }
+    DigestAlgorithm digestAlgorithm = signatureParameters.getDigestAlgorithm();
+    for (DataFile dataFile : dataFilesToSign) {
+      if (dataFile instanceof DigestDataFile && !((DigestDataFile) dataFile).hasDigest(digestAlgorithm)) {
+        String errorMessage = "Hashcode data file " + dataFile.getName() + " has no " + digestAlgorithm.name() +
+            " digest required by the signature digest algorithm";
+        logger.error(errorMessage);
+        throw new DigiDoc4JException(errorMessage);
+      }
+    }
   }
 }
@@ -56,6 +56,21 @@ public class BDocSignatureOpener {
     return signatures;
   }
 
+  /**
+   * Opens a signature just created by this library. The signed document validator and the validation report
+   * are created only when the signature is validated.
+   *
+   * @param xadesDocument XAdES document containing one signature
+   * @return signature
+   */
+  public BDocSignature open(DSSDocument xadesDocument) {
+    logger.debug("Opening created xades signature");
+    XAdESSignature xAdESSignature = validationDssFacade.openXadesSignature(xadesDocument);
+    BDocSignature bDocSignature = createBDocSignature(xAdESSignature, xadesDocument);
+    bDocSignature.setSignatureDocument(xadesDocument);
+    return bDocSignature;
+  }
+
   private BDocSignature createBDocSignature(XAdESSignature xAdESSignature, DSSDocument xadesDocument) {
     XadesSignature signature = xadesSignatureParser.parse(xAdESSignature);
     XadesSignatureValidator xadesValidator = createSignatureValidator(xadesDocument, signature);
@@ -13,11 +13,15 @@ package org.digidoc4j.impl.bdoc;
 import java.io.File;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.digidoc4j.Configuration;
 import org.digidoc4j.DataFile;
+import org.digidoc4j.DigestAlgorithm;
+import org.digidoc4j.DigestDataFile;
 import org.digidoc4j.Signature;
 import org.digidoc4j.SignatureProfile;
 import org.digidoc4j.ValidationResult;
@@ -26,9 +30,11 @@ import org.digidoc4j.exceptions.RemovingDataFileException;
 import org.digidoc4j.impl.bdoc.asic.AsicContainerCreator;
 import org.digidoc4j.impl.bdoc.asic.AsicEntry;
 import org.digidoc4j.impl.bdoc.asic.AsicFileContainerParser;
+import org.digidoc4j.impl.bdoc.asic.AsicHashcodes;
 import org.digidoc4j.impl.bdoc.asic.AsicParseResult;
 import org.digidoc4j.impl.bdoc.asic.AsicStreamContainerParser;
 import org.digidoc4j.impl.bdoc.asic.BDocContainerValidator;
+import org.digidoc4j.impl.bdoc.asic.DetachedContentCreator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,12 +70,34 @@ public class ExistingBDocContainer extends BDocContainer {
 
   @Override
   protected ValidationResult validateContainer() {
+    calculateDataFileDigests();
     BDocContainerValidator validator = new BDocContainerValidator(containerParseResult);
     validator.setValidateManifest(!dataFilesHaveChanged);
     ValidationResult validationResult = validator.validate(getSignatures());
     return validationResult;
   }
 
+  /**
+   * Calculates the digests of the signed data files in parallel before validating the signatures, so that
+   * the signature references are validated with the cached digests instead of digesting the data files
+   * one after another.
+   */
+  private void calculateDataFileDigests() {
+    Set<eu.europa.esig.dss.DigestAlgorithm> digestAlgorithms = new LinkedHashSet<>();
+    for (Signature signature : allSignatures) {
+      digestAlgorithms.addAll(((BDocSignature) signature).getDataFileReferenceDigestAlgorithms());
+    }
+    List<DataFile> dataFiles = new ArrayList<>();
+    for (DataFile dataFile : containerParseResult.getDataFiles()) {
+      if (!(dataFile instanceof DigestDataFile)) {
+        dataFiles.add(dataFile);
+      }
+    }
+    for (eu.europa.esig.dss.DigestAlgorithm digestAlgorithm : digestAlgorithms) {
+      getDataFileDigestCache().calculateDigests(dataFiles, digestAlgorithm);
+    }
+  }
+
   @Override
   public void extendSignatureProfile(SignatureProfile profile) {
     removeAllExistingSignaturesFromContainer();
@@ -107,6 +135,8 @@ public class ExistingBDocContainer extends BDocContainer {
     newDataFiles.add(dataFile);
     dataFilesHaveChanged = true;
     removeExistingFileFromContainer(Manifest.XML_PATH);
+    removeExistingFileFromContainer(AsicHashcodes.getXmlPath(DigestAlgorithm.SHA256));
+    removeExistingFileFromContainer(AsicHashcodes.getXmlPath(DigestAlgorithm.SHA512));
   }
 
   @Override
@@ -167,6 +197,7 @@ public class ExistingBDocContainer extends BDocContainer {
     zipCreator.writeExistingEntries(containerParseResult.getAsicEntries());
     if(dataFilesHaveChanged) {
       zipCreator.writeManifest(allDataFiles);
+      zipCreator.writeHashcodes(allDataFiles);
     }
     zipCreator.writeSignatures(newSignatures, nextSignatureFileIndex);
     zipCreator.writeDataFiles(newDataFiles);
@@ -192,11 +223,18 @@ public class ExistingBDocContainer extends BDocContainer {
     containerParseResult = parseResult;
     getDataFiles().addAll(parseResult.getDataFiles());
     List<DSSDocument> signatureFiles = parseResult.getSignatures();
-    List<DSSDocument> detachedContents = parseResult.getDetachedContents();
-    List<Signature> bDocSignatures = parseSignatureFiles(signatureFiles, detachedContents);
+    List<Signature> bDocSignatures = parseSignatureFiles(signatureFiles, getSignedContents(parseResult));
     allSignatures.addAll(bDocSignatures);
   }
 
+  private List<DSSDocument> getSignedContents(AsicParseResult parseResult) {
+    List<DataFile> dataFiles = parseResult.getDataFiles();
+    if (dataFiles.isEmpty()) {
+      return parseResult.getDetachedContents();
+    }
+    return new DetachedContentCreator().populate(dataFiles, getDataFileDigestCache()).getDetachedContentList();
+  }
+
   private void removeExistingSignature(BDocSignature signature) {
     DSSDocument signatureDocument = signature.getSignatureDocument();
     if (signatureDocument == null) {
@@ -142,6 +142,7 @@ public class NewBDocContainer extends BDocContainer {
     zipCreator.writeAsiceMimeType();
     zipCreator.writeManifest(dataFiles);
     zipCreator.writeDataFiles(dataFiles);
+    zipCreator.writeHashcodes(dataFiles);
     zipCreator.writeSignatures(signatures, startingSignatureFileIndex);
     zipCreator.writeContainerComment(userAgent);
     zipCreator.finalizeZipFile();
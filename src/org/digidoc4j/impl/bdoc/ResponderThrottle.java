@@ -0,0 +1,288 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.impl.bdoc;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.digidoc4j.Configuration;
+import org.digidoc4j.exceptions.ConfigurationException;
+import org.digidoc4j.exceptions.RequestThrottledException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Client side request limits of a single OCSP responder or time-stamping authority.
+ * <p/>
+ * Combines a rate limiter (token bucket holding a single token, so the quota is never exceeded in any one second
+ * window) with a bulkhead limiting the number of simultaneous requests. Waiting requests are served in the order
+ * of arrival. A request fails fast with {@link RequestThrottledException} when too many requests are already
+ * waiting or when it could not be sent within the maximum waiting time.
+ * <p/>
+ * A share of the rate and of the concurrent requests can be reserved for {@link Priority#INTERACTIVE} requests,
+ * so that batch jobs (e.g. extending signatures) cannot use up all the capacity needed for signing. Interactive
+ * requests are then scheduled separately from batch requests and never wait behind the batch backlog; they
+ * may also use the batch share of the rate while it is idle.
+ * <p/>
+ * Throttles are shared by all the data loaders of the same responder URL and request limits in the JVM.
+ */
+public class ResponderThrottle {
+
+  private static final Logger logger = LoggerFactory.getLogger(ResponderThrottle.class);
+  private static final long ONE_SECOND_IN_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final Map<String, ResponderThrottle> throttles = new HashMap<>();
+
+  private final String responderUrl;
+  private final int requestsPerSecond;
+  private final int maxConcurrentRequests;
+  private final int maxQueuedRequests;
+  private final long maxWaitInMilliseconds;
+  private final int interactiveReservedPercentage;
+  private final long batchRequestIntervalNanos;
+  private final long interactiveRequestIntervalNanos;
+  private final Semaphore concurrentRequestPermits;
+  private final Semaphore batchRequestPermits;
+  private final AtomicInteger queuedRequests = new AtomicInteger();
+  private final ReentrantLock schedulingLock = new ReentrantLock(true);
+  private long nextBatchRequestTime;
+  private long nextInteractiveRequestTime;
+
+  /**
+   * Request priority
+   */
+  public enum Priority {
+    INTERACTIVE,
+    BATCH
+  }
+
+  ResponderThrottle(String responderUrl, int requestsPerSecond, int maxConcurrentRequests, int maxQueuedRequests,
+                    long maxWaitInMilliseconds, int interactiveReservedPercentage) {
+    if (interactiveReservedPercentage < 0 || interactiveReservedPercentage > 99) {
+      throw new ConfigurationException("Reserved share of interactive requests must be between 0 and 99 percent" +
+          " but the actual value is: " + interactiveReservedPercentage);
+    }
+    this.responderUrl = responderUrl;
+    this.requestsPerSecond = requestsPerSecond;
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    this.maxQueuedRequests = maxQueuedRequests;
+    this.maxWaitInMilliseconds = maxWaitInMilliseconds;
+    this.interactiveReservedPercentage = interactiveReservedPercentage;
+    batchRequestIntervalNanos = getRequestInterval(requestsPerSecond, 100 - interactiveReservedPercentage);
+    interactiveRequestIntervalNanos = getRequestInterval(requestsPerSecond, interactiveReservedPercentage);
+    nextBatchRequestTime = System.nanoTime();
+    nextInteractiveRequestTime = nextBatchRequestTime;
+    if (maxConcurrentRequests > 0) {
+      int reservedPermits = (maxConcurrentRequests * interactiveReservedPercentage + 99) / 100;
+      if (reservedPermits >= maxConcurrentRequests) {
+        throw new ConfigurationException("Reserving " + interactiveReservedPercentage + " percent of "
+            + maxConcurrentRequests + " concurrent requests for interactive requests leaves no requests for batch"
+            + " requests");
+      }
+      concurrentRequestPermits = new Semaphore(maxConcurrentRequests, true);
+      batchRequestPermits = new Semaphore(maxConcurrentRequests - reservedPermits, true);
+    } else {
+      concurrentRequestPermits = null;
+      batchRequestPermits = null;
+    }
+  }
+
+  /**
+   * Returns the throttle of the OCSP responder in the configuration.
+   *
+   * @param configuration configuration to use
+   * @return throttle or null when no OCSP request limits are configured
+   */
+  public static ResponderThrottle forOcspResponder(Configuration configuration) {
+    return getThrottle(configuration.getOcspSource(), configuration.getOcspRequestsPerSecond(),
+        configuration.getOcspMaxConcurrentRequests(), configuration);
+  }
+
+  /**
+   * Returns the throttle of the time-stamping authority in the configuration.
+   *
+   * @param configuration configuration to use
+   * @return throttle or null when no time-stamp request limits are configured
+   */
+  public static ResponderThrottle forTimestampingAuthority(Configuration configuration) {
+    return getThrottle(configuration.getTspSource(), configuration.getTspRequestsPerSecond(),
+        configuration.getTspMaxConcurrentRequests(), configuration);
+  }
+
+  private static synchronized ResponderThrottle getThrottle(String responderUrl, int requestsPerSecond,
+                                                           int maxConcurrentRequests, Configuration configuration) {
+    if (responderUrl == null || (requestsPerSecond <= 0 && maxConcurrentRequests <= 0)) {
+      return null;
+    }
+    ResponderThrottle throttle = new ResponderThrottle(responderUrl, requestsPerSecond, maxConcurrentRequests,
+        configuration.getResponderMaxQueuedRequests(), configuration.getResponderMaxWaitInMilliseconds(),
+        configuration.getResponderInteractiveReservedPercentage());
+    String throttleKey = responderUrl + " " + throttle;
+    ResponderThrottle existingThrottle = throttles.get(throttleKey);
+    if (existingThrottle != null) {
+      return existingThrottle;
+    }
+    logger.debug("Using request limits for " + responderUrl + ": " + throttle);
+    throttles.put(throttleKey, throttle);
+    return throttle;
+  }
+
+  /**
+   * Waits until the request may be sent to the responder.
+   * Every successful call must be followed by {@link ResponderThrottle#release(Priority)}.
+   *
+   * @param priority request priority
+   * @throws RequestThrottledException when the request can't be sent within the maximum waiting time
+   *                                   or too many requests are already waiting
+   */
+  public void acquire(Priority priority) throws RequestThrottledException {
+    int queueLength = queuedRequests.incrementAndGet();
+    try {
+      if (maxQueuedRequests > 0 && queueLength > maxQueuedRequests) {
+        logger.warn("Too many requests waiting for " + responderUrl);
+        throw new RequestThrottledException("Too many requests waiting for " + responderUrl);
+      }
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitInMilliseconds);
+      waitForRequestTime(priority, deadline);
+      acquireConcurrentRequestPermit(priority, deadline);
+    } finally {
+      queuedRequests.decrementAndGet();
+    }
+  }
+
+  /**
+   * Releases the concurrent request permit taken by {@link ResponderThrottle#acquire(Priority)}.
+   *
+   * @param priority request priority used when acquiring
+   */
+  public void release(Priority priority) {
+    if (concurrentRequestPermits == null) {
+      return;
+    }
+    concurrentRequestPermits.release();
+    if (priority == Priority.BATCH) {
+      batchRequestPermits.release();
+    }
+  }
+
+  /**
+   * @return number of requests currently waiting for their turn
+   */
+  public int getQueuedRequestCount() {
+    return queuedRequests.get();
+  }
+
+  public String getResponderUrl() {
+    return responderUrl;
+  }
+
+  private void waitForRequestTime(Priority priority, long deadline) {
+    if (requestsPerSecond <= 0) {
+      return;
+    }
+    long requestTime;
+    schedulingLock.lock();
+    try {
+      requestTime = scheduleRequest(priority, System.nanoTime(), deadline);
+    } finally {
+      schedulingLock.unlock();
+    }
+    sleepUntil(requestTime);
+  }
+
+  private long scheduleRequest(Priority priority, long now, long deadline) {
+    if (priority == Priority.INTERACTIVE && interactiveRequestIntervalNanos > 0) {
+      if (nextInteractiveRequestTime - now > 0 && nextBatchRequestTime - now <= 0) {
+        logger.debug("Using idle batch request rate of " + responderUrl + " for an interactive request");
+        nextBatchRequestTime = now + batchRequestIntervalNanos;
+        return now;
+      }
+      long requestTime = later(now, nextInteractiveRequestTime);
+      checkDeadline(requestTime, deadline);
+      nextInteractiveRequestTime = requestTime + interactiveRequestIntervalNanos;
+      return requestTime;
+    }
+    long requestTime = later(now, nextBatchRequestTime);
+    checkDeadline(requestTime, deadline);
+    nextBatchRequestTime = requestTime + batchRequestIntervalNanos;
+    return requestTime;
+  }
+
+  private void checkDeadline(long requestTime, long deadline) {
+    if (requestTime - deadline > 0) {
+      logger.warn("Request rate limit of " + responderUrl + " exceeded");
+      throw new RequestThrottledException("Request rate limit of " + responderUrl + " exceeded");
+    }
+  }
+
+  private void acquireConcurrentRequestPermit(Priority priority, long deadline) {
+    if (concurrentRequestPermits == null) {
+      return;
+    }
+    if (priority != Priority.BATCH) {
+      acquirePermit(concurrentRequestPermits, deadline);
+      return;
+    }
+    acquirePermit(batchRequestPermits, deadline);
+    try {
+      acquirePermit(concurrentRequestPermits, deadline);
+    } catch (RequestThrottledException e) {
+      batchRequestPermits.release();
+      throw e;
+    }
+  }
+
+  private void acquirePermit(Semaphore permits, long deadline) {
+    try {
+      if (!permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+        logger.warn("Concurrent request limit of " + responderUrl + " exceeded");
+        throw new RequestThrottledException("Concurrent request limit of " + responderUrl + " exceeded");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RequestThrottledException("Interrupted while waiting for " + responderUrl, e);
+    }
+  }
+
+  private void sleepUntil(long requestTime) {
+    long sleepNanos = requestTime - System.nanoTime();
+    if (sleepNanos <= 0) {
+      return;
+    }
+    try {
+      TimeUnit.NANOSECONDS.sleep(sleepNanos);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RequestThrottledException("Interrupted while waiting for " + responderUrl, e);
+    }
+  }
+
+  private static long getRequestInterval(int requestsPerSecond, int percentage) {
+    if (requestsPerSecond <= 0 || percentage <= 0) {
+      return 0;
+    }
+    return ONE_SECOND_IN_NANOS * 100 / ((long) requestsPerSecond * percentage);
+  }
+
+  private static long later(long nanoTime, long otherNanoTime) {
+    return nanoTime - otherNanoTime > 0 ? nanoTime : otherNanoTime;
+  }
+
+  @Override
+  public String toString() {
+    return "requests per second: " + requestsPerSecond + ", max concurrent requests: " + maxConcurrentRequests
+        + ", max queued requests: " + maxQueuedRequests + ", max wait: " + maxWaitInMilliseconds
+        + " ms, reserved for interactive requests: " + interactiveReservedPercentage + "%";
+  }
+}
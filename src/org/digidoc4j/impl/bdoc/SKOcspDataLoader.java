@@ -33,6 +33,10 @@ public class SKOcspDataLoader extends OCSPDataLoader {
 
   private static final Logger logger = LoggerFactory.getLogger(SKOcspDataLoader.class);
   private String userAgent;
+  private ResponderThrottle requestThrottle;
+  private ResponderThrottle.Priority requestPriority = ResponderThrottle.Priority.INTERACTIVE;
+  private final ThreadLocal<String> currentUserAgent = new ThreadLocal<>();
+  private final ThreadLocal<ResponderThrottle.Priority> currentRequestPriority = new ThreadLocal<>();
 
   public SKOcspDataLoader() {
     userAgent = Helper.createBDocUserAgent();
@@ -41,7 +45,21 @@ public class SKOcspDataLoader extends OCSPDataLoader {
   @Override
   public byte[] post(final String url, final byte[] content) throws DSSException {
     logger.info("Getting OCSP response from " + url);
+    ResponderThrottle throttle = requestThrottle;
+    ResponderThrottle.Priority priority = getRequestPriority();
+    if (throttle != null) {
+      throttle.acquire(priority);
+    }
+    try {
+      return sendPostRequest(url, content, getUserAgent());
+    } finally {
+      if (throttle != null) {
+        throttle.release(priority);
+      }
+    }
+  }
 
+  private byte[] sendPostRequest(final String url, final byte[] content, String userAgent) throws DSSException {
     HttpPost httpRequest = null;
     HttpResponse httpResponse = null;
 
@@ -82,4 +100,42 @@ public class SKOcspDataLoader extends OCSPDataLoader {
   public void setUserAgentSignatureProfile(SignatureProfile signatureProfile) {
     userAgent = Helper.createBDocUserAgent(signatureProfile);
   }
+
+  public void setRequestThrottle(ResponderThrottle requestThrottle) {
+    this.requestThrottle = requestThrottle;
+  }
+
+  public void setRequestPriority(ResponderThrottle.Priority requestPriority) {
+    this.requestPriority = requestPriority;
+  }
+
+  private String getUserAgent() {
+    String agent = currentUserAgent.get();
+    return agent != null ? agent : userAgent;
+  }
+
+  private ResponderThrottle.Priority getRequestPriority() {
+    ResponderThrottle.Priority priority = currentRequestPriority.get();
+    return priority != null ? priority : requestPriority;
+  }
+
+  /**
+   * Sets the user agent and priority of the requests sent by the current thread, overriding the values of
+   * this loader. Used when the loader is shared by signatures with different profiles.
+   *
+   * @param userAgent       user agent of the requests
+   * @param requestPriority priority of the requests
+   */
+  public void setCurrentRequest(String userAgent, ResponderThrottle.Priority requestPriority) {
+    currentUserAgent.set(userAgent);
+    currentRequestPriority.set(requestPriority);
+  }
+
+  /**
+   * Removes the values set with {@link #setCurrentRequest(String, ResponderThrottle.Priority)}.
+   */
+  public void clearCurrentRequest() {
+    currentUserAgent.remove();
+    currentRequestPriority.remove();
+  }
 }
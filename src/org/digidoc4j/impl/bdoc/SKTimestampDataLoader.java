@@ -30,6 +30,10 @@ public class SKTimestampDataLoader extends NativeHTTPDataLoader {
 
   private static final Logger logger = LoggerFactory.getLogger(SKTimestampDataLoader.class);
   private String userAgent;
+  private ResponderThrottle requestThrottle;
+  private ResponderThrottle.Priority requestPriority = ResponderThrottle.Priority.INTERACTIVE;
+  private final ThreadLocal<String> currentUserAgent = new ThreadLocal<>();
+  private final ThreadLocal<ResponderThrottle.Priority> currentRequestPriority = new ThreadLocal<>();
 
   public SKTimestampDataLoader() {
     userAgent = Helper.createBDocUserAgent();
@@ -38,6 +42,21 @@ public class SKTimestampDataLoader extends NativeHTTPDataLoader {
   @Override
   public byte[] post(String url, byte[] content) {
     logger.info("Getting timestamp from " + url);
+    ResponderThrottle throttle = requestThrottle;
+    ResponderThrottle.Priority priority = getRequestPriority();
+    if (throttle != null) {
+      throttle.acquire(priority);
+    }
+    try {
+      return sendPostRequest(url, content, getUserAgent());
+    } finally {
+      if (throttle != null) {
+        throttle.release(priority);
+      }
+    }
+  }
+
+  private byte[] sendPostRequest(String url, byte[] content, String userAgent) {
     OutputStream out = null;
     InputStream inputStream = null;
     byte[] result = null;
@@ -68,4 +87,42 @@ public class SKTimestampDataLoader extends NativeHTTPDataLoader {
   public void setUserAgentSignatureProfile(SignatureLevel signatureLevel) {
     userAgent = Helper.createBDocUserAgent(signatureLevel);
   }
+
+  public void setRequestThrottle(ResponderThrottle requestThrottle) {
+    this.requestThrottle = requestThrottle;
+  }
+
+  public void setRequestPriority(ResponderThrottle.Priority requestPriority) {
+    this.requestPriority = requestPriority;
+  }
+
+  private String getUserAgent() {
+    String agent = currentUserAgent.get();
+    return agent != null ? agent : userAgent;
+  }
+
+  private ResponderThrottle.Priority getRequestPriority() {
+    ResponderThrottle.Priority priority = currentRequestPriority.get();
+    return priority != null ? priority : requestPriority;
+  }
+
+  /**
+   * Sets the user agent and priority of the requests sent by the current thread, overriding the values of
+   * this loader. Used when the loader is shared by signatures with different profiles.
+   *
+   * @param userAgent       user agent of the requests
+   * @param requestPriority priority of the requests
+   */
+  public void setCurrentRequest(String userAgent, ResponderThrottle.Priority requestPriority) {
+    currentUserAgent.set(userAgent);
+    currentRequestPriority.set(requestPriority);
+  }
+
+  /**
+   * Removes the values set with {@link #setCurrentRequest(String, ResponderThrottle.Priority)}.
+   */
+  public void clearCurrentRequest() {
+    currentUserAgent.remove();
+    currentRequestPriority.remove();
+  }
 }
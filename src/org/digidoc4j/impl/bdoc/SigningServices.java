@@ -0,0 +1,252 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.impl.bdoc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.digidoc4j.Configuration;
+import org.digidoc4j.impl.bdoc.xades.HashcodeResolver;
+import org.digidoc4j.utils.Helper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.europa.esig.dss.DSSDocument;
+import eu.europa.esig.dss.DSSException;
+import eu.europa.esig.dss.SignatureLevel;
+import eu.europa.esig.dss.SignatureValue;
+import eu.europa.esig.dss.ToBeSigned;
+import eu.europa.esig.dss.client.tsp.OnlineTSPSource;
+import eu.europa.esig.dss.validation.CertificateVerifier;
+import eu.europa.esig.dss.x509.CertificatePool;
+import eu.europa.esig.dss.x509.CertificateSource;
+import eu.europa.esig.dss.x509.ocsp.OCSPSource;
+import eu.europa.esig.dss.xades.ProfileParameters;
+import eu.europa.esig.dss.xades.XAdESSignatureParameters;
+import eu.europa.esig.dss.xades.signature.XAdESLevelBaselineLT;
+import eu.europa.esig.dss.xades.signature.XAdESService;
+
+/**
+ * Signing services shared by all the signatures created with the same time-stamping authority and responder
+ * request limits.
+ * <p/>
+ * The XAdES service, time-stamp source, certificate verifier and data loaders do not keep any state between
+ * signatures, so they are created once and HTTP connections are reused across signatures, also across the
+ * configurations and configuration snapshots using the same time-stamping authority. Signature parameters, the
+ * OCSP source, the trusted certificates and the request priority are passed with every call and are only visible
+ * to the calling thread.
+ * <p/>
+ * A configuration gets other services when its time-stamping authority or responder request limits change.
+ * <p/>
+ * LT signatures of data files known by their digests (hashcode data files and data files with cached digests) are
+ * created in two steps: the B level signature is created by DSS, and before extending it to LT its references are
+ * verified with the {@link HashcodeResolver}, as the file content may not be available.
+ */
+public class SigningServices {
+
+  private static final Logger logger = LoggerFactory.getLogger(SigningServices.class);
+  private static final Map<String, SigningServices> services = new HashMap<>();
+
+  private final SharedCertificateVerifier certificateVerifier = new SharedCertificateVerifier();
+  private final SKTimestampDataLoader timestampDataLoader = new SKTimestampDataLoader();
+  private final SKOcspDataLoader ocspDataLoader = new SKOcspDataLoader();
+  private final OnlineTSPSource tspSource;
+  private final XAdESService service;
+
+  private SigningServices(String timestampServerUrl, ResponderThrottle timestampRequestThrottle,
+                          ResponderThrottle ocspRequestThrottle) {
+    certificateVerifier.setCrlSource(null); //Disable CRL checks
+    certificateVerifier.setSignatureCRLSource(null); //Disable CRL checks
+    timestampDataLoader.setRequestThrottle(timestampRequestThrottle);
+    ocspDataLoader.setRequestThrottle(ocspRequestThrottle);
+    tspSource = new OnlineTSPSource(timestampServerUrl);
+    tspSource.setDataLoader(timestampDataLoader);
+    service = new XAdESService(certificateVerifier);
+    service.setTspSource(tspSource);
+  }
+
+  /**
+   * Returns the signing services of the time-stamping authority and responder request limits of the configuration.
+   *
+   * @param configuration configuration to use
+   * @return services shared by all the configurations with the same time-stamping authority and request limits
+   */
+  public static SigningServices forConfiguration(Configuration configuration) {
+    String timestampServerUrl = configuration.getTspSource();
+    ResponderThrottle timestampRequestThrottle = ResponderThrottle.forTimestampingAuthority(configuration);
+    ResponderThrottle ocspRequestThrottle = ResponderThrottle.forOcspResponder(configuration);
+    String servicesKey = timestampServerUrl + " | " + getThrottleKey(timestampRequestThrottle) + " | "
+        + getThrottleKey(ocspRequestThrottle);
+    synchronized (services) {
+      SigningServices signingServices = services.get(servicesKey);
+      if (signingServices == null) {
+        logger.debug("Creating signing services for time-stamping authority " + timestampServerUrl);
+        signingServices = new SigningServices(timestampServerUrl, timestampRequestThrottle, ocspRequestThrottle);
+        services.put(servicesKey, signingServices);
+      }
+      return signingServices;
+    }
+  }
+
+  public ToBeSigned getDataToSign(DSSDocument document, XAdESSignatureParameters parameters,
+                                  CertificateSource certificateSource) {
+    startRequest(parameters, null, certificateSource, ResponderThrottle.Priority.INTERACTIVE);
+    try {
+      return service.getDataToSign(document, parameters);
+    } finally {
+      finishRequest();
+    }
+  }
+
+  public DSSDocument signDocument(DSSDocument document, XAdESSignatureParameters parameters,
+                                  SignatureValue signatureValue, OCSPSource ocspSource,
+                                  CertificateSource certificateSource, ResponderThrottle.Priority requestPriority) {
+    startRequest(parameters, ocspSource, certificateSource, requestPriority);
+    try {
+      if (!isExtendedByDigests(parameters.getSignatureLevel(), document)) {
+        return service.signDocument(document, parameters, signatureValue);
+      }
+      SignatureLevel signatureLevel = parameters.getSignatureLevel();
+      DSSDocument signature;
+      parameters.setSignatureLevel(SignatureLevel.XAdES_BASELINE_B);
+      try {
+        signature = service.signDocument(document, parameters, signatureValue);
+      } finally {
+        parameters.setSignatureLevel(signatureLevel);
+      }
+      parameters.setDetachedContent(document);
+      return extendByDigests(signature, parameters);
+    } finally {
+      finishRequest();
+    }
+  }
+
+  public DSSDocument extendDocument(DSSDocument signature, XAdESSignatureParameters parameters,
+                                    OCSPSource ocspSource, CertificateSource certificateSource,
+                                    ResponderThrottle.Priority requestPriority) {
+    startRequest(parameters, ocspSource, certificateSource, requestPriority);
+    try {
+      if (!isExtendedByDigests(parameters.getSignatureLevel(), parameters.getDetachedContent())) {
+        return service.extendDocument(signature, parameters);
+      }
+      parameters.getContext().setOperationKind(ProfileParameters.Operation.EXTENDING);
+      return extendByDigests(signature, parameters);
+    } finally {
+      finishRequest();
+    }
+  }
+
+  public SKOcspDataLoader getOcspDataLoader() {
+    return ocspDataLoader;
+  }
+
+  private boolean isExtendedByDigests(SignatureLevel signatureLevel, DSSDocument detachedContent) {
+    return signatureLevel == SignatureLevel.XAdES_BASELINE_LT
+        && HashcodeResolver.hasDigestContents(getDocumentChain(detachedContent));
+  }
+
+  private DSSDocument extendByDigests(DSSDocument signature, XAdESSignatureParameters parameters) {
+    logger.debug("Extending signature to LT, verifying its references by the data file digests");
+    DigestReferencesExtension extension = new DigestReferencesExtension(certificateVerifier);
+    extension.setTspSource(tspSource);
+    return extension.extendSignatures(signature, parameters);
+  }
+
+  private static List<DSSDocument> getDocumentChain(DSSDocument firstDocument) {
+    List<DSSDocument> documents = new ArrayList<>();
+    for (DSSDocument document = firstDocument; document != null; document = document.getNextDocument()) {
+      documents.add(document);
+    }
+    return documents;
+  }
+
+  private static String getThrottleKey(ResponderThrottle throttle) {
+    return throttle == null ? "no request limits" : throttle.getResponderUrl() + " " + throttle;
+  }
+
+  private void startRequest(XAdESSignatureParameters parameters, OCSPSource ocspSource,
+                            CertificateSource certificateSource, ResponderThrottle.Priority requestPriority) {
+    certificateVerifier.ocspSource.set(ocspSource);
+    certificateVerifier.trustedCertSource.set(certificateSource);
+    String userAgent = Helper.createBDocUserAgent(parameters.getSignatureLevel());
+    timestampDataLoader.setCurrentRequest(userAgent, requestPriority);
+  }
+
+  private void finishRequest() {
+    certificateVerifier.ocspSource.remove();
+    certificateVerifier.trustedCertSource.remove();
+    timestampDataLoader.clearCurrentRequest();
+  }
+
+  /**
+   * LT extension verifying the references of the signature with the {@link HashcodeResolver}, so that the data
+   * files known only by their digests aren't read for the integrity check preceding the extension.
+   */
+  private static class DigestReferencesExtension extends XAdESLevelBaselineLT {
+
+    DigestReferencesExtension(CertificateVerifier certificateVerifier) {
+      super(certificateVerifier);
+    }
+
+    @Override
+    protected void checkSignatureIntegrity() throws DSSException {
+      List<DSSDocument> detachedContents = xadesSignature.getDetachedContents();
+      List<DSSDocument> documents = new ArrayList<>();
+      for (DSSDocument detachedContent : detachedContents) {
+        documents.addAll(getDocumentChain(detachedContent));
+      }
+      HashcodeResolver.setDetachedContents(documents);
+      xadesSignature.setDetachedContents(Collections.<DSSDocument>emptyList());
+      try {
+        super.checkSignatureIntegrity();
+      } finally {
+        xadesSignature.setDetachedContents(detachedContents);
+        HashcodeResolver.clearDetachedContents();
+      }
+    }
+  }
+
+  /**
+   * Certificate verifier using the OCSP source and trusted certificates of the calling thread.
+   */
+  private static class SharedCertificateVerifier extends SKCommonCertificateVerifier {
+
+    private final transient ThreadLocal<OCSPSource> ocspSource = new ThreadLocal<>();
+    private final transient ThreadLocal<CertificateSource> trustedCertSource = new ThreadLocal<>();
+
+    @Override
+    public OCSPSource getOcspSource() {
+      return ocspSource.get();
+    }
+
+    @Override
+    public CertificateSource getTrustedCertSource() {
+      return trustedCertSource.get();
+    }
+
+    @Override
+    public CertificatePool createValidationPool() {
+      CertificatePool validationPool = new CertificatePool();
+      CertificateSource certificateSource = trustedCertSource.get();
+      if (certificateSource != null) {
+        validationPool.merge(certificateSource.getCertificatePool());
+      }
+      CertificateSource adjunctCertSource = getAdjunctCertSource();
+      if (adjunctCertSource != null) {
+        validationPool.merge(adjunctCertSource.getCertificatePool());
+      }
+      return validationPool;
+    }
+  }
+}
@@ -0,0 +1,384 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.impl.bdoc;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.europa.esig.dss.ResourceLoader;
+import eu.europa.esig.dss.client.http.commons.FileCacheDataLoader;
+
+/**
+ * Loads trusted lists through the file cache, limiting the time spent on downloading each list.
+ * <p/>
+ * Trusted lists of different countries are downloaded in parallel by the TSL validation job. When a list
+ * can't be downloaded in time, the download is aborted and the last cached copy of the list is used, so a slow
+ * or unreachable server of one country doesn't hold up the others or remove their trusted certificates.
+ * <p/>
+ * Cached lists are revalidated with conditional requests (If-None-Match and If-Modified-Since), so
+ * unchanged lists are not downloaded again. Without refreshing, a cached list is used until its
+ * next update date. A downloaded list with a lower sequence number than the cached copy is ignored.
+ */
+public class TslDataLoader extends FileCacheDataLoader {
+
+  private static final Logger logger = LoggerFactory.getLogger(TslDataLoader.class);
+  private static final String ETAG = "ETag";
+  private static final String LAST_MODIFIED = "Last-Modified";
+  private static final XMLInputFactory xmlInputFactory = createXmlInputFactory();
+  // Enough for downloading all the lists of the EU member states in parallel
+  static final int DEFAULT_MAX_PARALLEL_DOWNLOADS = 32;
+  private final boolean refresh;
+  private final long downloadTimeoutInMilliseconds;
+  private final ThreadLocal<Download> currentDownload = new ThreadLocal<>();
+  private final ThreadPoolExecutor downloadExecutor;
+  private File fileCacheDirectory;
+
+  /**
+   * @param refresh                       download the lists even if they are in the file cache
+   * @param downloadTimeoutInMilliseconds maximum time for downloading one list, 0 if not limited
+   */
+  public TslDataLoader(boolean refresh, long downloadTimeoutInMilliseconds) {
+    this(refresh, downloadTimeoutInMilliseconds, DEFAULT_MAX_PARALLEL_DOWNLOADS);
+  }
+
+  /**
+   * @param refresh                       download the lists even if they are in the file cache
+   * @param downloadTimeoutInMilliseconds maximum time for downloading one list, 0 if not limited
+   * @param maxParallelDownloads          maximum number of lists downloaded at the same time,
+   *                                      the other downloads wait in a queue
+   */
+  public TslDataLoader(boolean refresh, long downloadTimeoutInMilliseconds, int maxParallelDownloads) {
+    this.refresh = refresh;
+    this.downloadTimeoutInMilliseconds = downloadTimeoutInMilliseconds;
+    downloadExecutor = new ThreadPoolExecutor(maxParallelDownloads, maxParallelDownloads, 1, TimeUnit.MINUTES,
+        new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "digidoc4j-tsl-download");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    downloadExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  @Override
+  public void setFileCacheDirectory(File fileCacheDirectory) {
+    super.setFileCacheDirectory(fileCacheDirectory);
+    this.fileCacheDirectory = fileCacheDirectory;
+  }
+
+  @Override
+  public byte[] get(String url) {
+    return get(url, refresh);
+  }
+
+  @Override
+  public byte[] get(final String url, boolean refresh) {
+    byte[] cachedCopy = loadFileFromCache(url);
+    if (cachedCopy != null && !refresh && !isNextUpdatePassed(url, cachedCopy)) {
+      return cachedCopy;
+    }
+    byte[] downloadedCopy = download(url);
+    if (downloadedCopy != null && downloadedCopy.length > 0) {
+      if (cachedCopy != null && isOlderVersion(downloadedCopy, cachedCopy)) {
+        logger.warn("Downloaded " + url + " has a lower sequence number than the cached copy, using the cached copy");
+        saveBytesInCache(url, cachedCopy);
+        return cachedCopy;
+      }
+      return downloadedCopy;
+    }
+    if (cachedCopy != null) {
+      logger.warn("Using the last cached copy of " + url);
+    }
+    return cachedCopy;
+  }
+
+  /**
+   * Stops the downloads that have not finished in time.
+   */
+  public void shutdown() {
+    downloadExecutor.shutdownNow();
+  }
+
+  /**
+   * Downloads the list with a conditional request when a cached copy exists.
+   * Returns the cached copy when the server responds that the list has not been modified.
+   */
+  @Override
+  protected byte[] httpGet(String url) {
+    byte[] cachedCopy = loadFileFromCache(url);
+    Properties validators = cachedCopy != null ? loadValidators(url) : new Properties();
+    HttpGet httpRequest = null;
+    HttpResponse httpResponse = null;
+    try {
+      httpRequest = new HttpGet(URI.create(url.trim()));
+      Download download = currentDownload.get();
+      if (download != null) {
+        download.setRequest(httpRequest);
+      }
+      if (contentType != null) {
+        httpRequest.setHeader(CONTENT_TYPE, contentType);
+      }
+      if (validators.getProperty(ETAG) != null) {
+        httpRequest.setHeader("If-None-Match", validators.getProperty(ETAG));
+      }
+      if (validators.getProperty(LAST_MODIFIED) != null) {
+        httpRequest.setHeader("If-Modified-Since", validators.getProperty(LAST_MODIFIED));
+      }
+      httpResponse = getHttpResponse(httpRequest, url);
+      if (httpResponse.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+        logger.debug(url + " has not been modified, using the cached copy");
+        return cachedCopy;
+      }
+      byte[] content = readHttpResponse(url, httpResponse);
+      saveValidators(url, httpResponse);
+      return content;
+    } finally {
+      if (httpRequest != null) {
+        httpRequest.releaseConnection();
+      }
+      if (httpResponse != null) {
+        EntityUtils.consumeQuietly(httpResponse.getEntity());
+      }
+    }
+  }
+
+  private boolean isNextUpdatePassed(String url, byte[] tsl) {
+    String nextUpdateValue = SchemeInformation.read(tsl).nextUpdate;
+    if (nextUpdateValue == null) {
+      return false;
+    }
+    try {
+      Date nextUpdate = DatatypeFactory.newInstance().newXMLGregorianCalendar(nextUpdateValue)
+          .toGregorianCalendar().getTime();
+      if (nextUpdate.before(new Date())) {
+        logger.debug("Cached copy of " + url + " has passed its next update date " + nextUpdate);
+        return true;
+      }
+    } catch (DatatypeConfigurationException | IllegalArgumentException e) {
+      logger.debug("Unable to parse next update date of " + url + ": " + e.getMessage());
+    }
+    return false;
+  }
+
+  private boolean isOlderVersion(byte[] downloadedTsl, byte[] cachedTsl) {
+    Long downloadedSequenceNumber = SchemeInformation.read(downloadedTsl).sequenceNumber;
+    Long cachedSequenceNumber = SchemeInformation.read(cachedTsl).sequenceNumber;
+    return downloadedSequenceNumber != null && cachedSequenceNumber != null
+        && downloadedSequenceNumber < cachedSequenceNumber;
+  }
+
+  private static XMLInputFactory createXmlInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
+  }
+
+  private Properties loadValidators(String url) {
+    Properties validators = new Properties();
+    File validatorsFile = getValidatorsFile(url);
+    if (validatorsFile == null || !validatorsFile.isFile()) {
+      return validators;
+    }
+    InputStream inputStream = null;
+    try {
+      inputStream = new FileInputStream(validatorsFile);
+      validators.load(inputStream);
+    } catch (IOException e) {
+      logger.debug("Unable to read cache validators of " + url + ": " + e.getMessage());
+    } finally {
+      IOUtils.closeQuietly(inputStream);
+    }
+    return validators;
+  }
+
+  private void saveValidators(String url, HttpResponse httpResponse) {
+    File validatorsFile = getValidatorsFile(url);
+    if (validatorsFile == null) {
+      return;
+    }
+    Properties validators = new Properties();
+    for (String header : new String[]{ETAG, LAST_MODIFIED}) {
+      Header value = httpResponse.getFirstHeader(header);
+      if (value != null) {
+        validators.setProperty(header, value.getValue());
+      }
+    }
+    if (validators.isEmpty()) {
+      FileUtils.deleteQuietly(validatorsFile);
+      return;
+    }
+    OutputStream outputStream = null;
+    try {
+      FileUtils.forceMkdir(fileCacheDirectory);
+      outputStream = new FileOutputStream(validatorsFile);
+      validators.store(outputStream, url);
+    } catch (IOException e) {
+      logger.debug("Unable to store cache validators of " + url + ": " + e.getMessage());
+    } finally {
+      IOUtils.closeQuietly(outputStream);
+    }
+  }
+
+  private File getValidatorsFile(String url) {
+    if (fileCacheDirectory == null) {
+      return null;
+    }
+    return new File(fileCacheDirectory, ResourceLoader.getNormalizedFileName(url) + ".validators");
+  }
+
+  private byte[] download(final String url) {
+    final Download download = new Download();
+    Future<byte[]> result = downloadExecutor.submit(new Callable<byte[]>() {
+      @Override
+      public byte[] call() throws Exception {
+        currentDownload.set(download);
+        try {
+          return TslDataLoader.super.get(url, true);
+        } finally {
+          currentDownload.remove();
+        }
+      }
+    });
+    try {
+      if (downloadTimeoutInMilliseconds > 0) {
+        return result.get(downloadTimeoutInMilliseconds, TimeUnit.MILLISECONDS);
+      }
+      return result.get();
+    } catch (TimeoutException e) {
+      logger.warn("Downloading " + url + " took longer than " + downloadTimeoutInMilliseconds + " ms");
+      result.cancel(true);
+      download.abort();
+    } catch (ExecutionException e) {
+      logger.warn("Unable to download " + url + ": " + e.getCause().getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      result.cancel(true);
+      download.abort();
+      logger.warn("Interrupted while downloading " + url);
+    }
+    return null;
+  }
+
+  /**
+   * HTTP request of a download, aborted when the download takes too long. Interrupting the downloading
+   * thread doesn't stop reading from the connection, aborting the request closes the connection.
+   */
+  private static class Download {
+
+    private HttpGet request;
+    private boolean aborted;
+
+    synchronized void setRequest(HttpGet request) {
+      this.request = request;
+      if (aborted) {
+        request.abort();
+      }
+    }
+
+    synchronized void abort() {
+      aborted = true;
+      if (request != null) {
+        request.abort();
+      }
+    }
+  }
+
+  /**
+   * Sequence number and next update date of a trusted list. The list is parsed only until the end of
+   * the scheme information at its start, the trust service providers are not read.
+   */
+  private static class SchemeInformation {
+
+    private Long sequenceNumber;
+    private String nextUpdate;
+
+    static SchemeInformation read(byte[] tsl) {
+      SchemeInformation schemeInformation = new SchemeInformation();
+      XMLStreamReader reader = null;
+      try {
+        reader = xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(tsl));
+        boolean inNextUpdate = false;
+        while (reader.hasNext()) {
+          int event = reader.next();
+          if (event == XMLStreamConstants.START_ELEMENT) {
+            String name = reader.getLocalName();
+            if ("TSLSequenceNumber".equals(name)) {
+              schemeInformation.sequenceNumber = Long.valueOf(reader.getElementText().trim());
+            } else if ("NextUpdate".equals(name)) {
+              inNextUpdate = true;
+            } else if (inNextUpdate && "dateTime".equals(name)) {
+              schemeInformation.nextUpdate = reader.getElementText().trim();
+            }
+          } else if (event == XMLStreamConstants.END_ELEMENT) {
+            String name = reader.getLocalName();
+            if ("NextUpdate".equals(name)) {
+              inNextUpdate = false;
+            } else if ("SchemeInformation".equals(name)) {
+              break;
+            }
+          }
+        }
+      } catch (XMLStreamException | NumberFormatException e) {
+        logger.debug("Unable to read the scheme information of the trusted list: " + e.getMessage());
+      } finally {
+        closeQuietly(reader);
+      }
+      return schemeInformation;
+    }
+
+    private static void closeQuietly(XMLStreamReader reader) {
+      if (reader == null) {
+        return;
+      }
+      try {
+        reader.close();
+      } catch (XMLStreamException e) {
+        logger.debug("Unable to close XML reader: " + e.getMessage());
+      }
+    }
+  }
+}
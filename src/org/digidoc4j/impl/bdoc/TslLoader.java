@@ -11,8 +11,28 @@
 package org.digidoc4j.impl.bdoc;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
 import org.digidoc4j.TSLCertificateSource;
 import org.digidoc4j.exceptions.DigiDoc4JException;
@@ -21,12 +41,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import eu.europa.esig.dss.DSSException;
+import eu.europa.esig.dss.DSSUtils;
+import eu.europa.esig.dss.DigestAlgorithm;
 import eu.europa.esig.dss.client.http.DataLoader;
 import eu.europa.esig.dss.client.http.Protocol;
 import eu.europa.esig.dss.client.http.commons.CommonsDataLoader;
 import eu.europa.esig.dss.client.http.commons.FileCacheDataLoader;
+import eu.europa.esig.dss.tsl.ServiceInfo;
+import eu.europa.esig.dss.tsl.TSLParserResult;
+import eu.europa.esig.dss.tsl.TSLValidationModel;
 import eu.europa.esig.dss.tsl.service.TSLRepository;
 import eu.europa.esig.dss.tsl.service.TSLValidationJob;
+import eu.europa.esig.dss.x509.CertificateToken;
 import eu.europa.esig.dss.x509.KeyStoreCertificateSource;
 
 public class TslLoader implements Serializable {
@@ -39,7 +65,22 @@ public class TslLoader implements Serializable {
   private String tslKeyStorePassword;
   private Integer connectionTimeout;
   private Integer socketTimeout;
+  private int loadingThreads;
+  private long downloadTimeoutInMilliseconds;
+  private List<String> trustedTerritories = new ArrayList<>();
+  private List<String> trustedServiceTypes = new ArrayList<>();
   private transient TSLRepository tslRepository;
+  private final AtomicReference<TSLCertificateSource> currentTsl = new AtomicReference<>();
+  private transient ScheduledThreadPoolExecutor refreshExecutor;
+  private transient volatile ScheduledFuture<?> refreshTask;
+  private volatile Date lastSuccessfulRefreshTime;
+  private volatile Date lastFailedRefreshTime;
+  private volatile String lastFailureMessage;
+  private final AtomicInteger consecutiveFailures = new AtomicInteger();
+  private File snapshotDirectory;
+  private volatile String trustSourceKey;
+  private final Map<X509Certificate, Collection<ServiceInfo>> addedCertificates =
+      Collections.synchronizedMap(new LinkedHashMap<X509Certificate, Collection<ServiceInfo>>());
 
   public TslLoader(String tslLocation, File tslKeystoreFile, String tslKeyStorePassword) {
     this.tslKeystoreFile = tslKeystoreFile;
@@ -47,30 +88,242 @@ public class TslLoader implements Serializable {
     this.tslLocation = tslLocation;
   }
 
+  /**
+   * Loads a new TSL and makes it the current TSL of this loader.
+   *
+   * @return loaded TSL
+   */
   public TSLCertificateSource createTSL() {
+    return loadTsl(false);
+  }
+
+  /**
+   * Returns the current TSL, loading it first if it has not been loaded yet. The TSL is restored
+   * from the snapshot when possible, see {@link TslLoader#loadFromSnapshot()}.
+   * <p/>
+   * When refreshed in the background, the returned TSL is not changed by the later refreshes,
+   * a new TSL is returned by the next call after a refresh instead.
+   *
+   * @return current TSL
+   */
+  public TSLCertificateSource getTslCertificateSource() {
+    TSLCertificateSource tslCertificateSource = currentTsl.get();
+    if (tslCertificateSource != null) {
+      return tslCertificateSource;
+    }
+    synchronized (this) {
+      tslCertificateSource = currentTsl.get();
+      if (tslCertificateSource != null) {
+        return tslCertificateSource;
+      }
+      tslCertificateSource = loadFromSnapshot();
+      if (tslCertificateSource != null) {
+        logger.debug("Loaded TSL from snapshot, verifying the TSL in the background");
+        verifyInBackground(tslCertificateSource);
+        return tslCertificateSource;
+      }
+      return createTSL();
+    }
+  }
+
+  /**
+   * Restores the TSL from the snapshot written after the previous successful loading, if snapshots are used
+   * and the TSL files have not changed since then. The restored TSL becomes the current TSL of this loader.
+   *
+   * @return restored TSL or null when there is no valid snapshot
+   */
+  public TSLCertificateSource loadFromSnapshot() {
+    if (snapshotDirectory == null) {
+      return null;
+    }
+    TSLCertificateSource tslCertificateSource = new TSLCertificateSource(this);
+    Date snapshotCreationTime = createSnapshot().read(tslCertificateSource);
+    if (snapshotCreationTime == null) {
+      return null;
+    }
+    addKeptCertificates(tslCertificateSource);
+    currentTsl.set(tslCertificateSource);
+    lastSuccessfulRefreshTime = snapshotCreationTime;
+    consecutiveFailures.set(0);
+    return tslCertificateSource;
+  }
+
+  /**
+   * Loads the TSL once in the background to fully verify the TSL restored from the snapshot. If loading fails,
+   * the restored TSL is no longer used and the snapshot is deleted, so the TSL is loaded again by the next call to
+   * {@link TslLoader#getTslCertificateSource()}.
+   *
+   * @param restoredTsl TSL restored from the snapshot
+   */
+  private void verifyInBackground(final TSLCertificateSource restoredTsl) {
+    getRefreshExecutor().execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          createTSL();
+        } catch (RuntimeException e) {
+          logger.warn("Unable to verify the TSL restored from the snapshot, the snapshot is not used: "
+              + e.getMessage());
+          createSnapshot().delete();
+          currentTsl.compareAndSet(restoredTsl, null);
+        }
+      }
+    });
+  }
+
+  /**
+   * Starts reloading the TSL periodically in a background thread. The TSL is downloaded again
+   * instead of reading it from the file cache. If a refresh fails, the previous TSL is kept in use.
+   *
+   * @param refreshIntervalInMinutes time between the end of a refresh and the start of the next one
+   */
+  public void startBackgroundRefresh(long refreshIntervalInMinutes) {
+    startBackgroundRefresh(refreshIntervalInMinutes, TimeUnit.MINUTES);
+  }
+
+  synchronized void startBackgroundRefresh(long refreshInterval, TimeUnit unit) {
+    stopBackgroundRefresh();
+    logger.debug("Refreshing TSL in the background every " + refreshInterval + " " + unit);
+    refreshTask = getRefreshExecutor().scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        refreshInBackground(true);
+      }
+    }, refreshInterval, refreshInterval, unit);
+  }
+
+  /**
+   * Stops the background refresh started by {@link TslLoader#startBackgroundRefresh(long)}.
+   * A refresh already in progress is interrupted.
+   */
+  public synchronized void stopBackgroundRefresh() {
+    if (refreshTask != null) {
+      logger.debug("Stopping background TSL refresh");
+      refreshTask.cancel(true);
+      refreshTask = null;
+    }
+  }
+
+  public boolean isRefreshedInBackground() {
+    return refreshTask != null;
+  }
+
+  /**
+   * Returns the executor running the background refreshes and the verification of the TSL restored from
+   * the snapshot. Its thread is stopped when there is nothing to run.
+   */
+  private synchronized ScheduledExecutorService getRefreshExecutor() {
+    if (refreshExecutor == null) {
+      refreshExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "digidoc4j-tsl-refresh");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      refreshExecutor.setKeepAliveTime(1, TimeUnit.MINUTES);
+      refreshExecutor.allowCoreThreadTimeOut(true);
+      refreshExecutor.setRemoveOnCancelPolicy(true);
+    }
+    return refreshExecutor;
+  }
+
+  /**
+   * @return outcome of the latest TSL loading attempts
+   */
+  public TslRefreshStatus getRefreshStatus() {
+    return new TslRefreshStatus(lastSuccessfulRefreshTime, lastFailedRefreshTime, lastFailureMessage,
+        consecutiveFailures.get());
+  }
+
+  private void refreshInBackground(boolean bypassCache) {
+    try {
+      loadTsl(bypassCache);
+    } catch (RuntimeException e) {
+      logger.warn("Background TSL refresh failed, keeping the previous TSL: " + e.getMessage());
+    }
+  }
+
+  private TSLCertificateSource loadTsl(boolean bypassCache) {
+    DataLoader dataLoader = null;
+    ExecutorService executor = null;
     try {
       TSLCertificateSource tslCertificateSource = new TSLCertificateSource(this);
-      tslRepository = new TSLRepository();
-      tslRepository.setTrustedListsCertificateSource(tslCertificateSource);
+      tslCertificateSource.setTrustedServiceTypes(trustedServiceTypes);
+      TSLRepository repository = new TSLRepository();
+      repository.setTrustedListsCertificateSource(tslCertificateSource);
 
       TSLValidationJob tslValidationJob = new TSLValidationJob();
-      DataLoader dataLoader = createDataLoader();
+      dataLoader = createDataLoader(bypassCache);
       tslValidationJob.setDataLoader(dataLoader);
+      if (loadingThreads > 0) {
+        executor = Executors.newFixedThreadPool(loadingThreads);
+        tslValidationJob.setExecutorService(executor);
+      }
       KeyStoreCertificateSource keyStoreCertificateSource = new KeyStoreCertificateSource(tslKeystoreFile, tslKeyStorePassword);
       tslValidationJob.setDssKeyStore(keyStoreCertificateSource);
       tslValidationJob.setLotlUrl(tslLocation);
       tslValidationJob.setLotlCode("EU");
-      tslValidationJob.setRepository(tslRepository);
+      tslValidationJob.setRepository(repository);
       tslValidationJob.setCheckLOTLSignature(checkSignature);
       tslValidationJob.setCheckTSLSignatures(checkSignature);
+      if (!trustedTerritories.isEmpty()) {
+        tslValidationJob.setFilterTerritories(trustedTerritories);
+      }
 
       tslValidationJob.refresh();
 
+      if (snapshotDirectory != null) {
+        createSnapshot().write(tslCertificateSource, getNextUpdatesByTslUrl(repository));
+      }
+      addKeptCertificates(tslCertificateSource);
+      tslRepository = repository;
+      currentTsl.set(tslCertificateSource);
+      lastSuccessfulRefreshTime = new Date();
+      consecutiveFailures.set(0);
       return tslCertificateSource;
     } catch (DSSException e) {
       logger.error("Unable to load TSL: " + e.getMessage());
+      registerFailure(e);
       throw new TslCertificateSourceInitializationException(e.getMessage());
+    } catch (RuntimeException e) {
+      registerFailure(e);
+      throw e;
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+      if (dataLoader instanceof TslDataLoader) {
+        ((TslDataLoader) dataLoader).shutdown();
+      }
+    }
+  }
+
+  /**
+   * Keeps a certificate added to a loaded TSL, so that it is added to the TSLs loaded later as well.
+   *
+   * @param certificate  added certificate
+   * @param serviceInfos trust services of the certificate
+   */
+  public void keepAddedCertificate(X509Certificate certificate, Collection<ServiceInfo> serviceInfos) {
+    addedCertificates.put(certificate, new ArrayList<>(serviceInfos));
+  }
+
+  private void addKeptCertificates(TSLCertificateSource tslCertificateSource) {
+    Map<X509Certificate, Collection<ServiceInfo>> certificates;
+    synchronized (addedCertificates) {
+      certificates = new LinkedHashMap<>(addedCertificates);
     }
+    for (Map.Entry<X509Certificate, Collection<ServiceInfo>> entry : certificates.entrySet()) {
+      tslCertificateSource.addTSLCertificate(new CertificateToken(entry.getKey()), entry.getValue());
+    }
+  }
+
+  private void registerFailure(Exception e) {
+    lastFailedRefreshTime = new Date();
+    lastFailureMessage = e.getMessage();
+    consecutiveFailures.incrementAndGet();
   }
 
   public void invalidateCache() {
@@ -90,17 +343,118 @@ public class TslLoader implements Serializable {
     this.socketTimeout = socketTimeout;
   }
 
+  /**
+   * Set the number of threads downloading, parsing and verifying the trusted lists of different countries
+   *
+   * @param loadingThreads number of threads, 0 uses a new thread for every list and downloads up to
+   *                       {@value TslDataLoader#DEFAULT_MAX_PARALLEL_DOWNLOADS} lists at the same time
+   */
+  public void setLoadingThreads(int loadingThreads) {
+    this.loadingThreads = loadingThreads;
+  }
+
+  /**
+   * Set the maximum time for downloading one trusted list. The cached copy of the list is used
+   * when downloading takes longer.
+   *
+   * @param downloadTimeoutInMilliseconds timeout in milliseconds, 0 if not limited
+   */
+  public void setDownloadTimeoutInMilliseconds(long downloadTimeoutInMilliseconds) {
+    this.downloadTimeoutInMilliseconds = downloadTimeoutInMilliseconds;
+  }
+
+  /**
+   * Load only the trusted lists of the given countries
+   *
+   * @param trustedTerritories country codes, empty list to load the trusted lists of all countries
+   */
+  public void setTrustedTerritories(List<String> trustedTerritories) {
+    this.trustedTerritories = new ArrayList<>(trustedTerritories);
+  }
+
+  /**
+   * Load only the certificates of the trust services with given service types
+   *
+   * @param trustedServiceTypes service types, empty list to load the certificates of all services
+   */
+  public void setTrustedServiceTypes(List<String> trustedServiceTypes) {
+    this.trustedServiceTypes = new ArrayList<>(trustedServiceTypes);
+  }
+
   public void setCheckSignature(boolean checkSignature) {
     this.checkSignature = checkSignature;
   }
 
+  /**
+   * Write a binary snapshot of the TSL after every successful loading,
+   * see {@link TslLoader#loadFromSnapshot()}. The snapshot is not used when other users can write to the directory.
+   *
+   * @param snapshotDirectory directory of the TSL snapshot, null if the snapshot is not used
+   */
+  public void setSnapshotDirectory(File snapshotDirectory) {
+    this.snapshotDirectory = snapshotDirectory;
+  }
+
   protected TSLRepository getTslRepository() {
     return tslRepository;
   }
 
-  private DataLoader createDataLoader() {
+  private Map<String, Date> getNextUpdatesByTslUrl(TSLRepository repository) {
+    Map<String, Date> nextUpdatesByTslUrl = new LinkedHashMap<>();
+    for (TSLValidationModel model : repository.getAllMapTSLValidationModels().values()) {
+      TSLParserResult parseResult = model.getParseResult();
+      nextUpdatesByTslUrl.put(model.getUrl(), parseResult == null ? null : parseResult.getNextUpdateDate());
+    }
+    return nextUpdatesByTslUrl;
+  }
+
+  /**
+   * Identifies the source of trust of the loaded TSL: the TSL location, the keystore used for verifying
+   * the TSL signatures, whether the signatures are checked and the territory and service type filters.
+   * The keystore is identified by its contents, as the same keystore may be copied to different temporary files.
+   * <p/>
+   * The key is calculated once, when it is first needed, so the loader keeps its key even if the keystore
+   * file is deleted later. The source of trust must not be changed after that.
+   *
+   * @return key of the loaded TSL
+   */
+  String getTrustSourceKey() {
+    String key = trustSourceKey;
+    if (key == null) {
+      synchronized (this) {
+        key = trustSourceKey;
+        if (key == null) {
+          key = calculateTrustSourceKey();
+          trustSourceKey = key;
+        }
+      }
+    }
+    return key;
+  }
+
+  private String calculateTrustSourceKey() {
+    String keystoreId;
+    try {
+      keystoreId = Hex.encodeHexString(DSSUtils.digest(DigestAlgorithm.SHA256,
+          FileUtils.readFileToByteArray(tslKeystoreFile)));
+    } catch (IOException e) {
+      logger.debug("Unable to read TSL keystore " + tslKeystoreFile + ": " + e.getMessage());
+      keystoreId = tslKeystoreFile.getAbsolutePath();
+    }
+    return tslLocation + "|" + keystoreId + "|" + checkSignature + "|" + trustedTerritories + "|" + trustedServiceTypes;
+  }
+
+  private TslSnapshot createSnapshot() {
+    String snapshotName = "tsl-snapshot-" + Hex.encodeHexString(
+        DSSUtils.digest(DigestAlgorithm.SHA256, getTrustSourceKey().getBytes(StandardCharsets.UTF_8))) + ".bin";
+    return new TslSnapshot(new File(snapshotDirectory, snapshotName), fileCacheDirectory);
+  }
+
+  private DataLoader createDataLoader(boolean bypassCache) {
     if (Protocol.isHttpUrl(tslLocation)) {
-      FileCacheDataLoader dataLoader = new FileCacheDataLoader();
+      FileCacheDataLoader dataLoader = loadingThreads > 0 ?
+          new TslDataLoader(bypassCache, downloadTimeoutInMilliseconds, loadingThreads) :
+          new TslDataLoader(bypassCache, downloadTimeoutInMilliseconds);
       if(connectionTimeout != null) {
         dataLoader.setTimeoutConnection(connectionTimeout);
       }
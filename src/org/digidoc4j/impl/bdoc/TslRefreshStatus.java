@@ -0,0 +1,84 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.impl.bdoc;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Outcome of the latest TSL loading attempts, for monitoring the age of the TSL in use.
+ */
+public class TslRefreshStatus implements Serializable {
+
+  private final Date lastSuccessfulRefreshTime;
+  private final Date lastFailedRefreshTime;
+  private final String lastFailureMessage;
+  private final int consecutiveFailures;
+
+  TslRefreshStatus(Date lastSuccessfulRefreshTime, Date lastFailedRefreshTime, String lastFailureMessage,
+                   int consecutiveFailures) {
+    this.lastSuccessfulRefreshTime = lastSuccessfulRefreshTime;
+    this.lastFailedRefreshTime = lastFailedRefreshTime;
+    this.lastFailureMessage = lastFailureMessage;
+    this.consecutiveFailures = consecutiveFailures;
+  }
+
+  /**
+   * @return time when the TSL in use was loaded, null if the TSL has not been loaded yet
+   */
+  public Date getLastSuccessfulRefreshTime() {
+    return lastSuccessfulRefreshTime;
+  }
+
+  /**
+   * @return time of the latest failed loading attempt, null if loading has never failed
+   */
+  public Date getLastFailedRefreshTime() {
+    return lastFailedRefreshTime;
+  }
+
+  /**
+   * @return error message of the latest failed loading attempt
+   */
+  public String getLastFailureMessage() {
+    return lastFailureMessage;
+  }
+
+  /**
+   * @return number of failed loading attempts since the TSL in use was loaded
+   */
+  public int getConsecutiveFailures() {
+    return consecutiveFailures;
+  }
+
+  /**
+   * @return whether the latest loading attempt succeeded
+   */
+  public boolean isLastRefreshSuccessful() {
+    return lastSuccessfulRefreshTime != null && consecutiveFailures == 0;
+  }
+
+  /**
+   * @return age of the TSL in use in milliseconds, -1 if the TSL has not been loaded yet
+   */
+  public long getTslAgeInMilliseconds() {
+    if (lastSuccessfulRefreshTime == null) {
+      return -1;
+    }
+    return System.currentTimeMillis() - lastSuccessfulRefreshTime.getTime();
+  }
+
+  @Override
+  public String toString() {
+    return "last successful refresh: " + lastSuccessfulRefreshTime + ", last failed refresh: " + lastFailedRefreshTime
+        + ", consecutive failures: " + consecutiveFailures;
+  }
+}
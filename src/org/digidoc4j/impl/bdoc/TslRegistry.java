@@ -0,0 +1,189 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.impl.bdoc;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process-wide registry of the TSL loaders shared by configurations.
+ * <p/>
+ * Configurations with the same source of trust (TSL location, keystore, signature check and filters,
+ * see {@link TslLoader#getTrustSourceKey()}) share one loader, so the TSL is loaded, held in memory and
+ * refreshed only once. The loaders are reference counted: the background refresh of a loader is stopped
+ * and the loader is removed from the registry when the last configuration using it releases it.
+ * <p/>
+ * Immutable configuration snapshots can't release the loader, so they are registered as weakly referenced
+ * owners instead and stop using the loader when they are garbage collected.
+ */
+public final class TslRegistry {
+
+  private static final Logger logger = LoggerFactory.getLogger(TslRegistry.class);
+  private static final Map<String, SharedLoader> loaders = new HashMap<>();
+
+  private TslRegistry() {
+  }
+
+  /**
+   * Returns the shared loader with the same source of trust as the given loader and increases its
+   * reference count. The given loader is registered and returned if there is none.
+   *
+   * @param loader loader to be shared
+   * @return shared loader
+   */
+  public static TslLoader acquire(TslLoader loader) {
+    String key = loader.getTrustSourceKey();
+    synchronized (TslRegistry.class) {
+      SharedLoader sharedLoader = register(key, loader);
+      sharedLoader.references++;
+      return sharedLoader.loader;
+    }
+  }
+
+  /**
+   * Returns the shared loader with the same source of trust as the given loader for an owner that can't
+   * release it. The loader stays in use until the owner is garbage collected or releases it with
+   * {@link TslRegistry#release(TslLoader, Object)}.
+   *
+   * @param loader loader to be shared
+   * @param owner  weakly referenced owner of the loader
+   * @return shared loader
+   */
+  public static TslLoader acquire(TslLoader loader, Object owner) {
+    String key = loader.getTrustSourceKey();
+    synchronized (TslRegistry.class) {
+      SharedLoader sharedLoader = register(key, loader);
+      sharedLoader.owners.put(owner, Boolean.TRUE);
+      return sharedLoader.loader;
+    }
+  }
+
+  /**
+   * Increases the reference count of a loader already in the registry.
+   *
+   * @param loader shared loader
+   * @return true if the loader is in the registry
+   */
+  public static synchronized boolean retain(TslLoader loader) {
+    SharedLoader sharedLoader = getRegistered(loader);
+    if (sharedLoader == null) {
+      return false;
+    }
+    sharedLoader.references++;
+    return true;
+  }
+
+  /**
+   * Adds a weakly referenced owner to a loader already in the registry,
+   * see {@link TslRegistry#acquire(TslLoader, Object)}.
+   *
+   * @param loader shared loader
+   * @param owner  weakly referenced owner of the loader
+   * @return true if the loader is in the registry
+   */
+  public static synchronized boolean retain(TslLoader loader, Object owner) {
+    SharedLoader sharedLoader = getRegistered(loader);
+    if (sharedLoader == null) {
+      return false;
+    }
+    sharedLoader.owners.put(owner, Boolean.TRUE);
+    return true;
+  }
+
+  /**
+   * Decreases the reference count of a shared loader. The background refresh of the loader is stopped
+   * when it is not used any more.
+   *
+   * @param loader shared loader
+   */
+  public static synchronized void release(TslLoader loader) {
+    SharedLoader sharedLoader = getRegistered(loader);
+    if (sharedLoader == null) {
+      logger.debug("TSL loader is not in the registry, stopping its background refresh");
+      loader.stopBackgroundRefresh();
+      return;
+    }
+    sharedLoader.references--;
+    removeUnusedLoaders();
+  }
+
+  /**
+   * Removes a weakly referenced owner of a shared loader, see {@link TslRegistry#acquire(TslLoader, Object)}.
+   *
+   * @param loader shared loader
+   * @param owner  owner of the loader
+   */
+  public static synchronized void release(TslLoader loader, Object owner) {
+    SharedLoader sharedLoader = getRegistered(loader);
+    if (sharedLoader != null) {
+      sharedLoader.owners.remove(owner);
+      removeUnusedLoaders();
+    }
+  }
+
+  /**
+   * @param loader shared loader
+   * @return number of configurations using the loader, 0 if the loader is not in the registry
+   */
+  public static synchronized int getReferenceCount(TslLoader loader) {
+    SharedLoader sharedLoader = getRegistered(loader);
+    return sharedLoader == null ? 0 : sharedLoader.references + sharedLoader.owners.size();
+  }
+
+  private static SharedLoader register(String key, TslLoader loader) {
+    removeUnusedLoaders();
+    SharedLoader sharedLoader = loaders.get(key);
+    if (sharedLoader == null) {
+      logger.debug("Registering shared TSL loader for " + key);
+      sharedLoader = new SharedLoader(loader);
+      loaders.put(key, sharedLoader);
+    }
+    return sharedLoader;
+  }
+
+  private static SharedLoader getRegistered(TslLoader loader) {
+    SharedLoader sharedLoader = loaders.get(loader.getTrustSourceKey());
+    return sharedLoader == null || sharedLoader.loader != loader ? null : sharedLoader;
+  }
+
+  /**
+   * Stops the loaders not used any more, including the loaders whose weakly referenced owners have been
+   * garbage collected since the previous call.
+   */
+  private static void removeUnusedLoaders() {
+    Iterator<Map.Entry<String, SharedLoader>> iterator = loaders.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, SharedLoader> entry = iterator.next();
+      SharedLoader sharedLoader = entry.getValue();
+      if (sharedLoader.references <= 0 && sharedLoader.owners.isEmpty()) {
+        logger.debug("Shared TSL loader for " + entry.getKey() + " is not used any more, removing it");
+        iterator.remove();
+        sharedLoader.loader.stopBackgroundRefresh();
+      }
+    }
+  }
+
+  private static class SharedLoader {
+
+    private final TslLoader loader;
+    private final Map<Object, Boolean> owners = new WeakHashMap<>();
+    private int references;
+
+    SharedLoader(TslLoader loader) {
+      this.loader = loader;
+    }
+  }
+}
@@ -0,0 +1,424 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.impl.bdoc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.digidoc4j.TSLCertificateSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.europa.esig.dss.DSSUtils;
+import eu.europa.esig.dss.DigestAlgorithm;
+import eu.europa.esig.dss.client.http.Protocol;
+import eu.europa.esig.dss.client.http.commons.CommonsDataLoader;
+import eu.europa.esig.dss.client.http.commons.FileCacheDataLoader;
+import eu.europa.esig.dss.tsl.CompositeCondition;
+import eu.europa.esig.dss.tsl.Condition;
+import eu.europa.esig.dss.tsl.CriteriaListCondition;
+import eu.europa.esig.dss.tsl.KeyUsageBit;
+import eu.europa.esig.dss.tsl.KeyUsageCondition;
+import eu.europa.esig.dss.tsl.MatchingCriteriaIndicator;
+import eu.europa.esig.dss.tsl.PolicyIdCondition;
+import eu.europa.esig.dss.tsl.QcStatementCondition;
+import eu.europa.esig.dss.tsl.ServiceInfo;
+import eu.europa.esig.dss.x509.CertificateToken;
+
+/**
+ * Binary snapshot of a loaded TSL: the trusted certificates with their service info and the digests
+ * of the TSL files they were loaded from.
+ * <p/>
+ * The snapshot is valid as long as the TSL files in the file cache (or local TSL files) have the same
+ * digests and none of the lists has passed its next update date. Restoring a valid snapshot skips
+ * parsing the lists and verifying their signatures.
+ * <p/>
+ * The snapshot is only read from and written to a directory that other users can't write to. It contains
+ * the DER encoded certificates and the plain service info values, no serialized Java objects.
+ */
+class TslSnapshot {
+
+  private static final Logger logger = LoggerFactory.getLogger(TslSnapshot.class);
+  private static final int FORMAT_VERSION = 2;
+  private static final int MAX_ENCODED_LENGTH = 1024 * 1024;
+  private static final int CRITERIA_LIST_CONDITION = 1;
+  private static final int COMPOSITE_CONDITION = 2;
+  private static final int KEY_USAGE_CONDITION = 3;
+  private static final int POLICY_ID_CONDITION = 4;
+  private static final int QC_STATEMENT_CONDITION = 5;
+  private final File snapshotFile;
+  private final File fileCacheDirectory;
+
+  TslSnapshot(File snapshotFile, File fileCacheDirectory) {
+    this.snapshotFile = snapshotFile;
+    this.fileCacheDirectory = fileCacheDirectory;
+  }
+
+  /**
+   * Writes the snapshot of a successfully loaded TSL.
+   *
+   * @param tslCertificateSource  loaded TSL
+   * @param nextUpdatesByTslUrl   URLs of the loaded lists mapped to their next update dates (may be null)
+   */
+  void write(TSLCertificateSource tslCertificateSource, Map<String, Date> nextUpdatesByTslUrl) {
+    File temporaryFile = new File(snapshotFile.getPath() + ".tmp");
+    DataOutputStream out = null;
+    try {
+      createPrivateDirectory(snapshotFile.getParentFile());
+      if (!isPrivateDirectory(snapshotFile.getParentFile())) {
+        return;
+      }
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+      out.writeInt(FORMAT_VERSION);
+      out.writeLong(System.currentTimeMillis());
+      out.writeInt(nextUpdatesByTslUrl.size());
+      for (Map.Entry<String, Date> entry : nextUpdatesByTslUrl.entrySet()) {
+        byte[] tslFile = readTslFile(entry.getKey());
+        if (tslFile == null) {
+          logger.debug("TSL file " + entry.getKey() + " is not available, TSL snapshot is not written");
+          return;
+        }
+        out.writeUTF(entry.getKey());
+        writeBytes(out, digest(tslFile));
+        writeDate(out, entry.getValue());
+      }
+      out.writeInt(tslCertificateSource.getCertificates().size());
+      for (CertificateToken certificate : tslCertificateSource.getCertificates()) {
+        writeBytes(out, certificate.getEncoded());
+        Set<ServiceInfo> serviceInfos = certificate.getAssociatedTSPS();
+        out.writeInt(serviceInfos == null ? 0 : serviceInfos.size());
+        if (serviceInfos != null) {
+          for (ServiceInfo serviceInfo : serviceInfos) {
+            writeServiceInfo(out, serviceInfo);
+          }
+        }
+      }
+      out.close();
+      out = null;
+      FileUtils.deleteQuietly(snapshotFile);
+      FileUtils.moveFile(temporaryFile, snapshotFile);
+      logger.debug("Wrote TSL snapshot " + snapshotFile);
+    } catch (IOException e) {
+      logger.warn("Unable to write TSL snapshot " + snapshotFile + ": " + e.getMessage());
+    } finally {
+      IOUtils.closeQuietly(out);
+      FileUtils.deleteQuietly(temporaryFile);
+    }
+  }
+
+  /**
+   * Restores the TSL from the snapshot.
+   *
+   * @param tslCertificateSource empty TSL to add the certificates to
+   * @return snapshot creation time or null when there is no valid snapshot
+   */
+  Date read(TSLCertificateSource tslCertificateSource) {
+    if (!snapshotFile.isFile()) {
+      logger.debug("TSL snapshot " + snapshotFile + " does not exist");
+      return null;
+    }
+    DataInputStream in = null;
+    try {
+      if (!isPrivateDirectory(snapshotFile.getParentFile())) {
+        return null;
+      }
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)));
+      if (in.readInt() != FORMAT_VERSION) {
+        logger.debug("TSL snapshot " + snapshotFile + " has an unsupported format");
+        return null;
+      }
+      Date creationTime = new Date(in.readLong());
+      int tslCount = in.readInt();
+      for (int i = 0; i < tslCount; i++) {
+        if (!isTslUnchanged(in.readUTF(), readBytes(in), readDate(in))) {
+          return null;
+        }
+      }
+      CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+      List<CertificateToken> certificates = new ArrayList<>();
+      List<List<ServiceInfo>> certificateServiceInfos = new ArrayList<>();
+      int certificateCount = in.readInt();
+      for (int i = 0; i < certificateCount; i++) {
+        byte[] encodedCertificate = readBytes(in);
+        X509Certificate certificate = (X509Certificate) certificateFactory.generateCertificate(
+            new ByteArrayInputStream(encodedCertificate));
+        int serviceInfoCount = in.readInt();
+        List<ServiceInfo> serviceInfos = new ArrayList<>();
+        for (int j = 0; j < serviceInfoCount; j++) {
+          serviceInfos.add(readServiceInfo(in));
+        }
+        certificates.add(new CertificateToken(certificate));
+        certificateServiceInfos.add(serviceInfos);
+      }
+      for (int i = 0; i < certificates.size(); i++) {
+        for (ServiceInfo serviceInfo : certificateServiceInfos.get(i)) {
+          tslCertificateSource.addCertificate(certificates.get(i), serviceInfo);
+        }
+      }
+      logger.debug("Restored " + certificateCount + " TSL certificates from snapshot " + snapshotFile);
+      return creationTime;
+    } catch (IOException | CertificateException | IllegalArgumentException e) {
+      logger.warn("Unable to read TSL snapshot " + snapshotFile + ": " + e.getMessage());
+      return null;
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+  }
+
+  /**
+   * Deletes the snapshot, e.g. when the TSL restored from it could not be verified.
+   */
+  void delete() {
+    FileUtils.deleteQuietly(snapshotFile);
+  }
+
+  private boolean isTslUnchanged(String tslUrl, byte[] expectedDigest, Date nextUpdate) {
+    if (nextUpdate != null && nextUpdate.before(new Date())) {
+      logger.debug("TSL " + tslUrl + " in the snapshot has passed its next update date");
+      return false;
+    }
+    byte[] tslFile = readTslFile(tslUrl);
+    if (tslFile == null || !Arrays.equals(expectedDigest, digest(tslFile))) {
+      logger.debug("TSL " + tslUrl + " has changed since the snapshot was written");
+      return false;
+    }
+    return true;
+  }
+
+  private byte[] readTslFile(String tslUrl) {
+    try {
+      if (Protocol.isHttpUrl(tslUrl)) {
+        FileCacheDataLoader dataLoader = new FileCacheDataLoader();
+        dataLoader.setFileCacheDirectory(fileCacheDirectory);
+        return dataLoader.loadFileFromCache(tslUrl);
+      }
+      return new CommonsDataLoader().get(tslUrl);
+    } catch (RuntimeException e) {
+      logger.debug("Unable to read TSL file " + tslUrl + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  private static void createPrivateDirectory(File directory) throws IOException {
+    if (directory.isDirectory()) {
+      return;
+    }
+    FileUtils.forceMkdir(directory);
+    if (isPosixFileSystem()) {
+      Files.setPosixFilePermissions(directory.toPath(), PosixFilePermissions.fromString("rwx------"));
+    }
+  }
+
+  private static boolean isPrivateDirectory(File directory) throws IOException {
+    if (!isPosixFileSystem()) {
+      return true;
+    }
+    Path path = directory.toPath();
+    Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path);
+    if (permissions.contains(PosixFilePermission.GROUP_WRITE) || permissions.contains(PosixFilePermission.OTHERS_WRITE)
+        || !Files.getOwner(path).getName().equals(System.getProperty("user.name"))) {
+      logger.warn("TSL snapshot directory " + directory + " can be written by other users, TSL snapshot is not used");
+      return false;
+    }
+    return true;
+  }
+
+  private static boolean isPosixFileSystem() {
+    return FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+  }
+
+  private static void writeServiceInfo(DataOutputStream out, ServiceInfo serviceInfo) throws IOException {
+    writeString(out, serviceInfo.getTspName());
+    writeString(out, serviceInfo.getTspTradeName());
+    writeString(out, serviceInfo.getTspPostalAddress());
+    writeString(out, serviceInfo.getTspElectronicAddress());
+    writeString(out, serviceInfo.getType());
+    writeString(out, serviceInfo.getServiceName());
+    writeString(out, serviceInfo.getStatus());
+    writeDate(out, serviceInfo.getStatusStartDate());
+    writeDate(out, serviceInfo.getStatusEndDate());
+    writeDate(out, serviceInfo.getExpiredCertsRevocationInfo());
+    out.writeBoolean(serviceInfo.isTlWellSigned());
+    Map<String, List<Condition>> qualifiersAndConditions = serviceInfo.getQualifiersAndConditions();
+    out.writeInt(qualifiersAndConditions == null ? 0 : qualifiersAndConditions.size());
+    if (qualifiersAndConditions != null) {
+      for (Map.Entry<String, List<Condition>> entry : qualifiersAndConditions.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeInt(entry.getValue().size());
+        for (Condition condition : entry.getValue()) {
+          writeCondition(out, condition);
+        }
+      }
+    }
+  }
+
+  private static ServiceInfo readServiceInfo(DataInputStream in) throws IOException {
+    ServiceInfo serviceInfo = new ServiceInfo();
+    serviceInfo.setTspName(readString(in));
+    serviceInfo.setTspTradeName(readString(in));
+    serviceInfo.setTspPostalAddress(readString(in));
+    serviceInfo.setTspElectronicAddress(readString(in));
+    serviceInfo.setType(readString(in));
+    serviceInfo.setServiceName(readString(in));
+    serviceInfo.setStatus(readString(in));
+    serviceInfo.setStatusStartDate(readDate(in));
+    serviceInfo.setStatusEndDate(readDate(in));
+    serviceInfo.setExpiredCertsRevocationInfo(readDate(in));
+    serviceInfo.setTlWellSigned(in.readBoolean());
+    int qualifierCount = in.readInt();
+    for (int i = 0; i < qualifierCount; i++) {
+      String qualifier = in.readUTF();
+      int conditionCount = in.readInt();
+      for (int j = 0; j < conditionCount; j++) {
+        serviceInfo.addQualifierAndCondition(qualifier, readCondition(in));
+      }
+    }
+    return serviceInfo;
+  }
+
+  /**
+   * Writes the conditions of the qualifiers. The DSS condition classes don't expose all their values,
+   * so the private fields of the known condition types are read directly.
+   */
+  private static void writeCondition(DataOutputStream out, Condition condition) throws IOException {
+    Class<?> conditionType = condition.getClass();
+    if (conditionType == CriteriaListCondition.class) {
+      out.writeInt(CRITERIA_LIST_CONDITION);
+      out.writeUTF(((CriteriaListCondition) condition).getMatchingCriteriaIndicator().name());
+      writeChildConditions(out, (CompositeCondition) condition);
+    } else if (conditionType == CompositeCondition.class) {
+      out.writeInt(COMPOSITE_CONDITION);
+      writeChildConditions(out, (CompositeCondition) condition);
+    } else if (conditionType == KeyUsageCondition.class) {
+      out.writeInt(KEY_USAGE_CONDITION);
+      out.writeUTF(((KeyUsageCondition) condition).getBit().name());
+      out.writeBoolean((Boolean) getFieldValue(KeyUsageCondition.class, "value", condition));
+    } else if (conditionType == PolicyIdCondition.class) {
+      out.writeInt(POLICY_ID_CONDITION);
+      out.writeUTF(((PolicyIdCondition) condition).getPolicyOid());
+    } else if (conditionType == QcStatementCondition.class) {
+      out.writeInt(QC_STATEMENT_CONDITION);
+      out.writeUTF((String) getFieldValue(QcStatementCondition.class, "qcStatementASN1Id", condition));
+    } else {
+      throw new IOException("Unsupported qualifier condition " + conditionType.getName());
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void writeChildConditions(DataOutputStream out, CompositeCondition condition) throws IOException {
+    List<Condition> children = (List<Condition>) getFieldValue(CompositeCondition.class, "children", condition);
+    out.writeInt(children == null ? 0 : children.size());
+    if (children != null) {
+      for (Condition child : children) {
+        writeCondition(out, child);
+      }
+    }
+  }
+
+  private static Condition readCondition(DataInputStream in) throws IOException {
+    int conditionType = in.readInt();
+    switch (conditionType) {
+      case CRITERIA_LIST_CONDITION:
+        return readChildConditions(in, new CriteriaListCondition(MatchingCriteriaIndicator.valueOf(in.readUTF())));
+      case COMPOSITE_CONDITION:
+        return readChildConditions(in, new CompositeCondition());
+      case KEY_USAGE_CONDITION:
+        return new KeyUsageCondition(KeyUsageBit.valueOf(in.readUTF()), in.readBoolean());
+      case POLICY_ID_CONDITION:
+        return new PolicyIdCondition(in.readUTF());
+      case QC_STATEMENT_CONDITION:
+        return new QcStatementCondition(in.readUTF());
+      default:
+        throw new IOException("Unknown qualifier condition type " + conditionType);
+    }
+  }
+
+  private static Condition readChildConditions(DataInputStream in, CompositeCondition condition) throws IOException {
+    int childCount = in.readInt();
+    for (int i = 0; i < childCount; i++) {
+      condition.addChild(readCondition(in));
+    }
+    return condition;
+  }
+
+  private static Object getFieldValue(Class<?> type, String fieldName, Object object) throws IOException {
+    try {
+      Field field = type.getDeclaredField(fieldName);
+      field.setAccessible(true);
+      return field.get(object);
+    } catch (NoSuchFieldException | IllegalAccessException e) {
+      throw new IOException("Unable to read " + type.getSimpleName() + "." + fieldName, e);
+    }
+  }
+
+  private static byte[] digest(byte[] data) {
+    return DSSUtils.digest(DigestAlgorithm.SHA256, data);
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeDate(DataOutputStream out, Date date) throws IOException {
+    out.writeLong(date == null ? 0 : date.getTime());
+  }
+
+  private static Date readDate(DataInputStream in) throws IOException {
+    long time = in.readLong();
+    return time == 0 ? null : new Date(time);
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static byte[] readBytes(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0 || length > MAX_ENCODED_LENGTH) {
+      throw new IOException("Invalid length " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return bytes;
+  }
+}
@@ -18,13 +18,17 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.lang.StringUtils;
 import org.digidoc4j.DataFile;
+import org.digidoc4j.DigestAlgorithm;
+import org.digidoc4j.DigestDataFile;
 import org.digidoc4j.Signature;
 import org.digidoc4j.exceptions.TechnicalException;
 import org.digidoc4j.impl.bdoc.manifest.AsicManifest;
@@ -93,6 +97,10 @@ public class AsicContainerCreator {
     logger.debug("Adding data files to the bdoc zip container");
     for (DataFile dataFile : dataFiles) {
       String name = dataFile.getName();
+      if (dataFile instanceof DigestDataFile) {
+        logger.debug("Data file " + name + " is added as a hashcode only");
+        continue;
+      }
       logger.debug("Adding data file " + name);
       ZipEntry entryDocument = new ZipEntry(name);
       zipOutputStream.setLevel(ZipEntry.DEFLATED);
@@ -101,6 +109,36 @@ public class AsicContainerCreator {
     }
   }
 
+  /**
+   * Writes the hashcodes files listing the digests of the data files known only by their digests.
+   * A hashcodes file is written for every supported digest algorithm known for all such data files.
+   *
+   * @param dataFiles data files of the container
+   */
+  public void writeHashcodes(Collection<DataFile> dataFiles) {
+    List<DigestDataFile> digestDataFiles = new ArrayList<>();
+    for (DataFile dataFile : dataFiles) {
+      if (dataFile instanceof DigestDataFile) {
+        digestDataFiles.add((DigestDataFile) dataFile);
+      }
+    }
+    if (digestDataFiles.isEmpty()) {
+      return;
+    }
+    logger.debug("Writing hashcodes of " + digestDataFiles.size() + " data files");
+    boolean hashcodesWritten = false;
+    for (DigestAlgorithm digestAlgorithm : AsicHashcodes.DIGEST_ALGORITHMS) {
+      if (hasDigests(digestDataFiles, digestAlgorithm)) {
+        AsicHashcodes hashcodes = AsicHashcodes.create(digestAlgorithm, digestDataFiles);
+        writeZipEntry(new ZipEntry(hashcodes.getXmlPath()), hashcodes.getBytes());
+        hashcodesWritten = true;
+      }
+    }
+    if (!hashcodesWritten) {
+      logger.error("Hashcode data files must all have SHA-256 or SHA-512 digests");
+      throw new TechnicalException("Hashcode data files must all have SHA-256 or SHA-512 digests");
+    }
+  }
 
   public void writeSignatures(Collection<Signature> signatures, int nextSignatureFileNameIndex) {
     logger.debug("Adding signatures to the bdoc zip container");
@@ -136,6 +174,15 @@ public class AsicContainerCreator {
     this.zipComment = zipComment;
   }
 
+  private boolean hasDigests(List<DigestDataFile> dataFiles, DigestAlgorithm digestAlgorithm) {
+    for (DigestDataFile dataFile : dataFiles) {
+      if (!dataFile.hasDigest(digestAlgorithm)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private ZipEntry getAsicMimeTypeZipEntry(byte[] mimeTypeBytes) {
     ZipEntry entryMimetype = new ZipEntry(ZIP_ENTRY_MIMETYPE);
     entryMimetype.setMethod(ZipEntry.STORED);
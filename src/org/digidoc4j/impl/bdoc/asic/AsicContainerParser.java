@@ -27,6 +27,7 @@ import org.apache.commons.io.input.BOMInputStream;
 import org.apache.commons.lang.StringUtils;
 import org.digidoc4j.Configuration;
 import org.digidoc4j.DataFile;
+import org.digidoc4j.DigestDataFile;
 import org.digidoc4j.exceptions.DuplicateDataFileException;
 import org.digidoc4j.exceptions.TechnicalException;
 import org.digidoc4j.exceptions.UnsupportedFormatException;
@@ -55,14 +56,17 @@ public abstract class AsicContainerParser {
   private String mimeType;
   private String zipFileComment;
   private List<AsicEntry> asicEntries = new ArrayList<>();
+  private List<AsicHashcodes> hashcodes = new ArrayList<>();
   private Map<String, ManifestEntry> manifestFileItems = Collections.emptyMap();
   private ManifestParser manifestParser;
   private boolean storeDataFilesOnlyInMemory;
   private long maxDataFileCachedInBytes;
+  private boolean hashcodeContainersAllowed;
 
   protected AsicContainerParser(Configuration configuration) {
     storeDataFilesOnlyInMemory = configuration.storeDataFilesOnlyInMemory();
     maxDataFileCachedInBytes = configuration.getMaxDataFileCachedInBytes();
+    hashcodeContainersAllowed = configuration.isHashcodeContainersAllowed();
   }
 
   public AsicParseResult read() {
@@ -94,6 +98,8 @@ public abstract class AsicContainerParser {
     } else if (isSignaturesFile(entryName)) {
       determineCurrentSignatureFileIndex(entryName);
       extractSignature(entry);
+    } else if (hashcodeContainersAllowed && AsicHashcodes.isHashcodesFile(entryName)) {
+      extractHashcodes(entry);
     } else if (isDataFile(entryName)) {
       extractDataFile(entry);
     } else {
@@ -123,6 +129,12 @@ public abstract class AsicContainerParser {
     extractSignatureAsicEntry(entry, document);
   }
 
+  private void extractHashcodes(ZipEntry entry) {
+    logger.debug("Extracting hashcodes");
+    AsicEntry asicEntry = extractAsicEntry(entry);
+    hashcodes.add(AsicHashcodes.parse(asicEntry.getContent()));
+  }
+
   private void extractDataFile(ZipEntry entry) {
     logger.debug("Extracting data file");
     String fileName = entry.getName();
@@ -193,6 +205,7 @@ public abstract class AsicContainerParser {
   }
 
   private void populateParseResult() {
+    addHashcodeDataFiles();
     Collection<DataFile> files = dataFiles.values();
     parseResult.setDataFiles(new ArrayList<>(files));
     parseResult.setSignatures(signatures);
@@ -203,6 +216,35 @@ public abstract class AsicContainerParser {
     parseResult.setAsicEntries(asicEntries);
   }
 
+  private void addHashcodeDataFiles() {
+    LinkedHashMap<String, DigestDataFile> hashcodeDataFiles = new LinkedHashMap<>();
+    for (AsicHashcodes fileHashcodes : hashcodes) {
+      for (AsicHashcodes.Entry entry : fileHashcodes.getEntries()) {
+        String fileName = entry.getFileName();
+        if (dataFiles.containsKey(fileName)) {
+          logger.debug("Container includes the content of hashcode data file " + fileName);
+          continue;
+        }
+        DigestDataFile dataFile = hashcodeDataFiles.get(fileName);
+        if (dataFile == null) {
+          dataFile = new DigestDataFile(fileName, getDataFileMimeType(fileName), fileHashcodes.getDigestAlgorithm(),
+              entry.getDigest());
+          hashcodeDataFiles.put(fileName, dataFile);
+        } else {
+          dataFile.addDigest(fileHashcodes.getDigestAlgorithm(), entry.getDigest());
+        }
+        if (entry.getSize() != null) {
+          dataFile.setFileSize(entry.getSize());
+        }
+      }
+    }
+    for (Map.Entry<String, DigestDataFile> hashcodeDataFile : hashcodeDataFiles.entrySet()) {
+      logger.debug("Adding hashcode data file " + hashcodeDataFile.getKey());
+      dataFiles.put(hashcodeDataFile.getKey(), hashcodeDataFile.getValue());
+      detachedContents.add(hashcodeDataFile.getValue().getDocument());
+    }
+  }
+
   private boolean isMimeType(String entryName) {
     return StringUtils.equalsIgnoreCase("mimetype", entryName);
   }
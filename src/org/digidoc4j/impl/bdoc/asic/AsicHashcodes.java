@@ -0,0 +1,190 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.impl.bdoc.asic;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang.StringUtils;
+import org.digidoc4j.DigestAlgorithm;
+import org.digidoc4j.DigestDataFile;
+import org.digidoc4j.exceptions.TechnicalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.ls.DOMImplementationLS;
+import org.w3c.dom.ls.LSOutput;
+import org.w3c.dom.ls.LSSerializer;
+
+import eu.europa.esig.dss.DSSDocument;
+import eu.europa.esig.dss.DSSXMLUtils;
+
+/**
+ * Represents the META-INF/hashcodes-sha256.xml and META-INF/hashcodes-sha512.xml subdocuments
+ * of a hashcode container, listing the digests of the data files not included in the container.
+ */
+public class AsicHashcodes {
+
+  private static final Logger logger = LoggerFactory.getLogger(AsicHashcodes.class);
+  static final DigestAlgorithm[] DIGEST_ALGORITHMS = {DigestAlgorithm.SHA256, DigestAlgorithm.SHA512};
+  private static final Pattern XML_PATH_PATTERN = Pattern.compile("META-INF/hashcodes-(sha256|sha512)\\.xml");
+  private final DigestAlgorithm digestAlgorithm;
+  private final List<Entry> entries = new ArrayList<>();
+
+  /**
+   * @param digestAlgorithm algorithm of the listed digests, SHA-256 or SHA-512
+   */
+  public AsicHashcodes(DigestAlgorithm digestAlgorithm) {
+    this.digestAlgorithm = digestAlgorithm;
+  }
+
+  /**
+   * @param entryName name of the container entry
+   * @return true if the entry is a hashcodes file
+   */
+  public static boolean isHashcodesFile(String entryName) {
+    return XML_PATH_PATTERN.matcher(entryName).matches();
+  }
+
+  /**
+   * @param digestAlgorithm digest algorithm
+   * @return path of the hashcodes file listing digests of the given algorithm
+   */
+  public static String getXmlPath(DigestAlgorithm digestAlgorithm) {
+    return "META-INF/hashcodes-" + digestAlgorithm.name().toLowerCase() + ".xml";
+  }
+
+  /**
+   * Parses a hashcodes file.
+   *
+   * @param hashcodesFile hashcodes file of the container
+   * @return listed data file digests
+   */
+  public static AsicHashcodes parse(DSSDocument hashcodesFile) {
+    String fileName = hashcodesFile.getName();
+    logger.debug("Parsing hashcodes file " + fileName);
+    Matcher matcher = XML_PATH_PATTERN.matcher(fileName);
+    if (!matcher.matches()) {
+      throw new TechnicalException("Not a hashcodes file: " + fileName);
+    }
+    AsicHashcodes hashcodes = new AsicHashcodes(DigestAlgorithm.valueOf(matcher.group(1).toUpperCase()));
+    Element root = DSSXMLUtils.buildDOM(hashcodesFile).getDocumentElement();
+    Node child = root.getFirstChild();
+    while (child != null) {
+      if ("file-entry".equals(child.getNodeName())) {
+        Element fileEntry = (Element) child;
+        String size = fileEntry.getAttribute("size");
+        hashcodes.addEntry(fileEntry.getAttribute("full-path"), Base64.decodeBase64(fileEntry.getAttribute("hash")),
+            StringUtils.isBlank(size) ? null : Long.valueOf(size.trim()));
+      }
+      child = child.getNextSibling();
+    }
+    return hashcodes;
+  }
+
+  /**
+   * Creates the hashcodes file for the data files known only by their digests.
+   *
+   * @param digestAlgorithm algorithm of the listed digests
+   * @param dataFiles       data files
+   * @return hashcodes of the data files
+   */
+  public static AsicHashcodes create(DigestAlgorithm digestAlgorithm, Collection<DigestDataFile> dataFiles) {
+    AsicHashcodes hashcodes = new AsicHashcodes(digestAlgorithm);
+    for (DigestDataFile dataFile : dataFiles) {
+      hashcodes.addEntry(dataFile.getName(), dataFile.getDigest(digestAlgorithm), dataFile.getKnownFileSize());
+    }
+    return hashcodes;
+  }
+
+  public void addEntry(String fileName, byte[] digest, Long size) {
+    entries.add(new Entry(fileName, digest, size));
+  }
+
+  public DigestAlgorithm getDigestAlgorithm() {
+    return digestAlgorithm;
+  }
+
+  public List<Entry> getEntries() {
+    return entries;
+  }
+
+  public String getXmlPath() {
+    return getXmlPath(digestAlgorithm);
+  }
+
+  public byte[] getBytes() {
+    try {
+      DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+      Document dom = documentBuilder.newDocument();
+      Element rootElement = dom.createElement("hashcodes");
+      for (Entry entry : entries) {
+        Element fileEntry = dom.createElement("file-entry");
+        fileEntry.setAttribute("full-path", entry.getFileName());
+        fileEntry.setAttribute("hash", Base64.encodeBase64String(entry.getDigest()));
+        if (entry.getSize() != null) {
+          fileEntry.setAttribute("size", entry.getSize().toString());
+        }
+        rootElement.appendChild(fileEntry);
+      }
+      dom.appendChild(rootElement);
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      DOMImplementationLS implementation = (DOMImplementationLS) dom.getImplementation();
+      LSOutput lsOutput = implementation.createLSOutput();
+      lsOutput.setByteStream(outputStream);
+      LSSerializer writer = implementation.createLSSerializer();
+      writer.write(dom, lsOutput);
+      return outputStream.toByteArray();
+    } catch (ParserConfigurationException e) {
+      logger.error(e.getMessage());
+      throw new TechnicalException("Error creating hashcodes file", e);
+    }
+  }
+
+  /**
+   * Digest of a single data file.
+   */
+  public static class Entry {
+
+    private final String fileName;
+    private final byte[] digest;
+    private final Long size;
+
+    Entry(String fileName, byte[] digest, Long size) {
+      this.fileName = fileName;
+      this.digest = digest;
+      this.size = size;
+    }
+
+    public String getFileName() {
+      return fileName;
+    }
+
+    public byte[] getDigest() {
+      return digest;
+    }
+
+    public Long getSize() {
+      return size;
+    }
+  }
+}
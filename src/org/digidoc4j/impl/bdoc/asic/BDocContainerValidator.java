@@ -17,6 +17,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.digidoc4j.DataFile;
+import org.digidoc4j.DigestDataFile;
 import org.digidoc4j.Signature;
 import org.digidoc4j.SignatureValidationResult;
 import org.digidoc4j.ValidationResult;
@@ -62,6 +64,7 @@ public class BDocContainerValidator implements Serializable {
       extractSignatureErrors(signature);
     }
     extractManifestErrors(signatures);
+    extractHashcodeWarnings();
     reportBuilder = new BDocValidationReportBuilder(validationReports, manifestErrors, signatureVerificationErrors);
 
     BDocValidationResult result = createValidationResult();
@@ -88,6 +91,20 @@ public class BDocContainerValidator implements Serializable {
     errors.addAll(manifestErrors);
   }
 
+  private void extractHashcodeWarnings() {
+    if (containerParseResult == null) {
+      return;
+    }
+    for (DataFile dataFile : containerParseResult.getDataFiles()) {
+      if (dataFile instanceof DigestDataFile) {
+        String warning = "Data file " + dataFile.getName() + " is not in the container, it is validated by its "
+            + "hashcode only";
+        logger.warn(warning);
+        warnings.add(new DigiDoc4JException(warning));
+      }
+    }
+  }
+
   private BDocValidationResult createValidationResult() {
     BDocValidationResult result = new BDocValidationResult();
     result.setErrors(errors);
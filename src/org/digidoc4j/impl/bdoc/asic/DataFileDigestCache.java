@@ -0,0 +1,280 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.impl.bdoc.asic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.digidoc4j.DataFile;
+import org.digidoc4j.exceptions.DigiDoc4JException;
+import org.digidoc4j.impl.StreamDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.europa.esig.dss.DSSDocument;
+import eu.europa.esig.dss.DSSException;
+import eu.europa.esig.dss.DigestAlgorithm;
+import eu.europa.esig.dss.FileDocument;
+import eu.europa.esig.dss.MimeType;
+
+/**
+ * Digests of the data files of a container, calculated once per data file and digest algorithm.
+ * <p/>
+ * Preparing and finalizing a signature both need the digests of all the data files, and so does every
+ * additional signature of the container. The digests are kept by data file identity and are calculated
+ * again only when the document of the data file is replaced or its file on disk has been modified.
+ * <p/>
+ * Validation takes the reference digests of the data files from the same cache (see
+ * {@link org.digidoc4j.impl.bdoc.xades.HashcodeResolver}), so a data file signed or validated once is not read
+ * again for validating the signatures of the container. The data files of an opened container are digested
+ * in parallel before its signatures are validated.
+ * <p/>
+ * The digests of several data files are calculated in parallel, one data file per task, on a thread pool
+ * shared by all the containers and sized by the number of processors.
+ */
+public class DataFileDigestCache {
+
+  private static final Logger logger = LoggerFactory.getLogger(DataFileDigestCache.class);
+  private static final int DIGEST_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+  private static final ExecutorService digestExecutor = Executors.newFixedThreadPool(DIGEST_THREADS,
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "digidoc4j-digest");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+  private final Map<DataFile, Digests> digests = Collections.synchronizedMap(new WeakHashMap<DataFile, Digests>());
+
+  /**
+   * Calculates the missing digests of the data files in parallel and waits until all of them are known.
+   *
+   * @param dataFiles       data files
+   * @param digestAlgorithm digest algorithm
+   */
+  public void calculateDigests(Collection<DataFile> dataFiles, final DigestAlgorithm digestAlgorithm) {
+    List<DataFile> dataFilesWithoutDigest = new ArrayList<>();
+    for (DataFile dataFile : dataFiles) {
+      if (!getDigests(dataFile, dataFile.getDocument()).values.containsKey(digestAlgorithm)) {
+        dataFilesWithoutDigest.add(dataFile);
+      }
+    }
+    if (dataFilesWithoutDigest.size() < 2) {
+      for (DataFile dataFile : dataFilesWithoutDigest) {
+        getDigest(dataFile, digestAlgorithm);
+      }
+      return;
+    }
+    logger.debug("Calculating " + digestAlgorithm + " digests of " + dataFilesWithoutDigest.size()
+        + " data files in parallel");
+    List<Future<String>> calculations = new ArrayList<>(dataFilesWithoutDigest.size());
+    for (final DataFile dataFile : dataFilesWithoutDigest) {
+      calculations.add(digestExecutor.submit(new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          return getDigest(dataFile, digestAlgorithm);
+        }
+      }));
+    }
+    try {
+      for (Future<String> calculation : calculations) {
+        calculation.get();
+      }
+    } catch (ExecutionException e) {
+      cancel(calculations);
+      Throwable cause = e.getCause();
+      logger.error("Calculating data file digest failed: " + cause.getMessage());
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new DigiDoc4JException(cause);
+    } catch (InterruptedException e) {
+      cancel(calculations);
+      Thread.currentThread().interrupt();
+      throw new DigiDoc4JException(e);
+    }
+  }
+
+  /**
+   * Returns the digest of the data file, calculating it only if it isn't known yet.
+   *
+   * @param dataFile        data file
+   * @param digestAlgorithm digest algorithm
+   * @return base64 encoded digest
+   */
+  public String getDigest(DataFile dataFile, DigestAlgorithm digestAlgorithm) {
+    DSSDocument document = dataFile.getDocument();
+    Digests dataFileDigests = getDigests(dataFile, document);
+    String digest = dataFileDigests.values.get(digestAlgorithm);
+    if (digest == null) {
+      logger.debug("Calculating " + digestAlgorithm + " digest of " + document.getName());
+      digest = document.getDigest(digestAlgorithm);
+      dataFileDigests.values.put(digestAlgorithm, digest);
+    }
+    return digest;
+  }
+
+  /**
+   * Wraps the document of the data file, so that its digests are taken from this cache.
+   *
+   * @param dataFile data file
+   * @return document to be used as detached content
+   */
+  public DSSDocument createDetachedContent(DataFile dataFile) {
+    return new CachedDigestDocument(this, dataFile);
+  }
+
+  /**
+   * @param document detached content
+   * @return true if the digests of the document are taken from a data file digest cache
+   */
+  public static boolean isCachedDigestDocument(DSSDocument document) {
+    return document instanceof CachedDigestDocument;
+  }
+
+  private void cancel(List<Future<String>> calculations) {
+    for (Future<String> calculation : calculations) {
+      calculation.cancel(true);
+    }
+  }
+
+  private Digests getDigests(DataFile dataFile, DSSDocument document) {
+    String version = getVersion(document);
+    synchronized (digests) {
+      Digests dataFileDigests = digests.get(dataFile);
+      if (dataFileDigests == null || dataFileDigests.document != document
+          || !dataFileDigests.version.equals(version)) {
+        dataFileDigests = new Digests(document, version);
+        digests.put(dataFile, dataFileDigests);
+      }
+      return dataFileDigests;
+    }
+  }
+
+  private static String getVersion(DSSDocument document) {
+    if (document instanceof FileDocument || document instanceof StreamDocument) {
+      File file = new File(document.getAbsolutePath());
+      return file.length() + ":" + file.lastModified();
+    }
+    return "";
+  }
+
+  private static class Digests {
+
+    private final DSSDocument document;
+    private final String version;
+    private final Map<DigestAlgorithm, String> values = new ConcurrentHashMap<>();
+
+    Digests(DSSDocument document, String version) {
+      this.document = document;
+      this.version = version;
+    }
+  }
+
+  private static class CachedDigestDocument implements DSSDocument {
+
+    private final transient DataFileDigestCache cache;
+    private final DataFile dataFile;
+    private DSSDocument nextDocument;
+
+    CachedDigestDocument(DataFileDigestCache cache, DataFile dataFile) {
+      this.cache = cache;
+      this.dataFile = dataFile;
+    }
+
+    @Override
+    public String getDigest(DigestAlgorithm digestAlgorithm) {
+      if (cache == null) {
+        return getDocument().getDigest(digestAlgorithm);
+      }
+      return cache.getDigest(dataFile, digestAlgorithm);
+    }
+
+    @Override
+    public InputStream openStream() throws DSSException {
+      return getDocument().openStream();
+    }
+
+    @Override
+    public byte[] getBytes() throws DSSException {
+      return getDocument().getBytes();
+    }
+
+    @Override
+    public String getName() {
+      return getDocument().getName();
+    }
+
+    @Override
+    public void setName(String name) {
+      getDocument().setName(name);
+    }
+
+    @Override
+    public String getAbsolutePath() {
+      return getDocument().getAbsolutePath();
+    }
+
+    @Override
+    public MimeType getMimeType() {
+      return getDocument().getMimeType();
+    }
+
+    @Override
+    public void setMimeType(MimeType mimeType) {
+      getDocument().setMimeType(mimeType);
+    }
+
+    @Override
+    public void save(String filePath) throws IOException {
+      getDocument().save(filePath);
+    }
+
+    @Override
+    public String getBase64Encoded() {
+      return getDocument().getBase64Encoded();
+    }
+
+    @Override
+    public DSSDocument getNextDocument() {
+      return nextDocument;
+    }
+
+    @Override
+    public void setNextDocument(DSSDocument nextDocument) {
+      this.nextDocument = nextDocument;
+    }
+
+    @Override
+    public String toString() {
+      return getDocument().toString();
+    }
+
+    private DSSDocument getDocument() {
+      return dataFile.getDocument();
+    }
+  }
+}
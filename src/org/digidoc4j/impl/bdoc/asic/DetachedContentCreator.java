@@ -16,6 +16,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import org.digidoc4j.DataFile;
+import org.digidoc4j.impl.DigestOnlyDocument;
 
 import eu.europa.esig.dss.DSSDocument;
 
@@ -25,14 +26,23 @@ public class DetachedContentCreator {
   private List<DSSDocument> detachedContentList;
 
   public DetachedContentCreator populate(Collection<DataFile> dataFiles) {
+    return populate(dataFiles, null);
+  }
+
+  /**
+   * @param dataFiles   data files of the container
+   * @param digestCache digests of the data files, may be null
+   * @return this creator
+   */
+  public DetachedContentCreator populate(Collection<DataFile> dataFiles, DataFileDigestCache digestCache) {
     detachedContentList = new ArrayList<>(dataFiles.size());
     Iterator<DataFile> dataFileIterator = dataFiles.iterator();
-    firstDetachedContent = dataFileIterator.next().getDocument();
+    firstDetachedContent = getDocument(dataFileIterator.next(), digestCache);
     DSSDocument lastDetachedContent = firstDetachedContent;
     detachedContentList.add(firstDetachedContent);
     while (dataFileIterator.hasNext()) {
       DataFile dataFile = dataFileIterator.next();
-      DSSDocument document = dataFile.getDocument();
+      DSSDocument document = getDocument(dataFile, digestCache);
       lastDetachedContent.setNextDocument(document);
       lastDetachedContent = document;
       detachedContentList.add(document);
@@ -40,6 +50,13 @@ public class DetachedContentCreator {
     return this;
   }
 
+  private DSSDocument getDocument(DataFile dataFile, DataFileDigestCache digestCache) {
+    if (digestCache == null || dataFile.getDocument() instanceof DigestOnlyDocument) {
+      return dataFile.getDocument();
+    }
+    return digestCache.createDetachedContent(dataFile);
+  }
+
   public List<DSSDocument> getDetachedContentList() {
     return detachedContentList;
   }
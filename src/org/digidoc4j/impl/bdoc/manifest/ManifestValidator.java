@@ -22,6 +22,7 @@ import java.util.Set;
 import org.apache.xml.security.signature.Reference;
 import org.digidoc4j.Signature;
 import org.digidoc4j.exceptions.DigiDoc4JException;
+import org.digidoc4j.impl.DigestOnlyDocument;
 import org.digidoc4j.impl.bdoc.BDocSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -71,6 +72,9 @@ public class ManifestValidator {
     }
 
     errorMessages.addAll(validateFilesInContainer(signatureEntries));
+    if (isHashcodeContainer()) {
+      errorMessages.addAll(validateHashcodes(manifestEntries));
+    }
 
     logger.info("Validation of meta data within the manifest file and signature files error count: " + errorMessages.size());
     return errorMessages;
@@ -98,6 +102,28 @@ public class ManifestValidator {
     return errorMessages;
   }
 
+  private List<String> validateHashcodes(Map<String, ManifestEntry> manifestEntries) {
+    logger.debug("Validating hashcodes of the manifest entries");
+    List<String> errorMessages = new ArrayList<>();
+    List<String> filesInContainer = getFilesInContainer();
+    for (String fileName : manifestEntries.keySet()) {
+      if (!filesInContainer.contains(fileName)) {
+        errorMessages.add("Manifest file has an entry for file " + fileName + " but the container contains "
+            + "neither the file nor its hashcode");
+      }
+    }
+    return errorMessages;
+  }
+
+  private boolean isHashcodeContainer() {
+    for (DSSDocument detachedContent : detachedContents) {
+      if (detachedContent instanceof DigestOnlyDocument) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private List<String> getFileNamesFromManifestEntrySet(Set<ManifestEntry> signatureEntries) {
     List<String> signatureEntriesFileNames = new ArrayList<>();
 
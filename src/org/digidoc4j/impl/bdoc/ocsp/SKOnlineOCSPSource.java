@@ -13,7 +13,17 @@ package org.digidoc4j.impl.bdoc.ocsp;
 import java.io.IOException;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
@@ -34,7 +44,10 @@ import org.digidoc4j.Configuration;
 import org.digidoc4j.SignatureProfile;
 import org.digidoc4j.exceptions.ConfigurationException;
 import org.digidoc4j.exceptions.DigiDoc4JException;
+import org.digidoc4j.impl.bdoc.ResponderThrottle;
 import org.digidoc4j.impl.bdoc.SKOcspDataLoader;
+import org.digidoc4j.impl.bdoc.SigningServices;
+import org.digidoc4j.utils.Helper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,6 +65,7 @@ import eu.europa.esig.dss.x509.ocsp.OCSPSource;
 */
 public abstract class SKOnlineOCSPSource implements OCSPSource {
   private static final Logger logger = LoggerFactory.getLogger(SKOnlineOCSPSource.class);
+  private static final int MAX_PARALLEL_OCSP_REQUESTS = 8;
   
   /**
    * The data loader used to retrieve the OCSP response.
@@ -59,6 +73,10 @@ public abstract class SKOnlineOCSPSource implements OCSPSource {
   private SKOcspDataLoader dataLoader;
 
   private Configuration configuration;
+  private String userAgent = Helper.createBDocUserAgent();
+  private ResponderThrottle.Priority requestPriority = ResponderThrottle.Priority.INTERACTIVE;
+
+  private final Map<String, OCSPToken> prefetchedTokens = new ConcurrentHashMap<>();
 
   /**
    * SK Online OCSP Source constructor
@@ -67,7 +85,11 @@ public abstract class SKOnlineOCSPSource implements OCSPSource {
    */
   public SKOnlineOCSPSource(Configuration configuration) {
     this.configuration = configuration;
-    dataLoader = new SKOcspDataLoader();
+    if (configuration != null) {
+      dataLoader = SigningServices.forConfiguration(configuration).getOcspDataLoader();
+    } else {
+      dataLoader = new SKOcspDataLoader();
+    }
     logger.debug("Initialized SK Online OCSP source");
   }
 
@@ -85,13 +107,13 @@ public abstract class SKOnlineOCSPSource implements OCSPSource {
     return location;
   }
 
-  private byte[] buildOCSPRequest(final X509Certificate signCert, final X509Certificate issuerCert, Extension nonceExtension) throws
-      DSSException {
+  private byte[] buildOCSPRequest(final List<CertificateID> certIds, Extension nonceExtension) throws DSSException {
     try {
       logger.debug("Building OCSP request");
-      final CertificateID certId = DSSRevocationUtils.getOCSPCertificateID(signCert, issuerCert);
       final OCSPReqBuilder ocspReqBuilder = new OCSPReqBuilder();
-      ocspReqBuilder.addRequest(certId);
+      for (CertificateID certId : certIds) {
+        ocspReqBuilder.addRequest(certId);
+      }
       ocspReqBuilder.setRequestExtensions(new Extensions(nonceExtension));
 
       if (configuration.hasToBeOCSPRequestSigned()) {
@@ -125,62 +147,182 @@ public abstract class SKOnlineOCSPSource implements OCSPSource {
     if (dataLoader == null) {
       throw new RuntimeException("Data loader is null");
     }
+    final String dssIdAsString = certificateToken.getDSSIdAsString();
+    if (logger.isTraceEnabled()) {
+      logger.trace("--> OnlineOCSPSource queried for " + dssIdAsString);
+    }
+    OCSPToken prefetchedToken = prefetchedTokens.get(getPrefetchedTokenKey(certificateToken, issuerCertificateToken));
+    if (prefetchedToken != null) {
+      logger.debug("Using prefetched OCSP token for " + dssIdAsString);
+      certificateToken.setRevocationToken(prefetchedToken);
+      return prefetchedToken;
+    }
     try {
-      final String dssIdAsString = certificateToken.getDSSIdAsString();
-      if (logger.isTraceEnabled()) {
-        logger.trace("--> OnlineOCSPSource queried for " + dssIdAsString);
-      }
       final X509Certificate certificate = certificateToken.getCertificate();
       final X509Certificate issuerCertificate = issuerCertificateToken.getCertificate();
+      final CertificateID certId = DSSRevocationUtils.getOCSPCertificateID(certificate, issuerCertificate);
+      BasicOCSPResp basicOCSPResp = requestOCSPResponse(Collections.singletonList(certId));
+      if (basicOCSPResp == null) {
+        return null;
+      }
+      final SingleResp bestSingleResp = findBestSingleResponse(basicOCSPResp, certId);
+      if (bestSingleResp != null) {
+
+        final OCSPToken ocspToken = new OCSPToken(basicOCSPResp, bestSingleResp);
+        ocspToken.setSourceURI(getAccessLocation());
+        certificateToken.setRevocationToken(ocspToken);
+        return ocspToken;
+      }
+    } catch (OCSPException e) {
+      logger.error("OCSP error: " + e.getMessage(), e);
+    }
+    return null;
+  }
 
-      final String ocspUri = getAccessLocation();
-      logger.debug("Getting OCSP token from URI: " + ocspUri);
-      if (ocspUri == null) {
+  /**
+   * Requests OCSP responses for all the given certificates in advance. Up to the configured maximum number of
+   * certificates are asked in a single OCSP request, the rest and the certificates missing from the batched
+   * responses (not all responders support multiple certificates in one request) are requested in parallel.
+   * <p/>
+   * The responses are later returned by {@link SKOnlineOCSPSource#getOCSPToken(CertificateToken, CertificateToken)}
+   * without contacting the responder again. Certificates whose responses could not be fetched are requested
+   * when asked for.
+   * <p/>
+   * The same response is returned for every signature of the certificate, so the tokens should only be prefetched
+   * when the nonce does not depend on the signature (see {@link BDocTSOcspSource}) and after all the signatures
+   * have been time-stamped: a time-stamp must not be created after the OCSP response of the signature.
+   *
+   * @param issuersByCertificate certificates to be checked mapped to their issuer certificates
+   */
+  public void prefetchOCSPTokens(Map<CertificateToken, CertificateToken> issuersByCertificate) {
+    if (issuersByCertificate.isEmpty()) {
+      return;
+    }
+    logger.debug("Prefetching OCSP tokens for " + issuersByCertificate.size() + " certificates");
+    int maxCertificatesPerRequest = Math.max(1, configuration.getOcspMaxCertificatesPerRequest());
+    List<OcspPrefetchRequest> requests = new ArrayList<>();
+    for (Map.Entry<CertificateToken, CertificateToken> entry : issuersByCertificate.entrySet()) {
+      requests.add(new OcspPrefetchRequest(entry.getKey(), entry.getValue()));
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(requests.size(), MAX_PARALLEL_OCSP_REQUESTS));
+    try {
+      List<OcspPrefetchRequest> missingResponses = prefetchInBatches(requests, maxCertificatesPerRequest, executor);
+      if (maxCertificatesPerRequest > 1 && !missingResponses.isEmpty()) {
+        logger.debug("Requesting " + missingResponses.size() + " missing OCSP responses one by one");
+        prefetchInBatches(missingResponses, 1, executor);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    logger.debug("Finished prefetching OCSP tokens");
+  }
 
-        return null;
+  private List<OcspPrefetchRequest> prefetchInBatches(List<OcspPrefetchRequest> requests, int batchSize,
+                                                      ExecutorService executor) {
+    List<Future<List<OcspPrefetchRequest>>> results = new ArrayList<>();
+    for (int i = 0; i < requests.size(); i += batchSize) {
+      final List<OcspPrefetchRequest> batch = requests.subList(i, Math.min(i + batchSize, requests.size()));
+      results.add(executor.submit(new Callable<List<OcspPrefetchRequest>>() {
+        @Override
+        public List<OcspPrefetchRequest> call() throws Exception {
+          return prefetchBatch(batch);
+        }
+      }));
+    }
+    List<OcspPrefetchRequest> missingResponses = new ArrayList<>();
+    for (int i = 0; i < results.size(); i++) {
+      try {
+        missingResponses.addAll(results.get(i).get());
+      } catch (ExecutionException e) {
+        logger.warn("Unable to prefetch OCSP responses: " + e.getCause().getMessage());
+        missingResponses.addAll(requests.subList(i * batchSize, Math.min((i + 1) * batchSize, requests.size())));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        logger.warn("Interrupted while prefetching OCSP responses");
+        return missingResponses;
       }
+    }
+    return missingResponses;
+  }
+
+  private List<OcspPrefetchRequest> prefetchBatch(List<OcspPrefetchRequest> batch) throws OCSPException {
+    List<CertificateID> certIds = new ArrayList<>(batch.size());
+    for (OcspPrefetchRequest request : batch) {
+      certIds.add(request.certId);
+    }
+    BasicOCSPResp basicOCSPResp = requestOCSPResponse(certIds);
+    if (basicOCSPResp == null) {
+      return batch;
+    }
+    List<OcspPrefetchRequest> missingResponses = new ArrayList<>();
+    for (OcspPrefetchRequest request : batch) {
+      SingleResp singleResp = findBestSingleResponse(basicOCSPResp, request.certId);
+      if (singleResp == null) {
+        missingResponses.add(request);
+      } else {
+        OCSPToken ocspToken = new OCSPToken(basicOCSPResp, singleResp);
+        ocspToken.setSourceURI(getAccessLocation());
+        prefetchedTokens.put(getPrefetchedTokenKey(request.certificate, request.issuer), ocspToken);
+      }
+    }
+    return missingResponses;
+  }
+
+  private BasicOCSPResp requestOCSPResponse(List<CertificateID> certIds) throws OCSPException {
+    final String ocspUri = getAccessLocation();
+    logger.debug("Getting OCSP response for " + certIds.size() + " certificates from URI: " + ocspUri);
+    if (ocspUri == null) {
+      return null;
+    }
+    try {
       Extension nonceExtension = createNonce();
-      final byte[] content = buildOCSPRequest(certificate, issuerCertificate, nonceExtension);
+      final byte[] content = buildOCSPRequest(certIds, nonceExtension);
 
-      final byte[] ocspRespBytes = dataLoader.post(ocspUri, content);
+      final byte[] ocspRespBytes = postOCSPRequest(ocspUri, content);
 
       final OCSPResp ocspResp = new OCSPResp(ocspRespBytes);
       BasicOCSPResp basicOCSPResp = (BasicOCSPResp) ocspResp.getResponseObject();
-      if(basicOCSPResp == null) {
+      if (basicOCSPResp == null) {
         logger.error("OCSP response is empty");
         return null;
       }
 
       checkNonce(basicOCSPResp, nonceExtension);
+      return basicOCSPResp;
+    } catch (IOException e) {
+      throw new DSSException(e);
+    }
+  }
 
-      Date bestUpdate = null;
-      SingleResp bestSingleResp = null;
-      final CertificateID certId = DSSRevocationUtils.getOCSPCertificateID(certificate, issuerCertificate);
-      for (final SingleResp singleResp : basicOCSPResp.getResponses()) {
+  private byte[] postOCSPRequest(String ocspUri, byte[] content) {
+    dataLoader.setCurrentRequest(userAgent, requestPriority);
+    try {
+      return dataLoader.post(ocspUri, content);
+    } finally {
+      dataLoader.clearCurrentRequest();
+    }
+  }
 
-        if (DSSRevocationUtils.matches(certId, singleResp)) {
+  private SingleResp findBestSingleResponse(BasicOCSPResp basicOCSPResp, CertificateID certId) {
+    Date bestUpdate = null;
+    SingleResp bestSingleResp = null;
+    for (final SingleResp singleResp : basicOCSPResp.getResponses()) {
 
-          final Date thisUpdate = singleResp.getThisUpdate();
-          if (bestUpdate == null || thisUpdate.after(bestUpdate)) {
+      if (DSSRevocationUtils.matches(certId, singleResp)) {
 
-            bestSingleResp = singleResp;
-            bestUpdate = thisUpdate;
-          }
-        }
-      }
-      if (bestSingleResp != null) {
+        final Date thisUpdate = singleResp.getThisUpdate();
+        if (bestUpdate == null || thisUpdate.after(bestUpdate)) {
 
-        final OCSPToken ocspToken = new OCSPToken(basicOCSPResp, bestSingleResp);
-        ocspToken.setSourceURI(ocspUri);
-        certificateToken.setRevocationToken(ocspToken);
-        return ocspToken;
+          bestSingleResp = singleResp;
+          bestUpdate = thisUpdate;
+        }
       }
-    } catch (OCSPException e) {
-      logger.error("OCSP error: " + e.getMessage(), e);
-    } catch (IOException e) {
-      throw new DSSException(e);
     }
-    return null;
+    return bestSingleResp;
+  }
+
+  private String getPrefetchedTokenKey(CertificateToken certificateToken, CertificateToken issuerCertificateToken) {
+    return certificateToken.getDSSIdAsString() + ":" + issuerCertificateToken.getDSSIdAsString();
   }
 
   protected void checkNonce(BasicOCSPResp basicOCSPResp, Extension expectedNonceExtension) {
@@ -205,6 +347,22 @@ public abstract class SKOnlineOCSPSource implements OCSPSource {
   }
 
   public void setUserAgentSignatureProfile(SignatureProfile signatureProfile) {
-    dataLoader.setUserAgentSignatureProfile(signatureProfile);
+    userAgent = Helper.createBDocUserAgent(signatureProfile);
+  }
+
+  public void setRequestPriority(ResponderThrottle.Priority requestPriority) {
+    this.requestPriority = requestPriority;
+  }
+
+  private static class OcspPrefetchRequest {
+    private final CertificateToken certificate;
+    private final CertificateToken issuer;
+    private final CertificateID certId;
+
+    OcspPrefetchRequest(CertificateToken certificate, CertificateToken issuer) {
+      this.certificate = certificate;
+      this.issuer = issuer;
+      certId = DSSRevocationUtils.getOCSPCertificateID(certificate.getCertificate(), issuer.getCertificate());
+    }
   }
 }
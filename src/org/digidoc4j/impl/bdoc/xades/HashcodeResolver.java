@@ -0,0 +1,154 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.impl.bdoc.xades;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.List;
+
+import org.apache.xml.security.signature.XMLSignatureInput;
+import org.apache.xml.security.utils.resolver.ResourceResolver;
+import org.apache.xml.security.utils.resolver.ResourceResolverContext;
+import org.apache.xml.security.utils.resolver.ResourceResolverException;
+import org.apache.xml.security.utils.resolver.ResourceResolverSpi;
+import org.digidoc4j.impl.DigestOnlyDocument;
+import org.digidoc4j.impl.bdoc.asic.DataFileDigestCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+
+import eu.europa.esig.dss.DSSDocument;
+import eu.europa.esig.dss.DSSXMLUtils;
+import eu.europa.esig.dss.DigestAlgorithm;
+
+/**
+ * Resolves the signature references of data files by their digests: the data files of hashcode containers, which
+ * are known only by their digests, and the data files whose digests are kept in the container's
+ * {@link DataFileDigestCache}.
+ * <p/>
+ * The digest of a data file is handed to the reference verification as a precalculated digest, so the reference
+ * is verified without reading the file content again. The detached contents are taken from the thread validating
+ * the signature, as the resolver is registered once for all the signatures.
+ */
+public class HashcodeResolver extends ResourceResolverSpi {
+
+  private static final Logger logger = LoggerFactory.getLogger(HashcodeResolver.class);
+  private static final ThreadLocal<List<DSSDocument>> detachedContents = new ThreadLocal<>();
+  private static boolean registered;
+
+  /**
+   * @param documents detached contents
+   * @return true if some of the detached contents are resolved by their digests
+   */
+  public static boolean hasDigestContents(List<DSSDocument> documents) {
+    if (documents == null) {
+      return false;
+    }
+    for (DSSDocument document : documents) {
+      if (document instanceof DigestOnlyDocument || DataFileDigestCache.isCachedDigestDocument(document)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Makes the detached contents resolvable for the signatures validated by the current thread.
+   *
+   * @param documents detached contents
+   */
+  public static void setDetachedContents(List<DSSDocument> documents) {
+    register();
+    detachedContents.set(documents);
+  }
+
+  public static void clearDetachedContents() {
+    detachedContents.remove();
+  }
+
+  private static synchronized void register() {
+    if (!registered) {
+      logger.debug("Registering hashcode resolver");
+      ResourceResolver.register(new HashcodeResolver(), true);
+      registered = true;
+    }
+  }
+
+  @Override
+  public boolean engineCanResolveURI(ResourceResolverContext context) {
+    return findDocument(context) != null;
+  }
+
+  @Override
+  public XMLSignatureInput engineResolveURI(ResourceResolverContext context) throws ResourceResolverException {
+    DSSDocument document = findDocument(context);
+    if (document == null) {
+      throw new ResourceResolverException("generic.EmptyMessage", new Object[]{"Unknown document " +
+          context.uriToResolve}, context.uriToResolve, context.baseUri);
+    }
+    XMLSignatureInput input;
+    if (document instanceof DigestOnlyDocument) {
+      DigestAlgorithm digestAlgorithm = getReferenceDigestAlgorithm(context);
+      if (!((DigestOnlyDocument) document).hasDigest(digestAlgorithm)) {
+        throw new ResourceResolverException("generic.EmptyMessage", new Object[]{digestAlgorithm + " digest of " +
+            document.getName() + " is not available"}, context.uriToResolve, context.baseUri);
+      }
+      logger.debug("Resolving " + document.getName() + " by its " + digestAlgorithm + " digest");
+      input = new XMLSignatureInput(document.getDigest(digestAlgorithm));
+    } else if (DataFileDigestCache.isCachedDigestDocument(document) && !hasTransforms(context)) {
+      DigestAlgorithm digestAlgorithm = getReferenceDigestAlgorithm(context);
+      logger.debug("Resolving " + document.getName() + " by its cached " + digestAlgorithm + " digest");
+      input = new XMLSignatureInput(document.getDigest(digestAlgorithm));
+    } else {
+      input = new XMLSignatureInput(document.openStream());
+    }
+    input.setSourceURI(context.uriToResolve);
+    if (document.getMimeType() != null) {
+      input.setMIMEType(document.getMimeType().getMimeTypeString());
+    }
+    return input;
+  }
+
+  private DSSDocument findDocument(ResourceResolverContext context) {
+    List<DSSDocument> documents = detachedContents.get();
+    String uri = context.uriToResolve;
+    if (documents == null || uri == null || uri.isEmpty() || uri.startsWith("#")) {
+      return null;
+    }
+    String documentName = decodeUri(uri);
+    for (DSSDocument document : documents) {
+      if (documentName.equals(document.getName())) {
+        return document;
+      }
+    }
+    return null;
+  }
+
+  private DigestAlgorithm getReferenceDigestAlgorithm(ResourceResolverContext context) {
+    Element reference = context.attr.getOwnerElement();
+    String algorithm = DSSXMLUtils.getValue(reference, "./ds:DigestMethod/@Algorithm");
+    return DigestAlgorithm.forXML(algorithm);
+  }
+
+  private boolean hasTransforms(ResourceResolverContext context) {
+    Element reference = context.attr.getOwnerElement();
+    return DSSXMLUtils.getElement(reference, "./ds:Transforms") != null;
+  }
+
+  private String decodeUri(String uri) {
+    try {
+      return URLDecoder.decode(uri, "UTF-8");
+    } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+      logger.debug("Does not parse as an encoded URI, therefore assuming it's not encoded: '" + uri + "'");
+      return uri;
+    }
+  }
+}
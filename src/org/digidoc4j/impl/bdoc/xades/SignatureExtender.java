@@ -10,50 +10,207 @@
 
 package org.digidoc4j.impl.bdoc.xades;
 
+import static java.util.Arrays.asList;
+
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.digidoc4j.Configuration;
 import org.digidoc4j.SignatureProfile;
 import org.digidoc4j.exceptions.DigiDoc4JException;
 import org.digidoc4j.exceptions.NotSupportedException;
+import org.digidoc4j.impl.bdoc.BDocSignature;
+import org.digidoc4j.impl.bdoc.BDocSignatureOpener;
+import org.digidoc4j.impl.bdoc.ResponderThrottle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.digidoc4j.impl.bdoc.ocsp.BDocTSOcspSource;
 import eu.europa.esig.dss.DSSDocument;
 import eu.europa.esig.dss.SignatureLevel;
+import eu.europa.esig.dss.x509.CertificateToken;
+import eu.europa.esig.dss.xades.validation.XAdESSignature;
 
 public class SignatureExtender {
 
   private static final Logger logger = LoggerFactory.getLogger(SignatureExtender.class);
   private Configuration configuration;
   private DSSDocument detachedContent;
+  private XadesValidationDssFacade validationFacade;
 
   public SignatureExtender(Configuration configuration, DSSDocument detachedContent) {
     this.configuration = configuration;
     this.detachedContent = detachedContent;
+    validationFacade = new XadesValidationDssFacade(asList(detachedContent), configuration);
   }
 
-  public List<DSSDocument> extend(Collection<DSSDocument> signaturesToExtend, SignatureProfile profile) {
+  /**
+   * Extends the signatures and opens the extended signatures in the same step, so that
+   * the extended signatures don't have to be parsed again one after another afterwards.
+   * <p/>
+   * Signatures are extended in parallel when more than one signature extension thread is configured
+   * (see {@link Configuration#setSignatureExtensionThreads(int)}). When extending a signature fails, the remaining
+   * signatures are not extended and the error of the first failed signature is thrown as it is.
+   * <p/>
+   * Signatures without a signature time-stamp are time-stamped first and the OCSP responses of all the
+   * signatures are requested only after that, so that no OCSP response is produced before the time-stamp
+   * of the signature it is added to. Every signature document is opened once for finding out its time-stamp
+   * and signing certificate and once more after it has been extended.
+   *
+   * @param signaturesToExtend signature documents to extend, each containing one signature
+   * @param profile            profile to extend the signatures to
+   * @param detachedContents   signed data files
+   * @return extended signatures in the order of the signature documents
+   */
+  public List<BDocSignature> extendSignatures(Collection<DSSDocument> signaturesToExtend, SignatureProfile profile,
+                                              final List<DSSDocument> detachedContents) {
     logger.debug("Extending signatures to " + profile);
-    SignatureLevel signatureLevel = getSignatureLevel(profile);
-    XadesSigningDssFacade extendingFacade = new XadesSigningDssFacade(configuration.getTspSource());
-    extendingFacade.setCertificateSource(configuration.getTSL());
+    final SignatureLevel signatureLevel = getSignatureLevel(profile);
+    List<TimestampedSignature> timestampedSignatures = addSignatureTimestamps(signaturesToExtend);
+    final BDocTSOcspSource ocspSource = createOcspSource(timestampedSignatures, profile);
+    List<Callable<BDocSignature>> extensionTasks = new ArrayList<>();
+    for (final TimestampedSignature timestampedSignature : timestampedSignatures) {
+      extensionTasks.add(new Callable<BDocSignature>() {
+        @Override
+        public BDocSignature call() throws Exception {
+          DSSDocument extendedSignature = extendSignature(timestampedSignature.document, signatureLevel, ocspSource);
+          return new BDocSignatureOpener(detachedContents, configuration).open(extendedSignature);
+        }
+      });
+    }
+    List<BDocSignature> extendedSignatures = runExtensionTasks(extensionTasks);
+    logger.debug("Finished extending signatures");
+    return extendedSignatures;
+  }
+
+  private List<TimestampedSignature> addSignatureTimestamps(Collection<DSSDocument> signaturesToExtend) {
+    logger.debug("Adding signature time-stamps to the signatures to extend");
+    List<Callable<TimestampedSignature>> timestampingTasks = new ArrayList<>();
+    for (final DSSDocument xadesSignature : signaturesToExtend) {
+      timestampingTasks.add(new Callable<TimestampedSignature>() {
+        @Override
+        public TimestampedSignature call() throws Exception {
+          XAdESSignature signature = validationFacade.openXadesSignature(xadesSignature);
+          TimestampedSignature timestampedSignature = new TimestampedSignature();
+          timestampedSignature.document = xadesSignature;
+          if (!signature.isDataForSignatureLevelPresent(SignatureLevel.XAdES_BASELINE_LT)) {
+            timestampedSignature.signingCertificate = signature.getSigningCertificateToken();
+            timestampedSignature.issuer = findIssuer(timestampedSignature.signingCertificate,
+                signature.getCertificates());
+          }
+          if (!signature.isDataForSignatureLevelPresent(SignatureLevel.XAdES_BASELINE_T)) {
+            timestampedSignature.document = extendSignature(xadesSignature, SignatureLevel.XAdES_BASELINE_T, null);
+          }
+          return timestampedSignature;
+        }
+      });
+    }
+    return runExtensionTasks(timestampingTasks);
+  }
+
+  private BDocTSOcspSource createOcspSource(Collection<TimestampedSignature> signaturesToExtend,
+                                            SignatureProfile profile) {
     BDocTSOcspSource ocspSource = new BDocTSOcspSource(configuration);
     ocspSource.setUserAgentSignatureProfile(profile);
+    ocspSource.setRequestPriority(ResponderThrottle.Priority.BATCH);
+    ocspSource.prefetchOCSPTokens(findSigningCertificateIssuers(signaturesToExtend));
+    return ocspSource;
+  }
+
+  private DSSDocument extendSignature(DSSDocument xadesSignature, SignatureLevel signatureLevel,
+                                      BDocTSOcspSource ocspSource) {
+    XadesSigningDssFacade extendingFacade = new XadesSigningDssFacade(configuration);
+    extendingFacade.setCertificateSource(configuration.getTSL());
+    extendingFacade.setTimestampRequestPriority(ResponderThrottle.Priority.BATCH);
     extendingFacade.setOcspSource(ocspSource);
     extendingFacade.setSignatureLevel(signatureLevel);
-    List<DSSDocument> extendedSignatures = new ArrayList<>();
-    for (DSSDocument xadesSignature : signaturesToExtend) {
-      DSSDocument extendedSignature = extendingFacade.extendSignature(xadesSignature, detachedContent);
-      extendedSignatures.add(extendedSignature);
+    return extendingFacade.extendSignature(xadesSignature, detachedContent);
+  }
+
+  private <T> List<T> runExtensionTasks(List<Callable<T>> extensionTasks) {
+    int threads = Math.min(configuration.getSignatureExtensionThreads(), extensionTasks.size());
+    if (threads <= 1) {
+      return runSequentially(extensionTasks);
+    }
+    logger.debug("Extending " + extensionTasks.size() + " signatures in " + threads + " threads");
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<T>> results = new ArrayList<>();
+      for (Callable<T> task : extensionTasks) {
+        results.add(executor.submit(task));
+      }
+      List<T> extendedSignatures = new ArrayList<>();
+      for (Future<T> result : results) {
+        extendedSignatures.add(result.get());
+      }
+      return extendedSignatures;
+    } catch (ExecutionException e) {
+      throw toDigiDoc4JException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.error("Interrupted while extending signatures");
+      throw new DigiDoc4JException("Interrupted while extending signatures");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private <T> List<T> runSequentially(List<Callable<T>> extensionTasks) {
+    List<T> extendedSignatures = new ArrayList<>();
+    for (Callable<T> task : extensionTasks) {
+      try {
+        extendedSignatures.add(task.call());
+      } catch (Exception e) {
+        throw toDigiDoc4JException(e);
+      }
     }
-    logger.debug("Finished extending signatures");
     return extendedSignatures;
   }
 
+  private RuntimeException toDigiDoc4JException(Throwable e) {
+    if (e instanceof RuntimeException) {
+      return (RuntimeException) e;
+    }
+    logger.error("Error extending signatures: " + e.getMessage());
+    return new DigiDoc4JException(e);
+  }
+
+  private Map<CertificateToken, CertificateToken> findSigningCertificateIssuers(
+      Collection<TimestampedSignature> signatures) {
+    Map<CertificateToken, CertificateToken> issuersByCertificate = new LinkedHashMap<>();
+    for (TimestampedSignature signature : signatures) {
+      if (signature.issuer != null) {
+        issuersByCertificate.put(signature.signingCertificate, signature.issuer);
+      }
+    }
+    return issuersByCertificate;
+  }
+
+  private CertificateToken findIssuer(CertificateToken certificate, List<CertificateToken> signatureCertificates) {
+    if (certificate == null) {
+      return null;
+    }
+    List<CertificateToken> candidates = new ArrayList<>(
+        configuration.getTSL().get(certificate.getIssuerX500Principal()));
+    candidates.addAll(signatureCertificates);
+    for (CertificateToken candidate : candidates) {
+      if (candidate.getSubjectX500Principal().equals(certificate.getIssuerX500Principal())
+          && certificate.isSignedBy(candidate)) {
+        return candidate;
+      }
+    }
+    logger.debug("Issuer of " + certificate.getDSSIdAsString() + " not found, OCSP response is not prefetched");
+    return null;
+  }
+
   private SignatureLevel getSignatureLevel(SignatureProfile profile) {
     if (profile == SignatureProfile.LT) {
       return SignatureLevel.XAdES_BASELINE_LT;
@@ -68,4 +225,10 @@ public class SignatureExtender {
     logger.error("Extending signature to " + profile + " is not supported");
     throw new NotSupportedException("Extending signature to " + profile + " is not supported");
   }
+
+  private static class TimestampedSignature {
+    private DSSDocument document;
+    private CertificateToken signingCertificate;
+    private CertificateToken issuer;
+  }
 }
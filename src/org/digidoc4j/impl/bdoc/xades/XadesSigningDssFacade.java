@@ -16,9 +16,11 @@ import java.security.cert.X509Certificate;
 import java.util.Collection;
 import java.util.Date;
 
+import org.digidoc4j.Configuration;
 import org.digidoc4j.DataFile;
-import org.digidoc4j.impl.bdoc.SKCommonCertificateVerifier;
-import org.digidoc4j.impl.bdoc.SKTimestampDataLoader;
+import org.digidoc4j.impl.bdoc.ResponderThrottle;
+import org.digidoc4j.impl.bdoc.SigningServices;
+import org.digidoc4j.impl.bdoc.asic.DataFileDigestCache;
 import org.digidoc4j.impl.bdoc.asic.DetachedContentCreator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,48 +35,49 @@ import eu.europa.esig.dss.SignaturePackaging;
 import eu.europa.esig.dss.SignatureValue;
 import eu.europa.esig.dss.SignerLocation;
 import eu.europa.esig.dss.ToBeSigned;
-import eu.europa.esig.dss.client.tsp.OnlineTSPSource;
-import eu.europa.esig.dss.signature.DocumentSignatureService;
-import eu.europa.esig.dss.validation.CertificateVerifier;
 import eu.europa.esig.dss.x509.CertificateSource;
 import eu.europa.esig.dss.x509.CertificateToken;
 import eu.europa.esig.dss.x509.ocsp.OCSPSource;
 import eu.europa.esig.dss.xades.XAdESSignatureParameters;
-import eu.europa.esig.dss.xades.signature.XAdESService;
 
 public class XadesSigningDssFacade {
 
   private static final Logger logger = LoggerFactory.getLogger(XadesSigningDssFacade.class);
-  private DocumentSignatureService<XAdESSignatureParameters> service;
+  private final SigningServices signingServices;
   private XAdESSignatureParameters xAdESSignatureParameters = new XAdESSignatureParameters();
-  private CertificateVerifier certificateVerifier = new SKCommonCertificateVerifier();
-  private String timestampServerUrl;
-  private SKTimestampDataLoader dataLoader;
+  private OCSPSource ocspSource;
+  private CertificateSource certificateSource;
+  private ResponderThrottle.Priority timestampRequestPriority = ResponderThrottle.Priority.INTERACTIVE;
+  private DataFileDigestCache dataFileDigestCache;
 
-  public XadesSigningDssFacade(String timestampServerUrl) {
-    this.timestampServerUrl = timestampServerUrl;
+  public XadesSigningDssFacade(Configuration configuration) {
+    signingServices = SigningServices.forConfiguration(configuration);
     initDefaultXadesParameters();
-    initCertificateVerifier();
-    initXadesService();
   }
 
   public byte[] getDataToSign(Collection<DataFile> dataFiles) {
     logger.debug("Getting data to sign from DSS");
-    DetachedContentCreator detachedContentCreator = new DetachedContentCreator().populate(dataFiles);
+    calculateDataFileDigests(dataFiles);
+    DetachedContentCreator detachedContentCreator = new DetachedContentCreator().populate(dataFiles,
+        dataFileDigestCache);
     DSSDocument dssDocumentToSign = detachedContentCreator.getFirstDetachedContent();
     logger.debug("Signature parameters: " + xAdESSignatureParameters.toString());
-    ToBeSigned dataToSign = service.getDataToSign(dssDocumentToSign, xAdESSignatureParameters);
+    ToBeSigned dataToSign = signingServices.getDataToSign(dssDocumentToSign, xAdESSignatureParameters,
+        certificateSource);
     logger.debug("Got data to sign from DSS");
     return dataToSign.getBytes();
   }
 
   public DSSDocument signDocument(byte[] signatureValue, Collection<DataFile> dataFiles) {
     logger.debug("Signing document with DSS");
+    calculateDataFileDigests(dataFiles);
     SignatureValue dssSignatureValue = new SignatureValue(xAdESSignatureParameters.getSignatureAlgorithm(), signatureValue);
-    DetachedContentCreator detachedContentCreator = new DetachedContentCreator().populate(dataFiles);
+    DetachedContentCreator detachedContentCreator = new DetachedContentCreator().populate(dataFiles,
+        dataFileDigestCache);
     DSSDocument dssDocument = detachedContentCreator.getFirstDetachedContent();
     logger.debug("Signature parameters: " + xAdESSignatureParameters.toString());
-    DSSDocument signedDocument = service.signDocument(dssDocument, xAdESSignatureParameters, dssSignatureValue);
+    DSSDocument signedDocument = signingServices.signDocument(dssDocument, xAdESSignatureParameters, dssSignatureValue,
+        ocspSource, certificateSource, timestampRequestPriority);
     logger.debug("Finished signing document with DSS");
     return signedDocument;
   }
@@ -82,7 +85,8 @@ public class XadesSigningDssFacade {
   public DSSDocument extendSignature(DSSDocument xadesSignature, DSSDocument detachedContent) {
     logger.debug("Extending signature with DSS");
     xAdESSignatureParameters.setDetachedContent(detachedContent);
-    DSSDocument extendedSignature = service.extendDocument(xadesSignature, xAdESSignatureParameters);
+    DSSDocument extendedSignature = signingServices.extendDocument(xadesSignature, xAdESSignatureParameters,
+        ocspSource, certificateSource, timestampRequestPriority);
     logger.debug("Finished extending signature with DSS");
     return extendedSignature;
   }
@@ -93,11 +97,11 @@ public class XadesSigningDssFacade {
   }
 
   public void setOcspSource(OCSPSource ocspSource) {
-    certificateVerifier.setOcspSource(ocspSource);
+    this.ocspSource = ocspSource;
   }
 
   public void setCertificateSource(CertificateSource certificateSource) {
-    certificateVerifier.setTrustedCertSource(certificateSource);
+    this.certificateSource = certificateSource;
   }
 
   public void setSignatureDigestAlgorithm(org.digidoc4j.DigestAlgorithm digestAlgorithm) {
@@ -125,7 +129,14 @@ public class XadesSigningDssFacade {
 
   public void setSignatureLevel(SignatureLevel signatureLevel) {
     xAdESSignatureParameters.setSignatureLevel(signatureLevel);
-    dataLoader.setUserAgentSignatureProfile(signatureLevel);
+  }
+
+  public void setTimestampRequestPriority(ResponderThrottle.Priority requestPriority) {
+    timestampRequestPriority = requestPriority;
+  }
+
+  public void setDataFileDigestCache(DataFileDigestCache dataFileDigestCache) {
+    this.dataFileDigestCache = dataFileDigestCache;
   }
 
   public void setSignatureId(String signatureId) {
@@ -141,6 +152,12 @@ public class XadesSigningDssFacade {
     xAdESSignatureParameters.getBLevelParams().setSigningDate(signingDate);
   }
 
+  private void calculateDataFileDigests(Collection<DataFile> dataFiles) {
+    if (dataFileDigestCache != null) {
+      dataFileDigestCache.calculateDigests(dataFiles, xAdESSignatureParameters.getDigestAlgorithm());
+    }
+  }
+
   private void initDefaultXadesParameters() {
     xAdESSignatureParameters.clearCertificateChain();
     xAdESSignatureParameters.bLevel().setSigningDate(new Date());
@@ -149,19 +166,6 @@ public class XadesSigningDssFacade {
     xAdESSignatureParameters.setDigestAlgorithm(DigestAlgorithm.SHA256);
   }
 
-  private void initCertificateVerifier() {
-    certificateVerifier.setCrlSource(null); //Disable CRL checks
-    certificateVerifier.setSignatureCRLSource(null); //Disable CRL checks
-  }
-
-  private void initXadesService() {
-    service = new XAdESService(certificateVerifier);
-    OnlineTSPSource tspSource = new OnlineTSPSource(timestampServerUrl);
-    dataLoader = new SKTimestampDataLoader();
-    tspSource.setDataLoader(dataLoader);
-    service.setTspSource(tspSource);
-  }
-
   private eu.europa.esig.dss.DigestAlgorithm convertToDssDigestAlgorithm(org.digidoc4j.DigestAlgorithm digestAlgorithm) {
     return forXML(digestAlgorithm.toString());
   }
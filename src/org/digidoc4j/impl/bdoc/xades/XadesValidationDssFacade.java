@@ -10,20 +10,27 @@
 
 package org.digidoc4j.impl.bdoc.xades;
 
+import java.util.Collections;
 import java.util.List;
 
 import org.digidoc4j.Configuration;
+import org.digidoc4j.exceptions.DigiDoc4JException;
 import org.digidoc4j.impl.bdoc.SKCommonCertificateVerifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 
 import eu.europa.esig.dss.DSSDocument;
+import eu.europa.esig.dss.DSSXMLUtils;
 import eu.europa.esig.dss.validation.CertificateVerifier;
 import eu.europa.esig.dss.validation.SignedDocumentValidator;
+import eu.europa.esig.dss.xades.validation.XAdESSignature;
 
 public class XadesValidationDssFacade {
 
   private final static Logger logger = LoggerFactory.getLogger(XadesValidationDssFacade.class);
+  private static final String SIGNATURE_XPATH = "//ds:Signature[not(parent::xades:CounterSignature)]";
   private List<DSSDocument> detachedContents;
   private Configuration configuration;
   private CertificateVerifier certificateVerifier;
@@ -38,11 +45,40 @@ public class XadesValidationDssFacade {
     logger.debug("Opening signature validator");
     SignedDocumentValidator validator = SignedDocumentValidator.fromDocument(signature);
     logger.debug("Finished opening signature validator");
-    validator.setDetachedContents(detachedContents);
+    validator.setDetachedContents(getValidatorDetachedContents());
     validator.setCertificateVerifier(certificateVerifier);
     return validator;
   }
 
+  /**
+   * Opens the only signature of a XAdES document without creating a document validator. Used for signatures
+   * just created by this library, the validator is opened only when the signature is validated.
+   *
+   * @param signature XAdES document containing one signature
+   * @return XAdES signature
+   */
+  public XAdESSignature openXadesSignature(DSSDocument signature) {
+    logger.debug("Opening XAdES signature");
+    Document signatureDom = DSSXMLUtils.buildDOM(signature);
+    Element signatureElement = DSSXMLUtils.getElement(signatureDom, SIGNATURE_XPATH);
+    if (signatureElement == null) {
+      logger.error("XAdES document does not contain a signature");
+      throw new DigiDoc4JException("XAdES document does not contain a signature");
+    }
+    XAdESSignature xAdESSignature = new XAdESSignature(signatureElement, certificateVerifier.createValidationPool());
+    xAdESSignature.setDetachedContents(getValidatorDetachedContents());
+    logger.debug("Finished opening XAdES signature");
+    return xAdESSignature;
+  }
+
+  private List<DSSDocument> getValidatorDetachedContents() {
+    if (HashcodeResolver.hasDigestContents(detachedContents)) {
+      logger.debug("Detached contents are resolved by the hashcode resolver");
+      return Collections.<DSSDocument>emptyList();
+    }
+    return detachedContents;
+  }
+
   private CertificateVerifier createCertificateVerifier() {
     logger.debug("Creating new certificate verifier");
     CertificateVerifier certificateVerifier = new SKCommonCertificateVerifier();
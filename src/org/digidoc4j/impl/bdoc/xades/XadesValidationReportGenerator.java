@@ -64,7 +64,17 @@ public class XadesValidationReportGenerator implements Serializable {
       if(validator == null) {
         validator = createXadesValidator();
       }
-      return validator.validateDocument(validationPolicyAsStream);
+      boolean digestContents = HashcodeResolver.hasDigestContents(detachedContents);
+      if (digestContents) {
+        HashcodeResolver.setDetachedContents(detachedContents);
+      }
+      try {
+        return validator.validateDocument(validationPolicyAsStream);
+      } finally {
+        if (digestContents) {
+          HashcodeResolver.clearDetachedContents();
+        }
+      }
     } catch (DSSException e) {
       logger.error("Error creating a new validation report: " + e.getMessage());
       throw new DigiDoc4JException(e);
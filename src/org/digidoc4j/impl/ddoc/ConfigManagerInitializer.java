@@ -11,6 +11,8 @@
 package org.digidoc4j.impl.ddoc;
 
 import java.io.Serializable;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.digidoc4j.Configuration;
 import org.slf4j.Logger;
@@ -18,34 +20,97 @@ import org.slf4j.LoggerFactory;
 
 import ee.sk.utils.ConfigManager;
 
+/**
+ * Initializes the jDigiDoc configuration manager for DDoc operations.
+ * <p/>
+ * jDigiDoc keeps its configuration in static state, so only one configuration can be active at a time.
+ * The active configuration is identified by the fingerprint of its jDigiDoc parameters: the configuration
+ * manager is initialized again only when an operation uses a configuration with a different fingerprint.
+ * Operations with the active configuration run in parallel, switching to another configuration waits
+ * until the operations using the active one have finished.
+ * <p/>
+ * The lock is fair, so a switch is not delayed indefinitely by a steady stream of operations with the active
+ * configuration. In exchange, operations started after a switch has been requested wait for the switch and
+ * the operations with the other configuration, even if they use the configuration that is active at the moment.
+ */
 public class ConfigManagerInitializer implements Serializable{
 
   private static final Logger logger = LoggerFactory.getLogger(ConfigManagerInitializer.class);
+  private static final ReentrantReadWriteLock configManagerLock = new ReentrantReadWriteLock(true);
   static boolean configManagerInitialized = false;
+  private static volatile String activeFingerprint;
 
   public void initConfigManager(Configuration configuration) {
-    if(!configManagerInitialized) {
-      initializeJDigidocConfigManager(configuration);
-    } else {
-      logger.debug("Skipping DDoc configuration manager initialization");
+    lockConfigManager(configuration).unlock();
+  }
+
+  /**
+   * Makes the given configuration active in the jDigiDoc configuration manager and keeps it active
+   * until the returned lock is unlocked.
+   *
+   * @param configuration configuration used by the DDoc operation
+   * @return lock to be unlocked when the DDoc operation has finished
+   */
+  public Lock lockConfigManager(Configuration configuration) {
+    String fingerprint = getFingerprint(configuration);
+    Lock readLock = configManagerLock.readLock();
+    readLock.lock();
+    if (isActive(fingerprint)) {
+      return readLock;
+    }
+    readLock.unlock();
+    Lock writeLock = configManagerLock.writeLock();
+    writeLock.lock();
+    try {
+      if (!isActive(fingerprint)) {
+        initializeJDigidocConfigManager(configuration);
+      } else {
+        logger.debug("Skipping DDoc configuration manager initialization");
+      }
+      readLock.lock();
+    } finally {
+      writeLock.unlock();
     }
+    return readLock;
   }
 
-  public static synchronized void forceInitConfigManager(Configuration configuration) {
-    logger.info("Initializing DDoc configuration manager");
-    ConfigManager.init(configuration.getJDigiDocConfiguration());
-    ConfigManager.addProvider();
-    configManagerInitialized = true;
+  public static void forceInitConfigManager(Configuration configuration) {
+    // The snapshot copies the values without exposing the table of the configuration, see getJDigiDocConfiguration()
+    Configuration snapshot = configuration.snapshot();
+    String fingerprint = getFingerprint(snapshot);
+    configManagerLock.writeLock().lock();
+    try {
+      logger.info("Initializing DDoc configuration manager");
+      ConfigManager.init(snapshot.getJDigiDocConfiguration());
+      ConfigManager.addProvider();
+      activeFingerprint = fingerprint;
+      configManagerInitialized = true;
+    } finally {
+      configManagerLock.writeLock().unlock();
+    }
   }
 
   public static boolean isConfigManagerInitialized() {
     return configManagerInitialized;
   }
 
-  synchronized void initializeJDigidocConfigManager(Configuration configuration) {
-    //Using double-checked locking to avoid other threads to start initialization
-    if(!configManagerInitialized) {
-      forceInitConfigManager(configuration);
-    }
+  /**
+   * @param configuration configuration
+   * @return true if the jDigiDoc configuration manager is initialized with the given configuration
+   */
+  public static boolean isConfigManagerInitializedWith(Configuration configuration) {
+    return isActive(getFingerprint(configuration));
+  }
+
+  void initializeJDigidocConfigManager(Configuration configuration) {
+    forceInitConfigManager(configuration);
+  }
+
+  private static boolean isActive(String fingerprint) {
+    return configManagerInitialized && fingerprint.equals(activeFingerprint);
+  }
+
+  private static String getFingerprint(Configuration configuration) {
+    return configuration.getJDigiDocConfigurationFingerprint();
   }
 }
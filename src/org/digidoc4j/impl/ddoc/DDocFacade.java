@@ -21,6 +21,7 @@ import java.io.Serializable;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.commons.io.IOUtils;
 import org.digidoc4j.Configuration;
@@ -100,6 +101,7 @@ public class DDocFacade implements SignatureFinalizer, Serializable {
       signatureParameters.setDigestAlgorithm(DigestAlgorithm.SHA1);
     }
 
+    Lock configManagerLock = lockConfigManager();
     try {
       ddocSignature = ddoc.prepareSignature(signerCert, signerRoles.toArray(new String[signerRoles.size()]),
           productionPlace);
@@ -111,6 +113,8 @@ public class DDocFacade implements SignatureFinalizer, Serializable {
     } catch (DigiDocException e) {
       logger.error(e.getMessage());
       throw new DigiDoc4JException(e);
+    } finally {
+      configManagerLock.unlock();
     }
   }
 
@@ -205,11 +209,14 @@ public class DDocFacade implements SignatureFinalizer, Serializable {
 
   public void addRawSignature(InputStream signatureStream) {
     logger.info("Adding raw XAdES signature");
+    Lock configManagerLock = lockConfigManager();
     try {
       ddoc.readSignature(signatureStream);
     } catch (DigiDocException e) {
       logger.error(e.getMessage());
       throw new DigiDoc4JException(e.getNestedException());
+    } finally {
+      configManagerLock.unlock();
     }
   }
 
@@ -329,6 +336,7 @@ public class DDocFacade implements SignatureFinalizer, Serializable {
 
   public Signature signRaw(byte[] rawSignature) {
     logger.info("Finalizing DDoc signature");
+    Lock configManagerLock = lockConfigManager();
     try {
       ddocSignature.setSignatureValue(rawSignature);
       DDocSignature signature = new DDocSignature(ddocSignature);
@@ -341,6 +349,8 @@ public class DDocFacade implements SignatureFinalizer, Serializable {
     } catch (DigiDocException e) {
       logger.error(e.getMessage());
       throw new DigiDoc4JException(e.getNestedException());
+    } finally {
+      configManagerLock.unlock();
     }
   }
 
@@ -408,9 +418,15 @@ public class DDocFacade implements SignatureFinalizer, Serializable {
   public ValidationResult validate() {
     logger.info("Validating DDoc container");
 
-    ArrayList exceptions = ddoc.verify(true, true);
-
-    ArrayList containerExceptions = ddoc.validate(true);
+    ArrayList exceptions;
+    ArrayList containerExceptions;
+    Lock configManagerLock = lockConfigManager();
+    try {
+      exceptions = ddoc.verify(true, true);
+      containerExceptions = ddoc.validate(true);
+    } finally {
+      configManagerLock.unlock();
+    }
     containerExceptions.addAll(openContainerExceptions);
     ValidationResultForDDoc result = new ValidationResultForDDoc(exceptions, containerExceptions);
     logger.info("DDoc container is valid: " + result.isValid());
@@ -425,13 +441,18 @@ public class DDocFacade implements SignatureFinalizer, Serializable {
 
   private void addConfirmation() {
     logger.debug("");
-    for (Object signature : ddoc.getSignatures()) {
-      try {
-        ((ee.sk.digidoc.Signature) signature).getConfirmation();
-      } catch (DigiDocException e) {
-        logger.error(e.getMessage());
-        throw new DigiDoc4JException(e.getNestedException());
+    Lock configManagerLock = lockConfigManager();
+    try {
+      for (Object signature : ddoc.getSignatures()) {
+        try {
+          ((ee.sk.digidoc.Signature) signature).getConfirmation();
+        } catch (DigiDocException e) {
+          logger.error(e.getMessage());
+          throw new DigiDoc4JException(e.getNestedException());
+        }
       }
+    } finally {
+      configManagerLock.unlock();
     }
   }
 
@@ -485,6 +506,14 @@ public class DDocFacade implements SignatureFinalizer, Serializable {
     configManagerInitializer.initConfigManager(configuration);
   }
 
+  /**
+   * Keeps the configuration of this container active in the jDigiDoc configuration manager
+   * until the returned lock is unlocked.
+   */
+  Lock lockConfigManager() {
+    return configManagerInitializer.lockConfigManager(configuration);
+  }
+
   protected void setSignedDoc(SignedDoc signedDoc) {
     ddoc = signedDoc;
   }
@@ -14,6 +14,7 @@ import java.io.InputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.commons.lang.StringUtils;
 import org.digidoc4j.Configuration;
@@ -39,7 +40,13 @@ public class DDocOpener implements Serializable {
     logger.info("Opening DDoc container from file: " + fileName);
     DDocFacade facade = new DDocFacade(configuration);
     ArrayList<DigiDocException> containerOpeningExceptions = new ArrayList<>();
-    SignedDoc signedDoc = openSignedDoc(fileName, containerOpeningExceptions);
+    SignedDoc signedDoc;
+    Lock configManagerLock = facade.lockConfigManager();
+    try {
+      signedDoc = openSignedDoc(fileName, containerOpeningExceptions);
+    } finally {
+      configManagerLock.unlock();
+    }
     validateOpenedContainerExceptions(containerOpeningExceptions);
     facade.setContainerOpeningExceptions(containerOpeningExceptions);
     return createContainer(facade, signedDoc);
@@ -48,15 +55,13 @@ public class DDocOpener implements Serializable {
   public DDocContainer open(InputStream stream) {
     logger.info("Opening DDoc from stream");
     DDocFacade facade = new DDocFacade();
-    SignedDoc signedDoc = openSignedDoc(stream);
-    return createContainer(facade, signedDoc);
+    return createContainer(facade, openSignedDoc(facade, stream));
   }
 
   public DDocContainer open(InputStream stream, Configuration configuration) {
     logger.info("Opening DDoc from stream");
     DDocFacade facade = new DDocFacade(configuration);
-    SignedDoc signedDoc = openSignedDoc(stream);
-    return createContainer(facade, signedDoc);
+    return createContainer(facade, openSignedDoc(facade, stream));
   }
 
   public void useTemporaryDirectoryPath(String temporaryDirectoryPath) {
@@ -74,7 +79,8 @@ public class DDocOpener implements Serializable {
     }
   }
 
-  private SignedDoc openSignedDoc(InputStream stream) throws DigiDoc4JException {
+  private SignedDoc openSignedDoc(DDocFacade facade, InputStream stream) throws DigiDoc4JException {
+    Lock configManagerLock = facade.lockConfigManager();
     try {
       DigiDocFactory digFac = createDigiDocFactory();
       SignedDoc signedDoc = digFac.readDigiDocFromStream(stream);
@@ -83,6 +89,8 @@ public class DDocOpener implements Serializable {
     } catch (DigiDocException e) {
       logger.error("Failed to open DDoc from stream: " + e.getMessage());
       throw new DigiDoc4JException(e);
+    } finally {
+      configManagerLock.unlock();
     }
   }
 
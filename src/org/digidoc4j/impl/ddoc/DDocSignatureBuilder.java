@@ -33,7 +33,7 @@ public class DDocSignatureBuilder extends SignatureBuilder {
     ddocFacade.setSignatureParameters(signatureParameters);
     X509Certificate signingCertificate = signatureParameters.getSigningCertificate();
     SignedInfo signedInfo = ddocFacade.prepareSigning(signingCertificate);
-    return new DataToSign(signedInfo.getDigestToSign(), signatureParameters, ddocFacade);
+    return new DataToSign(signedInfo.getDigestToSign(), signedInfo.getDataToSign(), signatureParameters, ddocFacade);
   }
 
   @Override
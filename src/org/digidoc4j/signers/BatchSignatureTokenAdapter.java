@@ -0,0 +1,75 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.signers;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.digidoc4j.BatchSignatureToken;
+import org.digidoc4j.DataToSign;
+import org.digidoc4j.DigestAlgorithm;
+import org.digidoc4j.SignatureToken;
+import org.digidoc4j.exceptions.NotSupportedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Batch signing with a signature token without batch support, signing the data one by one.
+ */
+public class BatchSignatureTokenAdapter implements BatchSignatureToken {
+
+  private static final Logger logger = LoggerFactory.getLogger(BatchSignatureTokenAdapter.class);
+  private final SignatureToken signatureToken;
+
+  /**
+   * @param signatureToken token signing one data at a time
+   */
+  public BatchSignatureTokenAdapter(SignatureToken signatureToken) {
+    this.signatureToken = signatureToken;
+  }
+
+  /**
+   * @param signatureToken signature token
+   * @return the token itself if it supports batch signing, otherwise the token wrapped into an adapter
+   */
+  public static BatchSignatureToken toBatchSignatureToken(SignatureToken signatureToken) {
+    if (signatureToken instanceof BatchSignatureToken) {
+      return (BatchSignatureToken) signatureToken;
+    }
+    return new BatchSignatureTokenAdapter(signatureToken);
+  }
+
+  @Override
+  public X509Certificate getCertificate() {
+    return signatureToken.getCertificate();
+  }
+
+  @Override
+  public byte[] sign(DigestAlgorithm digestAlgorithm, byte[] dataToSign) {
+    return signatureToken.sign(digestAlgorithm, dataToSign);
+  }
+
+  @Override
+  public List<byte[]> sign(List<DataToSign> dataToSign) {
+    logger.debug("Signing " + dataToSign.size() + " signatures one by one");
+    List<byte[]> signatureValues = new ArrayList<>(dataToSign.size());
+    for (DataToSign data : dataToSign) {
+      if (data.getDataToBeSigned() == null) {
+        logger.error("Data to be signed is not available, only its digest");
+        throw new NotSupportedException(
+            "Signature token without batch support can't sign data known only by its digest");
+      }
+      signatureValues.add(signatureToken.sign(data.getDigestAlgorithm(), data.getDataToBeSigned()));
+    }
+    return signatureValues;
+  }
+}
@@ -11,13 +11,18 @@
 package org.digidoc4j.signers;
 
 import java.security.cert.X509Certificate;
+import java.util.List;
 
-import org.digidoc4j.SignatureToken;
+import org.digidoc4j.BatchSignatureToken;
+import org.digidoc4j.DataToSign;
 
 /**
  * Signer for external services for example in web
+ * <p/>
+ * Signs the data of a batch one by one by default. Services able to sign many digests with a single request
+ * should override {@link ExternalSigner#sign(List)}.
  */
-public abstract class ExternalSigner implements SignatureToken {
+public abstract class ExternalSigner implements BatchSignatureToken {
 
   private X509Certificate signingCertificate;
 
@@ -35,4 +40,9 @@ public abstract class ExternalSigner implements SignatureToken {
   public X509Certificate getCertificate() {
     return this.signingCertificate;
   }
+
+  @Override
+  public List<byte[]> sign(List<DataToSign> dataToSign) {
+    return new BatchSignatureTokenAdapter(this).sign(dataToSign);
+  }
 }
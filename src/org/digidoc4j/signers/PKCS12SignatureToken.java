@@ -10,27 +10,48 @@
 
 package org.digidoc4j.signers;
 
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import org.digidoc4j.SignatureToken;
+import org.apache.commons.lang.ArrayUtils;
+import org.digidoc4j.BatchSignatureToken;
+import org.digidoc4j.DataToSign;
+import org.digidoc4j.exceptions.NotSupportedException;
+import org.digidoc4j.exceptions.TechnicalException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import eu.europa.esig.dss.DigestAlgorithm;
-import eu.europa.esig.dss.SignatureValue;
-import eu.europa.esig.dss.ToBeSigned;
+import eu.europa.esig.dss.EncryptionAlgorithm;
+import eu.europa.esig.dss.SignatureAlgorithm;
 import eu.europa.esig.dss.token.AbstractSignatureTokenConnection;
 import eu.europa.esig.dss.token.DSSPrivateKeyEntry;
+import eu.europa.esig.dss.token.KSPrivateKeyEntry;
 import eu.europa.esig.dss.token.Pkcs12SignatureToken;
 
 /**
  * Implements PKCS12 signer.
+ * <p/>
+ * Data of a batch is signed by its digest, so the data itself is not needed.
+ * <p/>
+ * The signer is thread-safe and can be shared, e.g. for server-side sealing. The keystore is decrypted once
+ * when the signer is created. Every signing operation uses its own {@link Signature} instance; the instances
+ * are kept by the signer for reuse, at most as many per algorithm as there are processors, and are released
+ * together with the signer.
  */
-public class PKCS12SignatureToken implements SignatureToken {
+public class PKCS12SignatureToken implements BatchSignatureToken {
   private static final Logger logger = LoggerFactory.getLogger(PKCS12SignatureToken.class);
   protected AbstractSignatureTokenConnection signatureTokenConnection = null;
   protected DSSPrivateKeyEntry keyEntry = null;
-
+  private final ConcurrentMap<String, BlockingQueue<Signature>> signatures = new ConcurrentHashMap<>();
 
   /**
    * Constructs PKCS12 signer object. If more than one key is provided only first is used
@@ -53,9 +74,65 @@ public class PKCS12SignatureToken implements SignatureToken {
   @Override
   public byte[] sign(org.digidoc4j.DigestAlgorithm digestAlgorithm, byte[] dataToSign) {
     logger.info("Signing with PKCS#12 signature token, using digest algorithm: " + digestAlgorithm.name());
-    ToBeSigned toBeSigned = new ToBeSigned(dataToSign);
     DigestAlgorithm dssDigestAlgorithm = DigestAlgorithm.forXML(digestAlgorithm.toString());
-    SignatureValue signature = signatureTokenConnection.sign(toBeSigned, dssDigestAlgorithm, keyEntry);
-    return signature.getValue();
+    SignatureAlgorithm signatureAlgorithm = SignatureAlgorithm.getAlgorithm(keyEntry.getEncryptionAlgorithm(),
+        dssDigestAlgorithm);
+    if (signatureAlgorithm == null) {
+      logger.error("Digest algorithm " + digestAlgorithm + " is not supported by the key of the signature token");
+      throw new NotSupportedException("Digest algorithm " + digestAlgorithm
+          + " is not supported by the key of the signature token");
+    }
+    return signWith(signatureAlgorithm.getJCEId(), dataToSign);
+  }
+
+  @Override
+  public List<byte[]> sign(List<DataToSign> dataToSign) {
+    logger.info("Signing " + dataToSign.size() + " digests with PKCS#12 signature token");
+    List<byte[]> signatureValues = new ArrayList<>(dataToSign.size());
+    for (DataToSign data : dataToSign) {
+      signatureValues.add(signDigest(data.getDigestAlgorithm(), data.getDigestToSign()));
+    }
+    return signatureValues;
+  }
+
+  private byte[] signDigest(org.digidoc4j.DigestAlgorithm digestAlgorithm, byte[] digest) {
+    if (keyEntry.getEncryptionAlgorithm() == EncryptionAlgorithm.ECDSA) {
+      return signWith("NONEwithECDSA", digest);
+    }
+    return signWith("NONEwithRSA", ArrayUtils.addAll(digestAlgorithm.digestInfoPrefix(), digest));
+  }
+
+  private byte[] signWith(String algorithm, byte[] data) {
+    BlockingQueue<Signature> pool = getSignaturePool(algorithm);
+    Signature signature = pool.poll();
+    try {
+      if (signature == null) {
+        signature = Signature.getInstance(algorithm);
+        signature.initSign(getPrivateKey());
+      }
+      signature.update(data);
+      byte[] signatureValue = signature.sign();
+      pool.offer(signature);
+      return signatureValue;
+    } catch (GeneralSecurityException e) {
+      logger.error("Signing failed: " + e.getMessage());
+      throw new TechnicalException("Signing failed", e);
+    }
+  }
+
+  private BlockingQueue<Signature> getSignaturePool(String algorithm) {
+    BlockingQueue<Signature> pool = signatures.get(algorithm);
+    if (pool == null) {
+      BlockingQueue<Signature> newPool = new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+      pool = signatures.putIfAbsent(algorithm, newPool);
+      if (pool == null) {
+        pool = newPool;
+      }
+    }
+    return pool;
+  }
+
+  private PrivateKey getPrivateKey() {
+    return ((KSPrivateKeyEntry) keyEntry).getPrivateKey();
   }
 }
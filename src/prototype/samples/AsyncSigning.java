@@ -13,10 +13,9 @@ package prototype.samples;
 import static org.digidoc4j.DigestAlgorithm.SHA256;
 
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.security.PrivateKey;
@@ -30,6 +29,7 @@ import org.digidoc4j.DigestAlgorithm;
 import org.digidoc4j.Signature;
 import org.digidoc4j.SignatureBuilder;
 import org.digidoc4j.SignatureToken;
+import org.digidoc4j.SigningSession;
 import org.digidoc4j.exceptions.DigiDoc4JException;
 import org.digidoc4j.signers.ExternalSigner;
 
@@ -38,7 +38,7 @@ import org.digidoc4j.signers.ExternalSigner;
  */
 public class AsyncSigning {
 
-  public static void main(String[] args) throws IOException, ClassNotFoundException {
+  public static void main(String[] args) throws IOException {
     System.setProperty("digidoc4j.mode", "TEST");
 
     Container container = ContainerBuilder.
@@ -53,25 +53,27 @@ public class AsyncSigning {
         withSigningCertificate(signerCert).
         buildDataToSign();
 
-    serialize(container, "container.bin");
-    serialize(dataToSign, "dataToSign.bin");
+    //store only the signing session instead of the container and the data to sign
+    SigningSession signingSession = dataToSign.createSigningSession();
+    Files.write(Paths.get("signingSession.bin"), signingSession.toByteArray());
 
     //getSignature
-    byte[] signatureValue = getExternalSignature(signerCert, dataToSign);
+    byte[] signatureValue = getExternalSignature(signerCert, signingSession);
 
-    Container deserializedContainer = deserializer("container.bin");
-    DataToSign deserializedDataToSign = deserializer("dataToSign.bin");
+    //finalize the signature on any node having the stored session
+    SigningSession restoredSession = SigningSession.fromByteArray(Files.readAllBytes(Paths.get("signingSession.bin")));
+    Signature signature = restoredSession.finalize(signatureValue);
 
-    Signature signature = deserializedDataToSign.finalize(signatureValue);
-    deserializedContainer.addSignature(signature);
-    deserializedContainer.saveAsFile("deserializedContainer.bdoc");
-
-    //serialize container
-    serialize(deserializedContainer, "container.bin");
-    serialize(deserializedDataToSign, "dataToSign.bin");
+    //add the signature to a container with the same data files
+    Container restoredContainer = ContainerBuilder.
+        aContainer().
+        withDataFile("testFiles/test.txt", "text/plain").
+        build();
+    restoredContainer.addSignature(signature);
+    restoredContainer.saveAsFile("deserializedContainer.bdoc");
   }
 
-  private static byte[] getExternalSignature(X509Certificate signerCert, DataToSign dataToSign) {
+  private static byte[] getExternalSignature(X509Certificate signerCert, SigningSession signingSession) {
     SignatureToken externalSigner = new ExternalSigner(signerCert) {
       @Override
       public byte[] sign(DigestAlgorithm digestAlgorithm, byte[] dataToSign) {
@@ -95,7 +97,7 @@ public class AsyncSigning {
 
     };
 
-    return externalSigner.sign(dataToSign.getDigestAlgorithm(), dataToSign.getDigestToSign());
+    return externalSigner.sign(signingSession.getDigestAlgorithm(), signingSession.getDigestToSign());
   }
 
   private static X509Certificate getSignerCert() {
@@ -110,28 +112,6 @@ public class AsyncSigning {
     }
   }
 
-  private static <T> void serialize(T container, String path) throws IOException {
-
-    FileOutputStream fileOut = new FileOutputStream(path);
-    ObjectOutputStream out = new ObjectOutputStream(fileOut);
-    out.writeObject(container);
-    out.flush();
-    out.close();
-    fileOut.close();
-  }
-
-  private static <T> T deserializer(String path) throws IOException, ClassNotFoundException {
-    FileInputStream fileIn = new FileInputStream(path);
-    ObjectInputStream in = new ObjectInputStream(fileIn);
-
-    T container = (T) in.readObject();
-
-    in.close();
-    fileIn.close();
-
-    return container;
-  }
-
   /**
    * This method digest and encrypt the given {@code InputStream} with indicated private key and signature algorithm. To find the signature object
    * the list of registered security Providers, starting with the most preferred Provider is traversed.
@@ -0,0 +1,224 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j;
+
+import static org.digidoc4j.testutils.OfflineSigningHelper.createConfiguration;
+import static org.digidoc4j.testutils.OfflineSigningHelper.isReferenceDataValid;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.digidoc4j.exceptions.ContainerWithoutFilesException;
+import org.digidoc4j.exceptions.SignatureTokenMissingException;
+import org.digidoc4j.exceptions.TechnicalException;
+import org.digidoc4j.signers.ExternalSigner;
+import org.digidoc4j.testutils.TestPki;
+import org.digidoc4j.testutils.TestResponders;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.europa.esig.dss.DSSUtils;
+
+public class BatchSigningTest {
+
+  private Configuration configuration;
+
+  @Before
+  public void setUp() throws Exception {
+    configuration = createConfiguration();
+  }
+
+  @Test
+  public void signaturesOfSeveralContainers_areCreatedWithOneTokenCall() throws Exception {
+    List<Container> containers = createContainers(3);
+    BatchSigner signer = new BatchSigner();
+    BatchSigningResult result = SignatureBuilder.invokeBatchSigning(createBuilders(containers), signer);
+    List<Signature> signatures = result.getSignatures();
+    assertTrue(result.isSuccessful());
+    assertEquals(1, signer.batchCalls);
+    assertEquals(0, signer.singleCalls);
+    assertEquals(3, signatures.size());
+    for (int i = 0; i < containers.size(); i++) {
+      Container container = containers.get(i);
+      container.addSignature(signatures.get(i));
+      assertTrue(isReferenceDataValid(container.getSignatures().get(0)));
+    }
+  }
+
+  @Test
+  public void tokenWithoutBatchSupport_signsDataOneByOne() throws Exception {
+    List<Container> containers = createContainers(2);
+    SingleSigner signer = new SingleSigner();
+    List<Signature> signatures =
+        SignatureBuilder.invokeBatchSigning(createBuilders(containers), signer).getSignatures();
+    assertEquals(2, signer.singleCalls);
+    for (int i = 0; i < containers.size(); i++) {
+      containers.get(i).addSignature(signatures.get(i));
+      assertTrue(isReferenceDataValid(signatures.get(i)));
+    }
+  }
+
+  @Test
+  public void externalSigner_signsBatchOneByOneByDefault() throws Exception {
+    List<Container> containers = createContainers(2);
+    ExternalSigner signer = new ExternalSigner(TestPki.getInstance().getSignerCertificate()) {
+      @Override
+      public byte[] sign(DigestAlgorithm digestAlgorithm, byte[] dataToSign) {
+        return signData(digestAlgorithm, dataToSign);
+      }
+    };
+    List<Signature> signatures =
+        SignatureBuilder.invokeBatchSigning(createBuilders(containers), signer).getSignatures();
+    assertTrue(isReferenceDataValid(signatures.get(1)));
+  }
+
+  @Test
+  public void signatureThatCanNotBePrepared_isReportedAsFailure_andOtherSignaturesCreated() throws Exception {
+    List<Container> containers = createContainers(2);
+    containers.add(1, ContainerBuilder.aContainer().withConfiguration(configuration).build());
+    BatchSigner signer = new BatchSigner();
+    BatchSigningResult result = SignatureBuilder.invokeBatchSigning(createBuilders(containers), signer);
+    assertFalse(result.isSuccessful());
+    assertEquals(3, result.size());
+    assertEquals(1, result.getFailureCount());
+    assertNull(result.getSignature(1));
+    assertTrue(result.getFailure(1) instanceof ContainerWithoutFilesException);
+    assertEquals(1, signer.batchCalls);
+    assertTrue(isReferenceDataValid(result.getSignature(0)));
+    assertTrue(isReferenceDataValid(result.getSignature(2)));
+  }
+
+  @Test
+  public void signatureThatCanNotBeFinalized_isReportedAsFailure_andOtherSignaturesCreated() throws Exception {
+    TestResponders responders = TestResponders.start();
+    try {
+      responders.configure(configuration);
+      Configuration missingTsaConfiguration = new Configuration(Configuration.Mode.TEST);
+      responders.configure(missingTsaConfiguration);
+      missingTsaConfiguration.setTspSource(missingTsaConfiguration.getTspSource().replace(
+          TestResponders.TIMESTAMP_REQUEST, "missing"));
+      Container failingContainer = ContainerBuilder.aContainer().withConfiguration(missingTsaConfiguration).build();
+      failingContainer.addDataFile(new DataFile("content".getBytes(), "test.txt", "text/plain"));
+      List<Container> containers = createContainers(1);
+      containers.add(0, failingContainer);
+      BatchSigningResult result = SignatureBuilder.invokeBatchSigning(createBuilders(containers, SignatureProfile.LT),
+          TestPki.getInstance().createSignatureToken());
+      assertEquals(1, result.getFailureCount());
+      assertNull(result.getSignature(0));
+      assertNotNull(result.getFailure(0));
+      containers.get(1).addSignature(result.getSignature(1));
+      assertTrue(containers.get(1).validate().isValid());
+    } finally {
+      responders.stop();
+    }
+  }
+
+  @Test
+  public void ltSignaturesCreatedInBatch_areValid() throws Exception {
+    TestResponders responders = TestResponders.start();
+    try {
+      responders.configure(configuration);
+      List<Container> containers = createContainers(3);
+      BatchSigningResult result = SignatureBuilder.invokeBatchSigning(createBuilders(containers, SignatureProfile.LT),
+          TestPki.getInstance().createSignatureToken());
+      assertTrue(result.isSuccessful());
+      for (int i = 0; i < containers.size(); i++) {
+        Container container = containers.get(i);
+        container.addSignature(result.getSignature(i));
+        assertEquals(SignatureProfile.LT, container.getSignatures().get(0).getProfile());
+        assertTrue(container.validate().isValid());
+      }
+    } finally {
+      responders.stop();
+    }
+  }
+
+  @Test(expected = TechnicalException.class)
+  public void batchSigning_failsWhenTokenReturnsWrongNumberOfSignatureValues() throws Exception {
+    BatchSigner signer = new BatchSigner() {
+      @Override
+      public List<byte[]> sign(List<DataToSign> dataToSign) {
+        return Collections.singletonList(super.sign(dataToSign).get(0));
+      }
+    };
+    SignatureBuilder.invokeBatchSigning(createBuilders(createContainers(2)), signer);
+  }
+
+  @Test(expected = SignatureTokenMissingException.class)
+  public void batchSigning_withoutToken_fails() throws Exception {
+    SignatureBuilder.invokeBatchSigning(createBuilders(createContainers(1)), null);
+  }
+
+  private List<Container> createContainers(int count) {
+    List<Container> containers = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Container container = ContainerBuilder.aContainer().withConfiguration(configuration).build();
+      container.addDataFile(new DataFile(("content " + i).getBytes(), "test.txt", "text/plain"));
+      containers.add(container);
+    }
+    return containers;
+  }
+
+  private List<SignatureBuilder> createBuilders(List<Container> containers) {
+    return createBuilders(containers, SignatureProfile.B_BES);
+  }
+
+  private List<SignatureBuilder> createBuilders(List<Container> containers, SignatureProfile profile) {
+    List<SignatureBuilder> builders = new ArrayList<>();
+    for (Container container : containers) {
+      builders.add(SignatureBuilder.aSignature(container).withSignatureProfile(profile));
+    }
+    return builders;
+  }
+
+  private static byte[] signData(DigestAlgorithm digestAlgorithm, byte[] data) {
+    byte[] digest = DSSUtils.digest(digestAlgorithm.getDssDigestAlgorithm(), data);
+    return TestPki.getInstance().signDigest(digest, digestAlgorithm);
+  }
+
+  private static class SingleSigner implements SignatureToken {
+
+    int singleCalls;
+
+    @Override
+    public X509Certificate getCertificate() {
+      return TestPki.getInstance().getSignerCertificate();
+    }
+
+    @Override
+    public byte[] sign(DigestAlgorithm digestAlgorithm, byte[] dataToSign) {
+      singleCalls++;
+      return signData(digestAlgorithm, dataToSign);
+    }
+  }
+
+  private static class BatchSigner extends SingleSigner implements BatchSignatureToken {
+
+    int batchCalls;
+
+    @Override
+    public List<byte[]> sign(List<DataToSign> dataToSign) {
+      batchCalls++;
+      List<byte[]> signatureValues = new ArrayList<>();
+      for (DataToSign data : dataToSign) {
+        signatureValues.add(TestPki.getInstance().signDigest(data.getDigestToSign(), data.getDigestAlgorithm()));
+      }
+      return signatureValues;
+    }
+  }
+}
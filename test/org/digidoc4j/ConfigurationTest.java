@@ -13,6 +13,7 @@ package org.digidoc4j;
 import org.apache.commons.io.FileUtils;
 import org.digidoc4j.exceptions.ConfigurationException;
 import org.digidoc4j.exceptions.DigiDoc4JException;
+import org.digidoc4j.exceptions.NotSupportedException;
 import org.digidoc4j.exceptions.TslCertificateSourceInitializationException;
 import org.digidoc4j.exceptions.TslKeyStoreNotFoundException;
 import org.digidoc4j.impl.bdoc.BDocContainer;
@@ -32,7 +33,11 @@ import java.nio.file.attribute.FileTime;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.Hashtable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import static java.util.Arrays.asList;
 import static org.digidoc4j.Configuration.*;
 import static org.digidoc4j.Configuration.Mode.PROD;
 import static org.digidoc4j.Configuration.Mode.TEST;
@@ -924,6 +929,292 @@ public class ConfigurationTest {
     assertEquals(1337, configuration.getRevocationAndTimestampDeltaInMinutes());
   }
 
+  @Test
+  public void responderRequestLimits_shouldBeDisabledByDefault() throws Exception {
+    assertEquals(0, configuration.getOcspRequestsPerSecond());
+    assertEquals(0, configuration.getOcspMaxConcurrentRequests());
+    assertEquals(0, configuration.getTspRequestsPerSecond());
+    assertEquals(0, configuration.getTspMaxConcurrentRequests());
+    assertEquals(0, configuration.getResponderMaxQueuedRequests());
+    assertEquals(10000, configuration.getResponderMaxWaitInMilliseconds());
+    assertEquals(0, configuration.getResponderInteractiveReservedPercentage());
+  }
+
+  @Test
+  public void loadResponderRequestLimitsFromConf() throws Exception {
+    configuration.loadConfiguration("testFiles/digidoc_test_all_optional_settings.yaml");
+    assertEquals(10, configuration.getOcspRequestsPerSecond());
+    assertEquals(4, configuration.getOcspMaxConcurrentRequests());
+    assertEquals(5, configuration.getTspRequestsPerSecond());
+    assertEquals(2, configuration.getTspMaxConcurrentRequests());
+    assertEquals(100, configuration.getResponderMaxQueuedRequests());
+    assertEquals(3000, configuration.getResponderMaxWaitInMilliseconds());
+    assertEquals(20, configuration.getResponderInteractiveReservedPercentage());
+  }
+
+  @Test
+  public void setResponderRequestLimits() throws Exception {
+    configuration.setOcspRequestsPerSecond(15);
+    configuration.setOcspMaxConcurrentRequests(3);
+    configuration.setTspRequestsPerSecond(7);
+    configuration.setTspMaxConcurrentRequests(1);
+    configuration.setResponderMaxQueuedRequests(50);
+    configuration.setResponderMaxWaitInMilliseconds(500);
+    configuration.setResponderInteractiveReservedPercentage(30);
+    assertEquals(15, configuration.getOcspRequestsPerSecond());
+    assertEquals(3, configuration.getOcspMaxConcurrentRequests());
+    assertEquals(7, configuration.getTspRequestsPerSecond());
+    assertEquals(1, configuration.getTspMaxConcurrentRequests());
+    assertEquals(50, configuration.getResponderMaxQueuedRequests());
+    assertEquals(500, configuration.getResponderMaxWaitInMilliseconds());
+    assertEquals(30, configuration.getResponderInteractiveReservedPercentage());
+  }
+
+  @Test
+  public void signatureExtensionThreads_shouldBeOneByDefault() throws Exception {
+    assertEquals(1, configuration.getSignatureExtensionThreads());
+  }
+
+  @Test
+  public void tslLoadingSettings_shouldHaveDefaultValues() throws Exception {
+    assertEquals(8, configuration.getTslLoadingThreads());
+    assertEquals(60000, configuration.getTslDownloadTimeoutInMilliseconds());
+  }
+
+  @Test
+  public void allTrustedListsAreLoadedByDefault() throws Exception {
+    assertTrue(configuration.getTrustedTerritories().isEmpty());
+    assertTrue(configuration.getTrustedServiceTypes().isEmpty());
+  }
+
+  @Test
+  public void loadTrustedTerritoriesAndServiceTypesFromConf() throws Exception {
+    configuration.loadConfiguration("testFiles/digidoc_test_all_optional_settings.yaml");
+    assertEquals(asList("EE", "LV"), configuration.getTrustedTerritories());
+    assertEquals(asList("http://uri.etsi.org/TrstSvc/Svctype/CA/QC", "http://uri.etsi.org/TrstSvc/Svctype/TSA/QTST"),
+        configuration.getTrustedServiceTypes());
+  }
+
+  @Test
+  public void setTrustedTerritories() throws Exception {
+    configuration.setTrustedTerritories("EE", "FI");
+    assertEquals(asList("EE", "FI"), configuration.getTrustedTerritories());
+  }
+
+  @Test
+  public void tslIsNotSharedByDefault() throws Exception {
+    assertFalse(configuration.isTslShared());
+  }
+
+  @Test
+  public void loadTslSharedFromConf() throws Exception {
+    configuration.loadConfiguration("testFiles/digidoc_test_all_optional_settings.yaml");
+    assertTrue(configuration.isTslShared());
+  }
+
+  @Test
+  public void hashcodeContainersAreNotAllowedByDefault() throws Exception {
+    assertFalse(configuration.isHashcodeContainersAllowed());
+  }
+
+  @Test
+  public void loadHashcodeContainersAllowedFromConf() throws Exception {
+    configuration.loadConfiguration("testFiles/digidoc_test_all_optional_settings.yaml");
+    assertTrue(configuration.isHashcodeContainersAllowed());
+  }
+
+  @Test
+  public void certificateAuthoritiesAreMappedToJDigiDocConfigurationOnFirstUse() throws Exception {
+    Configuration configuration = new Configuration(TEST);
+    assertFalse(configuration.areCertificateAuthoritiesLoaded());
+    assertNotNull(configuration.getTslLocation());
+    assertFalse(configuration.areCertificateAuthoritiesLoaded());
+    assertEquals("AS Sertifitseerimiskeskus", configuration.getJDigiDocConfiguration().get("DIGIDOC_CA_1_NAME"));
+    assertTrue(configuration.areCertificateAuthoritiesLoaded());
+  }
+
+  @Test
+  public void explicitlyLoadedConfigurationMapsCertificateAuthoritiesImmediately() throws Exception {
+    configuration.loadConfiguration("testFiles/digidoc_test_conf.yaml");
+    assertTrue(configuration.areCertificateAuthoritiesLoaded());
+  }
+
+  @Test
+  public void configurationIsReady_afterPrewarming() throws Exception {
+    configuration.setTSL(new TSLCertificateSource());
+    assertFalse(configuration.isReady());
+    Future<Configuration> prewarming = configuration.prewarm();
+    assertSame(configuration, prewarming.get(60, TimeUnit.SECONDS));
+    assertTrue(configuration.isReady());
+    assertSame(prewarming, configuration.prewarm());
+  }
+
+  @Test
+  public void configurationIsNotReady_whenPrewarmingFails() throws Exception {
+    configuration.setTslLocation("file:testFiles/does-not-exist.xml");
+    Future<Configuration> prewarming = configuration.prewarm();
+    try {
+      prewarming.get(60, TimeUnit.SECONDS);
+      fail("Prewarming should fail when the TSL can't be loaded");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof DigiDoc4JException);
+    }
+    assertFalse(configuration.isReady());
+    assertNotSame(prewarming, configuration.prewarm());
+  }
+
+  @Test
+  public void reloadConfigurationFromFile() throws Exception {
+    File confFile = createConfFileWithParameter("TSP_SOURCE: http://tsa.example.com");
+    configuration.loadConfiguration(confFile.getPath());
+    FileUtils.writeStringToFile(confFile, FileUtils.readFileToString(confFile)
+        .replace("http://tsa.example.com", "http://tsa2.example.com"));
+    assertEquals("http://tsa.example.com", configuration.getTspSource());
+    configuration.reloadConfiguration();
+    assertEquals("http://tsa2.example.com", configuration.getTspSource());
+  }
+
+  @Test
+  public void configurationLoadedFromStreamCanNotBeReloaded() throws Exception {
+    configuration.loadConfiguration(new FileInputStream("testFiles/digidoc_test_conf.yaml"));
+    expectedException.expect(ConfigurationException.class);
+    configuration.reloadConfiguration();
+  }
+
+  @Test
+  public void snapshotSharesConfigurationValues() throws Exception {
+    configuration.setOcspSource("http://ocsp.example.com");
+    Configuration snapshot = configuration.snapshot();
+    assertTrue(snapshot.isSnapshot());
+    assertFalse(configuration.isSnapshot());
+    assertSame(configuration.configuration, snapshot.configuration);
+    assertEquals("http://ocsp.example.com", snapshot.getOcspSource());
+    assertSame(snapshot, snapshot.snapshot());
+  }
+
+  @Test
+  public void snapshotIsNotChanged_whenOriginalConfigurationIsChanged() throws Exception {
+    Configuration snapshot = configuration.snapshot();
+    configuration.setOcspSource("http://ocsp.example.com");
+    configuration.setMaxFileSizeCachedInMemoryInMB(10);
+    assertEquals(TEST_OCSP_URL, snapshot.getOcspSource());
+    assertEquals(CACHE_ALL_DATA_FILES, snapshot.getMaxDataFileCachedInMB());
+    assertEquals("http://ocsp.example.com", configuration.getOcspSource());
+  }
+
+  @Test
+  public void snapshotCanNotBeChanged() throws Exception {
+    expectedException.expect(NotSupportedException.class);
+    configuration.snapshot().setOcspSource("http://ocsp.example.com");
+  }
+
+  @Test
+  public void snapshotSharesTsl() throws Exception {
+    TSLCertificateSource tsl = new TSLCertificateSource();
+    configuration.setTSL(tsl);
+    assertSame(tsl, configuration.snapshot().getTSL());
+  }
+
+  @Test
+  public void builderChangesOnlySnapshotValues() throws Exception {
+    Configuration snapshot = configuration.toBuilder()
+        .withOCSPAccessCertificateFileName("testFiles/signout.p12")
+        .withOCSPAccessCertificatePassword("test".toCharArray())
+        .build();
+    assertTrue(snapshot.isSnapshot());
+    assertEquals("testFiles/signout.p12", snapshot.getOCSPAccessCertificateFileName());
+    assertEquals("testFiles/signout.p12", snapshot.getJDigiDocConfiguration().get("DIGIDOC_PKCS12_CONTAINER"));
+    assertArrayEquals("test".toCharArray(), snapshot.getOCSPAccessCertificatePassword());
+    assertNull(configuration.getOCSPAccessCertificateFileName());
+    assertEquals(configuration.getTspSource(), snapshot.getTspSource());
+  }
+
+  @Test
+  public void copyOfSnapshotCanBeChanged() throws Exception {
+    Configuration copy = configuration.snapshot().copy();
+    assertFalse(copy.isSnapshot());
+    copy.setOcspSource("http://ocsp.example.com");
+    assertEquals("http://ocsp.example.com", copy.getOcspSource());
+  }
+
+  @Test
+  public void jDigiDocConfigurationFingerprintIsCalculatedAgain_afterConfigurationIsChanged() throws Exception {
+    String fingerprint = configuration.getJDigiDocConfigurationFingerprint();
+    assertSame(fingerprint, configuration.getJDigiDocConfigurationFingerprint());
+    configuration.setSignOCSPRequests(true);
+    String changedFingerprint = configuration.getJDigiDocConfigurationFingerprint();
+    assertNotEquals(fingerprint, changedFingerprint);
+    assertEquals(changedFingerprint, configuration.snapshot().getJDigiDocConfigurationFingerprint());
+    configuration.getJDigiDocConfiguration().put("SIGN_OCSP_REQUESTS", "false");
+    assertEquals(fingerprint, configuration.getJDigiDocConfigurationFingerprint());
+  }
+
+  @Test
+  public void snapshotIsNotChanged_throughJDigiDocConfigurationReturnedBefore() throws Exception {
+    Hashtable<String, String> jDigiDocConfiguration = configuration.getJDigiDocConfiguration();
+    Configuration snapshot = configuration.snapshot();
+    String maxDataFileCached = snapshot.getJDigiDocConfiguration().get("DIGIDOC_MAX_DATAFILE_CACHED");
+    String fingerprint = snapshot.getJDigiDocConfigurationFingerprint();
+    jDigiDocConfiguration.put("DIGIDOC_MAX_DATAFILE_CACHED", "12345");
+    assertEquals(maxDataFileCached, snapshot.getJDigiDocConfiguration().get("DIGIDOC_MAX_DATAFILE_CACHED"));
+    assertEquals(fingerprint, snapshot.getJDigiDocConfigurationFingerprint());
+    assertEquals("12345", configuration.getJDigiDocConfiguration().get("DIGIDOC_MAX_DATAFILE_CACHED"));
+  }
+
+  @Test
+  public void snapshotCanNotReleaseTsl() throws Exception {
+    expectedException.expect(NotSupportedException.class);
+    configuration.snapshot().releaseTSL();
+  }
+
+  @Test
+  public void snapshotKeepsUsingSharedTsl_whenOriginalConfigurationReleasesIt() throws Exception {
+    configuration.setTslLocation("file:testFiles/tsl/empty-lotl.xml");
+    configuration.setTslShared(true);
+    TSLCertificateSource tsl = configuration.getTSL();
+    Configuration snapshot = configuration.snapshot();
+    configuration.releaseTSL();
+    Configuration otherConfiguration = new Configuration(TEST);
+    otherConfiguration.setTslLocation("file:testFiles/tsl/empty-lotl.xml");
+    otherConfiguration.setTslShared(true);
+    try {
+      assertSame(tsl, snapshot.getTSL());
+      assertSame(tsl, otherConfiguration.getTSL());
+    } finally {
+      otherConfiguration.releaseTSL();
+    }
+  }
+
+  @Test
+  public void snapshotsCreatedWhileConfigurationIsChanged_areNotChanged() throws Exception {
+    Thread writer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 2000; i++) {
+          configuration.setOcspSource("http://ocsp" + i + ".example.com");
+          configuration.setTspSource("http://tsa" + i + ".example.com");
+        }
+      }
+    });
+    writer.start();
+    while (writer.isAlive()) {
+      Configuration snapshot = configuration.snapshot();
+      String ocspSource = snapshot.getOcspSource();
+      String tspSource = snapshot.getTspSource();
+      Thread.yield();
+      assertEquals(ocspSource, snapshot.getOcspSource());
+      assertEquals(tspSource, snapshot.getTspSource());
+    }
+    writer.join();
+    assertEquals("http://tsa1999.example.com", configuration.snapshot().getTspSource());
+  }
+
+  @Test
+  public void loadSignatureExtensionThreadsFromConf() throws Exception {
+    configuration.loadConfiguration("testFiles/digidoc_test_all_optional_settings.yaml");
+    assertEquals(6, configuration.getSignatureExtensionThreads());
+  }
+
   private File createConfFileWithParameter(String parameter) throws IOException {
     File confFile = testFolder.newFile();
     FileUtils.writeStringToFile(confFile, parameter);
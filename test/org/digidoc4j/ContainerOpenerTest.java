@@ -32,6 +32,15 @@ public class ContainerOpenerTest extends DigiDoc4JTestHelper {
     assertContainerOpened(container, "BDOC");
   }
 
+  @Test
+  public void openBDocContainer_doesNotReloadConfiguration() throws Exception {
+    configuration.setTspSource("http://tsa.example.com");
+    configuration.setTSL(new TSLCertificateSource());
+    Container container = ContainerOpener.open(BDOC_TEST_FILE, configuration.snapshot());
+    assertContainerOpened(container, "BDOC");
+    assertEquals("http://tsa.example.com", configuration.getTspSource());
+  }
+
   @Test
   public void openDDocContainer() throws Exception {
     Container container = ContainerOpener.open(DDOC_TEST_FILE, configuration);
@@ -0,0 +1,141 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+
+import org.digidoc4j.exceptions.InvalidDataFileException;
+import org.digidoc4j.impl.StreamDocument;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.europa.esig.dss.DSSUtils;
+import eu.europa.esig.dss.InMemoryDocument;
+
+public class DataFileFactoryTest {
+
+  private static final byte[] CONTENT = "test content of the uploaded file".getBytes();
+  private Configuration configuration;
+
+  @Before
+  public void setUp() throws Exception {
+    configuration = new Configuration(Configuration.Mode.TEST);
+  }
+
+  @Test
+  public void smallDataFile_isKeptInMemory_withDigestsCalculatedOnce() throws Exception {
+    CountingInputStream stream = new CountingInputStream(CONTENT);
+    DataFile dataFile = new DataFileFactory(configuration).
+        withDigestAlgorithms(DigestAlgorithm.SHA256, DigestAlgorithm.SHA512).
+        createDataFile(stream, "test.txt", "text/plain");
+    assertTrue(dataFile.getDocument() instanceof InMemoryDocument);
+    assertEquals(CONTENT.length, stream.bytesRead);
+    assertArrayEquals(CONTENT, dataFile.getBytes());
+    assertEquals(CONTENT.length, dataFile.getFileSize());
+    assertEquals("test.txt", dataFile.getName());
+    assertEquals("text/plain", dataFile.getMediaType());
+    assertArrayEquals(digest(eu.europa.esig.dss.DigestAlgorithm.SHA512, CONTENT),
+        dataFile.calculateDigest(DigestAlgorithm.SHA512));
+  }
+
+  @Test
+  public void largeDataFile_isSpooledToDisk_andDigestedWithoutReadingItAgain() throws Exception {
+    configuration.setMaxFileSizeCachedInMemoryInMB(0);
+    CountingInputStream stream = new CountingInputStream(CONTENT);
+    DataFile dataFile = new DataFileFactory(configuration).createDataFile(stream, "test.txt", "text/plain");
+    assertTrue(dataFile.getDocument() instanceof StreamDocument);
+    assertEquals(CONTENT.length, stream.bytesRead);
+    File temporaryFile = new File(dataFile.getDocument().getAbsolutePath());
+    assertEquals(CONTENT.length, dataFile.getFileSize());
+    assertArrayEquals(CONTENT, dataFile.getBytes());
+
+    assertTrue(temporaryFile.delete());
+    assertArrayEquals(digest(eu.europa.esig.dss.DigestAlgorithm.SHA256, CONTENT),
+        dataFile.calculateDigest(DigestAlgorithm.SHA256));
+  }
+
+  @Test
+  public void digestNotCalculatedWhileSpooling_isCalculatedFromContent() throws Exception {
+    DataFile dataFile = new DataFileFactory(configuration).
+        createDataFile(new ByteArrayInputStream(CONTENT), "test.txt", "text/plain");
+    assertArrayEquals(digest(eu.europa.esig.dss.DigestAlgorithm.SHA1, CONTENT),
+        dataFile.calculateDigest(DigestAlgorithm.SHA1));
+  }
+
+  @Test
+  public void failingStream_doesNotLeaveTemporaryFile() throws Exception {
+    configuration.setMaxFileSizeCachedInMemoryInMB(0);
+    File temporaryDirectory = new File(System.getProperty("java.io.tmpdir"));
+    int temporaryFiles = countTemporaryFiles(temporaryDirectory);
+    try {
+      new DataFileFactory(configuration).createDataFile(new FailingInputStream(CONTENT), "test.txt", "text/plain");
+      fail("Data file must not be created");
+    } catch (InvalidDataFileException e) {
+      assertEquals(temporaryFiles, countTemporaryFiles(temporaryDirectory));
+    }
+  }
+
+  private byte[] digest(eu.europa.esig.dss.DigestAlgorithm digestAlgorithm, byte[] content) {
+    return DSSUtils.digest(digestAlgorithm, content);
+  }
+
+  private int countTemporaryFiles(File directory) {
+    String[] names = directory.list();
+    int count = 0;
+    for (String name : names) {
+      if (name.startsWith("digidoc4j") && name.endsWith(".tmp")) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static class CountingInputStream extends FilterInputStream {
+
+    private int bytesRead;
+
+    CountingInputStream(byte[] content) {
+      super(new ByteArrayInputStream(content));
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int count = super.read(buffer, offset, length);
+      if (count > 0) {
+        bytesRead += count;
+      }
+      return count;
+    }
+  }
+
+  private static class FailingInputStream extends CountingInputStream {
+
+    FailingInputStream(byte[] content) {
+      super(content);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      if (super.bytesRead > 0) {
+        throw new IOException("Connection reset");
+      }
+      return super.read(buffer, offset, length);
+    }
+  }
+}
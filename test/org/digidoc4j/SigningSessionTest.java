@@ -0,0 +1,82 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.digidoc4j.exceptions.DigiDoc4JException;
+import org.digidoc4j.testutils.TestPki;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SigningSessionTest {
+
+  private Configuration configuration;
+
+  @Before
+  public void setUp() throws Exception {
+    configuration = new Configuration(Configuration.Mode.TEST);
+    configuration.setTSL(new TSLCertificateSource());
+  }
+
+  @Test
+  public void signatureFinalizedFromStoredSession_isSameAsFromDataToSign() throws Exception {
+    Container container = createContainer();
+    DataToSign dataToSign = buildDataToSign(container);
+    byte[] storedSession = dataToSign.createSigningSession().toByteArray();
+    assertTrue(storedSession.length < 4096);
+
+    SigningSession session = SigningSession.fromByteArray(storedSession);
+    assertArrayEquals(dataToSign.getDigestToSign(), session.getDigestToSign());
+    assertEquals("S0", session.getSignatureParameters().getSignatureId());
+    assertEquals(Arrays.asList("Manager"), session.getSignatureParameters().getRoles());
+    byte[] signatureValue = TestPki.getInstance().signDigest(session.getDigestToSign(), session.getDigestAlgorithm());
+    Signature signature = session.finalize(signatureValue, configuration);
+
+    assertArrayEquals(dataToSign.finalize(signatureValue).getAdESSignature(), signature.getAdESSignature());
+    Container restoredContainer = createContainer();
+    restoredContainer.addSignature(signature);
+    assertEquals(1, restoredContainer.getSignatures().size());
+  }
+
+  @Test(expected = DigiDoc4JException.class)
+  public void sessionWithDifferentDataFileDigest_isRejected() throws Exception {
+    SigningSession session = buildDataToSign(createContainer()).createSigningSession();
+    DigestDataFile changedDataFile = new DigestDataFile("test.txt", "text/plain", DigestAlgorithm.SHA256, new byte[32]);
+    SigningSession changedSession = new SigningSession(session.getDigestToSign(), session.getSignatureParameters(),
+        session.getSigningDate(), Arrays.asList(changedDataFile));
+    byte[] signatureValue = TestPki.getInstance().signDigest(session.getDigestToSign(), session.getDigestAlgorithm());
+    changedSession.finalize(signatureValue, configuration);
+  }
+
+  private Container createContainer() {
+    return ContainerBuilder.
+        aContainer().
+        withConfiguration(configuration).
+        withDataFile("testFiles/test.txt", "text/plain").
+        build();
+  }
+
+  private DataToSign buildDataToSign(Container container) {
+    return SignatureBuilder.
+        aSignature(container).
+        withSigningCertificate(TestPki.getInstance().getSignerCertificate()).
+        withSignatureProfile(SignatureProfile.B_BES).
+        withSignatureId("S0").
+        withRoles("Manager").
+        withCity("Tallinn").
+        buildDataToSign();
+  }
+}
@@ -0,0 +1,146 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileInputStream;
+import java.util.List;
+
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.europa.esig.dss.DSSUtils;
+import eu.europa.esig.dss.DigestAlgorithm;
+import eu.europa.esig.dss.tsl.ServiceInfo;
+import eu.europa.esig.dss.x509.CertificateToken;
+
+public class TSLCertificateSourceTest {
+
+  private static final String CA_QC = "http://uri.etsi.org/TrstSvc/Svctype/CA/QC";
+  private static final String TSA_QTST = "http://uri.etsi.org/TrstSvc/Svctype/TSA/QTST";
+  private TSLCertificateSource tsl;
+
+  @Before
+  public void setUp() throws Exception {
+    tsl = new TSLCertificateSource();
+  }
+
+  @Test
+  public void certificatesOfAllServicesAreTrusted_whenServiceTypesAreNotFiltered() throws Exception {
+    tsl.addCertificate(loadCertificate("testFiles/Juur-SK.pem.crt"), createServiceInfo(CA_QC));
+    tsl.addCertificate(loadCertificate("testFiles/SK_TSA.pem.crt"), createServiceInfo(TSA_QTST));
+    assertEquals(2, tsl.getCertificates().size());
+  }
+
+  @Test
+  public void certificatesOfOtherServicesAreSkipped_whenServiceTypesAreFiltered() throws Exception {
+    tsl.setTrustedServiceTypes(asList(CA_QC));
+    tsl.addCertificate(loadCertificate("testFiles/Juur-SK.pem.crt"), createServiceInfo(CA_QC));
+    tsl.addCertificate(loadCertificate("testFiles/SK_TSA.pem.crt"), createServiceInfo(TSA_QTST));
+    assertEquals(1, tsl.getCertificates().size());
+    assertEquals(CA_QC, tsl.getCertificates().get(0).getAssociatedTSPS().iterator().next().getType());
+  }
+
+  @Test
+  public void manuallyAddedCertificatesAreNotFiltered() throws Exception {
+    tsl.setTrustedServiceTypes(asList(TSA_QTST));
+    tsl.addTSLCertificate(loadCertificate("testFiles/Juur-SK.pem.crt").getCertificate());
+    assertEquals(1, tsl.getCertificates().size());
+  }
+
+  @Test
+  public void trustedCertificatesAreFoundBySubject() throws Exception {
+    CertificateToken rootCertificate = loadCertificate("testFiles/Juur-SK.pem.crt");
+    tsl.addTSLCertificate(rootCertificate.getCertificate());
+    tsl.addTSLCertificate(loadCertificate("testFiles/SK_TSA.pem.crt").getCertificate());
+    List<CertificateToken> certificates = tsl.get(rootCertificate.getSubjectX500Principal());
+    assertEquals(1, certificates.size());
+    assertEquals(rootCertificate.getDSSIdAsString(), certificates.get(0).getDSSIdAsString());
+    assertTrue(tsl.get(loadCertificate("testFiles/ESTEID-SK_2011.pem.crt").getSubjectX500Principal()).isEmpty());
+  }
+
+  @Test
+  public void trustedCertificatesAreFoundBySubjectKeyIdentifier() throws Exception {
+    CertificateToken rootCertificate = loadCertificate("testFiles/Juur-SK.pem.crt");
+    tsl.addTSLCertificate(rootCertificate.getCertificate());
+    byte[] subjectKeyIdentifier = Hex.decode("04aa7a47a3e489af1acf0a40a7183f6fefe97dbe");
+    List<CertificateToken> certificates = tsl.getBySubjectKeyIdentifier(subjectKeyIdentifier);
+    assertEquals(1, certificates.size());
+    assertEquals(rootCertificate.getDSSIdAsString(), certificates.get(0).getDSSIdAsString());
+  }
+
+  @Test
+  public void trustedCertificatesAreFoundByDigest() throws Exception {
+    CertificateToken rootCertificate = loadCertificate("testFiles/Juur-SK.pem.crt");
+    tsl.addCertificate(rootCertificate, createServiceInfo(CA_QC));
+    tsl.addCertificate(rootCertificate, createServiceInfo(TSA_QTST));
+    byte[] digest = DSSUtils.digest(DigestAlgorithm.SHA256, rootCertificate.getEncoded());
+    assertEquals(rootCertificate.getDSSIdAsString(), tsl.getBySha256Digest(digest).getDSSIdAsString());
+    assertEquals(1, tsl.get(rootCertificate.getSubjectX500Principal()).size());
+    CertificateToken otherCertificate = loadCertificate("testFiles/SK_TSA.pem.crt");
+    byte[] otherDigest = DSSUtils.digest(DigestAlgorithm.SHA256, otherCertificate.getEncoded());
+    assertNull(tsl.getBySha256Digest(otherDigest));
+  }
+
+  @Test
+  public void skippedCertificatesAreNotFound() throws Exception {
+    tsl.setTrustedServiceTypes(asList(CA_QC));
+    CertificateToken tsaCertificate = loadCertificate("testFiles/SK_TSA.pem.crt");
+    tsl.addCertificate(tsaCertificate, createServiceInfo(TSA_QTST));
+    assertTrue(tsl.get(tsaCertificate.getSubjectX500Principal()).isEmpty());
+  }
+
+  @Test
+  public void removedCertificatesAreNotFound() throws Exception {
+    CertificateToken rootCertificate = loadCertificate("testFiles/Juur-SK.pem.crt");
+    CertificateToken tsaCertificate = loadCertificate("testFiles/SK_TSA.pem.crt");
+    tsl.addTSLCertificate(rootCertificate.getCertificate());
+    tsl.addTSLCertificate(tsaCertificate.getCertificate());
+    assertTrue(tsl.removeCertificate(tsl.get(rootCertificate.getSubjectX500Principal()).get(0)));
+    assertTrue(tsl.get(rootCertificate.getSubjectX500Principal()).isEmpty());
+    assertTrue(tsl.getBySubjectKeyIdentifier(Hex.decode("04aa7a47a3e489af1acf0a40a7183f6fefe97dbe")).isEmpty());
+    assertNull(tsl.getBySha256Digest(DSSUtils.digest(DigestAlgorithm.SHA256, rootCertificate.getEncoded())));
+    assertEquals(1, tsl.get(tsaCertificate.getSubjectX500Principal()).size());
+    assertEquals(1, tsl.getCertificates().size());
+  }
+
+  @Test
+  public void certificatesOfRemovedSubjectAreNotFound() throws Exception {
+    CertificateToken rootCertificate = loadCertificate("testFiles/Juur-SK.pem.crt");
+    tsl.addTSLCertificate(rootCertificate.getCertificate());
+    assertTrue(tsl.removeX500Principal(rootCertificate.getSubjectX500Principal()));
+    assertTrue(tsl.get(rootCertificate.getSubjectX500Principal()).isEmpty());
+    assertNull(tsl.getBySha256Digest(DSSUtils.digest(DigestAlgorithm.SHA256, rootCertificate.getEncoded())));
+    tsl.addTSLCertificate(rootCertificate.getCertificate());
+    assertEquals(1, tsl.get(rootCertificate.getSubjectX500Principal()).size());
+  }
+
+  private CertificateToken loadCertificate(String path) throws Exception {
+    FileInputStream fileInputStream = new FileInputStream(path);
+    try {
+      return DSSUtils.loadCertificate(fileInputStream);
+    } finally {
+      fileInputStream.close();
+    }
+  }
+
+  private ServiceInfo createServiceInfo(String type) {
+    ServiceInfo serviceInfo = new ServiceInfo();
+    serviceInfo.setType(type);
+    serviceInfo.setStatus("http://uri.etsi.org/TrstSvc/TrustedList/Svcstatus/undersupervision");
+    return serviceInfo;
+  }
+}
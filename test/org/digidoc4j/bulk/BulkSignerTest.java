@@ -0,0 +1,252 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.bulk;
+
+import static org.digidoc4j.testutils.OfflineSigningHelper.createConfiguration;
+import static org.digidoc4j.testutils.OfflineSigningHelper.isReferenceDataValid;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.digidoc4j.BatchSignatureToken;
+import org.digidoc4j.Configuration;
+import org.digidoc4j.Container;
+import org.digidoc4j.ContainerBuilder;
+import org.digidoc4j.DataFile;
+import org.digidoc4j.DataToSign;
+import org.digidoc4j.DigestAlgorithm;
+import org.digidoc4j.SignatureProfile;
+import org.digidoc4j.exceptions.ContainerWithoutFilesException;
+import org.digidoc4j.exceptions.TechnicalException;
+import org.digidoc4j.testutils.TestPki;
+import org.digidoc4j.testutils.TestResponders;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BulkSignerTest {
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+  private Configuration configuration;
+
+  @Before
+  public void setUp() throws Exception {
+    configuration = createConfiguration();
+  }
+
+  @Test
+  public void documentsAreSigned_inBatchesOfTheToken() throws Exception {
+    CountingBatchToken token = new CountingBatchToken();
+    MemorySink sink = new MemorySink();
+    BulkSigningResult result = createBulkSigner(token).
+        withSigningBatchSize(8).
+        sign(new ListSource(createDocuments(20)), sink);
+
+    assertEquals(20, result.getSignedCount());
+    assertTrue(result.getFailures().isEmpty());
+    assertEquals(20, sink.containers.size());
+    assertTrue(token.batchCalls.get() >= 3);
+    assertEquals(20, token.signedCount.get());
+    for (BulkSigningStage stage : BulkSigningStage.values()) {
+      StageStatistics statistics = result.getStageStatistics(stage);
+      assertEquals(20, statistics.getProcessedCount());
+      assertEquals(0, statistics.getFailedCount());
+    }
+    Container container = sink.containers.get("document-7");
+    assertEquals("document-7.txt", container.getDataFiles().get(0).getName());
+    assertTrue(isReferenceDataValid(container.getSignatures().get(0)));
+  }
+
+  @Test
+  public void failedDocuments_areReported_andOtherDocumentsSigned() throws Exception {
+    List<BulkDocument> documents = createDocuments(3);
+    documents.add(1, new BulkDocument("empty"));
+    MemorySink sink = new MemorySink();
+    BulkSigningResult result = createBulkSigner(new CountingBatchToken()).sign(new ListSource(documents), sink);
+
+    assertEquals(3, result.getSignedCount());
+    assertEquals(1, result.getFailures().size());
+    BulkSigningFailure failure = result.getFailures().get(0);
+    assertEquals("empty", failure.getDocumentName());
+    assertEquals(BulkSigningStage.PREPARE_SIGNATURE, failure.getStage());
+    assertTrue(failure.getException() instanceof ContainerWithoutFilesException);
+    assertEquals(1, result.getStageStatistics(BulkSigningStage.PREPARE_SIGNATURE).getFailedCount());
+  }
+
+  @Test
+  public void failingSource_isReported_andDocumentsReadBeforeAreSigned() throws Exception {
+    final Iterator<BulkDocument> documents = createDocuments(2).iterator();
+    DocumentSource source = new DocumentSource() {
+      @Override
+      public BulkDocument nextDocument() {
+        if (!documents.hasNext()) {
+          throw new TechnicalException("Source is not available");
+        }
+        return documents.next();
+      }
+    };
+    MemorySink sink = new MemorySink();
+    BulkSigningResult result = createBulkSigner(new CountingBatchToken()).sign(source, sink);
+
+    assertEquals(2, result.getSignedCount());
+    assertEquals(2, sink.containers.size());
+    assertEquals(1, result.getFailures().size());
+    BulkSigningFailure failure = result.getFailures().get(0);
+    assertNull(failure.getDocumentName());
+    assertEquals(BulkSigningStage.READ_DOCUMENT, failure.getStage());
+    assertTrue(failure.getException() instanceof TechnicalException);
+    assertEquals(2, result.getStageStatistics(BulkSigningStage.READ_DOCUMENT).getProcessedCount());
+    assertEquals(1, result.getStageStatistics(BulkSigningStage.READ_DOCUMENT).getFailedCount());
+  }
+
+  @Test
+  public void ltSignaturesCreatedInBulk_areValid() throws Exception {
+    TestResponders responders = TestResponders.start();
+    try {
+      Configuration ltConfiguration = new Configuration(Configuration.Mode.TEST);
+      responders.configure(ltConfiguration);
+      MemorySink sink = new MemorySink();
+      BulkSigningResult result = new BulkSigner(ltConfiguration, TestPki.getInstance().createSignatureToken()).
+          withSignatureProfile(SignatureProfile.LT).
+          withSigningBatchSize(4).
+          sign(new ListSource(createDocuments(10)), sink);
+
+      assertEquals(10, result.getSignedCount());
+      assertTrue(result.getFailures().isEmpty());
+      for (Container container : sink.containers.values()) {
+        assertEquals(SignatureProfile.LT, container.getSignatures().get(0).getProfile());
+        assertTrue(container.validate().isValid());
+      }
+    } finally {
+      responders.stop();
+    }
+  }
+
+  @Test
+  public void filesOfDirectory_areSignedToOutputDirectory() throws Exception {
+    File inputDirectory = testFolder.newFolder("input");
+    File outputDirectory = testFolder.newFolder("output");
+    for (int i = 0; i < 3; i++) {
+      FileUtils.writeStringToFile(new File(inputDirectory, "invoice-" + i + ".txt"), "invoice " + i);
+    }
+    BulkSigningResult result = createBulkSigner(new CountingBatchToken()).
+        sign(new DirectoryDocumentSource(inputDirectory, "text/plain"), new DirectoryContainerSink(outputDirectory));
+
+    assertEquals(3, result.getSignedCount());
+    File containerFile = new File(outputDirectory, "invoice-2.txt.bdoc");
+    assertTrue(containerFile.exists());
+    Container container = ContainerBuilder.aContainer().withConfiguration(configuration).
+        fromExistingFile(containerFile.getPath()).build();
+    assertEquals(1, container.getSignatures().size());
+    assertTrue(isReferenceDataValid(container.getSignatures().get(0)));
+  }
+
+  @Test
+  public void containersAreWrittenToStreams() throws Exception {
+    final Map<String, ByteArrayOutputStream> streams = new ConcurrentHashMap<>();
+    StreamContainerSink sink = new StreamContainerSink() {
+      @Override
+      protected OutputStream openStream(String name) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        streams.put(name, stream);
+        return stream;
+      }
+    };
+    BulkSigningResult result = createBulkSigner(new CountingBatchToken()).
+        withStageConcurrency(BulkSigningStage.FINALIZE_SIGNATURE, 1, 1).
+        sign(new ListSource(createDocuments(2)), sink);
+
+    assertEquals(2, result.getSignedCount());
+    Container container = ContainerBuilder.aContainer().withConfiguration(configuration).
+        fromStream(new ByteArrayInputStream(streams.get("document-1").toByteArray())).build();
+    assertEquals(1, container.getSignatures().size());
+  }
+
+  private BulkSigner createBulkSigner(CountingBatchToken token) {
+    return new BulkSigner(configuration, token).withSignatureProfile(SignatureProfile.B_BES);
+  }
+
+  private List<BulkDocument> createDocuments(int count) {
+    List<BulkDocument> documents = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      DataFile dataFile = new DataFile(("content " + i).getBytes(), "document-" + i + ".txt", "text/plain");
+      documents.add(new BulkDocument("document-" + i, dataFile));
+    }
+    return documents;
+  }
+
+  private static class ListSource implements DocumentSource {
+
+    private final Iterator<BulkDocument> documents;
+
+    ListSource(List<BulkDocument> documents) {
+      this.documents = documents.iterator();
+    }
+
+    @Override
+    public BulkDocument nextDocument() {
+      return documents.hasNext() ? documents.next() : null;
+    }
+  }
+
+  private static class MemorySink implements ContainerSink {
+
+    private final Map<String, Container> containers = new ConcurrentHashMap<>();
+
+    @Override
+    public void write(String name, Container container) {
+      containers.put(name, container);
+    }
+  }
+
+  private static class CountingBatchToken implements BatchSignatureToken {
+
+    private final AtomicInteger batchCalls = new AtomicInteger();
+    private final AtomicInteger signedCount = new AtomicInteger();
+
+    @Override
+    public X509Certificate getCertificate() {
+      return TestPki.getInstance().getSignerCertificate();
+    }
+
+    @Override
+    public byte[] sign(DigestAlgorithm digestAlgorithm, byte[] dataToSign) {
+      throw new IllegalStateException("Documents must be signed in batches");
+    }
+
+    @Override
+    public List<byte[]> sign(List<DataToSign> dataToSign) {
+      batchCalls.incrementAndGet();
+      signedCount.addAndGet(dataToSign.size());
+      List<byte[]> signatureValues = new ArrayList<>();
+      for (DataToSign data : dataToSign) {
+        signatureValues.add(TestPki.getInstance().signDigest(data.getDigestToSign(), data.getDigestAlgorithm()));
+      }
+      return signatureValues;
+    }
+  }
+}
@@ -11,6 +11,7 @@
 package org.digidoc4j.impl.bdoc;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -22,6 +23,7 @@ import java.util.List;
 import org.apache.commons.lang.StringUtils;
 import org.digidoc4j.Configuration;
 import org.digidoc4j.SignatureProfile;
+import org.digidoc4j.TSLCertificateSource;
 import org.digidoc4j.utils.Helper;
 import org.junit.Before;
 import org.junit.Rule;
@@ -123,4 +125,30 @@ public class BDocSignatureOpenerTest {
     signature = Helper.deserializer(serializedPath);
     assertEquals("S0", signature.getId());
   }
+
+  @Test
+  public void openCreatedSignature_withoutValidator() throws Exception {
+    DSSDocument xadesDoc = new FileDocument("testFiles/xades/test-bdoc-ts.xml");
+    BDocSignature signature = signatureOpener.open(xadesDoc);
+    BDocSignature parsedSignature = signatureOpener.parse(xadesDoc).get(0);
+    assertEquals("S0", signature.getId());
+    assertEquals(SignatureProfile.LT, signature.getProfile());
+    assertEquals(parsedSignature.getSigningTime(), signature.getSigningTime());
+    assertEquals(parsedSignature.getSigningCertificate().getSerial(), signature.getSigningCertificate().getSerial());
+    assertEquals(parsedSignature.getOCSPResponseCreationTime(), signature.getOCSPResponseCreationTime());
+    assertEquals(parsedSignature.getTimeStampCreationTime(), signature.getTimeStampCreationTime());
+    assertFalse(signature.getOrigin().getOCSPSource().getContainedOCSPResponses().isEmpty());
+  }
+
+  @Test
+  public void openCreatedSignature_isValidatedOnRequest() throws Exception {
+    Configuration configuration = new Configuration(Configuration.Mode.TEST);
+    configuration.setTSL(new TSLCertificateSource());
+    DSSDocument signedFile = new FileDocument("testFiles/test.txt");
+    BDocSignatureOpener opener = new BDocSignatureOpener(Arrays.asList(signedFile), configuration);
+    BDocSignature signature = opener.open(new FileDocument("testFiles/xades/test-bes-signature.xml"));
+    assertEquals(SignatureProfile.B_BES, signature.getProfile());
+    List<String> signatureIds = signature.getDssValidationReport().getDiagnosticData().getSignatureIdList();
+    assertEquals(Arrays.asList("id-693869a500c60f0dc262f7287f033d5d"), signatureIds);
+  }
 }
@@ -18,18 +18,32 @@ import static org.digidoc4j.testutils.TestDataBuilder.createEmptyBDocContainer;
 import static org.digidoc4j.testutils.TestDataBuilder.open;
 import static org.digidoc4j.testutils.TestDataBuilder.signContainer;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.List;
+
+import org.digidoc4j.Configuration;
 import org.digidoc4j.Container;
+import org.digidoc4j.ContainerBuilder;
+import org.digidoc4j.DataFile;
+import org.digidoc4j.Signature;
 import org.digidoc4j.SignatureProfile;
 import org.digidoc4j.exceptions.DigiDoc4JException;
 import org.digidoc4j.impl.DigiDoc4JTestHelper;
+import org.digidoc4j.testutils.TestPki;
+import org.digidoc4j.testutils.TestResponders;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import eu.europa.esig.dss.DSSException;
+
 public class ExtendingBDocContainerTest extends DigiDoc4JTestHelper {
 
   String testContainerPath;
@@ -37,9 +51,20 @@ public class ExtendingBDocContainerTest extends DigiDoc4JTestHelper {
   @Rule
   public TemporaryFolder testFolder = new TemporaryFolder();
 
+  private TestResponders responders;
+  private Configuration testConfiguration;
+
   @Before
   public void setUp() throws Exception {
     testContainerPath = testFolder.newFile("testExtendTo.bdoc").getPath();
+    responders = TestResponders.start();
+    testConfiguration = new Configuration(Configuration.Mode.TEST);
+    responders.configure(testConfiguration);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    responders.stop();
   }
 
   @Test
@@ -59,6 +84,50 @@ public class ExtendingBDocContainerTest extends DigiDoc4JTestHelper {
     assertNotNull(container.getSignatures().get(0).getOCSPCertificate());
   }
 
+  @Test
+  public void extendFromB_BESToLT_requestsOcspResponseAfterTimestamp() throws Exception {
+    Container container = createContainerSignedWithTestPki(1);
+
+    container.extendSignatureProfile(LT);
+
+    List<String> requestLog = responders.getRequestLog();
+    assertEquals(0, requestLog.lastIndexOf(TestResponders.TIMESTAMP_REQUEST));
+    assertTrue(requestLog.contains(TestResponders.OCSP_REQUEST));
+    assertEquals(LT, container.getSignatures().get(0).getProfile());
+    assertTrue(container.validate().isValid());
+  }
+
+  @Test
+  public void extendMultipleSignaturesInParallel() throws Exception {
+    testConfiguration.setSignatureExtensionThreads(4);
+    Container container = createContainerSignedWithTestPki(6);
+
+    container.extendSignatureProfile(LT);
+
+    assertEquals(6, container.getSignatures().size());
+    for (Signature signature : container.getSignatures()) {
+      assertEquals(LT, signature.getProfile());
+    }
+    assertTrue(container.validate().isValid());
+  }
+
+  @Test
+  public void extendMultipleSignaturesInParallel_whenTimestampingFails_throwsTheError() throws Exception {
+    testConfiguration.setSignatureExtensionThreads(4);
+    Container container = createContainerSignedWithTestPki(6);
+    testConfiguration.setTspSource(
+        testConfiguration.getTspSource().replace(TestResponders.TIMESTAMP_REQUEST, "missing"));
+    try {
+      container.extendSignatureProfile(LT);
+      fail("Extending should fail when the time-stamping authority is not available");
+    } catch (DSSException e) {
+      assertFalse(responders.getRequestLog().contains(TestResponders.OCSP_REQUEST));
+    }
+    for (Signature signature : container.getSignatures()) {
+      assertEquals(B_BES, signature.getProfile());
+    }
+  }
+
   @Test
   public void extendFromB_BESToLTA() throws Exception {
     Container container = createContainerWithFile("testFiles/test.txt", "text/plain");
@@ -172,4 +241,13 @@ public class ExtendingBDocContainerTest extends DigiDoc4JTestHelper {
     signContainer(container, LTA);
     container.extendSignatureProfile(LTA);
   }
+
+  private Container createContainerSignedWithTestPki(int signatures) {
+    Container container = ContainerBuilder.aContainer().withConfiguration(testConfiguration).build();
+    container.addDataFile(new DataFile("test".getBytes(), "test.txt", "text/plain"));
+    for (int i = 0; i < signatures; i++) {
+      TestPki.getInstance().signContainer(container, B_BES);
+    }
+    return container;
+  }
 }
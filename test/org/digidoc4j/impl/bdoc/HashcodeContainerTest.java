@@ -0,0 +1,238 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.impl.bdoc;
+
+import static org.digidoc4j.testutils.OfflineSigningHelper.createConfiguration;
+import static org.digidoc4j.testutils.OfflineSigningHelper.isReferenceDataValid;
+import static org.digidoc4j.testutils.OfflineSigningHelper.signContainer;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
+import org.digidoc4j.Configuration;
+import org.digidoc4j.Container;
+import org.digidoc4j.ContainerBuilder;
+import org.digidoc4j.DataFile;
+import org.digidoc4j.DigestAlgorithm;
+import org.digidoc4j.DigestDataFile;
+import org.digidoc4j.Signature;
+import org.digidoc4j.SignatureBuilder;
+import org.digidoc4j.SignatureProfile;
+import org.digidoc4j.ValidationResult;
+import org.digidoc4j.exceptions.DigiDoc4JException;
+import org.digidoc4j.testutils.TestPki;
+import org.digidoc4j.testutils.TestResponders;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.europa.esig.dss.DSSUtils;
+
+public class HashcodeContainerTest {
+
+  private static final byte[] CONTENT = "test content".getBytes();
+  private Configuration configuration;
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  @Before
+  public void setUp() throws Exception {
+    configuration = createConfiguration();
+    configuration.setHashcodeContainersAllowed(true);
+  }
+
+  @Test
+  public void openingHashcodeContainer_createsDataFilesFromHashcodes() throws Exception {
+    Container container = openContainer("testFiles/hashcode.bdoc");
+    assertEquals(1, container.getDataFiles().size());
+    DigestDataFile dataFile = (DigestDataFile) container.getDataFiles().get(0);
+    assertEquals("wisdom.txt", dataFile.getName());
+    assertEquals("text/plain", dataFile.getMediaType());
+    assertEquals(105, dataFile.getFileSize());
+    assertTrue(dataFile.hasDigest(DigestAlgorithm.SHA256));
+    assertFalse(dataFile.hasDigest(DigestAlgorithm.SHA512));
+    Signature signature = container.getSignatures().get(0);
+    assertTrue(isReferenceDataValid(signature));
+    assertTrue(container.validate().getContainerErrors().isEmpty());
+  }
+
+  @Test
+  public void signedHashcodeContainer_isSavedWithoutContent_andValidated() throws Exception {
+    Container container = createHashcodeContainer();
+    signContainer(container);
+    File file = testFolder.newFile("hashcode.bdoc");
+    container.saveAsFile(file.getPath());
+
+    ZipFile zipFile = new ZipFile(file);
+    assertNull(zipFile.getEntry("test.txt"));
+    assertNotNull(zipFile.getEntry("META-INF/hashcodes-sha256.xml"));
+    assertNull(zipFile.getEntry("META-INF/hashcodes-sha512.xml"));
+    zipFile.close();
+
+    Container openedContainer = openContainer(file.getPath());
+    DigestDataFile dataFile = (DigestDataFile) openedContainer.getDataFiles().get(0);
+    assertArrayEquals(DSSUtils.digest(eu.europa.esig.dss.DigestAlgorithm.SHA256, CONTENT),
+        dataFile.getDigest(DigestAlgorithm.SHA256));
+    assertEquals(CONTENT.length, dataFile.getFileSize());
+    assertTrue(isReferenceDataValid(openedContainer.getSignatures().get(0)));
+    assertTrue(openedContainer.validate().getContainerErrors().isEmpty());
+  }
+
+  @Test
+  public void ltSignatureOfHashcodeContainer_isValid() throws Exception {
+    TestResponders responders = TestResponders.start();
+    try {
+      responders.configure(configuration);
+      Container container = createHashcodeContainer();
+      TestPki.getInstance().signContainer(container, SignatureProfile.LT);
+      File file = testFolder.newFile("hashcode.bdoc");
+      container.saveAsFile(file.getPath());
+
+      Container openedContainer = openContainer(file.getPath());
+      assertEquals(SignatureProfile.LT, openedContainer.getSignatures().get(0).getProfile());
+      assertTrue(openedContainer.validate().isValid());
+    } finally {
+      responders.stop();
+    }
+  }
+
+  @Test
+  public void hashcodeContainerWithChangedHashcode_failsReferenceValidation() throws Exception {
+    Container container = createHashcodeContainer();
+    signContainer(container);
+    File file = testFolder.newFile("hashcode.bdoc");
+    container.saveAsFile(file.getPath());
+    File changedFile = testFolder.newFile("changed.bdoc");
+    byte[] otherDigest = DSSUtils.digest(eu.europa.esig.dss.DigestAlgorithm.SHA256, "other content".getBytes());
+    replaceHashcodes(file, changedFile, "test.txt", otherDigest);
+
+    Container openedContainer = openContainer(changedFile.getPath());
+    assertFalse(isReferenceDataValid(openedContainer.getSignatures().get(0)));
+  }
+
+  @Test
+  public void ordinaryContainerWithDataFileReplacedByHashcode_isValidOnlyWhenHashcodeContainersAreAllowed()
+      throws Exception {
+    TestResponders responders = TestResponders.start();
+    try {
+      responders.configure(configuration);
+      Container container = ContainerBuilder.aContainer().withConfiguration(configuration).build();
+      container.addDataFile(new DataFile(CONTENT, "test.txt", "text/plain"));
+      TestPki.getInstance().signContainer(container, SignatureProfile.LT);
+      File file = testFolder.newFile("ordinary.bdoc");
+      container.saveAsFile(file.getPath());
+      File strippedFile = testFolder.newFile("stripped.bdoc");
+      replaceDataFileWithHashcode(file, strippedFile, "test.txt",
+          DSSUtils.digest(eu.europa.esig.dss.DigestAlgorithm.SHA256, CONTENT));
+
+      configuration.setHashcodeContainersAllowed(false);
+      Container strippedContainer = openContainer(strippedFile.getPath());
+      assertTrue(strippedContainer.getDataFiles().isEmpty());
+      assertFalse(strippedContainer.validate().isValid());
+
+      configuration.setHashcodeContainersAllowed(true);
+      Container hashcodeContainer = openContainer(strippedFile.getPath());
+      assertTrue(hashcodeContainer.getDataFiles().get(0) instanceof DigestDataFile);
+      ValidationResult result = hashcodeContainer.validate();
+      assertTrue(result.isValid());
+      assertTrue(hasWarning(result, "Data file test.txt is not in the container"));
+    } finally {
+      responders.stop();
+    }
+  }
+
+  @Test(expected = DigiDoc4JException.class)
+  public void signingHashcodeDataFile_withoutDigestOfSignatureDigestAlgorithm_fails() throws Exception {
+    Container container = createHashcodeContainer();
+    SignatureBuilder.
+        aSignature(container).
+        withSigningCertificate(TestPki.getInstance().getSignerCertificate()).
+        withSignatureDigestAlgorithm(DigestAlgorithm.SHA512).
+        withSignatureProfile(SignatureProfile.B_BES).
+        buildDataToSign();
+  }
+
+  private Container createHashcodeContainer() {
+    DigestDataFile dataFile = new DigestDataFile("test.txt", "text/plain", DigestAlgorithm.SHA256,
+        DSSUtils.digest(eu.europa.esig.dss.DigestAlgorithm.SHA256, CONTENT));
+    dataFile.setFileSize(CONTENT.length);
+    Container container = ContainerBuilder.aContainer().withConfiguration(configuration).build();
+    container.addDataFile(dataFile);
+    return container;
+  }
+
+  private Container openContainer(String path) {
+    return ContainerBuilder.aContainer().withConfiguration(configuration).fromExistingFile(path).build();
+  }
+
+  private boolean hasWarning(ValidationResult result, String message) {
+    for (DigiDoc4JException warning : result.getWarnings()) {
+      if (warning.getMessage().contains(message)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void replaceDataFileWithHashcode(File source, File target, String fileName, byte[] digest)
+      throws Exception {
+    ZipFile zipFile = new ZipFile(source);
+    ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(target));
+    Enumeration<? extends ZipEntry> entries = zipFile.entries();
+    while (entries.hasMoreElements()) {
+      ZipEntry entry = entries.nextElement();
+      if (!entry.getName().equals(fileName)) {
+        zipOutputStream.putNextEntry(new ZipEntry(entry.getName()));
+        IOUtils.copy(zipFile.getInputStream(entry), zipOutputStream);
+        zipOutputStream.closeEntry();
+      }
+    }
+    zipOutputStream.putNextEntry(new ZipEntry("META-INF/hashcodes-sha256.xml"));
+    zipOutputStream.write(("<hashcodes><file-entry full-path=\"" + fileName + "\" hash=\"" +
+        Base64.encodeBase64String(digest) + "\"/></hashcodes>").getBytes());
+    zipOutputStream.closeEntry();
+    zipOutputStream.close();
+    zipFile.close();
+  }
+
+  private void replaceHashcodes(File source, File target, String fileName, byte[] digest) throws Exception {
+    ZipFile zipFile = new ZipFile(source);
+    ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(target));
+    Enumeration<? extends ZipEntry> entries = zipFile.entries();
+    while (entries.hasMoreElements()) {
+      ZipEntry entry = entries.nextElement();
+      zipOutputStream.putNextEntry(new ZipEntry(entry.getName()));
+      if (entry.getName().equals("META-INF/hashcodes-sha256.xml")) {
+        zipOutputStream.write(("<hashcodes><file-entry full-path=\"" + fileName + "\" hash=\"" +
+            Base64.encodeBase64String(digest) + "\"/></hashcodes>").getBytes());
+      } else {
+        IOUtils.copy(zipFile.getInputStream(entry), zipOutputStream);
+      }
+      zipOutputStream.closeEntry();
+    }
+    zipOutputStream.close();
+    zipFile.close();
+  }
+}
@@ -0,0 +1,190 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.impl.bdoc;
+
+import static org.digidoc4j.impl.bdoc.ResponderThrottle.Priority.BATCH;
+import static org.digidoc4j.impl.bdoc.ResponderThrottle.Priority.INTERACTIVE;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.digidoc4j.Configuration;
+import org.digidoc4j.exceptions.ConfigurationException;
+import org.digidoc4j.exceptions.RequestThrottledException;
+import org.junit.Test;
+
+public class ResponderThrottleTest {
+
+  private static final String RESPONDER_URL = "http://demo.sk.ee/ocsp";
+
+  @Test
+  public void requestRate_shouldNotExceedLimit() throws Exception {
+    ResponderThrottle throttle = new ResponderThrottle(RESPONDER_URL, 20, 0, 0, 1000, 0);
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < 5; i++) {
+      throttle.acquire(INTERACTIVE);
+      throttle.release(INTERACTIVE);
+    }
+    long duration = System.currentTimeMillis() - start;
+    assertTrue("5 requests at 20 per second took only " + duration + " ms", duration >= 190);
+  }
+
+  @Test(expected = RequestThrottledException.class)
+  public void requestRateLimit_shouldFailFast_whenMaxWaitIsExceeded() throws Exception {
+    ResponderThrottle throttle = new ResponderThrottle(RESPONDER_URL, 1, 0, 0, 100, 0);
+    throttle.acquire(INTERACTIVE);
+    throttle.acquire(INTERACTIVE);
+  }
+
+  @Test
+  public void concurrentRequestLimit_shouldFail_whenPermitIsNotReleasedInTime() throws Exception {
+    ResponderThrottle throttle = new ResponderThrottle(RESPONDER_URL, 0, 1, 0, 50, 0);
+    throttle.acquire(INTERACTIVE);
+    assertThrottled(throttle, INTERACTIVE);
+    throttle.release(INTERACTIVE);
+    throttle.acquire(INTERACTIVE);
+  }
+
+  @Test
+  public void requestsShouldFailImmediately_whenQueueIsFull() throws Exception {
+    final ResponderThrottle throttle = new ResponderThrottle(RESPONDER_URL, 0, 1, 1, 5000, 0);
+    throttle.acquire(INTERACTIVE);
+    final CountDownLatch waitingRequestFinished = new CountDownLatch(1);
+    Thread waitingRequest = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        throttle.acquire(INTERACTIVE);
+        throttle.release(INTERACTIVE);
+        waitingRequestFinished.countDown();
+      }
+    });
+    waitingRequest.start();
+    while (throttle.getQueuedRequestCount() == 0) {
+      Thread.sleep(5);
+    }
+    long start = System.currentTimeMillis();
+    assertThrottled(throttle, INTERACTIVE);
+    assertTrue(System.currentTimeMillis() - start < 1000);
+    throttle.release(INTERACTIVE);
+    waitingRequestFinished.await();
+  }
+
+  @Test
+  public void batchRequests_shouldNotUseReservedConcurrentRequests() throws Exception {
+    ResponderThrottle throttle = new ResponderThrottle(RESPONDER_URL, 0, 4, 0, 50, 50);
+    throttle.acquire(BATCH);
+    throttle.acquire(BATCH);
+    assertThrottled(throttle, BATCH);
+    throttle.acquire(INTERACTIVE);
+    throttle.acquire(INTERACTIVE);
+    assertThrottled(throttle, INTERACTIVE);
+    throttle.release(BATCH);
+    throttle.acquire(BATCH);
+  }
+
+  @Test
+  public void batchRequests_shouldNotUseReservedRequestRate() throws Exception {
+    ResponderThrottle throttle = new ResponderThrottle(RESPONDER_URL, 10, 0, 0, 150, 50);
+    throttle.acquire(BATCH);
+    assertThrottled(throttle, BATCH);
+    throttle.acquire(INTERACTIVE);
+  }
+
+  @Test
+  public void interactiveRequests_shouldNotWaitBehindQueuedBatchRequests() throws Exception {
+    final ResponderThrottle throttle = new ResponderThrottle(RESPONDER_URL, 10, 0, 0, 5000, 50);
+    int batchRequests = 5;
+    final CountDownLatch batchRequestsFinished = new CountDownLatch(batchRequests);
+    for (int i = 0; i < batchRequests; i++) {
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          throttle.acquire(BATCH);
+          throttle.release(BATCH);
+          batchRequestsFinished.countDown();
+        }
+      }).start();
+    }
+    while (throttle.getQueuedRequestCount() < batchRequests - 1) {
+      Thread.sleep(5);
+    }
+    long start = System.currentTimeMillis();
+    throttle.acquire(INTERACTIVE);
+    throttle.release(INTERACTIVE);
+    long duration = System.currentTimeMillis() - start;
+    assertTrue("Interactive request waited " + duration + " ms behind batch requests", duration < 100);
+    batchRequestsFinished.await();
+  }
+
+  @Test
+  public void interactiveRequests_shouldUseIdleBatchRequestRate() throws Exception {
+    ResponderThrottle throttle = new ResponderThrottle(RESPONDER_URL, 10, 0, 0, 50, 50);
+    throttle.acquire(INTERACTIVE);
+    throttle.acquire(INTERACTIVE);
+    assertThrottled(throttle, INTERACTIVE);
+    assertThrottled(throttle, BATCH);
+  }
+
+  @Test(expected = ConfigurationException.class)
+  public void reservingAllCapacityForInteractiveRequests_shouldNotBeAllowed() throws Exception {
+    new ResponderThrottle(RESPONDER_URL, 10, 0, 0, 150, 100);
+  }
+
+  @Test(expected = ConfigurationException.class)
+  public void reservingTheOnlyConcurrentRequest_shouldNotBeAllowed() throws Exception {
+    new ResponderThrottle(RESPONDER_URL, 0, 1, 0, 150, 10);
+  }
+
+  @Test
+  public void throttleIsNotCreated_whenLimitsAreNotConfigured() throws Exception {
+    Configuration configuration = new Configuration(Configuration.Mode.TEST);
+    assertNull(ResponderThrottle.forOcspResponder(configuration));
+    assertNull(ResponderThrottle.forTimestampingAuthority(configuration));
+  }
+
+  @Test
+  public void throttleIsSharedBetweenConfigurationsWithSameResponder() throws Exception {
+    Configuration configuration = new Configuration(Configuration.Mode.TEST);
+    configuration.setOcspRequestsPerSecond(10);
+    Configuration otherConfiguration = new Configuration(Configuration.Mode.TEST);
+    otherConfiguration.setOcspRequestsPerSecond(10);
+    ResponderThrottle throttle = ResponderThrottle.forOcspResponder(configuration);
+    assertNotNull(throttle);
+    assertSame(throttle, ResponderThrottle.forOcspResponder(otherConfiguration));
+  }
+
+  @Test
+  public void throttlesWithDifferentLimits_areKeptForEachConfiguration() throws Exception {
+    Configuration configuration = new Configuration(Configuration.Mode.TEST);
+    configuration.setOcspRequestsPerSecond(10);
+    Configuration otherConfiguration = new Configuration(Configuration.Mode.TEST);
+    otherConfiguration.setOcspRequestsPerSecond(20);
+    ResponderThrottle throttle = ResponderThrottle.forOcspResponder(configuration);
+    ResponderThrottle otherThrottle = ResponderThrottle.forOcspResponder(otherConfiguration);
+    assertNotSame(throttle, otherThrottle);
+    assertSame(throttle, ResponderThrottle.forOcspResponder(configuration));
+    assertSame(otherThrottle, ResponderThrottle.forOcspResponder(otherConfiguration));
+  }
+
+  private void assertThrottled(ResponderThrottle throttle, ResponderThrottle.Priority priority) {
+    try {
+      throttle.acquire(priority);
+      fail("Request should have been throttled");
+    } catch (RequestThrottledException e) {
+      //Expected
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.impl.bdoc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import static org.digidoc4j.testutils.OfflineSigningHelper.createConfiguration;
+import static org.digidoc4j.testutils.OfflineSigningHelper.isReferenceDataValid;
+import static org.digidoc4j.testutils.OfflineSigningHelper.signContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.digidoc4j.Configuration;
+import org.digidoc4j.Container;
+import org.digidoc4j.ContainerBuilder;
+import org.digidoc4j.DataFile;
+import org.digidoc4j.Signature;
+import org.digidoc4j.SignatureProfile;
+import org.digidoc4j.testutils.TestPki;
+import org.digidoc4j.testutils.TestResponders;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SigningServicesTest {
+
+  private Configuration configuration;
+
+  @Before
+  public void setUp() throws Exception {
+    configuration = createConfiguration();
+  }
+
+  @Test
+  public void servicesAreShared_byConfigurationsWithTheSameTimestampingAuthority() throws Exception {
+    SigningServices services = SigningServices.forConfiguration(configuration);
+    assertSame(services, SigningServices.forConfiguration(configuration));
+    assertSame(services, SigningServices.forConfiguration(configuration.snapshot()));
+    assertSame(services, SigningServices.forConfiguration(createConfiguration()));
+  }
+
+  @Test
+  public void servicesAreCreatedAgain_whenTimestampingAuthorityChanges() throws Exception {
+    SigningServices services = SigningServices.forConfiguration(configuration);
+    configuration.setTspSource("http://tsa.example.com");
+    SigningServices changedServices = SigningServices.forConfiguration(configuration);
+    assertNotSame(services, changedServices);
+    assertSame(changedServices, SigningServices.forConfiguration(configuration));
+  }
+
+  @Test
+  public void servicesAreCreatedAgain_whenRequestLimitsChange() throws Exception {
+    SigningServices services = SigningServices.forConfiguration(configuration);
+    configuration.setTspRequestsPerSecond(5);
+    SigningServices timestampLimitedServices = SigningServices.forConfiguration(configuration);
+    assertNotSame(services, timestampLimitedServices);
+    configuration.setOcspMaxConcurrentRequests(2);
+    SigningServices ocspLimitedServices = SigningServices.forConfiguration(configuration);
+    assertNotSame(timestampLimitedServices, ocspLimitedServices);
+    Configuration sameLimits = createConfiguration();
+    sameLimits.setTspRequestsPerSecond(5);
+    sameLimits.setOcspMaxConcurrentRequests(2);
+    assertSame(ocspLimitedServices, SigningServices.forConfiguration(sameLimits));
+  }
+
+  @Test
+  public void signaturesCreatedInParallel_withSharedServices_areValid() throws Exception {
+    List<Container> containers = signInParallel(new SignatureCreator() {
+      @Override
+      public Signature sign(Container container, int index) {
+        return signContainer(container);
+      }
+    });
+    for (Container container : containers) {
+      Signature signature = container.getSignatures().get(0);
+      assertEquals(SignatureProfile.B_BES, signature.getProfile());
+      assertTrue(isReferenceDataValid(signature));
+    }
+  }
+
+  @Test
+  public void ltAndTmSignaturesCreatedInParallel_withSharedServices_areValid() throws Exception {
+    TestResponders responders = TestResponders.start();
+    try {
+      responders.configure(configuration);
+      List<Container> containers = signInParallel(new SignatureCreator() {
+        @Override
+        public Signature sign(Container container, int index) {
+          SignatureProfile profile = index % 2 == 0 ? SignatureProfile.LT : SignatureProfile.LT_TM;
+          return TestPki.getInstance().signContainer(container, profile);
+        }
+      });
+      for (int i = 0; i < containers.size(); i++) {
+        Container container = containers.get(i);
+        SignatureProfile profile = i % 2 == 0 ? SignatureProfile.LT : SignatureProfile.LT_TM;
+        assertEquals(profile, container.getSignatures().get(0).getProfile());
+        assertTrue(container.validate().isValid());
+      }
+    } finally {
+      responders.stop();
+    }
+  }
+
+  private List<Container> signInParallel(final SignatureCreator signatureCreator) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Container>> results = new ArrayList<>();
+      for (int i = 0; i < 16; i++) {
+        final int index = i;
+        results.add(executor.submit(new Callable<Container>() {
+          @Override
+          public Container call() throws Exception {
+            Container container = ContainerBuilder.aContainer().withConfiguration(configuration).build();
+            container.addDataFile(new DataFile(("content " + index).getBytes(), "test.txt", "text/plain"));
+            signatureCreator.sign(container, index);
+            return container;
+          }
+        }));
+      }
+      List<Container> containers = new ArrayList<>();
+      for (Future<Container> result : results) {
+        containers.add(result.get());
+      }
+      return containers;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private interface SignatureCreator {
+    Signature sign(Container container, int index);
+  }
+}
@@ -0,0 +1,207 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.impl.bdoc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TslDataLoaderTest {
+
+  private static final byte[] CACHED_TSL = "<TrustServiceStatusList/>".getBytes();
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+  private ServerSocket unresponsiveServer;
+  private TslDataLoader dataLoader;
+
+  @Before
+  public void setUp() throws Exception {
+    unresponsiveServer = new ServerSocket(0);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    dataLoader.shutdown();
+    unresponsiveServer.close();
+  }
+
+  @Test
+  public void cachedCopyIsUsed_whenDownloadTakesTooLong() throws Exception {
+    dataLoader = createDataLoader(200);
+    String url = getUnresponsiveServerUrl();
+    dataLoader.saveBytesInCache(url, CACHED_TSL);
+    long start = System.currentTimeMillis();
+    assertArrayEquals(CACHED_TSL, dataLoader.get(url));
+    assertTrue(System.currentTimeMillis() - start < 5000);
+  }
+
+  @Test
+  public void nothingIsReturned_whenDownloadTakesTooLongAndListIsNotCached() throws Exception {
+    dataLoader = createDataLoader(200);
+    assertNull(dataLoader.get(getUnresponsiveServerUrl()));
+  }
+
+  @Test
+  public void downloadIsAborted_whenItTakesTooLong() throws Exception {
+    TslServer server = new TslServer(createTsl(5, "2099-01-01T00:00:00Z"), null);
+    try {
+      dataLoader = new TslDataLoader(true, 500, 1);
+      dataLoader.setFileCacheDirectory(testFolder.getRoot());
+      assertNull(dataLoader.get(getUnresponsiveServerUrl()));
+      assertArrayEquals(server.tsl, dataLoader.get(server.getUrl()));
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void cachedCopyIsUsedWithoutDownloading_whenNotRefreshing() throws Exception {
+    dataLoader = new TslDataLoader(false, 0);
+    dataLoader.setFileCacheDirectory(testFolder.getRoot());
+    String url = getUnresponsiveServerUrl();
+    dataLoader.saveBytesInCache(url, CACHED_TSL);
+    assertArrayEquals(CACHED_TSL, dataLoader.get(url));
+  }
+
+  @Test
+  public void unchangedTslIsRevalidatedWithConditionalRequest() throws Exception {
+    TslServer server = new TslServer(createTsl(5, "2099-01-01T00:00:00Z"), "\"v1\"");
+    try {
+      dataLoader = createDataLoader(0);
+      assertArrayEquals(server.tsl, dataLoader.get(server.getUrl()));
+      assertNull(server.lastIfNoneMatch);
+      assertArrayEquals(server.tsl, dataLoader.get(server.getUrl()));
+      assertEquals("\"v1\"", server.lastIfNoneMatch);
+      assertEquals(1, server.notModifiedResponses);
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void tslWithLowerSequenceNumberIsIgnored() throws Exception {
+    TslServer server = new TslServer(createTsl(4, "2099-01-01T00:00:00Z"), null);
+    try {
+      dataLoader = createDataLoader(0);
+      byte[] cachedTsl = createTsl(5, "2099-01-01T00:00:00Z");
+      dataLoader.saveBytesInCache(server.getUrl(), cachedTsl);
+      assertArrayEquals(cachedTsl, dataLoader.get(server.getUrl()));
+      assertEquals(1, server.requests);
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void sequenceNumberIsReadFromSchemeInformation() throws Exception {
+    byte[] tsl = ("<!-- <tsl:TSLSequenceNumber>1</tsl:TSLSequenceNumber> -->"
+        + new String(createTsl(6, "2099-01-01T00:00:00Z"))).getBytes();
+    TslServer server = new TslServer(tsl, null);
+    try {
+      dataLoader = createDataLoader(0);
+      dataLoader.saveBytesInCache(server.getUrl(), createTsl(5, "2099-01-01T00:00:00Z"));
+      assertArrayEquals(tsl, dataLoader.get(server.getUrl()));
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void cachedTslIsDownloadedAgain_whenNextUpdateHasPassed() throws Exception {
+    TslServer server = new TslServer(createTsl(6, "2099-01-01T00:00:00Z"), null);
+    try {
+      dataLoader = new TslDataLoader(false, 0);
+      dataLoader.setFileCacheDirectory(testFolder.getRoot());
+      dataLoader.saveBytesInCache(server.getUrl(), createTsl(5, "2015-01-01T00:00:00Z"));
+      assertArrayEquals(server.tsl, dataLoader.get(server.getUrl()));
+      assertEquals(1, server.requests);
+    } finally {
+      server.stop();
+    }
+  }
+
+  private byte[] createTsl(int sequenceNumber, String nextUpdate) {
+    return ("<tsl:TrustServiceStatusList xmlns:tsl=\"http://uri.etsi.org/02231/v2#\"><tsl:SchemeInformation>"
+        + "<tsl:TSLSequenceNumber>" + sequenceNumber + "</tsl:TSLSequenceNumber>"
+        + "<tsl:NextUpdate><tsl:dateTime>" + nextUpdate + "</tsl:dateTime></tsl:NextUpdate>"
+        + "</tsl:SchemeInformation></tsl:TrustServiceStatusList>").getBytes();
+  }
+
+  private TslDataLoader createDataLoader(long downloadTimeoutInMilliseconds) {
+    TslDataLoader loader = new TslDataLoader(true, downloadTimeoutInMilliseconds);
+    loader.setFileCacheDirectory(testFolder.getRoot());
+    return loader;
+  }
+
+  private String getUnresponsiveServerUrl() {
+    return "http://127.0.0.1:" + unresponsiveServer.getLocalPort() + "/tl-mp.xml";
+  }
+
+  private static class TslServer implements HttpHandler {
+
+    private final HttpServer server;
+    private final byte[] tsl;
+    private final String etag;
+    private volatile String lastIfNoneMatch;
+    private volatile int requests;
+    private volatile int notModifiedResponses;
+
+    TslServer(byte[] tsl, String etag) throws IOException {
+      this.tsl = tsl;
+      this.etag = etag;
+      server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+      server.createContext("/", this);
+      server.start();
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      requests++;
+      lastIfNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+      if (etag != null && etag.equals(lastIfNoneMatch)) {
+        notModifiedResponses++;
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
+        return;
+      }
+      if (etag != null) {
+        exchange.getResponseHeaders().add("ETag", etag);
+      }
+      exchange.sendResponseHeaders(200, tsl.length);
+      exchange.getResponseBody().write(tsl);
+      exchange.close();
+    }
+
+    String getUrl() {
+      return "http://127.0.0.1:" + server.getAddress().getPort() + "/tl-mp.xml";
+    }
+
+    void stop() {
+      server.stop(0);
+    }
+  }
+}
@@ -11,17 +11,29 @@
 package org.digidoc4j.impl.bdoc;
 
 import java.io.File;
+import java.security.cert.X509Certificate;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.digidoc4j.Configuration;
+import org.digidoc4j.TSLCertificateSource;
+import org.digidoc4j.exceptions.TslCertificateSourceInitializationException;
+import org.digidoc4j.testutils.TestPki;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import eu.europa.esig.dss.tsl.TSLValidationSummary;
 import eu.europa.esig.dss.tsl.service.TSLRepository;
 
 public class TslLoaderTest {
 
+  private static final String LOCAL_TSL_LOCATION = "file:testFiles/tsl/empty-lotl.xml";
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
   @Test
   public void loadAndValidateProdTsl() throws Exception {
     Configuration configuration = new Configuration(Configuration.Mode.PROD);
@@ -33,6 +45,98 @@ public class TslLoaderTest {
 
   }
 
+  @Test
+  public void backgroundRefresh_shouldReplaceTsl() throws Exception {
+    Configuration configuration = new Configuration(Configuration.Mode.TEST);
+    TslLoader tslLoader = createTslLoader(configuration);
+    TSLCertificateSource initialTsl = tslLoader.getTslCertificateSource();
+    TslRefreshStatus initialStatus = tslLoader.getRefreshStatus();
+    Assert.assertTrue(initialStatus.isLastRefreshSuccessful());
+    tslLoader.startBackgroundRefresh(100, TimeUnit.MILLISECONDS);
+    try {
+      Assert.assertTrue(tslLoader.isRefreshedInBackground());
+      TSLCertificateSource refreshedTsl = initialTsl;
+      for (int i = 0; i < 600 && refreshedTsl == initialTsl; i++) {
+        Thread.sleep(100);
+        refreshedTsl = tslLoader.getTslCertificateSource();
+      }
+      Assert.assertNotSame(initialTsl, refreshedTsl);
+      Assert.assertFalse(refreshedTsl.getCertificates().isEmpty());
+      Assert.assertFalse(initialTsl.getCertificates().isEmpty());
+    } finally {
+      tslLoader.stopBackgroundRefresh();
+    }
+    Assert.assertFalse(tslLoader.isRefreshedInBackground());
+  }
+
+  @Test
+  public void addedCertificates_shouldBeAddedToRefreshedTsl() throws Exception {
+    Configuration configuration = new Configuration(Configuration.Mode.TEST);
+    TslLoader tslLoader = new TslLoader(LOCAL_TSL_LOCATION, new File(configuration.getTslKeyStoreLocation()),
+        configuration.getTslKeyStorePassword());
+    tslLoader.setCheckSignature(false);
+    TSLCertificateSource initialTsl = tslLoader.getTslCertificateSource();
+    X509Certificate certificate = TestPki.getInstance().getSignerCertificate();
+    initialTsl.addTSLCertificate(certificate);
+
+    TSLCertificateSource refreshedTsl = tslLoader.createTSL();
+
+    Assert.assertNotSame(initialTsl, refreshedTsl);
+    Assert.assertEquals(1, refreshedTsl.get(certificate.getSubjectX500Principal()).size());
+    Assert.assertSame(refreshedTsl, tslLoader.getTslCertificateSource());
+  }
+
+  @Test
+  public void snapshot_shouldNotBeUsed_whenRestoredTslCanNotBeVerified() throws Exception {
+    Configuration configuration = new Configuration(Configuration.Mode.TEST);
+    TslLoader tslLoader = new TslLoader(LOCAL_TSL_LOCATION, new File(configuration.getTslKeyStoreLocation()),
+        configuration.getTslKeyStorePassword());
+    tslLoader.setCheckSignature(false);
+    tslLoader.setSnapshotDirectory(testFolder.getRoot());
+    tslLoader.createTSL();
+
+    TslLoader restoringLoader = new TslLoader(LOCAL_TSL_LOCATION, new File(configuration.getTslKeyStoreLocation()),
+        configuration.getTslKeyStorePassword()) {
+      @Override
+      public TSLCertificateSource createTSL() {
+        throw new TslCertificateSourceInitializationException("TSL signature is not valid");
+      }
+    };
+    restoringLoader.setCheckSignature(false);
+    restoringLoader.setSnapshotDirectory(testFolder.getRoot());
+    Assert.assertNotNull(restoringLoader.getTslCertificateSource());
+    for (int i = 0; i < 100 && testFolder.getRoot().list().length > 0; i++) {
+      Thread.sleep(100);
+    }
+    Assert.assertEquals(0, testFolder.getRoot().list().length);
+    try {
+      restoringLoader.getTslCertificateSource();
+      Assert.fail("The TSL restored from the snapshot should not be used after its verification failed");
+    } catch (RuntimeException e) {
+      //Expected
+    }
+  }
+
+  @Test
+  public void failedTslLoading_shouldBeReportedInRefreshStatus() throws Exception {
+    Configuration configuration = new Configuration(Configuration.Mode.TEST);
+    TslLoader tslLoader = new TslLoader("file:testFiles/does-not-exist.xml",
+        new File(configuration.getTslKeyStoreLocation()), configuration.getTslKeyStorePassword());
+    tslLoader.setCheckSignature(false);
+    try {
+      tslLoader.createTSL();
+      Assert.fail("Loading a missing TSL should fail");
+    } catch (RuntimeException e) {
+      //Expected
+    }
+    TslRefreshStatus status = tslLoader.getRefreshStatus();
+    Assert.assertFalse(status.isLastRefreshSuccessful());
+    Assert.assertEquals(1, status.getConsecutiveFailures());
+    Assert.assertNotNull(status.getLastFailedRefreshTime());
+    Assert.assertNull(status.getLastSuccessfulRefreshTime());
+    Assert.assertEquals(-1, status.getTslAgeInMilliseconds());
+  }
+
   private TslLoader createTslLoader(Configuration configuration) {
     String keystoreLocation = configuration.getTslKeyStoreLocation();
     TslLoader tslLoader = new TslLoader(configuration.getTslLocation(), new File(keystoreLocation), configuration.getTslKeyStorePassword());
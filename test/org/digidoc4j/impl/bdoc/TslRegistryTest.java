@@ -0,0 +1,94 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.impl.bdoc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TslRegistryTest {
+
+  private static final String TSL_LOCATION = "file:testFiles/tsl-registry-test.xml";
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  @Test
+  public void loadersWithSameTrustSourceAreShared() throws Exception {
+    TslLoader loader = TslRegistry.acquire(createLoader(new File("keystore/test-keystore.jks"), false));
+    try {
+      File copiedKeystore = testFolder.newFile("keystore-copy.jks");
+      FileUtils.copyFile(new File("keystore/test-keystore.jks"), copiedKeystore);
+      assertSame(loader, TslRegistry.acquire(createLoader(copiedKeystore, false)));
+      assertEquals(2, TslRegistry.getReferenceCount(loader));
+      TslRegistry.release(loader);
+      assertEquals(1, TslRegistry.getReferenceCount(loader));
+    } finally {
+      TslRegistry.release(loader);
+    }
+    assertEquals(0, TslRegistry.getReferenceCount(loader));
+  }
+
+  @Test
+  public void loadersWithDifferentSignatureCheckAreNotShared() throws Exception {
+    TslLoader loader = TslRegistry.acquire(createLoader(new File("keystore/test-keystore.jks"), false));
+    TslLoader checkingLoader = TslRegistry.acquire(createLoader(new File("keystore/test-keystore.jks"), true));
+    try {
+      assertNotSame(loader, checkingLoader);
+      assertEquals(1, TslRegistry.getReferenceCount(loader));
+      assertEquals(1, TslRegistry.getReferenceCount(checkingLoader));
+    } finally {
+      TslRegistry.release(loader);
+      TslRegistry.release(checkingLoader);
+    }
+  }
+
+  @Test
+  public void backgroundRefreshIsStopped_whenLastReferenceIsReleased() throws Exception {
+    TslLoader loader = TslRegistry.acquire(createLoader(new File("keystore/test-keystore.jks"), false));
+    assertTrue(TslRegistry.retain(loader));
+    loader.startBackgroundRefresh(1, TimeUnit.DAYS);
+    TslRegistry.release(loader);
+    assertTrue(loader.isRefreshedInBackground());
+    TslRegistry.release(loader);
+    assertFalse(loader.isRefreshedInBackground());
+    assertFalse(TslRegistry.retain(loader));
+  }
+
+  @Test
+  public void loaderIsReleased_whenKeystoreIsDeleted() throws Exception {
+    File keystore = testFolder.newFile("deleted-keystore.jks");
+    FileUtils.copyFile(new File("keystore/test-keystore.jks"), keystore);
+    TslLoader loader = TslRegistry.acquire(createLoader(keystore, false));
+    assertTrue(keystore.delete());
+    assertTrue(TslRegistry.retain(loader));
+    assertEquals(2, TslRegistry.getReferenceCount(loader));
+    TslRegistry.release(loader);
+    TslRegistry.release(loader);
+    assertEquals(0, TslRegistry.getReferenceCount(loader));
+  }
+
+  private TslLoader createLoader(File keystore, boolean checkSignature) {
+    TslLoader loader = new TslLoader(TSL_LOCATION, keystore, "digidoc4j-password");
+    loader.setCheckSignature(checkSignature);
+    return loader;
+  }
+}
@@ -0,0 +1,124 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.impl.bdoc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.time.DateUtils;
+import org.digidoc4j.TSLCertificateSource;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.europa.esig.dss.DSSUtils;
+import eu.europa.esig.dss.tsl.CriteriaListCondition;
+import eu.europa.esig.dss.tsl.KeyUsageBit;
+import eu.europa.esig.dss.tsl.KeyUsageCondition;
+import eu.europa.esig.dss.tsl.MatchingCriteriaIndicator;
+import eu.europa.esig.dss.tsl.PolicyIdCondition;
+import eu.europa.esig.dss.tsl.ServiceInfo;
+import eu.europa.esig.dss.x509.CertificateToken;
+
+public class TslSnapshotTest {
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+  private File tslFile;
+  private TslSnapshot snapshot;
+  private TSLCertificateSource tsl;
+
+  @Before
+  public void setUp() throws Exception {
+    tslFile = testFolder.newFile("tl-mp.xml");
+    FileUtils.writeStringToFile(tslFile, "<TrustServiceStatusList/>");
+    snapshot = new TslSnapshot(new File(testFolder.getRoot(), "tsl-snapshot.bin"), testFolder.getRoot());
+    tsl = new TSLCertificateSource();
+    FileInputStream fileInputStream = new FileInputStream("testFiles/Juur-SK.pem.crt");
+    tsl.addTSLCertificate(DSSUtils.loadCertificate(fileInputStream).getCertificate());
+    fileInputStream.close();
+  }
+
+  @Test
+  public void restoreCertificatesWithServiceInfo() throws Exception {
+    snapshot.write(tsl, nextUpdate(DateUtils.addDays(new Date(), 1)));
+    TSLCertificateSource restoredTsl = new TSLCertificateSource();
+    assertNotNull(snapshot.read(restoredTsl));
+    assertEquals(1, restoredTsl.getCertificates().size());
+    CertificateToken certificate = restoredTsl.getCertificates().get(0);
+    assertEquals(tsl.getCertificates().get(0).getDSSIdAsString(), certificate.getDSSIdAsString());
+    ServiceInfo serviceInfo = certificate.getAssociatedTSPS().iterator().next();
+    assertEquals("http://uri.etsi.org/TrstSvc/Svctype/CA/QC", serviceInfo.getType());
+  }
+
+  @Test
+  public void snapshotIsNotUsed_whenTslFileHasChanged() throws Exception {
+    snapshot.write(tsl, nextUpdate(DateUtils.addDays(new Date(), 1)));
+    FileUtils.writeStringToFile(tslFile, "<TrustServiceStatusList Id=\"changed\"/>");
+    assertNull(snapshot.read(new TSLCertificateSource()));
+  }
+
+  @Test
+  public void snapshotIsNotUsed_whenTslNextUpdateHasPassed() throws Exception {
+    snapshot.write(tsl, nextUpdate(DateUtils.addDays(new Date(), -1)));
+    assertNull(snapshot.read(new TSLCertificateSource()));
+  }
+
+  @Test
+  public void snapshotIsNotUsed_whenOtherUsersCanWriteToSnapshotDirectory() throws Exception {
+    Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+    snapshot.write(tsl, nextUpdate(DateUtils.addDays(new Date(), 1)));
+    Files.setPosixFilePermissions(testFolder.getRoot().toPath(), PosixFilePermissions.fromString("rwxrwxrwx"));
+    assertNull(snapshot.read(new TSLCertificateSource()));
+  }
+
+  @Test
+  public void restoreQualifierConditions() throws Exception {
+    ServiceInfo serviceInfo = new ServiceInfo();
+    serviceInfo.setType("http://uri.etsi.org/TrstSvc/Svctype/CA/QC");
+    serviceInfo.setStatus("http://uri.etsi.org/TrstSvc/TrustedList/Svcstatus/undersupervision");
+    CriteriaListCondition condition = new CriteriaListCondition(MatchingCriteriaIndicator.atLeastOne);
+    condition.addChild(new PolicyIdCondition("1.3.6.1.4.1.10015.1.1"));
+    condition.addChild(new KeyUsageCondition(KeyUsageBit.nonRepudiation, true));
+    serviceInfo.addQualifierAndCondition("http://uri.etsi.org/TrstSvc/TrustedList/SvcInfoExt/QCWithSSCD", condition);
+    TSLCertificateSource qualifiedTsl = new TSLCertificateSource();
+    qualifiedTsl.addTSLCertificate(new CertificateToken(tsl.getCertificates().get(0).getCertificate()),
+        Collections.singletonList(serviceInfo));
+    snapshot.write(qualifiedTsl, nextUpdate(DateUtils.addDays(new Date(), 1)));
+
+    TSLCertificateSource restoredTsl = new TSLCertificateSource();
+    assertNotNull(snapshot.read(restoredTsl));
+    ServiceInfo restoredServiceInfo = restoredTsl.getCertificates().get(0).getAssociatedTSPS().iterator().next();
+    assertEquals(serviceInfo.toString(), restoredServiceInfo.toString());
+  }
+
+  @Test
+  public void missingSnapshotIsNotUsed() throws Exception {
+    assertNull(snapshot.read(new TSLCertificateSource()));
+  }
+
+  private Map<String, Date> nextUpdate(Date nextUpdate) {
+    return Collections.singletonMap(tslFile.toURI().toString(), nextUpdate);
+  }
+}
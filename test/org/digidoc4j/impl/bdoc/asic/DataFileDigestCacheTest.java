@@ -0,0 +1,240 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.impl.bdoc.asic;
+
+import static org.digidoc4j.testutils.OfflineSigningHelper.createConfiguration;
+import static org.digidoc4j.testutils.OfflineSigningHelper.isReferenceDataValid;
+import static org.digidoc4j.testutils.OfflineSigningHelper.signContainer;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.digidoc4j.Configuration;
+import org.digidoc4j.Container;
+import org.digidoc4j.ContainerBuilder;
+import org.digidoc4j.DataFile;
+import org.digidoc4j.Signature;
+import org.digidoc4j.SignatureProfile;
+import org.digidoc4j.impl.bdoc.BDocContainer;
+import org.digidoc4j.testutils.TestPki;
+import org.digidoc4j.testutils.TestResponders;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.europa.esig.dss.DSSDocument;
+import eu.europa.esig.dss.DSSException;
+import eu.europa.esig.dss.DigestAlgorithm;
+import eu.europa.esig.dss.InMemoryDocument;
+import eu.europa.esig.dss.MimeType;
+
+public class DataFileDigestCacheTest {
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  @Test
+  public void digestIsCalculatedOncePerAlgorithm() throws Exception {
+    CountingDocument document = new CountingDocument();
+    DataFile dataFile = new CountingDataFile(document);
+    DataFileDigestCache cache = new DataFileDigestCache();
+    String digest = cache.getDigest(dataFile, DigestAlgorithm.SHA256);
+    assertEquals(digest, cache.getDigest(dataFile, DigestAlgorithm.SHA256));
+    assertEquals(digest, cache.createDetachedContent(dataFile).getDigest(DigestAlgorithm.SHA256));
+    assertEquals(1, document.digestCalculations);
+    cache.getDigest(dataFile, DigestAlgorithm.SHA512);
+    assertEquals(2, document.digestCalculations);
+  }
+
+  @Test
+  public void digestIsCalculatedAgain_whenFileHasBeenModified() throws Exception {
+    File file = testFolder.newFile("test.txt");
+    FileUtils.writeStringToFile(file, "first");
+    DataFile dataFile = new DataFile(file.getPath(), "text/plain");
+    DataFileDigestCache cache = new DataFileDigestCache();
+    String digest = cache.getDigest(dataFile, DigestAlgorithm.SHA256);
+    FileUtils.writeStringToFile(file, "second version");
+    assertNotEquals(digest, cache.getDigest(dataFile, DigestAlgorithm.SHA256));
+  }
+
+  @Test
+  public void dataFileIsDigestedOnce_forSeveralSignatures() throws Exception {
+    Configuration configuration = createConfiguration();
+    CountingDocument document = new CountingDocument();
+    Container container = ContainerBuilder.aContainer().withConfiguration(configuration).build();
+    container.addDataFile(new CountingDataFile(document));
+    for (int i = 0; i < 2; i++) {
+      signContainer(container);
+    }
+    assertEquals(2, container.getSignatures().size());
+    assertEquals(1, document.digestCalculations);
+  }
+
+  @Test
+  public void ltSignaturesCreatedWithCachedDigests_areValid() throws Exception {
+    TestResponders responders = TestResponders.start();
+    try {
+      Configuration configuration = new Configuration(Configuration.Mode.TEST);
+      responders.configure(configuration);
+      CountingDocument document = new CountingDocument();
+      Container container = ContainerBuilder.aContainer().withConfiguration(configuration).build();
+      container.addDataFile(new CountingDataFile(document));
+      container.addDataFile(new DataFile("other content".getBytes(), "other.txt", "text/plain"));
+      TestPki.getInstance().signContainer(container, SignatureProfile.LT);
+      TestPki.getInstance().signContainer(container, SignatureProfile.LT);
+      assertTrue(container.validate().isValid());
+      assertEquals(1, document.digestCalculations);
+    } finally {
+      responders.stop();
+    }
+  }
+
+  @Test
+  public void signatureIsValidated_withCachedDigests() throws Exception {
+    Configuration configuration = createConfiguration();
+    CountingDocument document = new CountingDocument();
+    Container container = ContainerBuilder.aContainer().withConfiguration(configuration).build();
+    container.addDataFile(new CountingDataFile(document));
+    Signature signature = signContainer(container);
+    document.contentReads = 0;
+    assertTrue(isReferenceDataValid(signature));
+    assertEquals(0, document.contentReads);
+    assertEquals(1, document.digestCalculations);
+  }
+
+  @Test
+  public void signatureOfOpenedContainer_isValidated_withCachedDigests() throws Exception {
+    Configuration configuration = createConfiguration();
+    Container container = ContainerBuilder.aContainer().withConfiguration(configuration).build();
+    container.addDataFile(new DataFile("test content".getBytes(), "test.txt", "text/plain"));
+    signContainer(container);
+    Container openedContainer = ContainerBuilder.aContainer().withConfiguration(configuration).
+        fromStream(container.saveAsStream()).build();
+    Signature signature = openedContainer.getSignatures().get(0);
+    assertTrue(isReferenceDataValid(signature));
+    DataFileDigestCache cache = ((BDocContainer) openedContainer).getDataFileDigestCache();
+    DataFile dataFile = openedContainer.getDataFiles().get(0);
+    assertEquals(dataFile.getDocument().getDigest(DigestAlgorithm.SHA256),
+        cache.getDigest(dataFile, DigestAlgorithm.SHA256));
+  }
+
+  @Test
+  public void digestsOfSeveralDataFiles_areCalculatedInParallel() throws Exception {
+    CountDownLatch latch = new CountDownLatch(2);
+    DataFile first = new CountingDataFile(new ConcurrentDocument(latch));
+    DataFile second = new CountingDataFile(new ConcurrentDocument(latch));
+    DataFileDigestCache cache = new DataFileDigestCache();
+    cache.calculateDigests(Arrays.asList(first, second), DigestAlgorithm.SHA256);
+    assertEquals(0, latch.getCount());
+    assertEquals(first.getDocument().getDigest(DigestAlgorithm.SHA256),
+        cache.getDigest(first, DigestAlgorithm.SHA256));
+  }
+
+  @Test
+  public void dataFilesOfOpenedContainer_areDigestedInParallel_beforeValidation() throws Exception {
+    Configuration configuration = createConfiguration();
+    Container container = ContainerBuilder.aContainer().withConfiguration(configuration).build();
+    container.addDataFile(new DataFile("first content".getBytes(), "first.txt", "text/plain"));
+    container.addDataFile(new DataFile("second content".getBytes(), "second.txt", "text/plain"));
+    signContainer(container);
+    Container openedContainer = ContainerBuilder.aContainer().withConfiguration(configuration).
+        fromStream(container.saveAsStream()).build();
+    CountDownLatch latch = new CountDownLatch(2);
+    for (DataFile dataFile : openedContainer.getDataFiles()) {
+      replaceDocument(dataFile, new ConcurrentDocument(latch, dataFile.getBytes(), dataFile.getName()));
+    }
+    openedContainer.validate();
+    assertEquals(0, latch.getCount());
+    assertTrue(isReferenceDataValid(openedContainer.getSignatures().get(0)));
+  }
+
+  private void replaceDocument(DataFile dataFile, DSSDocument document) throws Exception {
+    Field documentField = DataFile.class.getDeclaredField("document");
+    documentField.setAccessible(true);
+    documentField.set(dataFile, document);
+  }
+
+  private static class ConcurrentDocument extends CountingDocument {
+
+    private final CountDownLatch latch;
+
+    ConcurrentDocument(CountDownLatch latch) {
+      this.latch = latch;
+    }
+
+    ConcurrentDocument(CountDownLatch latch, byte[] content, String name) {
+      super(content, name);
+      this.latch = latch;
+    }
+
+    @Override
+    public String getDigest(DigestAlgorithm digestAlgorithm) {
+      if (latch.getCount() > 0) {
+        latch.countDown();
+        try {
+          if (!latch.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Digests were not calculated in parallel");
+          }
+        } catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+      return super.getDigest(digestAlgorithm);
+    }
+  }
+
+  private static class CountingDocument extends InMemoryDocument {
+
+    private int digestCalculations;
+    private int contentReads;
+
+    CountingDocument() {
+      this("test content".getBytes(), "test.txt");
+    }
+
+    CountingDocument(byte[] content, String name) {
+      super(content, name, MimeType.TEXT);
+    }
+
+    @Override
+    public InputStream openStream() throws DSSException {
+      contentReads++;
+      return super.openStream();
+    }
+
+    @Override
+    public byte[] getBytes() throws DSSException {
+      contentReads++;
+      return super.getBytes();
+    }
+
+    @Override
+    public String getDigest(DigestAlgorithm digestAlgorithm) {
+      digestCalculations++;
+      return super.getDigest(digestAlgorithm);
+    }
+  }
+
+  private static class CountingDataFile extends DataFile {
+
+    CountingDataFile(CountingDocument document) {
+      super(document);
+    }
+  }
+}
@@ -1,17 +1,38 @@
 package org.digidoc4j.impl.bdoc.ocsp;
 
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
 import java.security.Security;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.Req;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.digidoc4j.Configuration;
@@ -25,7 +46,9 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
 import eu.europa.esig.dss.x509.CertificateToken;
 import eu.europa.esig.dss.x509.OCSPToken;
@@ -63,6 +86,74 @@ public class SKOnlineOCSPSourceTest {
     assertNull(ocspToken);
   }
 
+  @Test
+  public void prefetchingOCSPTokens_shouldAskAllCertificatesInOneRequest() throws Exception {
+    configuration.setOcspMaxCertificatesPerRequest(10);
+    mockOcspResponder(true);
+    BDocTSOcspSource ocspSource = new BDocTSOcspSource(configuration);
+    ocspSource.setDataLoader(dataLoader);
+    CertificateToken issuer = new CertificateToken(issuerCert);
+    CertificateToken firstCertificate = new CertificateToken(CertificatesForTests.SIGN_CERT);
+    CertificateToken secondCertificate = new CertificateToken(openX509Cert("testFiles/SK_TSA.pem.crt"));
+    Map<CertificateToken, CertificateToken> issuersByCertificate = new LinkedHashMap<>();
+    issuersByCertificate.put(firstCertificate, issuer);
+    issuersByCertificate.put(secondCertificate, issuer);
+
+    ocspSource.prefetchOCSPTokens(issuersByCertificate);
+
+    assertNotNull(ocspSource.getOCSPToken(firstCertificate, issuer));
+    assertNotNull(ocspSource.getOCSPToken(secondCertificate, issuer));
+    verify(dataLoader, times(1)).post(anyString(), any(byte[].class));
+  }
+
+  @Test
+  public void prefetchingOCSPTokens_shouldRequestMissingResponsesOneByOne() throws Exception {
+    configuration.setOcspMaxCertificatesPerRequest(10);
+    mockOcspResponder(false);
+    BDocTSOcspSource ocspSource = new BDocTSOcspSource(configuration);
+    ocspSource.setDataLoader(dataLoader);
+    CertificateToken issuer = new CertificateToken(issuerCert);
+    CertificateToken firstCertificate = new CertificateToken(CertificatesForTests.SIGN_CERT);
+    CertificateToken secondCertificate = new CertificateToken(openX509Cert("testFiles/SK_TSA.pem.crt"));
+    Map<CertificateToken, CertificateToken> issuersByCertificate = new LinkedHashMap<>();
+    issuersByCertificate.put(firstCertificate, issuer);
+    issuersByCertificate.put(secondCertificate, issuer);
+
+    ocspSource.prefetchOCSPTokens(issuersByCertificate);
+
+    assertNotNull(ocspSource.getOCSPToken(firstCertificate, issuer));
+    assertNotNull(ocspSource.getOCSPToken(secondCertificate, issuer));
+    verify(dataLoader, times(2)).post(anyString(), any(byte[].class));
+  }
+
+  private void mockOcspResponder(final boolean answerAllCertificates) {
+    when(dataLoader.post(anyString(), any(byte[].class))).thenAnswer(new Answer<byte[]>() {
+      @Override
+      public byte[] answer(InvocationOnMock invocation) throws Throwable {
+        OCSPReq request = new OCSPReq((byte[]) invocation.getArguments()[1]);
+        return createOcspResponse(request, answerAllCertificates);
+      }
+    });
+  }
+
+  private byte[] createOcspResponse(OCSPReq request, boolean answerAllCertificates) throws Exception {
+    KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+    keyPairGenerator.initialize(1024);
+    KeyPair keyPair = keyPairGenerator.generateKeyPair();
+    BasicOCSPRespBuilder responseBuilder = new BasicOCSPRespBuilder(new RespID(new X500Name("CN=Test OCSP Responder")));
+    for (Req singleRequest : request.getRequestList()) {
+      responseBuilder.addResponse(singleRequest.getCertID(), CertificateStatus.GOOD);
+      if (!answerAllCertificates) {
+        break;
+      }
+    }
+    responseBuilder.setResponseExtensions(
+        new Extensions(request.getExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce)));
+    ContentSigner signer = new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate());
+    BasicOCSPResp basicResponse = responseBuilder.build(signer, null, new Date());
+    return new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL, basicResponse).getEncoded();
+  }
+
   private void mockDataLoader() {
     byte[] emptyOcspResponse = {48, 3, 10, 1, 6};
     when(dataLoader.post(anyString(), any(byte[].class))).thenReturn(emptyOcspResponse);
@@ -46,14 +46,14 @@ public class XadesSigningDssFacadeTest {
 
   @Before
   public void setUp() throws Exception {
-    facade = new XadesSigningDssFacade(configuration.getTspSource());
+    facade = new XadesSigningDssFacade(configuration);
     facade.setCertificateSource(configuration.getTSL());
     facade.setOcspSource(new BDocTSOcspSource(configuration));
   }
 
   @Test
   public void getDataToSign() throws Exception {
-    facade = new XadesSigningDssFacade(configuration.getTspSource());
+    facade = new XadesSigningDssFacade(configuration);
     List<DataFile> dataFilesToSign = createDataFilesToSign();
     byte[] dataToSign = getDataToSign(dataFilesToSign);
     assertNotNull(dataToSign);
@@ -130,7 +130,7 @@ public class XadesSigningDssFacadeTest {
   public void extendBesSignature_toTimestampSignature() throws Exception {
     facade.setSignatureLevel(XAdES_BASELINE_B);
     DSSDocument signedDocument = signTestData(DigestAlgorithm.SHA256);
-    XadesSigningDssFacade extendingFacade = new XadesSigningDssFacade(configuration.getTspSource());
+    XadesSigningDssFacade extendingFacade = new XadesSigningDssFacade(configuration);
     extendingFacade.setCertificateSource(configuration.getTSL());
     extendingFacade.setOcspSource(new BDocTSOcspSource(configuration));
     extendingFacade.setSignatureLevel(XAdES_BASELINE_LT);
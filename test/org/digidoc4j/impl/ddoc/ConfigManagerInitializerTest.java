@@ -0,0 +1,89 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.impl.ddoc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import org.digidoc4j.Configuration;
+import org.junit.Test;
+
+import ee.sk.utils.ConfigManager;
+
+public class ConfigManagerInitializerTest {
+
+  @Test
+  public void configManagerIsInitializedAgain_onlyWhenConfigurationFingerprintChanges() throws Exception {
+    CountingConfigManagerInitializer initializer = new CountingConfigManagerInitializer();
+    Configuration configuration = createConfiguration(false);
+    initializer.initConfigManager(configuration);
+    int initializations = initializer.initializations;
+    initializer.initConfigManager(createConfiguration(false));
+    initializer.initConfigManager(configuration.snapshot());
+    assertEquals(initializations, initializer.initializations);
+    assertEquals("false", ConfigManager.instance().getProperty("SIGN_OCSP_REQUESTS"));
+
+    Configuration otherConfiguration = createConfiguration(true);
+    initializer.initConfigManager(otherConfiguration);
+    assertEquals(initializations + 1, initializer.initializations);
+    assertEquals("true", ConfigManager.instance().getProperty("SIGN_OCSP_REQUESTS"));
+    assertTrue(ConfigManagerInitializer.isConfigManagerInitializedWith(otherConfiguration));
+    assertFalse(ConfigManagerInitializer.isConfigManagerInitializedWith(configuration));
+  }
+
+  @Test
+  public void switchingConfigurationWaitsForOperationsUsingActiveConfiguration() throws Exception {
+    final ConfigManagerInitializer initializer = new ConfigManagerInitializer();
+    final Configuration configuration = createConfiguration(false);
+    final Configuration otherConfiguration = createConfiguration(true);
+    Lock lock = initializer.lockConfigManager(configuration);
+    final CountDownLatch otherConfigurationActive = new CountDownLatch(1);
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        initializer.lockConfigManager(otherConfiguration).unlock();
+        otherConfigurationActive.countDown();
+      }
+    });
+    try {
+      thread.start();
+      Lock sameConfigurationLock = initializer.lockConfigManager(createConfiguration(false));
+      sameConfigurationLock.unlock();
+      assertFalse(otherConfigurationActive.await(200, TimeUnit.MILLISECONDS));
+      assertEquals("false", ConfigManager.instance().getProperty("SIGN_OCSP_REQUESTS"));
+    } finally {
+      lock.unlock();
+    }
+    assertTrue(otherConfigurationActive.await(5, TimeUnit.SECONDS));
+    assertTrue(ConfigManagerInitializer.isConfigManagerInitializedWith(otherConfiguration));
+  }
+
+  private Configuration createConfiguration(boolean signOcspRequests) {
+    Configuration configuration = new Configuration(Configuration.Mode.TEST);
+    configuration.setSignOCSPRequests(signOcspRequests);
+    return configuration;
+  }
+
+  private static class CountingConfigManagerInitializer extends ConfigManagerInitializer {
+    int initializations = 0;
+
+    @Override
+    void initializeJDigidocConfigManager(Configuration configuration) {
+      super.initializeJDigidocConfigManager(configuration);
+      initializations++;
+    }
+  }
+}
@@ -11,16 +11,33 @@
 package org.digidoc4j.signers;
 
 import org.apache.commons.codec.binary.Base64;
+import org.digidoc4j.DataToSign;
+import org.digidoc4j.SignatureParameters;
 import org.digidoc4j.X509Cert;
+import org.digidoc4j.exceptions.NotSupportedException;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import eu.europa.esig.dss.DSSUtils;
+import eu.europa.esig.dss.EncryptionAlgorithm;
+import eu.europa.esig.dss.token.DSSPrivateKeyEntry;
 
 import static org.digidoc4j.DigestAlgorithm.SHA512;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class PKCS12SignatureTokenTest {
   private static PKCS12SignatureToken pkcs12Signer;
@@ -81,6 +98,61 @@ public class PKCS12SignatureTokenTest {
     assertTrue(Arrays.equals(expected, pkcs12Signer.sign(SHA512, new byte[]{0x41})));
   }
 
+  @Test
+  public void batchSigning_signsDigestsLikeSigningData() {
+    byte[] data = new byte[]{0x41};
+    SignatureParameters signatureParameters = new SignatureParameters();
+    signatureParameters.setDigestAlgorithm(SHA512);
+    DataToSign dataToSign = new DataToSign(DSSUtils.digest(eu.europa.esig.dss.DigestAlgorithm.SHA512, data),
+        signatureParameters, null);
+    List<byte[]> signatureValues = pkcs12Signer.sign(Collections.singletonList(dataToSign));
+    assertEquals(1, signatureValues.size());
+    assertTrue(Arrays.equals(pkcs12Signer.sign(SHA512, data), signatureValues.get(0)));
+  }
+
+  @Test
+  public void concurrentSigning_fromSharedToken() throws Exception {
+    final int threads = 64;
+    final byte[][] expectedValues = new byte[threads][];
+    for (int i = 0; i < threads; i++) {
+      expectedValues[i] = pkcs12Signer.sign(SHA512, new byte[]{(byte) i});
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final CountDownLatch start = new CountDownLatch(1);
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        final int index = i;
+        results.add(executor.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            start.await();
+            boolean matches = true;
+            for (int round = 0; round < 10; round++) {
+              byte[] signatureValue = pkcs12Signer.sign(SHA512, new byte[]{(byte) index});
+              matches &= Arrays.equals(expectedValues[index], signatureValue);
+            }
+            return matches;
+          }
+        }));
+      }
+      start.countDown();
+      for (Future<Boolean> result : results) {
+        assertTrue(result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(expected = NotSupportedException.class)
+  public void signingWithDigestAlgorithmNotSupportedByTheKey_throwsException() {
+    PKCS12SignatureToken dsaSigner = new PKCS12SignatureToken("testFiles/signout.p12", "test".toCharArray());
+    dsaSigner.keyEntry = mock(DSSPrivateKeyEntry.class);
+    when(dsaSigner.keyEntry.getEncryptionAlgorithm()).thenReturn(EncryptionAlgorithm.DSA);
+    dsaSigner.sign(SHA512, new byte[]{0x41});
+  }
+
 //  @Test
 //  public void getCity() {
 //    pkcs12Signer.setSignatureProductionPlace("myCity", "myState", "myPostalCode", "myCountry");
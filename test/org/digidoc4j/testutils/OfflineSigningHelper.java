@@ -0,0 +1,56 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.testutils;
+
+import org.digidoc4j.Configuration;
+import org.digidoc4j.Container;
+import org.digidoc4j.Signature;
+import org.digidoc4j.SignatureProfile;
+import org.digidoc4j.TSLCertificateSource;
+import org.digidoc4j.impl.bdoc.BDocSignature;
+
+/**
+ * B_BES signing with the {@link TestPki} signer without any network access.
+ * <p/>
+ * The test CA isn't in the TSL of {@link OfflineSigningHelper#createConfiguration()}, so these signatures are
+ * checked by their references only (see {@link OfflineSigningHelper#isReferenceDataValid(Signature)}).
+ * Signatures to be validated completely are created with {@link TestPki} against {@link TestResponders}.
+ */
+public class OfflineSigningHelper {
+
+  /**
+   * @return test configuration with an empty TSL, so that the TSL isn't downloaded
+   */
+  public static Configuration createConfiguration() {
+    Configuration configuration = new Configuration(Configuration.Mode.TEST);
+    configuration.setTSL(new TSLCertificateSource());
+    return configuration;
+  }
+
+  /**
+   * Signs the container with the B_BES profile by the test signer and adds the signature to the container.
+   *
+   * @param container container to sign
+   * @return created signature
+   */
+  public static Signature signContainer(Container container) {
+    return TestPki.getInstance().signContainer(container, SignatureProfile.B_BES);
+  }
+
+  /**
+   * @param signature BDoc signature
+   * @return true if the signature value and the digests of all the signature references are valid
+   */
+  public static boolean isReferenceDataValid(Signature signature) {
+    return ((BDocSignature) signature).getDssValidationReport().getDiagnosticData()
+        .isBLevelTechnicallyValid(signature.getId());
+  }
+}
@@ -0,0 +1,218 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.testutils;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.digidoc4j.BatchSignatureToken;
+import org.digidoc4j.Container;
+import org.digidoc4j.DataToSign;
+import org.digidoc4j.DigestAlgorithm;
+import org.digidoc4j.Signature;
+import org.digidoc4j.SignatureBuilder;
+import org.digidoc4j.SignatureProfile;
+import org.digidoc4j.TSLCertificateSource;
+import org.digidoc4j.exceptions.DigiDoc4JException;
+
+import eu.europa.esig.dss.DSSUtils;
+
+/**
+ * Certificate authority generated for the test run with a signer, an OCSP responder and a time-stamping
+ * authority certificate, for creating and validating LT and LT_TM signatures offline
+ * (see {@link TestResponders}). The signer is the only signing key of the tests that sign offline, also
+ * for B_BES signatures (see {@link OfflineSigningHelper}).
+ */
+public class TestPki {
+
+  private static final AtomicLong serialNumbers = new AtomicLong(System.currentTimeMillis());
+  private static TestPki instance;
+  private final KeyPair caKeys;
+  private final X509Certificate caCertificate;
+  private final KeyPair signerKeys;
+  private final X509Certificate signerCertificate;
+  private final KeyPair ocspKeys;
+  private final X509Certificate ocspCertificate;
+  private final KeyPair tsaKeys;
+  private final X509Certificate tsaCertificate;
+
+  private TestPki() throws Exception {
+    caKeys = generateKeys();
+    X500Name caName = new X500Name("CN=DigiDoc4J Test CA, O=DigiDoc4J, C=EE");
+    // The trusted service starts with the CA certificate, the certificates it issues must be issued later
+    X509v3CertificateBuilder caBuilder = createCertificateBuilder(caName, caName, caKeys, 2);
+    caBuilder.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+    caBuilder.addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign));
+    caCertificate = sign(caBuilder);
+
+    signerKeys = generateKeys();
+    X509v3CertificateBuilder signerBuilder = createCertificateBuilder(
+        new X500Name("CN=DigiDoc4J Test CA Signer, O=DigiDoc4J, C=EE"), caName, signerKeys, 1);
+    signerBuilder.addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.nonRepudiation));
+    signerCertificate = sign(signerBuilder);
+
+    ocspKeys = generateKeys();
+    X509v3CertificateBuilder ocspBuilder = createCertificateBuilder(
+        new X500Name("CN=DigiDoc4J Test OCSP Responder, O=DigiDoc4J, C=EE"), caName, ocspKeys, 1);
+    ocspBuilder.addExtension(Extension.extendedKeyUsage, false, new ExtendedKeyUsage(KeyPurposeId.id_kp_OCSPSigning));
+    ocspCertificate = sign(ocspBuilder);
+
+    tsaKeys = generateKeys();
+    X509v3CertificateBuilder tsaBuilder = createCertificateBuilder(
+        new X500Name("CN=DigiDoc4J Test TSA, O=DigiDoc4J, C=EE"), caName, tsaKeys, 1);
+    tsaBuilder.addExtension(Extension.extendedKeyUsage, true, new ExtendedKeyUsage(KeyPurposeId.id_kp_timeStamping));
+    tsaCertificate = sign(tsaBuilder);
+  }
+
+  public static synchronized TestPki getInstance() {
+    if (instance == null) {
+      try {
+        instance = new TestPki();
+      } catch (Exception e) {
+        throw new DigiDoc4JException(e);
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Creates a TSL trusting the test CA and the test OCSP responder and time-stamping authority.
+   *
+   * @return TSL with the test certificates
+   */
+  public TSLCertificateSource createTSL() {
+    TSLCertificateSource tsl = new TSLCertificateSource();
+    tsl.addTSLCertificate(caCertificate);
+    tsl.addTSLCertificate(ocspCertificate);
+    tsl.addTSLCertificate(tsaCertificate);
+    return tsl;
+  }
+
+  public X509Certificate getSignerCertificate() {
+    return signerCertificate;
+  }
+
+  public X509Certificate getOcspCertificate() {
+    return ocspCertificate;
+  }
+
+  public PrivateKey getOcspPrivateKey() {
+    return ocspKeys.getPrivate();
+  }
+
+  public X509Certificate getTsaCertificate() {
+    return tsaCertificate;
+  }
+
+  public PrivateKey getTsaPrivateKey() {
+    return tsaKeys.getPrivate();
+  }
+
+  /**
+   * Signs the container with the test signer and adds the signature to the container.
+   *
+   * @param container container to sign
+   * @param profile   profile of the signature
+   * @return created signature
+   */
+  public Signature signContainer(Container container, SignatureProfile profile) {
+    DataToSign dataToSign = SignatureBuilder.aSignature(container).
+        withSigningCertificate(signerCertificate).
+        withSignatureProfile(profile).
+        buildDataToSign();
+    Signature signature = dataToSign.finalize(signDigest(dataToSign.getDigestToSign(),
+        dataToSign.getDigestAlgorithm()));
+    container.addSignature(signature);
+    return signature;
+  }
+
+  /**
+   * @return signature token of the test signer, signing batches of data with a single call
+   */
+  public BatchSignatureToken createSignatureToken() {
+    return new BatchSignatureToken() {
+      @Override
+      public X509Certificate getCertificate() {
+        return signerCertificate;
+      }
+
+      @Override
+      public byte[] sign(DigestAlgorithm digestAlgorithm, byte[] dataToSign) {
+        return signDigest(DSSUtils.digest(digestAlgorithm.getDssDigestAlgorithm(), dataToSign), digestAlgorithm);
+      }
+
+      @Override
+      public List<byte[]> sign(List<DataToSign> dataToSign) {
+        List<byte[]> signatureValues = new ArrayList<>(dataToSign.size());
+        for (DataToSign data : dataToSign) {
+          signatureValues.add(signDigest(data.getDigestToSign(), data.getDigestAlgorithm()));
+        }
+        return signatureValues;
+      }
+    };
+  }
+
+  /**
+   * Signs a digest with the signer key the way an external signer does.
+   *
+   * @param digest          digest to sign
+   * @param digestAlgorithm algorithm the digest was calculated with
+   * @return signature value
+   */
+  public byte[] signDigest(byte[] digest, DigestAlgorithm digestAlgorithm) {
+    try {
+      java.security.Signature signature = java.security.Signature.getInstance("NONEwithRSA");
+      signature.initSign(signerKeys.getPrivate());
+      signature.update(ArrayUtils.addAll(digestAlgorithm.digestInfoPrefix(), digest));
+      return signature.sign();
+    } catch (Exception e) {
+      throw new DigiDoc4JException(e);
+    }
+  }
+
+  private KeyPair generateKeys() throws Exception {
+    KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+    keyPairGenerator.initialize(2048);
+    return keyPairGenerator.generateKeyPair();
+  }
+
+  private X509v3CertificateBuilder createCertificateBuilder(X500Name subject, X500Name issuer, KeyPair keys,
+                                                            int issuedDaysAgo) {
+    long now = System.currentTimeMillis();
+    return new JcaX509v3CertificateBuilder(issuer, BigInteger.valueOf(serialNumbers.incrementAndGet()),
+        new Date(now - TimeUnit.DAYS.toMillis(issuedDaysAgo)), new Date(now + TimeUnit.DAYS.toMillis(365)), subject,
+        keys.getPublic());
+  }
+
+  private X509Certificate sign(X509v3CertificateBuilder certificateBuilder) throws Exception {
+    return new JcaX509CertificateConverter().getCertificate(
+        certificateBuilder.build(new JcaContentSignerBuilder("SHA256withRSA").build(caKeys.getPrivate())));
+  }
+}
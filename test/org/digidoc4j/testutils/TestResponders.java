@@ -0,0 +1,206 @@
+/* DigiDoc4J library
+*
+* This software is released under either the GNU Library General Public
+* License (see LICENSE.LGPL).
+*
+* Note that the only valid version of the LGPL license as far as this
+* project is concerned is the original GNU Library General Public License
+* Version 2.1, February 1999
+*/
+
+package org.digidoc4j.testutils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.Req;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoGeneratorBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.tsp.TSPAlgorithms;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampResponseGenerator;
+import org.bouncycastle.tsp.TimeStampTokenGenerator;
+import org.digidoc4j.Configuration;
+import org.digidoc4j.exceptions.DigiDoc4JException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local OCSP responder and time-stamping authority answering with the certificates of {@link TestPki}.
+ * Every certificate is reported as good and the OCSP request nonce is returned in the response.
+ * <p/>
+ * The requests are logged in the order they are answered, see {@link TestResponders#getRequestLog()}.
+ */
+public class TestResponders {
+
+  public static final String OCSP_REQUEST = "ocsp";
+  public static final String TIMESTAMP_REQUEST = "tsa";
+
+  private final AtomicLong serialNumbers = new AtomicLong();
+  private final List<String> requestLog = Collections.synchronizedList(new ArrayList<String>());
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final HttpServer server;
+
+  private TestResponders() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/" + OCSP_REQUEST, new ResponderHandler(OCSP_REQUEST) {
+      @Override
+      byte[] respond(byte[] request) throws Exception {
+        return createOcspResponse(request);
+      }
+    });
+    server.createContext("/" + TIMESTAMP_REQUEST, new ResponderHandler(TIMESTAMP_REQUEST) {
+      @Override
+      byte[] respond(byte[] request) throws Exception {
+        return createTimestampResponse(request);
+      }
+    });
+    server.setExecutor(executor);
+  }
+
+  /**
+   * Starts the responders on a free local port.
+   *
+   * @return started responders
+   */
+  public static TestResponders start() {
+    try {
+      TestResponders responders = new TestResponders();
+      responders.server.start();
+      return responders;
+    } catch (IOException e) {
+      throw new DigiDoc4JException(e);
+    }
+  }
+
+  /**
+   * Uses the responders and trusts the {@link TestPki} certificates in the configuration.
+   *
+   * @param configuration configuration to change
+   */
+  public void configure(Configuration configuration) {
+    configuration.setOcspSource(getUrl(OCSP_REQUEST));
+    configuration.setTspSource(getUrl(TIMESTAMP_REQUEST));
+    configuration.setTSL(TestPki.getInstance().createTSL());
+  }
+
+  public void stop() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  /**
+   * @return {@link TestResponders#OCSP_REQUEST} and {@link TestResponders#TIMESTAMP_REQUEST} in the order
+   * the requests were answered
+   */
+  public List<String> getRequestLog() {
+    synchronized (requestLog) {
+      return new ArrayList<>(requestLog);
+    }
+  }
+
+  private String getUrl(String path) {
+    return "http://localhost:" + server.getAddress().getPort() + "/" + path;
+  }
+
+  private byte[] createOcspResponse(byte[] requestBytes) throws Exception {
+    TestPki pki = TestPki.getInstance();
+    OCSPReq request = new OCSPReq(requestBytes);
+    X500Name responderName = new JcaX509CertificateHolder(pki.getOcspCertificate()).getSubject();
+    BasicOCSPRespBuilder responseBuilder = new BasicOCSPRespBuilder(new RespID(responderName));
+    Date now = new Date();
+    for (Req certificateRequest : request.getRequestList()) {
+      responseBuilder.addResponse(certificateRequest.getCertID(), CertificateStatus.GOOD, now, null);
+    }
+    Extension nonce = request.getExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce);
+    if (nonce != null) {
+      responseBuilder.setResponseExtensions(new Extensions(nonce));
+    }
+    X509CertificateHolder[] chain = {new JcaX509CertificateHolder(pki.getOcspCertificate())};
+    BasicOCSPResp response = responseBuilder.build(
+        new JcaContentSignerBuilder("SHA256withRSA").build(pki.getOcspPrivateKey()), chain, now);
+    return new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL, response).getEncoded();
+  }
+
+  private byte[] createTimestampResponse(byte[] requestBytes) throws Exception {
+    TestPki pki = TestPki.getInstance();
+    TimeStampRequest request = new TimeStampRequest(requestBytes);
+    TimeStampTokenGenerator tokenGenerator = new TimeStampTokenGenerator(
+        new JcaSimpleSignerInfoGeneratorBuilder().build("SHA256withRSA", pki.getTsaPrivateKey(),
+            pki.getTsaCertificate()),
+        new JcaDigestCalculatorProviderBuilder().build().get(new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1)),
+        new ASN1ObjectIdentifier("1.3.6.1.4.1.10015.99.1"));
+    tokenGenerator.addCertificates(new JcaCertStore(Collections.singletonList(pki.getTsaCertificate())));
+    TimeStampResponseGenerator responseGenerator = new TimeStampResponseGenerator(tokenGenerator,
+        TSPAlgorithms.ALLOWED);
+    return responseGenerator.generate(request, BigInteger.valueOf(serialNumbers.incrementAndGet()), new Date())
+        .getEncoded();
+  }
+
+  private abstract class ResponderHandler implements HttpHandler {
+
+    private final String requestType;
+
+    ResponderHandler(String requestType) {
+      this.requestType = requestType;
+    }
+
+    abstract byte[] respond(byte[] request) throws Exception;
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      try {
+        byte[] request;
+        InputStream requestBody = exchange.getRequestBody();
+        try {
+          request = IOUtils.toByteArray(requestBody);
+        } finally {
+          requestBody.close();
+        }
+        byte[] response = respond(request);
+        requestLog.add(requestType);
+        exchange.sendResponseHeaders(200, response.length);
+        OutputStream responseBody = exchange.getResponseBody();
+        try {
+          responseBody.write(response);
+        } finally {
+          responseBody.close();
+        }
+      } catch (Exception e) {
+        exchange.sendResponseHeaders(500, -1);
+      } finally {
+        exchange.close();
+      }
+    }
+  }
+}